@@ -0,0 +1,101 @@
+package com.att.tdp.popcorn_palace.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.reactivestreams.Publisher;
+import org.springframework.boot.web.codec.CodecCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.cbor.Jackson2CborDecoder;
+import org.springframework.http.codec.cbor.Jackson2CborEncoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.codec.json.Jackson2SmileDecoder;
+import org.springframework.http.codec.json.Jackson2SmileEncoder;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.lang.Nullable;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+/**
+ * Serves the entities as CBOR ({@code application/cbor}) and Smile ({@code application/x-jackson-smile}) next to JSON,
+ * chosen by the Accept header of a response and the Content-Type of a request body.
+ * The binary formats are written by ObjectMappers built like the JSON one of the application, with the same modules,
+ * features and annotations, so only the encoding changes: the dates are still ISO-8601 strings and the same fields
+ * are read and written.
+ * <p>
+ * Spring MVC would register both formats with default ObjectMappers, which write the dates as timestamps,
+ * so the converters and codecs are replaced here.
+ */
+@Configuration
+public class BinaryFormatsConfig {
+    public static final MediaType APPLICATION_SMILE = new MediaType("application", "x-jackson-smile");
+
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2CborHttpMessageConverter(cborObjectMapper(builder));
+    }
+
+    @Bean
+    public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2SmileHttpMessageConverter(smileObjectMapper(builder));
+    }
+
+    /**
+     * The codecs of the "reactive" profile. Smile replaces the default codec of WebFlux, and CBOR, which WebFlux
+     * does not register, is added to the custom codecs. A codec built with an ObjectMapper and no media type
+     * accepts any media type, so each codec is given its own.
+     * The custom codecs are tried before the default ones, and a request accepting any media type gets the first
+     * one, so the JSON encoder is registered ahead of CBOR to keep JSON the format of such requests.
+     */
+    @Bean
+    public CodecCustomizer binaryFormatsCodecCustomizer(Jackson2ObjectMapperBuilder builder, ObjectMapper objectMapper) {
+        ObjectMapper cborObjectMapper = cborObjectMapper(builder);
+        ObjectMapper smileObjectMapper = smileObjectMapper(builder);
+        return configurer -> {
+            configurer.defaultCodecs().jackson2SmileEncoder(new Jackson2SmileEncoder(smileObjectMapper, APPLICATION_SMILE));
+            configurer.defaultCodecs().jackson2SmileDecoder(new Jackson2SmileDecoder(smileObjectMapper, APPLICATION_SMILE));
+            configurer.customCodecs().register(new Jackson2JsonEncoder(objectMapper));
+            configurer.customCodecs().register(new CborEncoder(cborObjectMapper));
+            configurer.customCodecs().register(new Jackson2CborDecoder(cborObjectMapper, MediaType.APPLICATION_CBOR));
+        };
+    }
+
+    /**
+     * The CBOR encoder of WebFlux rejects any publisher, while the responses write their bodies as a publisher
+     * even for a single value, so a Mono is encoded as one value. A stream of values is still rejected.
+     */
+    private static final class CborEncoder extends Jackson2CborEncoder {
+        private CborEncoder(ObjectMapper objectMapper) {
+            super(objectMapper, MediaType.APPLICATION_CBOR);
+        }
+
+        @Override
+        public Flux<DataBuffer> encode(Publisher<?> inputStream, DataBufferFactory bufferFactory,
+                                       ResolvableType elementType, @Nullable MimeType mimeType,
+                                       @Nullable Map<String, Object> hints) {
+            if (inputStream instanceof Mono<?> value) {
+                return value.map(body -> encodeValue(body, bufferFactory, elementType, mimeType, hints)).flux();
+            }
+
+            return super.encode(inputStream, bufferFactory, elementType, mimeType, hints);
+        }
+    }
+
+    private static ObjectMapper cborObjectMapper(Jackson2ObjectMapperBuilder builder) {
+        return builder.factory(new CBORFactory()).build();
+    }
+
+    private static ObjectMapper smileObjectMapper(Jackson2ObjectMapperBuilder builder) {
+        return builder.factory(new SmileFactory()).build();
+    }
+}
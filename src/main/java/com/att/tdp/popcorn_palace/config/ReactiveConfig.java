@@ -0,0 +1,93 @@
+package com.att.tdp.popcorn_palace.config;
+
+import com.att.tdp.popcorn_palace.controller.ReactiveBookingHandler;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.reactive.config.BlockingExecutionConfigurer;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+/**
+ * Configuration of the "reactive" profile, which runs the server on WebFlux.
+ * The bookings, the showtime reads and the stream of all movies are served by non-blocking functional routes on R2DBC.
+ * The routes take precedence over the annotated controllers, which still serve the other endpoints with JPA,
+ * on a fixed pool of blocking threads so they never block the event loop.
+ */
+@Configuration
+@Profile("reactive")
+public class ReactiveConfig implements WebFluxConfigurer {
+    @Value("${popcorn-palace.reactive.blocking-threads:20}")
+    private int blockingThreads;
+
+    @Bean
+    public RouterFunction<ServerResponse> reactiveRoutes(ReactiveBookingHandler handler) {
+        return RouterFunctions.route()
+                .POST("/bookings", handler::bookTicket)
+                .GET("/showtimes/{showtimeId}", handler::getShowtimeById)
+                // The paged catalog keeps its annotated endpoint.
+                .GET("/movies/all", request -> request.queryParam("limit").isEmpty(), handler::getAllMovies)
+                .onError(error -> true, handler::handleError)
+                .build();
+    }
+
+    /**
+     * Netty is preferred to the reactive Tomcat that Spring Boot would pick since Tomcat is on the classpath,
+     * so the requests are served by one event loop thread per core.
+     */
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    /**
+     * The JDBC data source of the JPA repositories. Spring Boot only configures it when there is no R2DBC
+     * connection factory, so it is declared here from the same spring.datasource properties.
+     */
+    @Bean
+    @ConfigurationProperties("spring.datasource")
+    public DataSourceProperties dataSourceProperties() {
+        return new DataSourceProperties();
+    }
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource dataSource(DataSourceProperties dataSourceProperties) {
+        return dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    /**
+     * The R2DBC transaction manager is registered next to the JPA one, the JPA one stays the default
+     * of the blocking services.
+     */
+    @Bean
+    @Primary
+    public JpaTransactionManager transactionManager(EntityManagerFactory entityManagerFactory) {
+        return new JpaTransactionManager(entityManagerFactory);
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor blockingExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(blockingThreads);
+        executor.setMaxPoolSize(blockingThreads);
+        executor.setThreadNamePrefix("blocking-");
+        return executor;
+    }
+
+    @Override
+    public void configureBlockingExecution(BlockingExecutionConfigurer configurer) {
+        configurer.setExecutor(blockingExecutor());
+    }
+}
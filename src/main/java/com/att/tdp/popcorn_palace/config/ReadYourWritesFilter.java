@@ -0,0 +1,85 @@
+package com.att.tdp.popcorn_palace.config;
+
+import com.att.tdp.popcorn_palace.service.ReplicaReads;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Set;
+
+/**
+ * Pins the reads of a request to the primary when the client may otherwise miss its own writes on the replica:
+ * during a write request, for the requests sent with the {@value #HEADER} header set to true, and for the requests
+ * sent with the {@value #COOKIE} cookie, which every write request sets for the time the replica may lag behind
+ * ({@code popcorn-palace.datasource.replica.read-your-writes-window}).
+ */
+@Component
+@Profile("replica")
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+    public static final String HEADER = "X-Read-Your-Writes";
+    public static final String COOKIE = "popcorn-palace-wrote";
+    private static final Set<String> READ_METHODS = Set.of("GET", "HEAD", "OPTIONS");
+
+    @Autowired
+    private ReplicaReads replicaReads;
+
+    @Value("${popcorn-palace.datasource.replica.read-your-writes-window:PT5S}")
+    private Duration readYourWritesWindow;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        boolean write = !READ_METHODS.contains(request.getMethod());
+        if (write) {
+            Cookie cookie = new Cookie(COOKIE, Long.toString(System.currentTimeMillis()));
+            cookie.setMaxAge((int) readYourWritesWindow.toSeconds());
+            cookie.setPath("/");
+            cookie.setHttpOnly(true);
+            response.addCookie(cookie);
+        }
+
+        if (!write && !Boolean.parseBoolean(request.getHeader(HEADER)) && !wroteRecently(request)) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        replicaReads.setPrimaryOnly(true);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            replicaReads.setPrimaryOnly(false);
+        }
+    }
+
+    /**
+     * Tells if the request carries the cookie of a write made within the window, which is checked
+     * against its time as well since a client may keep the cookie past its max age.
+     */
+    private boolean wroteRecently(HttpServletRequest request) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies == null) {
+            return false;
+        }
+
+        for (Cookie cookie : cookies) {
+            if (COOKIE.equals(cookie.getName())) {
+                try {
+                    return System.currentTimeMillis() - Long.parseLong(cookie.getValue()) < readYourWritesWindow.toMillis();
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,78 @@
+package com.att.tdp.popcorn_palace.config;
+
+import com.att.tdp.popcorn_palace.entity.Movie;
+import com.att.tdp.popcorn_palace.entity.Showtime;
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cache.spi.RegionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import javax.cache.CacheManager;
+import java.time.Duration;
+import java.util.OptionalLong;
+
+/**
+ * Configuration of the "l2cache" profile, which turns on the Hibernate second-level cache of the movies and
+ * the showtimes, and the query cache of the showtimes of a theater.
+ * The regions are local Caffeine caches, each bounded by size and expired by time since it was written,
+ * with the limits set in the popcorn-palace.l2cache properties.
+ * The cache is local to the server: the writes of this instance update or evict the regions, and the entries
+ * written by the other instances are evicted by ChangeNotifier when their change notifications are received.
+ */
+@Configuration
+@Profile("l2cache")
+public class SecondLevelCacheConfig {
+    public static final String SHOWTIMES_BY_THEATER_REGION = "showtimesByTheater";
+
+    @Value("${popcorn-palace.l2cache.movie.maximum-size:10000}")
+    private long movieMaximumSize;
+
+    @Value("${popcorn-palace.l2cache.movie.expire-after-write:PT10M}")
+    private Duration movieExpireAfterWrite;
+
+    @Value("${popcorn-palace.l2cache.showtime.maximum-size:100000}")
+    private long showtimeMaximumSize;
+
+    @Value("${popcorn-palace.l2cache.showtime.expire-after-write:PT10M}")
+    private Duration showtimeExpireAfterWrite;
+
+    @Value("${popcorn-palace.l2cache.showtimes-by-theater.maximum-size:1000}")
+    private long showtimesByTheaterMaximumSize;
+
+    @Value("${popcorn-palace.l2cache.showtimes-by-theater.expire-after-write:PT10M}")
+    private Duration showtimesByTheaterExpireAfterWrite;
+
+    @Bean(destroyMethod = "close")
+    public CacheManager secondLevelCacheManager() {
+        // A provider of its own, so every application context gets a separate cache manager.
+        CacheManager cacheManager = new CaffeineCachingProvider().getCacheManager();
+        cacheManager.createCache(Movie.class.getName(), region(movieMaximumSize, movieExpireAfterWrite));
+        cacheManager.createCache(Showtime.class.getName(), region(showtimeMaximumSize, showtimeExpireAfterWrite));
+        cacheManager.createCache(SHOWTIMES_BY_THEATER_REGION,
+                region(showtimesByTheaterMaximumSize, showtimesByTheaterExpireAfterWrite));
+        cacheManager.createCache(RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME,
+                region(showtimesByTheaterMaximumSize, showtimesByTheaterExpireAfterWrite));
+        // The last update of every table, which must never be evicted or a stale query result could be returned.
+        cacheManager.createCache(RegionFactory.DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME,
+                new CaffeineConfiguration<>());
+        return cacheManager;
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer secondLevelCacheCustomizer(CacheManager secondLevelCacheManager) {
+        return properties -> properties.put(ConfigSettings.CACHE_MANAGER, secondLevelCacheManager);
+    }
+
+    private static CaffeineConfiguration<Object, Object> region(long maximumSize, Duration expireAfterWrite) {
+        CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+        configuration.setMaximumSize(OptionalLong.of(maximumSize));
+        configuration.setExpireAfterWrite(OptionalLong.of(expireAfterWrite.toNanos()));
+        configuration.setStatisticsEnabled(true);
+        return configuration;
+    }
+}
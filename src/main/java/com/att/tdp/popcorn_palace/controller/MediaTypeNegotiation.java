@@ -0,0 +1,65 @@
+package com.att.tdp.popcorn_palace.controller;
+
+import org.springframework.http.MediaType;
+import org.springframework.util.MimeTypeUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The negotiation of the endpoints that write their response in one of several formats themselves.
+ * The media types of the Accept header are tried by quality and then by specificity, like the message converters
+ * of Spring do. A format is never selected when the most specific media type that includes it has a quality of 0,
+ * so "application/json;q=0" refuses JSON even when a wildcard accepts any other format.
+ */
+final class MediaTypeNegotiation {
+    private MediaTypeNegotiation() {}
+
+    /**
+     * Selects the format of a response.
+     *
+     * @param accept the media types of the Accept header
+     * @param formats the formats of the response, the first one being used when the Accept header is absent
+     * @return the selected format, or null if the Accept header accepts none of the formats
+     */
+    static MediaType select(List<MediaType> accept, List<MediaType> formats) {
+        if (accept.isEmpty()) {
+            return formats.get(0);
+        }
+
+        List<MediaType> sortedAccept = new ArrayList<>(accept);
+        MimeTypeUtils.sortBySpecificity(sortedAccept);
+        for (MediaType mediaType : sortedAccept) {
+            if (mediaType.getQualityValue() == 0) {
+                break;
+            }
+
+            for (MediaType format : formats) {
+                if (mediaType.includes(format) && !isRefused(accept, format)) {
+                    return format;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private static boolean isRefused(List<MediaType> accept, MediaType format) {
+        MediaType closest = null;
+        for (MediaType mediaType : accept) {
+            if (mediaType.includes(format) && (closest == null || specificity(mediaType) > specificity(closest))) {
+                closest = mediaType;
+            }
+        }
+
+        return closest != null && closest.getQualityValue() == 0;
+    }
+
+    private static int specificity(MediaType mediaType) {
+        if (mediaType.isWildcardType()) {
+            return 0;
+        }
+
+        return mediaType.isWildcardSubtype() ? 1 : 2;
+    }
+}
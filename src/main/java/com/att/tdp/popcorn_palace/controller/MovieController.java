@@ -1,10 +1,25 @@
 package com.att.tdp.popcorn_palace.controller;
+import com.att.tdp.popcorn_palace.config.BinaryFormatsConfig;
+import com.att.tdp.popcorn_palace.dto.ImportReport;
 import com.att.tdp.popcorn_palace.entity.*;
+import com.att.tdp.popcorn_palace.service.CatalogImportService;
 import com.att.tdp.popcorn_palace.service.MovieService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 
 /**
@@ -15,21 +30,118 @@ import java.util.List;
 @RestController
 @RequestMapping("/movies")
 public class MovieController {
+    private static final List<MediaType> MOVIE_FORMATS = List.of(MediaType.APPLICATION_JSON,
+            MediaType.APPLICATION_CBOR, BinaryFormatsConfig.APPLICATION_SMILE);
+
     @Autowired
     private MovieService movieService;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MappingJackson2CborHttpMessageConverter cborHttpMessageConverter;
+
+    @Autowired
+    private MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter;
+
+    @Autowired
+    private CatalogImportService catalogImportService;
+
     /**
-     * Retrieves all movies from the data source.
+     * Retrieves a page of movies ordered by ID, starting after the given ID.
+     * The next page is requested with the ID of the last movie of this page.
      *
-     * @return a ResponseEntity containing a list of Movie objects
-     *         representing all available movies.
+     * @param after the ID after which the page starts, the first page when absent
+     * @param limit the maximum number of movies in the page
+     * @return a ResponseEntity containing the list of Movie objects of the page
      */
-    @GetMapping("/all")
-    public ResponseEntity<?> getAllMovies() {
-        List<Movie> movies = movieService.getAllMovie();
+    @GetMapping(value = "/all", params = "limit")
+    public ResponseEntity<?> getMoviePage(@RequestParam(value = "after", required = false) Long after,
+                                          @RequestParam("limit") int limit) {
+        List<Movie> movies = movieService.getMoviePage(after, limit);
         return ResponseEntity.ok(movies);
     }
 
+    /**
+     * Retrieves all movies from the data source. The movies are written to the response as an array
+     * one by one while they are read from the database, so the catalog is never held in memory as a whole.
+     * The array is written as JSON, or as CBOR or Smile when the Accept header prefers them.
+     * A page is only served with a limit, so a request with {@code after} but no {@code limit} is rejected
+     * instead of returning the whole catalog.
+     * This endpoint writes to the servlet response, so it only serves the servlet server: with the "reactive"
+     * profile the requests without a limit are served by the functional route of ReactiveConfig
+     * (ReactiveBookingHandler#getAllMovies), which takes precedence over this method.
+     *
+     * @param after the ID after which a page would start, which requires a limit
+     * @param headers the headers of the request, with the Accept header
+     * @param response the HTTP response the array of all available movies is written to
+     * @throws IOException if writing the response fails
+     * @throws IllegalArgumentException if {@code after} is given without {@code limit}
+     * @throws HttpMediaTypeNotAcceptableException if the Accept header accepts none of the formats
+     */
+    @GetMapping("/all")
+    public void getAllMovies(@RequestParam(value = "after", required = false) Long after,
+                             @RequestHeader HttpHeaders headers, HttpServletResponse response)
+            throws IOException, HttpMediaTypeNotAcceptableException {
+        if (after != null) {
+            throw new IllegalArgumentException("Movie page limit is required with after");
+        }
+
+        MediaType format = movieFormat(headers.getAccept());
+        ObjectMapper formatMapper = objectMapper;
+        if (format.equals(MediaType.APPLICATION_CBOR)) {
+            formatMapper = cborHttpMessageConverter.getObjectMapper();
+        } else if (format.equals(BinaryFormatsConfig.APPLICATION_SMILE)) {
+            formatMapper = smileHttpMessageConverter.getObjectMapper();
+        } else {
+            response.setCharacterEncoding("UTF-8");
+        }
+
+        response.setContentType(format.toString());
+        try (JsonGenerator generator = formatMapper.createGenerator(response.getOutputStream())) {
+            generator.writeStartArray();
+            movieService.forEachMovie(movie -> {
+                try {
+                    generator.writeObject(movie);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            generator.writeEndArray();
+        }
+    }
+
+    private static MediaType movieFormat(List<MediaType> accept) throws HttpMediaTypeNotAcceptableException {
+        MediaType format = MediaTypeNegotiation.select(accept, MOVIE_FORMATS);
+        if (format == null) {
+            throw new HttpMediaTypeNotAcceptableException(MOVIE_FORMATS);
+        }
+
+        return format;
+    }
+
+    /**
+     * Retrieves a movie by its title, with its version as ETag.
+     * A request whose If-None-Match matches the version gets a 304 without the movie being serialized.
+     * The title is read under "/title", so a movie titled "all" is not shadowed by GET /movies/all.
+     *
+     * @param movieTitle the title of the movie
+     * @param headers the headers of the request, with the If-None-Match header
+     * @return a ResponseEntity containing the Movie object, or a 304 if it did not change
+     */
+    @GetMapping("/title/{movieTitle}")
+    public ResponseEntity<?> getMovieByTitle(@PathVariable("movieTitle") String movieTitle,
+                                             @RequestHeader HttpHeaders headers) {
+        Movie movie = movieService.getMovieByTitle(movieTitle);
+        String eTag = VersionETags.of(movie.getVersion());
+        if (VersionETags.isNotModified(headers.getIfNoneMatch(), eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+        }
+
+        return ResponseEntity.ok().eTag(eTag).body(movie);
+    }
+
     /**
      * Saves a new movie to the system by validating its details and persisting it to the data store.
      *
@@ -43,30 +155,58 @@ public class MovieController {
     }
 
     /**
-     * Deletes a movie based on its title. The method retrieves the movie by its title,
-     * then deletes it from the repository using its unique ID.
+     * Imports movies in bulk from an NDJSON file with one movie per line, or a CSV file with a header line
+     * naming the fields of the movies. The file is read while it is uploaded, and the invalid movies are reported
+     * without stopping the import of the others.
+     *
+     * @param headers the headers of the request, with the Content-Type of the file
+     * @param file the content of the file
+     * @return a ResponseEntity containing the report of the import with the errors of the rejected movies
+     * @throws IOException if reading the file fails
+     */
+    @PostMapping(value = "/import", consumes = {MediaType.APPLICATION_NDJSON_VALUE, CatalogImportService.TEXT_CSV_VALUE})
+    public ResponseEntity<?> importMovies(@RequestHeader HttpHeaders headers, @RequestBody InputStreamResource file)
+            throws IOException {
+        ImportReport report = catalogImportService.importMovies(file.getInputStream(), headers.getContentType());
+        return ResponseEntity.ok(report);
+    }
+
+    /**
+     * Deletes a movie with its showtimes and their tickets based on its title.
+     * With async the movie is purged in the background, deleting its tickets in batches,
+     * and the request is answered with 202 once the movie is found.
      *
      * @param movieTitle the title of the movie to be deleted; must not be null or empty
+     * @param async whether to purge the movie in the background, false when absent
      * @return a ResponseEntity indicating the success of the deletion operation
      */
     @DeleteMapping("{movieTitle}")
-    public ResponseEntity<?> deleteMovie(@PathVariable("movieTitle") String movieTitle) {
-        Movie movie = movieService.getMovieByTitle(movieTitle);
-        movieService.deleteMovie(movie.getId());
+    public ResponseEntity<?> deleteMovie(@PathVariable("movieTitle") String movieTitle,
+                                         @RequestParam(value = "async", defaultValue = "false") boolean async) {
+        if (async) {
+            movieService.purgeMovieByTitle(movieTitle);
+            return ResponseEntity.accepted().build();
+        }
+
+        movieService.deleteMovieByTitle(movieTitle);
         return ResponseEntity.ok().build();
 
     }
 
     /**
      * Updates the details of an existing movie identified by its title.
+     * With If-Match the update is only applied if the movie still has the version of the given ETag,
+     * otherwise it is rejected with a 412.
      *
      * @param movieTitle the title of the movie to be updated; must not be null or empty
      * @param movie the Movie object containing the updated details of the movie
-     * @return a ResponseEntity containing the updated Movie object
+     * @param headers the headers of the request, with the If-Match header
+     * @return a ResponseEntity containing the updated Movie object with its new version as ETag
      */
     @PostMapping("/update/{movieTitle}")
-    public ResponseEntity<?> updateMovie(@PathVariable("movieTitle") String movieTitle, @RequestBody Movie movie) {
-        Movie updatedMovie = movieService.updateMovie(movieTitle, movie);
-        return ResponseEntity.ok(updatedMovie);
+    public ResponseEntity<?> updateMovie(@PathVariable("movieTitle") String movieTitle, @RequestBody Movie movie,
+                                         @RequestHeader HttpHeaders headers) {
+        Movie updatedMovie = movieService.updateMovie(movieTitle, movie, VersionETags.expectedVersion(headers.getIfMatch()));
+        return ResponseEntity.ok().eTag(VersionETags.of(updatedMovie.getVersion())).body(updatedMovie);
     }
 }
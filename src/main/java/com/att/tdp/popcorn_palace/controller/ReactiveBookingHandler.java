@@ -0,0 +1,132 @@
+package com.att.tdp.popcorn_palace.controller;
+
+import com.att.tdp.popcorn_palace.config.BinaryFormatsConfig;
+import com.att.tdp.popcorn_palace.entity.Movie;
+import com.att.tdp.popcorn_palace.entity.Ticket;
+import com.att.tdp.popcorn_palace.exception.ResourceNotFoundException;
+import com.att.tdp.popcorn_palace.service.ReactiveBookingService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.NotAcceptableStatusException;
+import org.springframework.web.server.ServerWebInputException;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Handler of the functional routes of the "reactive" profile, see ReactiveConfig.
+ * The requests and responses are the same as the ones of TicketController, ShowtimeController and MovieController,
+ * and the errors are mapped to the same responses as GlobalExceptionHandler.
+ */
+@Component
+@Profile("reactive")
+public class ReactiveBookingHandler {
+    private static final List<MediaType> MOVIE_FORMATS = List.of(MediaType.APPLICATION_JSON,
+            MediaType.APPLICATION_CBOR, BinaryFormatsConfig.APPLICATION_SMILE);
+
+    @Autowired
+    private ReactiveBookingService reactiveBookingService;
+
+    /**
+     * Books a ticket, like TicketController#bookTicket.
+     *
+     * @param request the request containing the Ticket object with the showtime ID, seat number, and user ID
+     * @return a response containing a map with the booking ID and a 201 CREATED status code
+     */
+    public Mono<ServerResponse> bookTicket(ServerRequest request) {
+        return request.bodyToMono(Ticket.class)
+                .switchIfEmpty(Mono.error(() -> new ServerWebInputException("Missing request body")))
+                .flatMap(reactiveBookingService::bookTicket)
+                .flatMap(response -> ServerResponse.status(HttpStatus.CREATED).bodyValue(response));
+    }
+
+    /**
+     * Retrieves a showtime by its ID with its version as ETag, like ShowtimeController#getShowtimeById.
+     *
+     * @param request the request with the ID of the showtime in its path and the If-None-Match header
+     * @return a response containing the Showtime object, or a 304 if it did not change
+     */
+    public Mono<ServerResponse> getShowtimeById(ServerRequest request) {
+        Long showtimeId;
+        try {
+            showtimeId = Long.valueOf(request.pathVariable("showtimeId"));
+        } catch (NumberFormatException e) {
+            return Mono.error(new ServerWebInputException("Invalid showtime id", null, e));
+        }
+
+        return reactiveBookingService.getShowtimeById(showtimeId)
+                .flatMap(showtime -> {
+                    String eTag = VersionETags.of(showtime.getVersion());
+                    if (VersionETags.isNotModified(request.headers().asHttpHeaders().getIfNoneMatch(), eTag)) {
+                        return ServerResponse.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+                    }
+
+                    return ServerResponse.ok().eTag(eTag).bodyValue(showtime);
+                });
+    }
+
+    /**
+     * Retrieves all movies, like MovieController#getAllMovies. The movies are encoded as a JSON array
+     * one by one while they are read from the database. The CBOR codec cannot encode a stream,
+     * so as CBOR or Smile the array is encoded once all the movies are read.
+     * The format is selected by the quality values of the Accept header, like MovieController#getAllMovies.
+     * The requests with a limit are served by the page endpoint of MovieController, so a request with
+     * {@code after} but no limit is rejected instead of returning the whole catalog.
+     *
+     * @param request the request with the Accept header
+     * @return a response streaming the array of all available movies, which fails with
+     *         an IllegalArgumentException if {@code after} is given without {@code limit},
+     *         or with a NotAcceptableStatusException if the Accept header accepts none of the formats
+     */
+    public Mono<ServerResponse> getAllMovies(ServerRequest request) {
+        if (request.queryParam("after").isPresent()) {
+            return Mono.error(new IllegalArgumentException("Movie page limit is required with after"));
+        }
+
+        MediaType format = MediaTypeNegotiation.select(request.headers().accept(), MOVIE_FORMATS);
+        if (format == null) {
+            return Mono.error(new NotAcceptableStatusException(MOVIE_FORMATS));
+        }
+
+        if (!format.equals(MediaType.APPLICATION_JSON)) {
+            return ServerResponse.ok()
+                    .contentType(format)
+                    .body(reactiveBookingService.getAllMovies().collectList(),
+                            new ParameterizedTypeReference<List<Movie>>() {});
+        }
+
+        return ServerResponse.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(reactiveBookingService.getAllMovies(), Movie.class);
+    }
+
+    /**
+     * Maps an error of a route to the same response as GlobalExceptionHandler.
+     *
+     * @param error the error of the route
+     * @param request the request that failed
+     * @return the error response
+     */
+    public Mono<ServerResponse> handleError(Throwable error, ServerRequest request) {
+        if (error instanceof ResourceNotFoundException) {
+            return ServerResponse.status(HttpStatus.NOT_FOUND).bodyValue(error.getMessage());
+        }
+
+        if (error instanceof IllegalArgumentException) {
+            return ServerResponse.status(HttpStatus.BAD_REQUEST).bodyValue(error.getMessage());
+        }
+
+        if (error instanceof NotAcceptableStatusException notAcceptable) {
+            return ServerResponse.status(HttpStatus.NOT_ACCEPTABLE).contentType(MediaType.TEXT_PLAIN)
+                    .bodyValue("Acceptable formats - " + MediaType.toString(notAcceptable.getSupportedMediaTypes()));
+        }
+
+        return ServerResponse.status(HttpStatus.INTERNAL_SERVER_ERROR).bodyValue("An unexpected error occurred.");
+    }
+}
@@ -1,11 +1,25 @@
 package com.att.tdp.popcorn_palace.controller;
 
+import com.att.tdp.popcorn_palace.dto.ImportReport;
+import com.att.tdp.popcorn_palace.dto.SeatMap;
 import com.att.tdp.popcorn_palace.entity.Showtime;
+import com.att.tdp.popcorn_palace.service.CatalogImportService;
 import com.att.tdp.popcorn_palace.service.ShowtimeService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Map;
+
 /**
  * The ShowtimeController class handles HTTP requests related to showtime operations.
  * It provides endpoints for retrieving, saving, deleting, and updating showtime data.
@@ -13,19 +27,114 @@ import org.springframework.web.bind.annotation.*;
 @RestController
 @RequestMapping("/showtimes")
 public class ShowtimeController {
+    private static final List<MediaType> SEAT_MAP_FORMATS = List.of(MediaType.APPLICATION_JSON,
+            MediaType.APPLICATION_OCTET_STREAM, MediaType.TEXT_PLAIN);
+
     @Autowired
     private ShowtimeService showtimeService;
 
+    @Autowired
+    private CatalogImportService catalogImportService;
+
     /**
-     * Retrieves a showtime based on the provided showtime ID.
+     * Retrieves a page of showtimes ordered by start time and ID, filtered by theater, movie and start time range.
+     * The next page is requested with the start time and ID of the last showtime of this page.
+     *
+     * @param theater the theater of the showtimes, all the theaters when absent
+     * @param movieId the ID of the movie of the showtimes, all the movies when absent
+     * @param from the earliest start time of the showtimes, inclusive, in ISO-8601 format
+     * @param to the latest start time of the showtimes, exclusive, in ISO-8601 format
+     * @param afterStartTime the start time of the last showtime of the previous page, the first page when absent
+     * @param afterId the ID of the last showtime of the previous page, the first page when absent
+     * @param limit the maximum number of showtimes in the page, 100 when absent
+     * @return a ResponseEntity containing the list of Showtime objects of the page
+     */
+    @GetMapping("")
+    public ResponseEntity<?> getShowtimes(@RequestParam(value = "theater", required = false) String theater,
+                                          @RequestParam(value = "movieId", required = false) Long movieId,
+                                          @RequestParam(value = "from", required = false)
+                                          @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime from,
+                                          @RequestParam(value = "to", required = false)
+                                          @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime to,
+                                          @RequestParam(value = "afterStartTime", required = false)
+                                          @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime afterStartTime,
+                                          @RequestParam(value = "afterId", required = false) Long afterId,
+                                          @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        List<Showtime> showtimes = showtimeService.getShowtimes(theater, movieId, from, to, afterStartTime, afterId, limit);
+        return ResponseEntity.ok(showtimes);
+    }
+
+    /**
+     * Retrieves a showtime based on the provided showtime ID, with its version as ETag.
+     * A request whose If-None-Match matches the version gets a 304 without the showtime being serialized.
      *
      * @param showtimeId the ID of the showtime to be retrieved
-     * @return a ResponseEntity containing the retrieved Showtime object.
+     * @param headers the headers of the request, with the If-None-Match header
+     * @return a ResponseEntity containing the retrieved Showtime object, or a 304 if it did not change
      */
     @GetMapping("/{showtimeId}")
-    public ResponseEntity<?> getMovieById(@PathVariable("showtimeId") Long showtimeId) {
+    public ResponseEntity<?> getShowtimeById(@PathVariable("showtimeId") Long showtimeId,
+                                             @RequestHeader HttpHeaders headers) {
         Showtime showtime = showtimeService.getShowtimeById(showtimeId);
-        return ResponseEntity.ok(showtime);
+        String eTag = VersionETags.of(showtime.getVersion());
+        if (VersionETags.isNotModified(headers.getIfNoneMatch(), eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+        }
+
+        return ResponseEntity.ok().eTag(eTag).body(showtime);
+    }
+
+    /**
+     * Retrieves the occupied seats of a showtime, in the format requested by the Accept header:
+     * the raw bitmap as application/octet-stream, where seat n is the bit n % 8 of the byte n / 8,
+     * the base64 run-length encoding of the seats as text/plain (see SeatMap#toRunLengthBase64),
+     * or by default a JSON object with the list of occupied seat numbers.
+     * The format is selected by the quality values of the Accept header.
+     * The response has an ETag that only changes when a seat is taken or freed, and a request whose
+     * If-None-Match matches it gets a 304 without the seats being copied.
+     *
+     * @param showtimeId the ID of the showtime
+     * @param headers the headers of the request, with the Accept and If-None-Match headers
+     * @return a ResponseEntity containing the occupied seats of the showtime, or a 304 if they did not change
+     * @throws HttpMediaTypeNotAcceptableException if the Accept header accepts none of the formats
+     */
+    @GetMapping("/{showtimeId}/seats")
+    public ResponseEntity<?> getSeatMap(@PathVariable("showtimeId") Long showtimeId,
+                                        @RequestHeader HttpHeaders headers) throws HttpMediaTypeNotAcceptableException {
+        MediaType format = seatMapFormat(headers.getAccept());
+        String eTag = seatMapETag(showtimeService.getSeatMapVersion(showtimeId), format);
+        List<String> ifNoneMatch = headers.getIfNoneMatch();
+        if (ifNoneMatch.contains(eTag) || ifNoneMatch.contains("W/" + eTag) || ifNoneMatch.contains("*")) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).varyBy(HttpHeaders.ACCEPT).build();
+        }
+
+        SeatMap seatMap = showtimeService.getSeatMap(showtimeId);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .eTag(seatMapETag(seatMap.getVersion(), format))
+                .varyBy(HttpHeaders.ACCEPT)
+                .contentType(format);
+        if (format.equals(MediaType.APPLICATION_OCTET_STREAM)) {
+            return response.body(seatMap.getBitmap());
+        }
+
+        if (format.equals(MediaType.TEXT_PLAIN)) {
+            return response.body(seatMap.toRunLengthBase64());
+        }
+
+        return response.body(Map.of("showtimeId", showtimeId, "occupiedSeats", seatMap.getSeatNumbers()));
+    }
+
+    private static MediaType seatMapFormat(List<MediaType> accept) throws HttpMediaTypeNotAcceptableException {
+        MediaType format = MediaTypeNegotiation.select(accept, SEAT_MAP_FORMATS);
+        if (format == null) {
+            throw new HttpMediaTypeNotAcceptableException(SEAT_MAP_FORMATS);
+        }
+
+        return format;
+    }
+
+    private static String seatMapETag(String version, MediaType format) {
+        return "\"" + version + "-" + format.getSubtype() + "\"";
     }
 
     /**
@@ -43,13 +152,39 @@ public class ShowtimeController {
     }
 
     /**
-     * Deletes a showtime based on the provided showtime ID.
+     * Imports showtimes in bulk from an NDJSON file with one showtime per line, or a CSV file with a header line
+     * naming the fields of the showtimes. The file is read while it is uploaded, and the invalid or overlapping
+     * showtimes are reported without stopping the import of the others.
+     *
+     * @param headers the headers of the request, with the Content-Type of the file
+     * @param file the content of the file
+     * @return a ResponseEntity containing the report of the import with the errors of the rejected showtimes
+     * @throws IOException if reading the file fails
+     */
+    @PostMapping(value = "/import", consumes = {MediaType.APPLICATION_NDJSON_VALUE, CatalogImportService.TEXT_CSV_VALUE})
+    public ResponseEntity<?> importShowtimes(@RequestHeader HttpHeaders headers, @RequestBody InputStreamResource file)
+            throws IOException {
+        ImportReport report = catalogImportService.importShowtimes(file.getInputStream(), headers.getContentType());
+        return ResponseEntity.ok(report);
+    }
+
+    /**
+     * Deletes a showtime and its tickets based on the provided showtime ID.
+     * With async the showtime is purged in the background, deleting its tickets in batches,
+     * and the request is answered with 202 once the showtime is found.
      *
      * @param showtimeId the ID of the showtime to be deleted
+     * @param async whether to purge the showtime in the background, false when absent
      * @return a ResponseEntity indicating the result of the delete operation
      */
     @DeleteMapping("/{showtimeId}")
-    public ResponseEntity<?> deleteMovie(@PathVariable("showtimeId") Long showtimeId) {
+    public ResponseEntity<?> deleteMovie(@PathVariable("showtimeId") Long showtimeId,
+                                         @RequestParam(value = "async", defaultValue = "false") boolean async) {
+        if (async) {
+            showtimeService.purgeShowtime(showtimeId);
+            return ResponseEntity.accepted().build();
+        }
+
         showtimeService.deleteShowtime(showtimeId);
         return ResponseEntity.ok().build();
     }
@@ -57,15 +192,20 @@ public class ShowtimeController {
     /**
      * Updates an existing showtime based on the provided showtime ID and
      * Showtime object after performing necessary validations.
+     * With If-Match the update is only applied if the showtime still has the version of the given ETag,
+     * otherwise it is rejected with a 412.
      *
      * @param showtimeId the ID of the showtime to be updated
      * @param showtime the Showtime object containing updated information such as movie ID,
      *                 theater, start time, end time, and ticket price
-     * @return a ResponseEntity containing the updated Showtime object
+     * @param headers the headers of the request, with the If-Match header
+     * @return a ResponseEntity containing the updated Showtime object with its new version as ETag
      */
     @PostMapping("/update/{showtimeId}")
-    public ResponseEntity<?> updateMovie(@PathVariable("showtimeId") Long showtimeId, @RequestBody Showtime showtime) {
-        Showtime updatedShowtime = showtimeService.updateShowtime(showtimeId, showtime);
-        return ResponseEntity.ok(updatedShowtime);
+    public ResponseEntity<?> updateMovie(@PathVariable("showtimeId") Long showtimeId, @RequestBody Showtime showtime,
+                                         @RequestHeader HttpHeaders headers) {
+        Showtime updatedShowtime = showtimeService.updateShowtime(showtimeId, showtime,
+                VersionETags.expectedVersion(headers.getIfMatch()));
+        return ResponseEntity.ok().eTag(VersionETags.of(updatedShowtime.getVersion())).body(updatedShowtime);
     }
 }
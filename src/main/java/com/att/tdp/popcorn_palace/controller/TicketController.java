@@ -1,19 +1,23 @@
 package com.att.tdp.popcorn_palace.controller;
 
+import com.att.tdp.popcorn_palace.dto.BatchBooking;
 import com.att.tdp.popcorn_palace.entity.Ticket;
 import com.att.tdp.popcorn_palace.service.TicketService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.List;
 import java.util.Map;
 
 /**
  * Controller class responsible for handling API requests related to ticket booking.
- * This class provides an endpoint for booking tickets by interacting with the TicketService.
+ * This class provides endpoints for booking tickets by interacting with the TicketService.
  */
 @RestController
 public class TicketController {
@@ -34,4 +38,60 @@ public class TicketController {
         return ResponseEntity.status(HttpStatus.CREATED)
                 .body(response);
     }
+
+    /**
+     * Endpoint for booking several seats of one showtime at once. This method handles the HTTP POST request
+     * to book all the requested seats for the same user in a single transaction, either all of them are booked
+     * or none of them is.
+     *
+     * @param booking the BatchBooking object containing the showtime ID, the seat numbers, and the user ID
+     * @return a ResponseEntity containing a map with the booking IDs if the booking is successful, and a 201 CREATED status code
+     */
+    @PostMapping("/bookings/batch")
+    public ResponseEntity<?> bookTickets(@RequestBody BatchBooking booking) {
+        Map<String, List<String>> response = ticketService.bookTickets(booking);
+        return ResponseEntity.status(HttpStatus.CREATED)
+                .body(response);
+    }
+
+    /**
+     * Endpoint for holding a seat while the user completes the checkout. This method handles the HTTP POST request
+     * to hold the requested seat for a limited time, the hold must be confirmed before its deadline
+     * or the seat is freed again.
+     *
+     * @param ticket the Ticket object containing the details of the hold, including showtime ID, seat number, and user ID
+     * @return a ResponseEntity containing a map with the booking ID and the hold deadline, and a 201 CREATED status code
+     */
+    @PostMapping("/bookings/hold")
+    public ResponseEntity<?> holdTicket(@RequestBody Ticket ticket) {
+        Map<String, String> response = ticketService.holdTicket(ticket);
+        return ResponseEntity.status(HttpStatus.CREATED)
+                .body(response);
+    }
+
+    /**
+     * Endpoint for confirming a held seat. This method handles the HTTP POST request
+     * to turn an active hold into a booking.
+     *
+     * @param bookingId the booking ID of the held ticket
+     * @return a ResponseEntity with a 200 OK status code if the hold is confirmed
+     */
+    @PostMapping("/bookings/{bookingId}/confirm")
+    public ResponseEntity<?> confirmHold(@PathVariable String bookingId) {
+        ticketService.confirmHold(bookingId);
+        return ResponseEntity.ok().build();
+    }
+
+    /**
+     * Endpoint for releasing a held seat. This method handles the HTTP DELETE request
+     * to cancel a hold before its deadline and free its seat.
+     *
+     * @param bookingId the booking ID of the held ticket
+     * @return a ResponseEntity with a 200 OK status code if the hold is released
+     */
+    @DeleteMapping("/bookings/{bookingId}/hold")
+    public ResponseEntity<?> releaseHold(@PathVariable String bookingId) {
+        ticketService.releaseHold(bookingId);
+        return ResponseEntity.ok().build();
+    }
 }
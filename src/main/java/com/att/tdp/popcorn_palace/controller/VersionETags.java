@@ -0,0 +1,54 @@
+package com.att.tdp.popcorn_palace.controller;
+
+import com.att.tdp.popcorn_palace.exception.PreconditionFailedException;
+
+import java.util.List;
+
+/**
+ * The ETags of the movies and showtimes, which are their versions, so they are compared without serializing anything.
+ * A read whose If-None-Match matches the current version gets a 304, and a write whose If-Match does not is rejected
+ * with a 412 before anything is written.
+ */
+final class VersionETags {
+    private VersionETags() {}
+
+    static String of(Long version) {
+        return "\"" + version + "\"";
+    }
+
+    /**
+     * Tells if the If-None-Match header of a read matches the ETag, with the weak comparison used for reads.
+     *
+     * @param ifNoneMatch the entity tags of the If-None-Match header
+     * @param eTag the current ETag of the resource
+     * @return true if the client already has the current version, false otherwise
+     */
+    static boolean isNotModified(List<String> ifNoneMatch, String eTag) {
+        return ifNoneMatch.contains(eTag) || ifNoneMatch.contains("W/" + eTag) || ifNoneMatch.contains("*");
+    }
+
+    /**
+     * Reads the version a write expects from its If-Match header.
+     * Only a single strong ETag is compared with the version, a weak or foreign ETag never matches it.
+     *
+     * @param ifMatch the entity tags of the If-Match header
+     * @return the expected version, or null if the header is absent or is "*"
+     * @throws PreconditionFailedException if the header cannot match any version of the resource
+     */
+    static Long expectedVersion(List<String> ifMatch) {
+        if (ifMatch.isEmpty() || ifMatch.contains("*")) {
+            return null;
+        }
+
+        String eTag = ifMatch.get(0);
+        if (ifMatch.size() == 1 && eTag.length() > 2 && eTag.startsWith("\"") && eTag.endsWith("\"")) {
+            try {
+                return Long.valueOf(eTag.substring(1, eTag.length() - 1));
+            } catch (NumberFormatException e) {
+                // Not a version, it cannot match.
+            }
+        }
+
+        throw new PreconditionFailedException("If-Match must be the ETag of the current version - " + String.join(", ", ifMatch));
+    }
+}
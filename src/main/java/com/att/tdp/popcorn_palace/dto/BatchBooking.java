@@ -0,0 +1,60 @@
+package com.att.tdp.popcorn_palace.dto;
+
+import com.att.tdp.popcorn_palace.entity.Ticket;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Request body for booking several seats of the same showtime for one user at once.
+ * The class validates the list of seats and builds the tickets to be booked,
+ * each ticket is then validated on its own.
+ */
+@Getter
+@Setter
+public class BatchBooking {
+    private Long showtimeId;
+    private List<Integer> seatNumbers;
+    private String userId;
+
+    public BatchBooking() {}
+
+    public BatchBooking(Long showtimeId, List<Integer> seatNumbers, String userId) {
+        this.showtimeId = showtimeId;
+        this.seatNumbers = seatNumbers;
+        this.userId = userId;
+    }
+
+    public String validate() {
+        if (seatNumbers == null || seatNumbers.isEmpty()) {
+            return "Booking seatNumbers cannot be empty";
+        }
+
+        Set<Integer> distinctSeats = new HashSet<>();
+        for (Integer seatNumber : seatNumbers) {
+            if (seatNumber != null && !distinctSeats.add(seatNumber)) {
+                return "Booking seatNumbers cannot contain duplicates";
+            }
+        }
+
+        return null;
+    }
+
+    public List<Ticket> toTickets() {
+        List<Ticket> tickets = new ArrayList<>(seatNumbers.size());
+        for (Integer seatNumber : seatNumbers) {
+            tickets.add(new Ticket(showtimeId, seatNumber, userId));
+        }
+
+        return tickets;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchBooking [showtime=" + showtimeId + ", seatNumbers=" + seatNumbers + ", userId=" + userId + "]";
+    }
+}
@@ -0,0 +1,50 @@
+package com.att.tdp.popcorn_palace.dto;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Result of an import, with the number of imported and failed records and the errors of the failed records
+ * with the line they start on. Only the first errors are listed, so a file full of invalid records
+ * cannot make the report as large as the file.
+ */
+@Getter
+public class ImportReport {
+    public static final int MAX_ERRORS = 1000;
+
+    private long imported;
+    private long failed;
+    private final List<RecordError> errors = new ArrayList<>();
+
+    public void addImported(int count) {
+        imported += count;
+    }
+
+    public void addError(long line, String error) {
+        failed++;
+        if (errors.size() < MAX_ERRORS) {
+            errors.add(new RecordError(line, error));
+        }
+    }
+
+    /**
+     * The error of a record that was not imported.
+     */
+    @Getter
+    public static class RecordError {
+        private final long line;
+        private final String error;
+
+        public RecordError(long line, String error) {
+            this.line = line;
+            this.error = error;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ImportReport [imported=" + imported + ", failed=" + failed + "]";
+    }
+}
@@ -0,0 +1,78 @@
+package com.att.tdp.popcorn_palace.dto;
+
+import lombok.Getter;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Snapshot of the occupied seats of a showtime, as a bitmap where seat n is the bit n % 8 of the byte n / 8.
+ * The version identifies the state of the seats the snapshot was taken from, it changes whenever a seat is taken
+ * or freed, so it is used as the ETag of the seat map.
+ * The bitmap can also be encoded as runs of free and taken seats, which is much smaller for sparse showtimes.
+ */
+@Getter
+public class SeatMap {
+    private final String version;
+    private final byte[] bitmap;
+
+    public SeatMap(String version, byte[] bitmap) {
+        this.version = version;
+        this.bitmap = bitmap;
+    }
+
+    public boolean isTaken(int seatNumber) {
+        int index = seatNumber / Byte.SIZE;
+        return index < bitmap.length && (bitmap[index] & (1 << (seatNumber % Byte.SIZE))) != 0;
+    }
+
+    public List<Integer> getSeatNumbers() {
+        List<Integer> seatNumbers = new ArrayList<>();
+        for (int seatNumber = 0; seatNumber < bitmap.length * Byte.SIZE; seatNumber++) {
+            if (isTaken(seatNumber)) {
+                seatNumbers.add(seatNumber);
+            }
+        }
+
+        return seatNumbers;
+    }
+
+    /**
+     * Encodes the seats as the lengths of the alternating runs of free and taken seats, starting with the free
+     * seats from seat 0, each length written as an unsigned LEB128 varint, and the whole encoded in base64.
+     * The last run of free seats is omitted.
+     *
+     * @return the base64 run-length encoding of the seats
+     */
+    public String toRunLengthBase64() {
+        ByteArrayOutputStream runs = new ByteArrayOutputStream();
+        boolean taken = false;
+        int length = 0;
+        for (int seatNumber = 0; seatNumber < bitmap.length * Byte.SIZE; seatNumber++) {
+            if (isTaken(seatNumber) != taken) {
+                writeVarint(runs, length);
+                taken = !taken;
+                length = 0;
+            }
+
+            length++;
+        }
+
+        if (taken) {
+            writeVarint(runs, length);
+        }
+
+        return Base64.getEncoder().encodeToString(runs.toByteArray());
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        out.write(value);
+    }
+}
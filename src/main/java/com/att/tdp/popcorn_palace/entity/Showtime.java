@@ -1,29 +1,42 @@
 package com.att.tdp.popcorn_palace.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Version;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import java.time.OffsetDateTime;
-import java.util.List;
 
 /**
  * Entity class representing a showtime in a cinema management system.
  * The Showtime class contains attributes to define its movie ID, theater, start and end times, and ticket price.
  * It includes validation logic for its fields and overrides the toString method for easy debugging and logging.
  * This class is mapped to a database table using JPA annotations.
+ * Its version is incremented by every update and is sent as the ETag of the showtime instead of in its JSON.
  */
 @Getter
 @Setter
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 public class Showtime {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "showtime_id_seq")
+    @SequenceGenerator(name = "showtime_id_seq", sequenceName = "showtime_id_seq", allocationSize = 50)
     private Long id;
 
+    @Version
+    @JsonIgnore
+    private Long version;
+
     private Long movieId;
     private String theater;
     private OffsetDateTime startTime;
@@ -40,7 +53,7 @@ public class Showtime {
         this.price = price;
     }
 
-    public String validate(List<Showtime> showtimesSameTheater) {
+    public String validate() {
         if (movieId == null) {
             return "Showtime movieId cannot be empty";
         }
@@ -1,28 +1,50 @@
 package com.att.tdp.popcorn_palace.entity;
 
+import com.att.tdp.popcorn_palace.util.Uuids;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
+import org.springframework.data.domain.Persistable;
 
+import java.time.OffsetDateTime;
 import java.util.UUID;
 
 /**
  * Entity class representing a ticket in a cinema booking system.
  * A Ticket associates a specific user with a particular seat and showtime.
  * Each ticket is uniquely identified by a booking ID.
+ * A ticket is either booked, or held until a deadline while the user completes the checkout.
  * The class provides validation logic for its properties.
+ * The booking ID is assigned on creation, so the ticket tracks whether it was already persisted
+ * to let the repository insert new tickets directly instead of merging them.
+ * The booking ID is a time-ordered UUID, and both the booking ID and the user ID are stored in uuid columns.
+ * Seat numbers are bounded by {@value #MAX_SEAT_NUMBER}, so the seat map of a showtime always stays small.
  */
 @Getter
 @Setter
 @Entity
-public class Ticket {
+public class Ticket implements Persistable<UUID> {
+    public static final int MAX_SEAT_NUMBER = 65535;
+
     @Id
-    private String bookingId = UUID.randomUUID().toString();
+    private UUID bookingId = Uuids.timeOrdered();
 
     private Long showtimeId;
     private Integer seatNumber;
+    @Convert(converter = UuidConverter.class)
     private String userId;
 
+    @Enumerated(EnumType.STRING)
+    private TicketStatus status;
+    private OffsetDateTime heldUntil;
+
+    @Transient
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private boolean persisted;
+
     public Ticket() {}
 
     public Ticket(Long showtimeId, Integer seatNumber, String userId) {
@@ -40,13 +62,43 @@ public class Ticket {
             return "Ticket seatNumber cannot be empty";
         }
 
+        if (seatNumber < 0) {
+            return "Ticket seatNumber cannot be negative";
+        }
+
+        if (seatNumber > MAX_SEAT_NUMBER) {
+            return "Ticket seatNumber cannot be greater than " + MAX_SEAT_NUMBER;
+        }
+
         if (userId == null || userId.isEmpty()) {
             return "Ticket userId cannot be empty";
         }
 
+        if (!Uuids.isValid(userId)) {
+            return "Ticket userId must be a UUID";
+        }
+
         return null;
     }
 
+    @JsonIgnore
+    @Override
+    public UUID getId() {
+        return bookingId;
+    }
+
+    @JsonIgnore
+    @Override
+    public boolean isNew() {
+        return !persisted;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markPersisted() {
+        persisted = true;
+    }
+
     @Override
     public String toString() {
         return "Ticket [bookingId=" + bookingId + ", showtime=" + showtimeId + ", seatNumber=" + seatNumber
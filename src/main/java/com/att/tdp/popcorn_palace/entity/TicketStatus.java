@@ -0,0 +1,10 @@
+package com.att.tdp.popcorn_palace.entity;
+
+/**
+ * The states of a ticket. A held ticket reserves its seat until it is confirmed, released or expires,
+ * a booked ticket is final. Tickets stored before holds were introduced have no status and are booked.
+ */
+public enum TicketStatus {
+    HELD,
+    BOOKED
+}
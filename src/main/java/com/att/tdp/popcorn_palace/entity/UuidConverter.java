@@ -0,0 +1,23 @@
+package com.att.tdp.popcorn_palace.entity;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+import java.util.UUID;
+
+/**
+ * Stores a UUID held as a string in a native uuid column, which takes 16 bytes instead of the 37 of its text.
+ * The string must be a valid UUID, which the entities check before they are saved.
+ */
+@Converter
+public class UuidConverter implements AttributeConverter<String, UUID> {
+    @Override
+    public UUID convertToDatabaseColumn(String attribute) {
+        return attribute == null ? null : UUID.fromString(attribute);
+    }
+
+    @Override
+    public String convertToEntityAttribute(UUID dbData) {
+        return dbData == null ? null : dbData.toString();
+    }
+}
@@ -0,0 +1,10 @@
+package com.att.tdp.popcorn_palace.exception;
+
+/**
+ * Exception thrown when a conditional write is rejected because the resource changed since the client read it.
+ */
+public class PreconditionFailedException extends RuntimeException {
+    public PreconditionFailedException(String message) {
+        super(message);
+    }
+}
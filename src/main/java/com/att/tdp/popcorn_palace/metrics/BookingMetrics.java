@@ -0,0 +1,100 @@
+package com.att.tdp.popcorn_palace.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timers of the stages of the booking pipeline and counters of the booking outcomes.
+ * The stages are published as the "booking.stage" timer tagged by stage, and the outcomes
+ * as the "booking.outcome" counter tagged by outcome.
+ * The meters are registered once on startup, so recording a stage is a clock read and a timer update.
+ * When the metrics are disabled the clock is never read and nothing is recorded.
+ */
+@Component
+public class BookingMetrics {
+    /**
+     * The stages of the booking pipeline.
+     */
+    public enum Stage {
+        VALIDATION, SHOWTIME, SEAT, INSERT
+    }
+
+    /**
+     * The outcomes of a booking request.
+     */
+    public enum Outcome {
+        BOOKED, HELD, SEAT_TAKEN, NOT_FOUND, INVALID
+    }
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${popcorn-palace.metrics.booking.enabled:true}")
+    private boolean enabled;
+
+    private final EnumMap<Stage, Timer> stageTimers = new EnumMap<>(Stage.class);
+    private final EnumMap<Outcome, Counter> outcomeCounters = new EnumMap<>(Outcome.class);
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+
+        for (Stage stage : Stage.values()) {
+            stageTimers.put(stage, Timer.builder("booking.stage")
+                    .description("Time spent in each stage of the booking pipeline")
+                    .tag("stage", stage.name().toLowerCase(Locale.ROOT))
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+        }
+
+        for (Outcome outcome : Outcome.values()) {
+            outcomeCounters.put(outcome, Counter.builder("booking.outcome")
+                    .description("Number of booking requests by outcome")
+                    .tag("outcome", outcome.name().toLowerCase(Locale.ROOT))
+                    .register(meterRegistry));
+        }
+    }
+
+    /**
+     * Starts timing a stage.
+     *
+     * @return the start instant to pass to {@link #record}, or 0 when the metrics are disabled
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records the time spent in a stage since the given start instant.
+     *
+     * @param stage the stage that ended
+     * @param start the start instant returned by {@link #start}
+     */
+    public void record(Stage stage, long start) {
+        if (enabled) {
+            stageTimers.get(stage).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Counts the outcome of a booking request.
+     *
+     * @param outcome the outcome of the request
+     */
+    public void count(Outcome outcome) {
+        if (enabled) {
+            outcomeCounters.get(outcome).increment();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.att.tdp.popcorn_palace.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Counts the SQL statements prepared by Hibernate by type, published as the "db.statements" counter tagged by type.
+ * It is registered as the statement inspector of the session factory, so a JDBC batch counts as one statement.
+ * When the metrics are disabled the inspector is not registered at all.
+ */
+@Component
+@ConditionalOnProperty(name = "popcorn-palace.metrics.sql.enabled", havingValue = "true", matchIfMissing = true)
+public class SqlStatementMetrics implements StatementInspector, HibernatePropertiesCustomizer {
+    /**
+     * The types of SQL statements.
+     */
+    public enum StatementType {
+        SELECT, INSERT, UPDATE, DELETE, OTHER
+    }
+
+    private final EnumMap<StatementType, Counter> counters = new EnumMap<>(StatementType.class);
+
+    @Autowired
+    public SqlStatementMetrics(MeterRegistry meterRegistry) {
+        for (StatementType type : StatementType.values()) {
+            counters.put(type, Counter.builder("db.statements")
+                    .description("Number of SQL statements prepared by Hibernate by type")
+                    .tag("type", type.name().toLowerCase(Locale.ROOT))
+                    .register(meterRegistry));
+        }
+    }
+
+    @Override
+    public void customize(Map<String, Object> hibernateProperties) {
+        hibernateProperties.put(AvailableSettings.STATEMENT_INSPECTOR, this);
+    }
+
+    @Override
+    public String inspect(String sql) {
+        counters.get(typeOf(sql)).increment();
+        return sql;
+    }
+
+    /**
+     * Finds the type of a statement from its first keyword, skipping leading whitespace and comments.
+     *
+     * @param sql the SQL statement
+     * @return the type of the statement
+     */
+    static StatementType typeOf(String sql) {
+        int i = 0;
+        int length = sql.length();
+        while (i < length) {
+            if (Character.isWhitespace(sql.charAt(i))) {
+                i++;
+            } else if (sql.startsWith("/*", i)) {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? length : end + 2;
+            } else {
+                break;
+            }
+        }
+
+        if (startsWithKeyword(sql, i, "select")) {
+            return StatementType.SELECT;
+        } else if (startsWithKeyword(sql, i, "insert")) {
+            return StatementType.INSERT;
+        } else if (startsWithKeyword(sql, i, "update")) {
+            return StatementType.UPDATE;
+        } else if (startsWithKeyword(sql, i, "delete")) {
+            return StatementType.DELETE;
+        }
+
+        return StatementType.OTHER;
+    }
+
+    private static boolean startsWithKeyword(String sql, int offset, String keyword) {
+        return sql.regionMatches(true, offset, keyword, 0, keyword.length());
+    }
+}
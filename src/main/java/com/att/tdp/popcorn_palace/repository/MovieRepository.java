@@ -1,10 +1,19 @@
 package com.att.tdp.popcorn_palace.repository;
 
 import com.att.tdp.popcorn_palace.entity.Movie;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
 /**
  * Repository interface for performing custom database operations related to the Movie entity.
  * This interface extends JpaRepository, providing built-in methods for interacting with the Movie database table.
@@ -14,4 +23,24 @@ public interface MovieRepository extends JpaRepository<Movie, Long> {
     @Query("SELECT m FROM Movie m WHERE m.title = :title")
     Movie getMovieByTitle(@Param("title") String title);
 
+    @Query("SELECT m.title FROM Movie m WHERE m.title IN :titles")
+    List<String> getExistingTitles(@Param("titles") Collection<String> titles);
+
+    @Query("SELECT m.id FROM Movie m WHERE m.id IN :ids")
+    List<Long> getExistingIds(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT m FROM Movie m WHERE m.id > :afterId ORDER BY m.id")
+    List<Movie> getMoviesAfter(@Param("afterId") Long afterId, Limit limit);
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT m FROM Movie m ORDER BY m.id")
+    Stream<Movie> streamAll();
+
+    @Modifying
+    @Query("DELETE FROM Movie m WHERE m.id = :id")
+    int deleteMovieById(@Param("id") Long id);
+
 }
@@ -0,0 +1,37 @@
+package com.att.tdp.popcorn_palace.repository;
+
+import com.att.tdp.popcorn_palace.entity.Movie;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+
+/**
+ * Non-blocking repository for the Movie entity, used by the "reactive" profile.
+ * It mirrors the catalog stream of MovieRepository on R2DBC.
+ */
+@Repository
+@Profile("reactive")
+public class ReactiveMovieRepository {
+    @Autowired
+    private DatabaseClient databaseClient;
+
+    /**
+     * Streams all the movies ordered by ID. The rows are emitted as the driver receives them,
+     * with backpressure from the subscriber.
+     *
+     * @return a Flux of all the movies
+     */
+    public Flux<Movie> streamAll() {
+        return databaseClient.sql("SELECT id, title, genre, duration, rating, release_year FROM movie ORDER BY id")
+                .map(row -> {
+                    Movie movie = new Movie(row.get("title", String.class), row.get("genre", String.class),
+                            row.get("duration", Double.class), row.get("rating", Double.class),
+                            row.get("release_year", Integer.class));
+                    movie.setId(row.get("id", Long.class));
+                    return movie;
+                })
+                .all();
+    }
+}
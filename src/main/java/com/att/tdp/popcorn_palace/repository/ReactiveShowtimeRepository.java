@@ -0,0 +1,42 @@
+package com.att.tdp.popcorn_palace.repository;
+
+import com.att.tdp.popcorn_palace.entity.Showtime;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+import java.time.OffsetDateTime;
+
+/**
+ * Non-blocking repository for the Showtime entity, used by the "reactive" profile.
+ * It mirrors the reads of ShowtimeRepository on R2DBC.
+ */
+@Repository
+@Profile("reactive")
+public class ReactiveShowtimeRepository {
+    @Autowired
+    private DatabaseClient databaseClient;
+
+    public Mono<Showtime> findById(Long showtimeId) {
+        return databaseClient.sql("SELECT id, movie_id, theater, start_time, end_time, price, version FROM showtime WHERE id = :id")
+                .bind("id", showtimeId)
+                .map(row -> {
+                    Showtime showtime = new Showtime(row.get("movie_id", Long.class), row.get("theater", String.class),
+                            row.get("start_time", OffsetDateTime.class), row.get("end_time", OffsetDateTime.class),
+                            row.get("price", Double.class));
+                    showtime.setId(row.get("id", Long.class));
+                    showtime.setVersion(row.get("version", Long.class));
+                    return showtime;
+                })
+                .one();
+    }
+
+    public Mono<Boolean> existsById(Long showtimeId) {
+        return databaseClient.sql("SELECT EXISTS (SELECT 1 FROM showtime WHERE id = :id)")
+                .bind("id", showtimeId)
+                .map(row -> row.get(0, Boolean.class))
+                .one();
+    }
+}
@@ -0,0 +1,68 @@
+package com.att.tdp.popcorn_palace.repository;
+
+import com.att.tdp.popcorn_palace.entity.Ticket;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.UUID;
+
+/**
+ * Non-blocking repository for the Ticket entity, used by the "reactive" profile.
+ * It mirrors the queries of TicketRepository that the bookings need, on R2DBC.
+ */
+@Repository
+@Profile("reactive")
+public class ReactiveTicketRepository {
+    // The conditional insert of TicketRepository#insertIfSeatFree.
+    private static final String INSERT_IF_SEAT_FREE = "INSERT INTO ticket (booking_id, showtime_id, seat_number, user_id, status) " +
+            "SELECT :bookingId, s.id, :seatNumber, :userId, :status FROM showtime s WHERE s.id = :showtimeId " +
+            "ON CONFLICT (showtime_id, seat_number) DO NOTHING";
+    // Sends the notification once per inserted row, so it is only sent, and committed, with the ticket.
+    private static final String INSERT_IF_SEAT_FREE_AND_NOTIFY = "WITH inserted AS (" + INSERT_IF_SEAT_FREE +
+            " RETURNING seat_number) SELECT pg_notify(:channel, :payload) FROM inserted";
+
+    @Autowired
+    private DatabaseClient databaseClient;
+
+    /**
+     * Inserts a ticket in a single statement, only if its showtime exists and its seat is free.
+     * A taken seat is skipped by the unique constraint of the seat instead of failing the statement.
+     * When a notification channel is given the same statement sends the notification if the ticket is inserted,
+     * so the notification is committed with the ticket.
+     *
+     * @param ticket the ticket to insert
+     * @param channel the channel of the notification of the taken seat, or null to send none
+     * @param payload the payload of the notification of the taken seat
+     * @return a Mono of 1 if the ticket was inserted, 0 if the showtime does not exist or the seat is taken
+     */
+    public Mono<Long> insertIfSeatFree(Ticket ticket, String channel, String payload) {
+        DatabaseClient.GenericExecuteSpec spec = databaseClient
+                .sql(channel == null ? INSERT_IF_SEAT_FREE : INSERT_IF_SEAT_FREE_AND_NOTIFY)
+                .bind("bookingId", ticket.getBookingId())
+                .bind("showtimeId", ticket.getShowtimeId())
+                .bind("seatNumber", ticket.getSeatNumber())
+                .bind("userId", UUID.fromString(ticket.getUserId()))
+                .bind("status", ticket.getStatus().name());
+        if (channel == null) {
+            return spec.fetch().rowsUpdated();
+        }
+
+        // The void result of pg_notify is not read, only the rows are counted.
+        return spec.bind("channel", channel)
+                .bind("payload", payload)
+                .map(row -> 1)
+                .all()
+                .count();
+    }
+
+    public Flux<Integer> getSeatNumbersByShowtimeId(Long showtimeId) {
+        return databaseClient.sql("SELECT seat_number FROM ticket WHERE showtime_id = :showtimeId")
+                .bind("showtimeId", showtimeId)
+                .map(row -> row.get("seat_number", Integer.class))
+                .all();
+    }
+}
@@ -1,19 +1,78 @@
 package com.att.tdp.popcorn_palace.repository;
 
+import com.att.tdp.popcorn_palace.config.SecondLevelCacheConfig;
 import com.att.tdp.popcorn_palace.entity.Showtime;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
+import java.time.OffsetDateTime;
 import java.util.List;
 
 /**
  * Repository interface for performing custom database operations related to the Showtime entity.
- * This interface extends JpaRepository, providing built-in methods for interacting with the Showtime database table.
+ * This interface extends JpaRepository, providing built-in methods for interacting with the Showtime database table,
+ * and JpaSpecificationExecutor for the filtered queries built from ShowtimeSpecifications.
  */
-public interface ShowtimeRepository extends JpaRepository<Showtime, Long> {
+public interface ShowtimeRepository extends JpaRepository<Showtime, Long>, JpaSpecificationExecutor<Showtime> {
 
+    /**
+     * The result is kept in the query cache when the second-level cache is on, and dropped whenever
+     * a showtime is written.
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = SecondLevelCacheConfig.SHOWTIMES_BY_THEATER_REGION)
+    })
     @Query("SELECT s FROM Showtime s WHERE s.theater = :theater")
     List<Showtime> getShowtimeByTheater(@Param("theater") String theater);
 
+    /**
+     * The showtimes are built from their columns instead of being loaded as managed entities,
+     * so a transaction reading many of them does not dirty-check them on every flush.
+     */
+    @Query("SELECT new Showtime(s.movieId, s.theater, s.startTime, s.endTime, s.price) FROM Showtime s " +
+            "WHERE s.theater = :theater AND s.startTime <= :endTime AND s.endTime >= :startTime")
+    List<Showtime> getOverlapping(@Param("theater") String theater, @Param("startTime") OffsetDateTime startTime,
+                                  @Param("endTime") OffsetDateTime endTime);
+
+    /**
+     * Checks for an overlap with two bounded probes of the (theater, start_time) index instead of a scan
+     * of the history of the theater: a showtime that starts inside the interval, or the latest showtime that
+     * starts before it and has not ended yet. The showtimes of a theater never overlap each other,
+     * so the latest showtime before the interval is the one that ends last among them.
+     */
+    @Query(value = "SELECT EXISTS (SELECT 1 FROM showtime WHERE theater = :theater " +
+            "AND start_time BETWEEN :startTime AND :endTime AND id <> :ignoredId) " +
+            "OR EXISTS (SELECT 1 FROM (SELECT end_time FROM showtime WHERE theater = :theater " +
+            "AND start_time < :startTime AND id <> :ignoredId ORDER BY start_time DESC LIMIT 1) previous " +
+            "WHERE previous.end_time >= :startTime)", nativeQuery = true)
+    boolean existsOverlap(@Param("theater") String theater, @Param("startTime") OffsetDateTime startTime,
+                          @Param("endTime") OffsetDateTime endTime, @Param("ignoredId") Long ignoredId);
+
+    @Query("SELECT s.theater FROM Showtime s WHERE s.id = :showtimeId")
+    String getTheaterById(@Param("showtimeId") Long showtimeId);
+
+    @Query("SELECT s.id, s.theater FROM Showtime s WHERE s.movieId = :movieId")
+    List<Object[]> getIdsAndTheatersByMovieId(@Param("movieId") Long movieId);
+
+    /**
+     * The tickets of the showtime are deleted by the ON DELETE CASCADE of their foreign key.
+     */
+    @Modifying
+    @Query("DELETE FROM Showtime s WHERE s.id = :showtimeId")
+    int deleteShowtimeById(@Param("showtimeId") Long showtimeId);
+
+    /**
+     * The tickets of the showtimes are deleted by the ON DELETE CASCADE of their foreign key.
+     */
+    @Modifying
+    @Query("DELETE FROM Showtime s WHERE s.movieId = :movieId")
+    int deleteShowtimesByMovieId(@Param("movieId") Long movieId);
+
 }
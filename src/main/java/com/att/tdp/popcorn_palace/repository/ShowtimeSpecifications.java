@@ -0,0 +1,46 @@
+package com.att.tdp.popcorn_palace.repository;
+
+import com.att.tdp.popcorn_palace.entity.Showtime;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.OffsetDateTime;
+
+/**
+ * Predicates of the showtime queries. Every filter is a range or equality on the columns of the composite
+ * indexes (theater, start_time) and (movie_id, start_time), and only the filters of a request are added
+ * to its query, so the database scans only the matching range of one of the indexes.
+ */
+public final class ShowtimeSpecifications {
+    private ShowtimeSpecifications() {}
+
+    public static Specification<Showtime> theaterIs(String theater) {
+        return (root, query, builder) -> builder.equal(root.get("theater"), theater);
+    }
+
+    public static Specification<Showtime> movieIdIs(Long movieId) {
+        return (root, query, builder) -> builder.equal(root.get("movieId"), movieId);
+    }
+
+    public static Specification<Showtime> startsFrom(OffsetDateTime from) {
+        return (root, query, builder) -> builder.greaterThanOrEqualTo(root.get("startTime"), from);
+    }
+
+    public static Specification<Showtime> startsBefore(OffsetDateTime to) {
+        return (root, query, builder) -> builder.lessThan(root.get("startTime"), to);
+    }
+
+    /**
+     * Keeps the showtimes that come after the given one in the order of (startTime, id).
+     * The bound on the start time alone is kept as its own predicate so it limits the index range.
+     *
+     * @param startTime the start time of the last showtime of the previous page
+     * @param id the ID of the last showtime of the previous page
+     * @return the keyset predicate of the next page
+     */
+    public static Specification<Showtime> after(OffsetDateTime startTime, Long id) {
+        return (root, query, builder) -> builder.and(
+                builder.greaterThanOrEqualTo(root.get("startTime"), startTime),
+                builder.or(builder.greaterThan(root.get("startTime"), startTime),
+                        builder.greaterThan(root.get("id"), id)));
+    }
+}
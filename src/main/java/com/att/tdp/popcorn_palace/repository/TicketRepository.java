@@ -1,23 +1,90 @@
 package com.att.tdp.popcorn_palace.repository;
 
 import com.att.tdp.popcorn_palace.entity.Ticket;
+import com.att.tdp.popcorn_palace.entity.TicketStatus;
+import jakarta.persistence.QueryHint;
 import jakarta.transaction.Transactional;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
 /**
  * Repository interface for performing custom database operations related to the Ticket entity.
  * This interface extends JpaRepository, providing built-in methods for interacting with the Ticket database table.
  */
-public interface TicketRepository extends JpaRepository<Ticket, Long> {
+public interface TicketRepository extends JpaRepository<Ticket, UUID> {
+
+    @Query("SELECT t.seatNumber FROM Ticket t WHERE t.showtimeId = :showtimeId")
+    List<Integer> getSeatNumbersByShowtimeId(@Param("showtimeId") Long showtimeId);
+
+    /**
+     * Deletes up to the given number of tickets of a showtime, so a showtime with many tickets can be purged
+     * in short transactions.
+     *
+     * @return the number of deleted tickets, less than the limit once all the tickets are deleted
+     */
+    @Modifying
+    @Transactional
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "ticket"))
+    @Query(value = "DELETE FROM ticket WHERE booking_id IN " +
+            "(SELECT booking_id FROM ticket WHERE showtime_id = :showtimeId LIMIT :limit)", nativeQuery = true)
+    int deleteTicketBatchByShowtimeId(@Param("showtimeId") Long showtimeId, @Param("limit") int limit);
+
+    /**
+     * Deletes up to the given number of tickets of the showtimes of a movie.
+     *
+     * @return the number of deleted tickets, less than the limit once all the tickets are deleted
+     */
+    @Modifying
+    @Transactional
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "ticket"))
+    @Query(value = "DELETE FROM ticket WHERE booking_id IN (SELECT booking_id FROM ticket WHERE showtime_id IN " +
+            "(SELECT id FROM showtime WHERE movie_id = :movieId) LIMIT :limit)", nativeQuery = true)
+    int deleteTicketBatchByMovieId(@Param("movieId") Long movieId, @Param("limit") int limit);
 
-    @Query("SELECT t FROM Ticket t WHERE t.showtimeId = :showtimeId AND t.seatNumber = :seatNumber")
-    Ticket getTicketsByShowtimeSeatNumber(@Param("showtimeId") Long showtimeId, @Param("seatNumber") Integer seatNumber);
+    @Query("SELECT t FROM Ticket t WHERE t.status = :status")
+    List<Ticket> getTicketsByStatus(@Param("status") TicketStatus status);
 
     @Modifying
     @Transactional
-    @Query("DELETE FROM Ticket t WHERE t.showtimeId = :showtimeId")
-    void deleteTicketByShowtimeId(@Param("showtimeId") Long showtimeId);
+    @Query("UPDATE Ticket t SET t.status = :booked, t.heldUntil = null " +
+            "WHERE t.bookingId = :bookingId AND t.status = :held AND t.heldUntil > :now")
+    int confirmHold(@Param("bookingId") UUID bookingId, @Param("now") OffsetDateTime now,
+                    @Param("held") TicketStatus held, @Param("booked") TicketStatus booked);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM Ticket t WHERE t.bookingId = :bookingId AND t.status = :held")
+    int deleteHold(@Param("bookingId") UUID bookingId, @Param("held") TicketStatus held);
+
+    /**
+     * Inserts a ticket in a single statement, only if its showtime exists and its seat is free.
+     * A taken seat is skipped by the unique constraint of the seat instead of failing the statement.
+     * The statement is declared to only touch the ticket table, so it does not evict the second-level cache.
+     *
+     * @return 1 if the ticket was inserted, 0 if the showtime does not exist or the seat is taken
+     */
+    @Modifying
+    @Transactional
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "ticket"))
+    @Query(value = "INSERT INTO ticket (booking_id, showtime_id, seat_number, user_id, status, held_until) " +
+            "SELECT :bookingId, s.id, :seatNumber, CAST(:userId AS UUID), :status, CAST(:heldUntil AS TIMESTAMPTZ) " +
+            "FROM showtime s WHERE s.id = :showtimeId " +
+            "ON CONFLICT (showtime_id, seat_number) DO NOTHING", nativeQuery = true)
+    int insertIfSeatFree(@Param("bookingId") UUID bookingId, @Param("showtimeId") Long showtimeId,
+                         @Param("seatNumber") Integer seatNumber, @Param("userId") String userId,
+                         @Param("status") String status, @Param("heldUntil") OffsetDateTime heldUntil);
+
+    @Transactional
+    @Query(value = "DELETE FROM ticket WHERE booking_id IN (:bookingIds) AND status = 'HELD' AND held_until <= :now " +
+            "RETURNING booking_id", nativeQuery = true)
+    List<UUID> deleteExpiredHolds(@Param("bookingIds") Collection<UUID> bookingIds, @Param("now") OffsetDateTime now);
 }
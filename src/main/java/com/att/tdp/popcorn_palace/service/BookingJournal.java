@@ -0,0 +1,451 @@
+package com.att.tdp.popcorn_palace.service;
+
+import com.att.tdp.popcorn_palace.entity.Ticket;
+import com.att.tdp.popcorn_palace.entity.TicketStatus;
+import com.att.tdp.popcorn_palace.util.MappedJournal;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.TransactionSystemException;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Optional write-ahead journal of the booked tickets, enabled with {@code popcorn-palace.booking.journal.enabled}.
+ * A booking is acknowledged once it is durable in a local memory-mapped journal, instead of after its own
+ * database commit. A background thread drains the journal into the ticket table in large batches,
+ * and the journal files are deleted once their tickets are committed.
+ * On startup the tickets left in the journal by a crash are replayed before the server accepts requests.
+ * The inserts skip tickets that already exist, so replaying a ticket that was already drained is harmless.
+ * The journal is local to the server, so this mode is meant for a single instance owning the bookings.
+ * <p>
+ * A journaled ticket was already acknowledged, so a ticket that cannot be inserted is a lost booking:
+ * its seat was taken in the database, its showtime was deleted, or the database rejects it. Lost bookings are
+ * appended to the dead-letter file {@code popcorn-palace.booking.journal.dead-letter-file} and counted by the
+ * "booking.journal.lost" counter tagged by reason, so they can be refunded, and draining goes on with the next tickets.
+ * A batch is only retried as a whole when it failed for a reason that may pass, like a lost connection or a lock;
+ * any other failure is retried ticket by ticket to find the tickets to set aside.
+ */
+@Component
+public class BookingJournal {
+    private static final Logger logger = LoggerFactory.getLogger(BookingJournal.class);
+    private static final String INSERT_TICKET = "INSERT INTO ticket (booking_id, showtime_id, seat_number, user_id, status) " +
+            "SELECT ?, ?, ?, ?, ? WHERE EXISTS (SELECT 1 FROM showtime WHERE id = ?) ON CONFLICT DO NOTHING";
+    private static final String EXISTING_TICKETS = "SELECT booking_id FROM ticket WHERE booking_id = ANY (?)";
+    private static final String EXISTING_SHOWTIMES = "SELECT id FROM showtime WHERE id = ANY (?)";
+    private static final String SEAT_TAKEN = "seat_taken";
+    private static final String SHOWTIME_DELETED = "showtime_deleted";
+    private static final String REJECTED = "rejected";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${popcorn-palace.booking.journal.enabled:false}")
+    private boolean enabled;
+
+    @Value("${popcorn-palace.booking.journal.directory:data/booking-journal}")
+    private Path directory;
+
+    @Value("${popcorn-palace.booking.journal.segment-size:64MB}")
+    private DataSize segmentSize;
+
+    @Value("${popcorn-palace.booking.journal.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${popcorn-palace.booking.journal.dead-letter-file:data/booking-journal-lost.ndjson}")
+    private Path deadLetterFile;
+
+    private final BlockingQueue<JournaledTicket> drainQueue = new LinkedBlockingQueue<>();
+    private final Map<String, JournaledTicket> pendingTickets = new ConcurrentHashMap<>();
+    private MappedJournal journal;
+    private Thread drainer;
+    private volatile boolean running;
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+
+        int replayed = replay(directory);
+        if (replayed > 0) {
+            logger.info("Replayed {} tickets from the booking journal", replayed);
+        }
+
+        journal = new MappedJournal(directory, Math.toIntExact(segmentSize.toBytes()));
+        running = true;
+        drainer = new Thread(this::drainLoop, "booking-journal-drainer");
+        drainer.start();
+    }
+
+    /**
+     * Stops accepting bookings, drains the journaled tickets that are left and closes the journal.
+     * The tickets that cannot be drained stay in the journal and are replayed on the next start.
+     */
+    @PreDestroy
+    public void stop() {
+        if (journal == null) {
+            return;
+        }
+
+        running = false;
+        try {
+            drainer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        journal.close();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Appends a booked ticket to the journal and waits until it is durable.
+     * The ticket is inserted into the ticket table later by the drainer.
+     *
+     * @param ticket the booked ticket
+     * @throws UncheckedIOException if the ticket cannot be written to the journal
+     */
+    public void append(Ticket ticket) {
+        JournaledTicket journaledTicket = new JournaledTicket(ticket.getBookingId().toString(), ticket.getShowtimeId(),
+                ticket.getSeatNumber(), ticket.getUserId());
+        pendingTickets.put(journaledTicket.bookingId, journaledTicket);
+        try {
+            journaledTicket.segmentId = journal.append(encode(journaledTicket));
+        } catch (IOException e) {
+            pendingTickets.remove(journaledTicket.bookingId);
+            throw new UncheckedIOException("Failed to write the booking journal", e);
+        }
+
+        drainQueue.add(journaledTicket);
+    }
+
+    /**
+     * Returns the seats of a showtime that are journaled but not yet committed to the ticket table.
+     *
+     * @param showtimeId the ID of the showtime
+     * @return the seat numbers of the pending tickets of the showtime
+     */
+    public Set<Integer> getPendingSeatNumbers(Long showtimeId) {
+        Set<Integer> seatNumbers = new HashSet<>();
+        for (JournaledTicket ticket : pendingTickets.values()) {
+            if (ticket.showtimeId == showtimeId) {
+                seatNumbers.add(ticket.seatNumber);
+            }
+        }
+
+        return seatNumbers;
+    }
+
+    /**
+     * Inserts all the tickets of the journal files in a directory into the ticket table, then deletes the files.
+     * Tickets that already exist are skipped, and the ones that cannot be inserted are set aside as lost bookings.
+     * The files are kept if the database cannot be reached, so the tickets are replayed again on the next start.
+     *
+     * @param directory the directory of the journal files
+     * @return the number of tickets read from the journal
+     * @throws IOException if the journal files cannot be read or deleted
+     */
+    public int replay(Path directory) throws IOException {
+        List<JournaledTicket> tickets = new ArrayList<>();
+        MappedJournal.read(directory, (segmentId, record) -> tickets.add(decode(record)));
+        for (int from = 0; from < tickets.size(); from += batchSize) {
+            apply(tickets.subList(from, Math.min(tickets.size(), from + batchSize)));
+        }
+
+        MappedJournal.deleteSegments(directory);
+        return tickets.size();
+    }
+
+    private void drainLoop() {
+        List<JournaledTicket> batch = new ArrayList<>(batchSize);
+        while (running || !drainQueue.isEmpty()) {
+            try {
+                JournaledTicket first = drainQueue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+
+                batch.add(first);
+                drainQueue.drainTo(batch, batchSize - 1);
+                drainBatch(batch);
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Inserts a batch of journaled tickets, retrying while the database cannot be reached.
+     * The batch is only marked as applied in the journal once its tickets are committed or set aside.
+     */
+    private void drainBatch(List<JournaledTicket> batch) throws InterruptedException {
+        while (true) {
+            try {
+                apply(batch);
+                break;
+            } catch (RuntimeException e) {
+                if (!running) {
+                    logger.warn("Failed to drain {} journaled tickets, they will be replayed on the next start",
+                            batch.size(), e);
+                    return;
+                }
+
+                logger.warn("Failed to drain {} journaled tickets, retrying", batch.size(), e);
+                TimeUnit.SECONDS.sleep(1);
+            }
+        }
+
+        Map<Long, Integer> appliedBySegment = new HashMap<>();
+        for (JournaledTicket ticket : batch) {
+            pendingTickets.remove(ticket.bookingId);
+            appliedBySegment.merge(ticket.segmentId, 1, Integer::sum);
+        }
+
+        appliedBySegment.forEach(journal::markApplied);
+    }
+
+    /**
+     * Inserts journaled tickets and sets aside the ones that were not inserted.
+     * A failure that may pass on a retry is thrown, so the caller retries the tickets. After any other failure
+     * the tickets are inserted one at a time, and the ones the database still rejects are set aside.
+     *
+     * @throws RuntimeException if the tickets should be retried later
+     */
+    private void apply(List<JournaledTicket> tickets) {
+        List<LostTicket> lostTickets = new ArrayList<>();
+        try {
+            lostTickets.addAll(insert(tickets));
+        } catch (RuntimeException e) {
+            if (isRetryable(e)) {
+                throw e;
+            }
+
+            logger.warn("Failed to insert {} journaled tickets, inserting them one by one", tickets.size(), e);
+            for (JournaledTicket ticket : tickets) {
+                try {
+                    lostTickets.addAll(insert(List.of(ticket)));
+                } catch (RuntimeException ticketError) {
+                    if (isRetryable(ticketError)) {
+                        throw ticketError;
+                    }
+
+                    logger.error("Journaled ticket {} was rejected by the database", ticket.bookingId, ticketError);
+                    lostTickets.add(new LostTicket(ticket, REJECTED));
+                }
+            }
+        }
+
+        setAside(lostTickets);
+    }
+
+    /**
+     * Inserts tickets in one transaction and returns the ones that were not inserted.
+     * A ticket inserts no row when it already exists, which is a ticket drained before a crash and is fine,
+     * or when its seat is taken or its showtime does not exist anymore, which are lost bookings.
+     */
+    private List<LostTicket> insert(List<JournaledTicket> tickets) {
+        return transactionTemplate.execute(status -> {
+            int[][] counts = jdbcTemplate.batchUpdate(INSERT_TICKET, tickets, tickets.size(),
+                    (statement, ticket) -> {
+                        statement.setObject(1, UUID.fromString(ticket.bookingId));
+                        statement.setLong(2, ticket.showtimeId);
+                        statement.setInt(3, ticket.seatNumber);
+                        statement.setObject(4, UUID.fromString(ticket.userId));
+                        statement.setString(5, TicketStatus.BOOKED.name());
+                        statement.setLong(6, ticket.showtimeId);
+                    });
+            List<JournaledTicket> notInserted = new ArrayList<>();
+            int index = 0;
+            for (int[] batchCounts : counts) {
+                for (int count : batchCounts) {
+                    // The driver may not report the count of a statement, the ticket is then checked like a skipped one.
+                    if (count != 1) {
+                        notInserted.add(tickets.get(index));
+                    }
+
+                    index++;
+                }
+            }
+
+            if (notInserted.isEmpty()) {
+                return List.of();
+            }
+
+            Set<UUID> existingTickets = new HashSet<>(jdbcTemplate.query(EXISTING_TICKETS,
+                    statement -> statement.setArray(1, statement.getConnection().createArrayOf("uuid",
+                            notInserted.stream().map(ticket -> UUID.fromString(ticket.bookingId)).toArray())),
+                    (resultSet, row) -> resultSet.getObject(1, UUID.class)));
+            Set<Long> existingShowtimes = new HashSet<>(jdbcTemplate.query(EXISTING_SHOWTIMES,
+                    statement -> statement.setArray(1, statement.getConnection().createArrayOf("bigint",
+                            notInserted.stream().map(ticket -> ticket.showtimeId).distinct().toArray())),
+                    (resultSet, row) -> resultSet.getLong(1)));
+            List<LostTicket> lostTickets = new ArrayList<>();
+            for (JournaledTicket ticket : notInserted) {
+                if (!existingTickets.contains(UUID.fromString(ticket.bookingId))) {
+                    lostTickets.add(new LostTicket(ticket,
+                            existingShowtimes.contains(ticket.showtimeId) ? SEAT_TAKEN : SHOWTIME_DELETED));
+                }
+            }
+
+            return lostTickets;
+        });
+    }
+
+    /**
+     * Appends lost bookings to the dead-letter file and counts them. The file is synced before the tickets are
+     * marked as applied in the journal, so a lost booking is never forgotten.
+     */
+    private void setAside(List<LostTicket> lostTickets) {
+        if (lostTickets.isEmpty()) {
+            return;
+        }
+
+        StringBuilder lines = new StringBuilder();
+        for (LostTicket lostTicket : lostTickets) {
+            JournaledTicket ticket = lostTicket.ticket();
+            Map<String, Object> line = new LinkedHashMap<>();
+            line.put("bookingId", ticket.bookingId);
+            line.put("showtimeId", ticket.showtimeId);
+            line.put("seatNumber", ticket.seatNumber);
+            line.put("userId", ticket.userId);
+            line.put("reason", lostTicket.reason());
+            try {
+                lines.append(objectMapper.writeValueAsString(line)).append('\n');
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Failed to encode a lost booking", e);
+            }
+        }
+
+        try {
+            Path parent = deadLetterFile.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+
+            Files.writeString(deadLetterFile, lines, StandardOpenOption.CREATE, StandardOpenOption.APPEND,
+                    StandardOpenOption.SYNC);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write the lost bookings to " + deadLetterFile, e);
+        }
+
+        for (LostTicket lostTicket : lostTickets) {
+            logger.error("Lost journaled booking {} of showtime {} seat {}: {}", lostTicket.ticket().bookingId,
+                    lostTicket.ticket().showtimeId, lostTicket.ticket().seatNumber, lostTicket.reason());
+            meterRegistry.counter("booking.journal.lost", "reason", lostTicket.reason()).increment();
+        }
+    }
+
+    /**
+     * Tells if a failure may pass when the same statements are retried: the database could not be reached,
+     * or a lock, a deadlock or a serialization conflict aborted the transaction.
+     */
+    private static boolean isRetryable(RuntimeException e) {
+        return e instanceof TransientDataAccessException || e instanceof RecoverableDataAccessException
+                || e instanceof DataAccessResourceFailureException || e instanceof CannotCreateTransactionException
+                || e instanceof TransactionSystemException;
+    }
+
+    /**
+     * Encodes a booked ticket as a journal record.
+     *
+     * @param ticket the booked ticket
+     * @return the content of the journal record
+     */
+    public static byte[] encode(Ticket ticket) {
+        return encode(new JournaledTicket(ticket.getBookingId().toString(), ticket.getShowtimeId(), ticket.getSeatNumber(),
+                ticket.getUserId()));
+    }
+
+    private static byte[] encode(JournaledTicket ticket) {
+        byte[] bookingId = ticket.bookingId.getBytes(StandardCharsets.UTF_8);
+        byte[] userId = ticket.userId.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(2 * Integer.BYTES + bookingId.length + Long.BYTES + Integer.BYTES
+                + userId.length);
+        buffer.putInt(bookingId.length).put(bookingId);
+        buffer.putLong(ticket.showtimeId);
+        buffer.putInt(ticket.seatNumber);
+        buffer.putInt(userId.length).put(userId);
+        return buffer.array();
+    }
+
+    private static JournaledTicket decode(ByteBuffer record) {
+        byte[] bookingId = new byte[record.getInt()];
+        record.get(bookingId);
+        long showtimeId = record.getLong();
+        int seatNumber = record.getInt();
+        byte[] userId = new byte[record.getInt()];
+        record.get(userId);
+        return new JournaledTicket(new String(bookingId, StandardCharsets.UTF_8), showtimeId, seatNumber,
+                new String(userId, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * A journaled ticket that was not inserted, with the reason.
+     */
+    private record LostTicket(JournaledTicket ticket, String reason) {}
+
+    /**
+     * A booked ticket written to the journal, with the segment it was written to.
+     */
+    private static final class JournaledTicket {
+        private final String bookingId;
+        private final long showtimeId;
+        private final int seatNumber;
+        private final String userId;
+        private long segmentId;
+
+        private JournaledTicket(String bookingId, long showtimeId, int seatNumber, String userId) {
+            this.bookingId = bookingId;
+            this.showtimeId = showtimeId;
+            this.seatNumber = seatNumber;
+            this.userId = userId;
+        }
+    }
+}
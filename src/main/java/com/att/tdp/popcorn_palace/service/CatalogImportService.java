@@ -0,0 +1,311 @@
+package com.att.tdp.popcorn_palace.service;
+
+import com.att.tdp.popcorn_palace.dto.ImportReport;
+import com.att.tdp.popcorn_palace.entity.Movie;
+import com.att.tdp.popcorn_palace.entity.Showtime;
+import com.att.tdp.popcorn_palace.repository.MovieRepository;
+import com.att.tdp.popcorn_palace.repository.ShowtimeRepository;
+import com.att.tdp.popcorn_palace.util.ImportRecordReader;
+import com.att.tdp.popcorn_palace.util.ImportRecordReader.ImportRecord;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * A service class responsible for importing movies and showtimes in bulk from NDJSON or CSV files.
+ * The file is read incrementally and its records are imported in chunks: the records of a chunk are validated
+ * with the validate() methods of the entities and with a single query for the conditions that need the database,
+ * then the valid ones are inserted together. The IDs are taken from pooled sequences, so Hibernate sends
+ * the inserts of a chunk in JDBC batches.
+ * An invalid record is reported with its line in the returned report and the import goes on with the next one.
+ */
+@Service
+public class CatalogImportService {
+    public static final String TEXT_CSV_VALUE = "text/csv";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MovieRepository movieRepository;
+
+    @Autowired
+    private ShowtimeRepository showtimeRepository;
+
+    @Autowired
+    private MovieTitleCache movieTitleCache;
+
+    @Autowired
+    private TheaterLocks theaterLocks;
+
+    @Autowired
+    private TheaterScheduleIndex theaterScheduleIndex;
+
+    @Autowired
+    private CatalogSnapshot catalogSnapshot;
+
+    @Autowired
+    private ChangeNotifier changeNotifier;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${popcorn-palace.import.batch-size:500}")
+    private int batchSize;
+
+    /**
+     * Imports the movies of a file. A movie is rejected if it fails validation, if it has an ID,
+     * or if its title is already used by an existing movie or an earlier record of the file.
+     *
+     * @param input the content of the file
+     * @param contentType the type of the file, application/x-ndjson or text/csv
+     * @return the report of the import
+     * @throws IOException if reading the file fails
+     */
+    public ImportReport importMovies(InputStream input, MediaType contentType) throws IOException {
+        ImportReport report = new ImportReport();
+        Set<String> titles = new HashSet<>();
+        forEachChunk(input, contentType, chunk -> importMovieChunk(chunk, titles, report));
+        return report;
+    }
+
+    /**
+     * Imports the showtimes of a file. A showtime is rejected if it fails validation, if it has an ID,
+     * if its movie does not exist, or if it overlaps a showtime of its theater, existing or imported
+     * by an earlier record of the file.
+     * The showtimes of a chunk are checked and inserted under the locks of their theaters, like ShowtimeService does,
+     * in a single transaction.
+     *
+     * @param input the content of the file
+     * @param contentType the type of the file, application/x-ndjson or text/csv
+     * @return the report of the import
+     * @throws IOException if reading the file fails
+     */
+    public ImportReport importShowtimes(InputStream input, MediaType contentType) throws IOException {
+        ImportReport report = new ImportReport();
+        forEachChunk(input, contentType, chunk -> importShowtimeChunk(chunk, report));
+        return report;
+    }
+
+    private void forEachChunk(InputStream input, MediaType contentType, Consumer<List<ImportRecord>> importer)
+            throws IOException {
+        Charset charset = contentType.getCharset() == null ? StandardCharsets.UTF_8 : contentType.getCharset();
+        InputStreamReader inputReader = new InputStreamReader(input, charset);
+        try (ImportRecordReader reader = contentType.isCompatibleWith(MediaType.APPLICATION_NDJSON)
+                ? ImportRecordReader.ndjson(inputReader, objectMapper)
+                : ImportRecordReader.csv(inputReader, objectMapper)) {
+            List<ImportRecord> chunk = new ArrayList<>(batchSize);
+            for (ImportRecord record = reader.next(); record != null; record = reader.next()) {
+                chunk.add(record);
+                if (chunk.size() == batchSize) {
+                    importChunk(chunk, importer);
+                }
+            }
+
+            if (!chunk.isEmpty()) {
+                importChunk(chunk, importer);
+            }
+        }
+    }
+
+    /**
+     * Imports a chunk, then detaches its entities from the persistence context, which spans the whole request,
+     * so the flushes of the next chunks do not dirty-check them again.
+     */
+    private void importChunk(List<ImportRecord> chunk, Consumer<List<ImportRecord>> importer) {
+        importer.accept(chunk);
+        chunk.clear();
+        entityManager.clear();
+    }
+
+    private void importMovieChunk(List<ImportRecord> chunk, Set<String> titles, ImportReport report) {
+        String[] errors = new String[chunk.size()];
+        Map<Integer, Movie> movies = new LinkedHashMap<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            Movie movie = convert(chunk.get(i), Movie.class, errors, i);
+            if (movie == null) {
+                continue;
+            }
+
+            String validation = movie.getId() != null ? "Can't assign the id of a new entity" : movie.validate();
+            if (validation == null && !titles.add(movie.getTitle())) {
+                validation = "Movie already exists with title - " + movie.getTitle();
+            }
+
+            if (validation != null) {
+                errors[i] = validation;
+            } else {
+                movies.put(i, movie);
+            }
+        }
+
+        if (!movies.isEmpty()) {
+            Set<String> existingTitles = new HashSet<>(movieRepository.getExistingTitles(
+                    movies.values().stream().map(Movie::getTitle).toList()));
+            movies.entrySet().removeIf(entry -> {
+                if (existingTitles.contains(entry.getValue().getTitle())) {
+                    errors[entry.getKey()] = "Movie already exists with title - " + entry.getValue().getTitle();
+                    return true;
+                }
+
+                return false;
+            });
+        }
+
+        int imported = 0;
+        if (!movies.isEmpty()) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> movieRepository.saveAll(movies.values())
+                        .forEach(movie -> changeNotifier.movieSaved(movie.getId(), movie.getTitle())));
+                imported = movies.size();
+            } catch (DataIntegrityViolationException e) {
+                // A movie of the chunk was created concurrently, the movies are saved one by one to find it.
+                for (Map.Entry<Integer, Movie> entry : movies.entrySet()) {
+                    Movie movie = entry.getValue();
+                    movie.setId(null);
+                    movie.setVersion(null);
+                    try {
+                        transactionTemplate.executeWithoutResult(status -> {
+                            movieRepository.save(movie);
+                            changeNotifier.movieSaved(movie.getId(), movie.getTitle());
+                        });
+                        imported++;
+                    } catch (DataIntegrityViolationException duplicate) {
+                        errors[entry.getKey()] = "Movie already exists with title - " + movie.getTitle();
+                    }
+                }
+            }
+
+            movies.values().forEach(movie -> movieTitleCache.invalidate(movie.getTitle()));
+            List<Movie> saved = movies.entrySet().stream()
+                    .filter(entry -> errors[entry.getKey()] == null).map(Map.Entry::getValue).toList();
+            catalogSnapshot.saveMovies(saved);
+        }
+
+        report(chunk, errors, imported, report);
+    }
+
+    private void importShowtimeChunk(List<ImportRecord> chunk, ImportReport report) {
+        String[] errors = new String[chunk.size()];
+        Map<Integer, Showtime> showtimes = new LinkedHashMap<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            Showtime showtime = convert(chunk.get(i), Showtime.class, errors, i);
+            if (showtime == null) {
+                continue;
+            }
+
+            String validation = showtime.getId() != null ? "Can't assign the id of a new entity" : showtime.validate();
+            if (validation != null) {
+                errors[i] = validation;
+            } else {
+                showtimes.put(i, showtime);
+            }
+        }
+
+        if (!showtimes.isEmpty()) {
+            Set<Long> movieIds = new HashSet<>(movieRepository.getExistingIds(
+                    showtimes.values().stream().map(Showtime::getMovieId).distinct().toList()));
+            showtimes.entrySet().removeIf(entry -> {
+                if (!movieIds.contains(entry.getValue().getMovieId())) {
+                    errors[entry.getKey()] = "Movie not found with id - " + entry.getValue().getMovieId();
+                    return true;
+                }
+
+                return false;
+            });
+        }
+
+        Map<String, Map<Integer, Showtime>> theaters = new LinkedHashMap<>();
+        showtimes.forEach((i, showtime) ->
+                theaters.computeIfAbsent(showtime.getTheater(), theater -> new LinkedHashMap<>()).put(i, showtime));
+        int imported = theaters.isEmpty() ? 0 : theaterLocks.withLocks(theaters.keySet(), () -> {
+            List<Showtime> accepted = new ArrayList<>();
+            theaters.forEach((theater, theaterShowtimes) ->
+                    accepted.addAll(acceptTheaterShowtimes(theater, theaterShowtimes, errors)));
+            List<Showtime> saved = showtimeRepository.saveAll(accepted);
+            saved.forEach(theaterScheduleIndex::add);
+            catalogSnapshot.saveShowtimes(saved);
+            saved.forEach(showtime -> changeNotifier.showtimeSaved(showtime.getId(), showtime.getTheater()));
+            return accepted.size();
+        });
+
+        report(chunk, errors, imported, report);
+    }
+
+    /**
+     * Selects the showtimes of a theater that do not overlap, while the lock of the theater is held.
+     * The showtimes of the theater in the time span of the new ones are read with one query on the index
+     * of the theater and start time, and each new showtime is checked against them and the ones accepted before it.
+     *
+     * @param theater the name of the theater
+     * @param showtimes the valid showtimes of the theater, by their index in the chunk
+     * @param errors the errors of the records of the chunk, where the overlapping showtimes are reported
+     * @return the showtimes to insert
+     */
+    private List<Showtime> acceptTheaterShowtimes(String theater, Map<Integer, Showtime> showtimes, String[] errors) {
+        OffsetDateTime start = showtimes.values().stream().map(Showtime::getStartTime).min(OffsetDateTime::compareTo).get();
+        OffsetDateTime end = showtimes.values().stream().map(Showtime::getEndTime).max(OffsetDateTime::compareTo).get();
+        List<Showtime> scheduled = new ArrayList<>(showtimeRepository.getOverlapping(theater, start, end));
+        List<Showtime> accepted = new ArrayList<>();
+        for (Map.Entry<Integer, Showtime> entry : showtimes.entrySet()) {
+            Showtime showtime = entry.getValue();
+            boolean overlaps = scheduled.stream().anyMatch(other ->
+                    !showtime.getStartTime().isAfter(other.getEndTime()) && !showtime.getEndTime().isBefore(other.getStartTime()));
+            if (overlaps) {
+                errors[entry.getKey()] = ShowtimeService.OVERLAP_ERROR;
+            } else {
+                scheduled.add(showtime);
+                accepted.add(showtime);
+            }
+        }
+
+        return accepted;
+    }
+
+    private <T> T convert(ImportRecord record, Class<T> type, String[] errors, int i) {
+        if (record.error() != null) {
+            errors[i] = record.error();
+            return null;
+        }
+
+        try {
+            return objectMapper.treeToValue(record.content(), type);
+        } catch (JsonProcessingException e) {
+            errors[i] = "Invalid record - " + e.getOriginalMessage();
+            return null;
+        }
+    }
+
+    private static void report(List<ImportRecord> chunk, String[] errors, int imported, ImportReport report) {
+        report.addImported(imported);
+        for (int i = 0; i < chunk.size(); i++) {
+            if (errors[i] != null) {
+                report.addError(chunk.get(i).line(), errors[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.att.tdp.popcorn_palace.service;
+
+import com.att.tdp.popcorn_palace.repository.MovieRepository;
+import com.att.tdp.popcorn_palace.repository.ShowtimeRepository;
+import com.att.tdp.popcorn_palace.repository.TicketRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.IntSupplier;
+
+/**
+ * Deletes movies and showtimes with set-based statements, without loading them.
+ * A showtime is deleted with a single statement and its tickets are deleted by the ON DELETE CASCADE of their
+ * foreign key, and a movie is deleted with all its showtimes in one transaction of two statements.
+ * The deleted showtimes are dropped from the seat map, the theater schedule index and the catalog snapshot
+ * once the transaction is committed, and reported to the other instances of the server.
+ * <p>
+ * The purges delete the same data in the background: the tickets are deleted in batches of
+ * {@code popcorn-palace.purge.batch-size}, each in its own short transaction, and the showtimes and the movie
+ * are deleted last. So deleting a showtime with millions of tickets never holds the locks of all its tickets at once,
+ * and a ticket booked during the purge is still deleted by the final cascade.
+ * The purges run one at a time on a single background thread, and a failed purge is logged.
+ */
+@Component
+public class CatalogPurger {
+    private static final Logger logger = LoggerFactory.getLogger(CatalogPurger.class);
+
+    @Autowired
+    private MovieRepository movieRepository;
+
+    @Autowired
+    private ShowtimeRepository showtimeRepository;
+
+    @Autowired
+    private TicketRepository ticketRepository;
+
+    @Autowired
+    private SeatOccupancyMap seatOccupancyMap;
+
+    @Autowired
+    private TheaterScheduleIndex theaterScheduleIndex;
+
+    @Autowired
+    private CatalogSnapshot catalogSnapshot;
+
+    @Autowired
+    private ChangeNotifier changeNotifier;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${popcorn-palace.purge.batch-size:5000}")
+    private int batchSize;
+
+    private ExecutorService purgeExecutor;
+
+    @PostConstruct
+    public void start() {
+        purgeExecutor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "catalog-purge"));
+    }
+
+    @PreDestroy
+    public void stop() {
+        purgeExecutor.shutdownNow();
+    }
+
+    /**
+     * Deletes a showtime and its tickets.
+     *
+     * @param showtimeId the ID of the showtime
+     * @return true if the showtime was deleted, false if it does not exist
+     */
+    public boolean deleteShowtime(Long showtimeId) {
+        String theater = transactionTemplate.execute(status -> {
+            String showtimeTheater = showtimeRepository.getTheaterById(showtimeId);
+            if (showtimeTheater != null) {
+                showtimeRepository.deleteShowtimeById(showtimeId);
+                changeNotifier.showtimeDeleted(showtimeId, showtimeTheater);
+            }
+
+            return showtimeTheater;
+        });
+        if (theater == null) {
+            return false;
+        }
+
+        seatOccupancyMap.evict(showtimeId);
+        theaterScheduleIndex.remove(theater, showtimeId);
+        catalogSnapshot.removeShowtime(showtimeId);
+        return true;
+    }
+
+    /**
+     * Deletes a movie with its showtimes and their tickets.
+     *
+     * @param movieId the ID of the movie
+     * @return true if the movie was deleted, false if it does not exist
+     */
+    public boolean deleteMovie(Long movieId) {
+        List<Object[]> showtimes = transactionTemplate.execute(status -> {
+            List<Object[]> movieShowtimes = showtimeRepository.getIdsAndTheatersByMovieId(movieId);
+            showtimeRepository.deleteShowtimesByMovieId(movieId);
+            if (movieRepository.deleteMovieById(movieId) == 0) {
+                return null;
+            }
+
+            for (Object[] showtime : movieShowtimes) {
+                changeNotifier.showtimeDeleted((Long) showtime[0], (String) showtime[1]);
+            }
+
+            changeNotifier.movieDeleted(movieId);
+            return movieShowtimes;
+        });
+        if (showtimes == null) {
+            return false;
+        }
+
+        List<Long> showtimeIds = new ArrayList<>(showtimes.size());
+        for (Object[] showtime : showtimes) {
+            seatOccupancyMap.evict((Long) showtime[0]);
+            theaterScheduleIndex.remove((String) showtime[1], (Long) showtime[0]);
+            showtimeIds.add((Long) showtime[0]);
+        }
+
+        catalogSnapshot.removeMovie(movieId, showtimeIds);
+        return true;
+    }
+
+    /**
+     * Deletes a showtime and its tickets in the background.
+     *
+     * @param showtimeId the ID of the showtime
+     */
+    public void purgeShowtime(Long showtimeId) {
+        purgeExecutor.execute(() -> purge("showtime " + showtimeId,
+                () -> ticketRepository.deleteTicketBatchByShowtimeId(showtimeId, batchSize),
+                () -> deleteShowtime(showtimeId)));
+    }
+
+    /**
+     * Deletes a movie with its showtimes and their tickets in the background.
+     *
+     * @param movieId the ID of the movie
+     * @param onDeleted the action to run once the movie is deleted
+     */
+    public void purgeMovie(Long movieId, Runnable onDeleted) {
+        purgeExecutor.execute(() -> purge("movie " + movieId,
+                () -> ticketRepository.deleteTicketBatchByMovieId(movieId, batchSize),
+                () -> {
+                    if (deleteMovie(movieId)) {
+                        onDeleted.run();
+                    }
+                }));
+    }
+
+    private void purge(String target, IntSupplier ticketBatch, Runnable delete) {
+        try {
+            long tickets = 0;
+            int deleted;
+            do {
+                deleted = ticketBatch.getAsInt();
+                tickets += deleted;
+            } while (deleted == batchSize);
+
+            delete.run();
+            logger.info("Purged {} with {} tickets", target, tickets);
+        } catch (RuntimeException e) {
+            logger.warn("Failed to purge {}", target, e);
+        }
+    }
+}
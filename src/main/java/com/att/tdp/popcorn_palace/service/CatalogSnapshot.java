@@ -0,0 +1,468 @@
+package com.att.tdp.popcorn_palace.service;
+
+import com.att.tdp.popcorn_palace.entity.Movie;
+import com.att.tdp.popcorn_palace.entity.Showtime;
+import com.att.tdp.popcorn_palace.repository.MovieRepository;
+import com.att.tdp.popcorn_palace.repository.ShowtimeRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * Immutable in-memory copy of the movies and showtimes, so the catalog reads are served without a query or a lock.
+ * The current version of the catalog is published through an atomic reference and readers only dereference it.
+ * Writers build the next version from the current one once their transaction is committed, copying the maps
+ * and the sorted showtimes of the changed theaters only, and publish it one at a time under a lock.
+ * The catalog is loaded from the primary database the first time it is read.
+ * <p>
+ * It is turned on by {@code popcorn-palace.catalog.snapshot.enabled}. The writes of the other instances of the server
+ * are reloaded by {@link #refresh} when {@link ChangeNotifier} receives them.
+ */
+@Component
+public class CatalogSnapshot {
+    private static final Comparator<Showtime> START_TIME_ORDER = Comparator
+            .comparing(Showtime::getStartTime, OffsetDateTime.timeLineOrder())
+            .thenComparing(Showtime::getId);
+
+    @Autowired
+    private MovieRepository movieRepository;
+
+    @Autowired
+    private ShowtimeRepository showtimeRepository;
+
+    @Value("${popcorn-palace.catalog.snapshot.enabled:false}")
+    private boolean enabled;
+
+    private final AtomicReference<Catalog> catalog = new AtomicReference<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    /**
+     * Tells if the catalog reads are served by the snapshot.
+     *
+     * @return true if the snapshot is enabled, false otherwise
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the current version of the catalog, loading it on first access.
+     *
+     * @return the current catalog
+     */
+    public Catalog get() {
+        Catalog current = catalog.get();
+        return current != null ? current : load();
+    }
+
+    /**
+     * Publishes saved movies once the current transaction is committed, replacing their previous versions.
+     * The movies are copied after the commit, once the flush has set their new versions.
+     *
+     * @param movies the saved movies
+     */
+    public void saveMovies(Collection<Movie> movies) {
+        publishAfterCommit(current ->
+                current.with(movies.stream().map(CatalogSnapshot::copyOf).toList(), List.of(), List.of(), List.of()));
+    }
+
+    /**
+     * Publishes saved showtimes once the current transaction is committed, replacing their previous versions.
+     * The showtimes are copied after the commit, once the flush has set their new versions.
+     *
+     * @param showtimes the saved showtimes
+     */
+    public void saveShowtimes(Collection<Showtime> showtimes) {
+        publishAfterCommit(current ->
+                current.with(List.of(), List.of(), showtimes.stream().map(CatalogSnapshot::copyOf).toList(), List.of()));
+    }
+
+    /**
+     * Removes a deleted movie and its deleted showtimes once the current transaction is committed.
+     *
+     * @param movieId the ID of the deleted movie
+     * @param showtimeIds the IDs of the deleted showtimes of the movie
+     */
+    public void removeMovie(Long movieId, Collection<Long> showtimeIds) {
+        List<Long> removedShowtimes = List.copyOf(showtimeIds);
+        publishAfterCommit(current -> current.with(List.of(), List.of(movieId), List.of(), removedShowtimes));
+    }
+
+    /**
+     * Removes a deleted showtime once the current transaction is committed.
+     *
+     * @param showtimeId the ID of the deleted showtime
+     */
+    public void removeShowtime(Long showtimeId) {
+        publishAfterCommit(current -> current.with(List.of(), List.of(), List.of(), List.of(showtimeId)));
+    }
+
+    /**
+     * Reloads movies and showtimes written by another instance of the server from the primary database,
+     * and drops the ones that no longer exist. The rows are read under the write lock, like a load,
+     * so a write of this instance committed in the meantime is either read or published on top of them.
+     * A catalog that was not loaded yet is left alone.
+     *
+     * @param movieIds the IDs of the changed movies
+     * @param showtimeIds the IDs of the changed showtimes
+     */
+    public void refresh(Collection<Long> movieIds, Collection<Long> showtimeIds) {
+        writeLock.lock();
+        try {
+            Catalog current = catalog.get();
+            if (current != null) {
+                List<Movie> movies = movieRepository.findAllById(movieIds).stream().map(CatalogSnapshot::copyOf).toList();
+                List<Showtime> showtimes = showtimeRepository.findAllById(showtimeIds).stream()
+                        .map(CatalogSnapshot::copyOf).toList();
+                Set<Long> removedMovieIds = new HashSet<>(movieIds);
+                movies.forEach(movie -> removedMovieIds.remove(movie.getId()));
+                Set<Long> removedShowtimeIds = new HashSet<>(showtimeIds);
+                showtimes.forEach(showtime -> removedShowtimeIds.remove(showtime.getId()));
+                catalog.set(current.with(movies, List.copyOf(removedMovieIds), showtimes, List.copyOf(removedShowtimeIds)));
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Drops the catalog, the next read reloads it from the database.
+     */
+    public void evictAll() {
+        writeLock.lock();
+        try {
+            catalog.set(null);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Loads the catalog under the write lock, so a write committed during the load is either read by it
+     * or published on top of it once the lock is released.
+     */
+    private Catalog load() {
+        writeLock.lock();
+        try {
+            Catalog current = catalog.get();
+            if (current == null) {
+                current = Catalog.EMPTY.with(movieRepository.findAll().stream().map(CatalogSnapshot::copyOf).toList(),
+                        List.of(), showtimeRepository.findAll().stream().map(CatalogSnapshot::copyOf).toList(), List.of());
+                catalog.set(current);
+            }
+
+            return current;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Publishes the next version of the catalog after the commit of the current transaction, or right away
+     * outside of a transaction. A catalog that was not loaded yet is left alone, its load will read the write.
+     */
+    private void publishAfterCommit(UnaryOperator<Catalog> change) {
+        Runnable publish = () -> {
+            writeLock.lock();
+            try {
+                Catalog current = catalog.get();
+                if (current != null) {
+                    catalog.set(change.apply(current));
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        };
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publish.run();
+                }
+            });
+        } else {
+            publish.run();
+        }
+    }
+
+    /**
+     * Copies a movie, so the catalog never shares an instance with a persistence context that may change it.
+     */
+    private static Movie copyOf(Movie movie) {
+        Movie copy = new Movie(movie.getTitle(), movie.getGenre(), movie.getDuration(), movie.getRating(),
+                movie.getReleaseYear());
+        copy.setId(movie.getId());
+        copy.setVersion(movie.getVersion());
+        return copy;
+    }
+
+    /**
+     * Copies a showtime, with its times in UTC like the ones read from the database.
+     */
+    private static Showtime copyOf(Showtime showtime) {
+        Showtime copy = new Showtime(showtime.getMovieId(), showtime.getTheater(),
+                showtime.getStartTime().withOffsetSameInstant(ZoneOffset.UTC),
+                showtime.getEndTime().withOffsetSameInstant(ZoneOffset.UTC), showtime.getPrice());
+        copy.setId(showtime.getId());
+        copy.setVersion(showtime.getVersion());
+        return copy;
+    }
+
+    /**
+     * A version of the catalog: the movies by ID and by title, and the showtimes by ID and by theater.
+     * The showtimes of a theater are sorted by start time and ID, the order of the showtime pages, and a page
+     * of all the theaters merges them, so a write only sorts the showtimes of the theaters it changed.
+     * Nothing in it is ever modified once it is published, and the movies and showtimes it returns
+     * must not be modified either.
+     */
+    public static final class Catalog {
+        private static final Catalog EMPTY = new Catalog(new TreeMap<>(), new HashMap<>(), new HashMap<>(),
+                new HashMap<>());
+
+        private final NavigableMap<Long, Movie> moviesById;
+        private final Map<String, Movie> moviesByTitle;
+        private final Map<Long, Showtime> showtimesById;
+        private final Map<String, List<Showtime>> showtimesByTheater;
+
+        private Catalog(NavigableMap<Long, Movie> moviesById, Map<String, Movie> moviesByTitle,
+                        Map<Long, Showtime> showtimesById, Map<String, List<Showtime>> showtimesByTheater) {
+            this.moviesById = moviesById;
+            this.moviesByTitle = moviesByTitle;
+            this.showtimesById = showtimesById;
+            this.showtimesByTheater = showtimesByTheater;
+        }
+
+        public Movie getMovie(Long id) {
+            return moviesById.get(id);
+        }
+
+        public Movie getMovieByTitle(String title) {
+            return moviesByTitle.get(title);
+        }
+
+        /**
+         * Returns all the movies in ID order.
+         *
+         * @return the movies
+         */
+        public Collection<Movie> getMovies() {
+            return Collections.unmodifiableCollection(moviesById.values());
+        }
+
+        /**
+         * Returns a page of movies in ID order, starting after the given ID.
+         *
+         * @param afterId the ID after which the page starts
+         * @param limit the maximum number of movies in the page
+         * @return the movies of the page
+         */
+        public List<Movie> getMoviesAfter(long afterId, int limit) {
+            return moviesById.tailMap(afterId, false).values().stream().limit(limit).toList();
+        }
+
+        public Showtime getShowtime(Long id) {
+            return showtimesById.get(id);
+        }
+
+        public List<Showtime> getShowtimesOfTheater(String theater) {
+            return showtimesByTheater.getOrDefault(theater, List.of());
+        }
+
+        /**
+         * Returns a page of showtimes matching the given filters, ordered by start time and ID,
+         * with the same filters as the query of ShowtimeService. The start of the page is found with a binary search
+         * in the sorted showtimes of the theater, or of each theater, whose showtimes are then merged in order.
+         *
+         * @param theater the theater of the showtimes, or null for all the theaters
+         * @param movieId the ID of the movie of the showtimes, or null for all the movies
+         * @param from the earliest start time of the showtimes, inclusive, or null
+         * @param to the latest start time of the showtimes, exclusive, or null
+         * @param afterStartTime the start time of the last showtime of the previous page, null for the first page
+         * @param afterId the ID of the last showtime of the previous page, null for the first page
+         * @param limit the maximum number of showtimes in the page
+         * @return the showtimes of the page
+         */
+        public List<Showtime> getShowtimes(String theater, Long movieId, OffsetDateTime from, OffsetDateTime to,
+                                           OffsetDateTime afterStartTime, Long afterId, int limit) {
+            Collection<List<Showtime>> theaters = theater != null
+                    ? List.of(getShowtimesOfTheater(theater))
+                    : showtimesByTheater.values();
+            Showtime last = null;
+            if (afterId != null) {
+                last = new Showtime(null, null, afterStartTime, null, null);
+                last.setId(afterId);
+            }
+
+            PriorityQueue<Cursor> cursors = new PriorityQueue<>(Math.max(1, theaters.size()),
+                    Comparator.comparing(Cursor::current, START_TIME_ORDER));
+            for (List<Showtime> sorted : theaters) {
+                int start = 0;
+                if (from != null) {
+                    start = firstIndexNotMatching(sorted, showtime -> showtime.getStartTime().isBefore(from));
+                }
+
+                if (last != null) {
+                    Showtime previous = last;
+                    start = Math.max(start,
+                            firstIndexNotMatching(sorted, showtime -> START_TIME_ORDER.compare(showtime, previous) <= 0));
+                }
+
+                if (start < sorted.size()) {
+                    cursors.add(new Cursor(sorted, start));
+                }
+            }
+
+            List<Showtime> page = new ArrayList<>();
+            while (!cursors.isEmpty() && page.size() < limit) {
+                Cursor cursor = cursors.poll();
+                Showtime showtime = cursor.current();
+                if (to != null && !showtime.getStartTime().isBefore(to)) {
+                    break;
+                }
+
+                if (movieId == null || movieId.equals(showtime.getMovieId())) {
+                    page.add(showtime);
+                }
+
+                if (cursor.index() + 1 < cursor.showtimes().size()) {
+                    cursors.add(new Cursor(cursor.showtimes(), cursor.index() + 1));
+                }
+            }
+
+            return page;
+        }
+
+        /**
+         * Builds the next version of the catalog with the given changes.
+         * The saved movies and showtimes replace the ones with the same ID, and the removed ones are dropped.
+         */
+        private Catalog with(List<Movie> savedMovies, List<Long> removedMovieIds,
+                             List<Showtime> savedShowtimes, List<Long> removedShowtimeIds) {
+            NavigableMap<Long, Movie> newMoviesById = moviesById;
+            Map<String, Movie> newMoviesByTitle = moviesByTitle;
+            if (!savedMovies.isEmpty() || !removedMovieIds.isEmpty()) {
+                newMoviesById = new TreeMap<>(moviesById);
+                newMoviesByTitle = new HashMap<>(moviesByTitle);
+                for (Long id : removedMovieIds) {
+                    Movie removed = newMoviesById.remove(id);
+                    if (removed != null) {
+                        newMoviesByTitle.remove(removed.getTitle(), removed);
+                    }
+                }
+
+                for (Movie movie : savedMovies) {
+                    Movie previous = newMoviesById.put(movie.getId(), movie);
+                    if (previous != null) {
+                        newMoviesByTitle.remove(previous.getTitle(), previous);
+                    }
+
+                    newMoviesByTitle.put(movie.getTitle(), movie);
+                }
+            }
+
+            if (savedShowtimes.isEmpty() && removedShowtimeIds.isEmpty()) {
+                return new Catalog(newMoviesById, newMoviesByTitle, showtimesById, showtimesByTheater);
+            }
+
+            Map<Long, Showtime> newShowtimesById = new HashMap<>(showtimesById);
+            Set<Long> changedIds = new HashSet<>(removedShowtimeIds);
+            Set<String> changedTheaters = new HashSet<>();
+            for (Long id : removedShowtimeIds) {
+                Showtime removed = newShowtimesById.remove(id);
+                if (removed != null) {
+                    changedTheaters.add(removed.getTheater());
+                }
+            }
+
+            for (Showtime showtime : savedShowtimes) {
+                changedIds.add(showtime.getId());
+                changedTheaters.add(showtime.getTheater());
+                Showtime previous = newShowtimesById.put(showtime.getId(), showtime);
+                if (previous != null) {
+                    changedTheaters.add(previous.getTheater());
+                }
+            }
+
+            Map<String, List<Showtime>> newShowtimesByTheater = new HashMap<>(showtimesByTheater);
+            for (String theater : changedTheaters) {
+                List<Showtime> theaterShowtimes = resort(showtimesByTheater.getOrDefault(theater, List.of()), changedIds,
+                        savedShowtimes.stream().filter(showtime -> showtime.getTheater().equals(theater)).toList());
+                if (theaterShowtimes.isEmpty()) {
+                    newShowtimesByTheater.remove(theater);
+                } else {
+                    newShowtimesByTheater.put(theater, theaterShowtimes);
+                }
+            }
+
+            return new Catalog(newMoviesById, newMoviesByTitle, newShowtimesById, newShowtimesByTheater);
+        }
+
+        /**
+         * Copies sorted showtimes without the changed ones, adds the saved ones and sorts them again.
+         * The copy is still sorted except for the few added showtimes, which the merge sort of the list handles
+         * in close to linear time.
+         */
+        private static List<Showtime> resort(List<Showtime> sorted, Set<Long> changedIds, List<Showtime> saved) {
+            List<Showtime> result = new ArrayList<>(sorted.size() + saved.size());
+            for (Showtime showtime : sorted) {
+                if (!changedIds.contains(showtime.getId())) {
+                    result.add(showtime);
+                }
+            }
+
+            result.addAll(saved);
+            result.sort(START_TIME_ORDER);
+            return Collections.unmodifiableList(result);
+        }
+
+        /**
+         * Returns the index of the first showtime that does not match a predicate,
+         * which holds for a prefix of the sorted showtimes.
+         */
+        private static int firstIndexNotMatching(List<Showtime> sorted, Predicate<Showtime> prefix) {
+            int low = 0;
+            int high = sorted.size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (prefix.test(sorted.get(mid))) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+
+            return low;
+        }
+
+        /**
+         * The next showtime of a theater to merge into a page of all the theaters.
+         */
+        private record Cursor(List<Showtime> showtimes, int index) {
+            private Showtime current() {
+                return showtimes.get(index);
+            }
+        }
+    }
+}
@@ -0,0 +1,568 @@
+package com.att.tdp.popcorn_palace.service;
+
+import com.att.tdp.popcorn_palace.entity.Movie;
+import com.att.tdp.popcorn_palace.entity.Showtime;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps the in-memory state of the instances of the server in sync through PostgreSQL LISTEN/NOTIFY.
+ * The write paths report their changes here from inside their transaction: a movie or a showtime saved
+ * or deleted, and a seat taken or freed. The changes of a transaction are merged and sent right before it commits,
+ * with {@code pg_notify} on its own connection, as compact JSON payloads on the channel
+ * {@code popcorn-palace.change-notifications.channel}. PostgreSQL delivers them only once the transaction is
+ * committed, and never if it rolls back, so a committed change is never lost by a crash of the instance that wrote it.
+ * A change reported outside of a transaction, by a write that is not in the database yet, is sent right away.
+ * <p>
+ * Every instance listens on the channel on a dedicated connection, outside of the pools, and applies the changes
+ * of the other instances to its caches: the movie title cache, the theater schedule index, the seat map,
+ * the catalog snapshot and the second-level cache. The notifications of a poll are applied as one batch.
+ * Every payload carries the ID of the instance that sent it, so an instance skips its own changes.
+ * PostgreSQL does not keep the notifications sent while a listener is disconnected, so after a reconnect
+ * all the local caches are dropped and reloaded on their next access.
+ * <p>
+ * It is turned on by {@code popcorn-palace.change-notifications.enabled}.
+ */
+@Component
+public class ChangeNotifier {
+    private static final Logger logger = LoggerFactory.getLogger(ChangeNotifier.class);
+    private static final Pattern CHANNEL = Pattern.compile("[a-z_][a-z0-9_]{0,62}");
+    // PostgreSQL rejects payloads of 8000 bytes or more.
+    private static final int MAX_PAYLOAD_BYTES = 7900;
+    // Past this many changes in a transaction, the other instances are told to drop all their caches instead.
+    private static final int MAX_PENDING_CHANGES = 100_000;
+    private static final String NOTIFY = "SELECT pg_notify(?, ?)";
+    private static final ResultSetExtractor<Void> IGNORE_RESULT = resultSet -> null;
+    private static final Duration VALIDATION_INTERVAL = Duration.ofSeconds(10);
+
+    private static final String MOVIE_SAVED = "M";
+    private static final String MOVIE_DELETED = "m";
+    private static final String SHOWTIME_SAVED = "S";
+    private static final String SHOWTIME_DELETED = "s";
+    private static final String SEAT_TAKEN = "T";
+    private static final String SEAT_FREED = "F";
+    private static final String RESYNC = "R";
+    private static final Change RESYNC_ALL = new Change(RESYNC, 0, null);
+
+    @Autowired
+    private MovieTitleCache movieTitleCache;
+
+    @Autowired
+    private TheaterScheduleIndex theaterScheduleIndex;
+
+    @Autowired
+    private SeatOccupancyMap seatOccupancyMap;
+
+    @Autowired
+    private CatalogSnapshot catalogSnapshot;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${popcorn-palace.change-notifications.enabled:false}")
+    private boolean enabled;
+
+    @Value("${popcorn-palace.change-notifications.channel:popcorn_palace_changes}")
+    private String channel;
+
+    @Value("${popcorn-palace.change-notifications.poll-timeout:PT1S}")
+    private Duration pollTimeout;
+
+    @Value("${popcorn-palace.change-notifications.reconnect-delay:PT1S}")
+    private Duration reconnectDelay;
+
+    @Value("${spring.datasource.url}")
+    private String url;
+
+    @Value("${spring.datasource.username}")
+    private String username;
+
+    @Value("${spring.datasource.password}")
+    private String password;
+
+    private final String instanceId = UUID.randomUUID().toString();
+    private volatile boolean running;
+    private Thread listener;
+    private Connection connection;
+    private PGConnection pgConnection;
+    private long validatedAt;
+
+    /**
+     * Connects the listener before the server takes requests, so no change of another instance is missed
+     * by the caches loaded from then on. If the database is not reachable, the listener keeps trying in the background
+     * and drops the caches once it is connected.
+     */
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+
+        if (!CHANNEL.matcher(channel).matches()) {
+            throw new IllegalArgumentException("Invalid change notification channel: " + channel);
+        }
+
+        boolean connected = tryConnect();
+        running = true;
+        listener = new Thread(() -> run(!connected), "change-notifications");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (listener != null) {
+            listener.join(reconnectDelay.plus(pollTimeout).toMillis() + 5000);
+        }
+    }
+
+    /**
+     * Reports a saved movie to the other instances.
+     *
+     * @param movieId the ID of the movie
+     * @param title the title of the movie, reported again for the old title when it changed
+     */
+    public void movieSaved(Long movieId, String title) {
+        publish(new Change(MOVIE_SAVED, movieId, title));
+    }
+
+    /**
+     * Reports a deleted movie to the other instances.
+     *
+     * @param movieId the ID of the movie
+     */
+    public void movieDeleted(Long movieId) {
+        publish(new Change(MOVIE_DELETED, movieId, null));
+    }
+
+    /**
+     * Reports a saved showtime to the other instances.
+     *
+     * @param showtimeId the ID of the showtime
+     * @param theater the theater of the showtime, reported again for the old theater when it changed
+     */
+    public void showtimeSaved(Long showtimeId, String theater) {
+        publish(new Change(SHOWTIME_SAVED, showtimeId, theater));
+    }
+
+    /**
+     * Reports a deleted showtime to the other instances.
+     *
+     * @param showtimeId the ID of the showtime
+     * @param theater the theater the showtime was scheduled in
+     */
+    public void showtimeDeleted(Long showtimeId, String theater) {
+        publish(new Change(SHOWTIME_DELETED, showtimeId, theater));
+    }
+
+    /**
+     * Reports a seat taken by a ticket or a hold to the other instances.
+     *
+     * @param showtimeId the ID of the showtime
+     * @param seatNumber the seat number
+     */
+    public void seatTaken(Long showtimeId, int seatNumber) {
+        publish(new Change(SEAT_TAKEN, showtimeId, seatNumber));
+    }
+
+    /**
+     * Reports a freed seat to the other instances.
+     *
+     * @param showtimeId the ID of the showtime
+     * @param seatNumber the seat number
+     */
+    public void seatFreed(Long showtimeId, int seatNumber) {
+        publish(new Change(SEAT_FREED, showtimeId, seatNumber));
+    }
+
+    /**
+     * Returns the notification of a taken seat, for a statement that takes the seat and sends the notification itself,
+     * so the notification is committed with the seat. This lets the non-blocking writes, which do not run in
+     * the transactions of this component, send their changes atomically.
+     *
+     * @param showtimeId the ID of the showtime
+     * @param seatNumber the seat number
+     * @return the channel and payload of the notification, or null if the notifications are disabled
+     */
+    public Notification seatTakenNotification(Long showtimeId, int seatNumber) {
+        return enabled ? new Notification(channel, encode(List.of(new Change(SEAT_TAKEN, showtimeId, seatNumber))).get(0))
+                : null;
+    }
+
+    /**
+     * Adds a change to the changes of the current transaction, which are sent right before it commits,
+     * or sends it right away outside of a transaction.
+     */
+    private void publish(Change change) {
+        if (!enabled) {
+            return;
+        }
+
+        if (!TransactionSynchronizationManager.isActualTransactionActive()
+                || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            send(List.of(change));
+            return;
+        }
+
+        // The synchronizations are those of the current transaction, so a suspended transaction keeps its own changes.
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            if (synchronization instanceof TransactionChanges changes && changes.notifier() == this) {
+                changes.add(change);
+                return;
+            }
+        }
+
+        TransactionChanges changes = new TransactionChanges(this);
+        changes.add(change);
+        TransactionSynchronizationManager.registerSynchronization(changes);
+    }
+
+    /**
+     * Sends changes with pg_notify, in the current transaction if there is one.
+     * A failed send fails the transaction, so a change is never committed without its notification.
+     */
+    private void send(List<Change> changes) {
+        for (String payload : encode(changes)) {
+            jdbcTemplate.query(NOTIFY, IGNORE_RESULT, channel, payload);
+        }
+    }
+
+    private void run(boolean resync) {
+        while (running) {
+            try {
+                if (connection == null) {
+                    if (!tryConnect()) {
+                        Thread.sleep(reconnectDelay.toMillis());
+                        continue;
+                    }
+
+                    if (resync) {
+                        logger.info("Listening for changes on {} again, dropping the local caches", channel);
+                        resyncAll();
+                    }
+                }
+
+                resync = true;
+                poll();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (SQLException e) {
+                if (running) {
+                    logger.warn("Lost the change notification connection, reconnecting", e);
+                }
+
+                close();
+            }
+        }
+
+        close();
+    }
+
+    private boolean tryConnect() {
+        try {
+            Properties properties = new Properties();
+            properties.setProperty("user", username);
+            properties.setProperty("password", password);
+            properties.setProperty("ApplicationName", "popcorn-palace-change-notifications");
+            properties.setProperty("tcpKeepAlive", "true");
+            connection = DriverManager.getConnection(url, properties);
+            connection.setAutoCommit(true);
+            pgConnection = connection.unwrap(PGConnection.class);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("LISTEN " + channel);
+            }
+
+            validatedAt = System.nanoTime();
+            return true;
+        } catch (SQLException e) {
+            logger.warn("Could not listen for changes on {}, retrying in {}", channel, reconnectDelay, e);
+            close();
+            return false;
+        }
+    }
+
+    private void close() {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                logger.debug("Failed to close the change notification connection", e);
+            }
+        }
+
+        connection = null;
+        pgConnection = null;
+    }
+
+    /**
+     * Waits up to the poll timeout for the changes of the other instances.
+     */
+    private void poll() throws SQLException {
+        PGNotification[] notifications = pgConnection.getNotifications((int) Math.max(1, pollTimeout.toMillis()));
+        if (notifications != null && notifications.length > 0) {
+            List<PGNotification> received = new ArrayList<>(List.of(notifications));
+            // Takes the rest of a burst that already arrived, so it is applied in the same batch.
+            PGNotification[] more = pgConnection.getNotifications();
+            if (more != null) {
+                received.addAll(List.of(more));
+            }
+
+            apply(received);
+        } else if (System.nanoTime() - validatedAt > VALIDATION_INTERVAL.toNanos()) {
+            // A quiet connection is checked now and then, so a dead one is noticed and replaced.
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SELECT 1");
+            }
+
+            validatedAt = System.nanoTime();
+        }
+    }
+
+    /**
+     * Encodes changes as JSON objects with the ID of this instance and an array of entries like {@code ["M",1,"title"]},
+     * {@code ["S",2,"theater"]} or {@code ["T",2,15]}, such as {@code {"from":"...","changes":[["T",2,15]]}},
+     * split into payloads that fit a notification. A change that does not fit on its own is replaced by a resync
+     * of all the caches.
+     */
+    private List<String> encode(List<Change> changes) {
+        String prefix = "{\"from\":\"" + instanceId + "\",\"changes\":[";
+        List<String> payloads = new ArrayList<>();
+        StringBuilder payload = new StringBuilder(prefix);
+        int payloadBytes = prefix.length();
+        int entries = 0;
+        for (Change change : changes) {
+            String entry = encode(change);
+            int entryBytes = entry.getBytes(StandardCharsets.UTF_8).length;
+            if (prefix.length() + entryBytes + 2 > MAX_PAYLOAD_BYTES) {
+                entry = encode(RESYNC_ALL);
+                entryBytes = entry.length();
+            }
+
+            if (payloadBytes + entryBytes + 3 > MAX_PAYLOAD_BYTES) {
+                payloads.add(payload.append("]}").toString());
+                payload = new StringBuilder(prefix);
+                payloadBytes = prefix.length();
+                entries = 0;
+            }
+
+            if (entries > 0) {
+                payload.append(',');
+                payloadBytes++;
+            }
+
+            payload.append(entry);
+            payloadBytes += entryBytes;
+            entries++;
+        }
+
+        payloads.add(payload.append("]}").toString());
+        return payloads;
+    }
+
+    private String encode(Change change) {
+        ArrayNode entry = objectMapper.createArrayNode().add(change.kind()).add(change.id());
+        if (change.isSeat()) {
+            entry.add(change.value());
+        } else if (change.name() != null) {
+            entry.add(change.name());
+        }
+
+        try {
+            return objectMapper.writeValueAsString(entry);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to encode a change notification", e);
+        }
+    }
+
+    /**
+     * Applies the changes of the other instances to the local caches. Notifications sent by this instance,
+     * which PostgreSQL also delivers to its own listener, are skipped by the instance ID of their payload.
+     * A payload that cannot be read or applied drops all the caches, so they are never left stale.
+     */
+    private void apply(List<PGNotification> notifications) {
+        try {
+            Set<String> titles = new HashSet<>();
+            Set<Long> movieIds = new HashSet<>();
+            Set<String> theaters = new HashSet<>();
+            Set<Long> showtimeIds = new HashSet<>();
+            for (PGNotification notification : notifications) {
+                if (!channel.equals(notification.getName())) {
+                    continue;
+                }
+
+                JsonNode payload = objectMapper.readTree(notification.getParameter());
+                if (instanceId.equals(payload.path("from").asText())) {
+                    continue;
+                }
+
+                for (JsonNode entry : payload.path("changes")) {
+                    String kind = entry.path(0).asText();
+                    long id = entry.path(1).asLong();
+                    switch (kind) {
+                        case MOVIE_SAVED, MOVIE_DELETED -> {
+                            movieIds.add(id);
+                            if (entry.hasNonNull(2)) {
+                                titles.add(entry.get(2).asText());
+                            }
+                        }
+                        case SHOWTIME_SAVED, SHOWTIME_DELETED -> {
+                            showtimeIds.add(id);
+                            if (entry.hasNonNull(2)) {
+                                theaters.add(entry.get(2).asText());
+                            }
+
+                            if (kind.equals(SHOWTIME_DELETED)) {
+                                seatOccupancyMap.evict(id);
+                            }
+                        }
+                        case SEAT_TAKEN, SEAT_FREED -> seatOccupancyMap.update(id, entry.path(2).asInt(),
+                                kind.equals(SEAT_TAKEN));
+                        case RESYNC -> {
+                            resyncAll();
+                            return;
+                        }
+                        default -> throw new IllegalArgumentException("Unknown change: " + entry);
+                    }
+                }
+            }
+
+            Cache secondLevelCache = secondLevelCache();
+            movieIds.forEach(id -> secondLevelCache.evictEntityData(Movie.class, id));
+            showtimeIds.forEach(id -> secondLevelCache.evictEntityData(Showtime.class, id));
+            if (!showtimeIds.isEmpty()) {
+                secondLevelCache.evictQueryRegions();
+            }
+
+            movieIds.forEach(movieTitleCache::invalidateById);
+            titles.forEach(movieTitleCache::invalidate);
+            theaters.forEach(theaterScheduleIndex::evict);
+            if (catalogSnapshot.isEnabled() && (!movieIds.isEmpty() || !showtimeIds.isEmpty())) {
+                catalogSnapshot.refresh(movieIds, showtimeIds);
+            }
+        } catch (JsonProcessingException | RuntimeException e) {
+            logger.warn("Failed to apply change notifications, dropping the local caches", e);
+            resyncAll();
+        }
+    }
+
+    /**
+     * Drops all the local caches, which reload from the database on their next access.
+     */
+    private void resyncAll() {
+        movieTitleCache.invalidateAll();
+        theaterScheduleIndex.evictAll();
+        seatOccupancyMap.evictAll();
+        catalogSnapshot.evictAll();
+        secondLevelCache().evictAllRegions();
+    }
+
+    private Cache secondLevelCache() {
+        return entityManagerFactory.unwrap(SessionFactory.class).getCache();
+    }
+
+    /**
+     * A change of a movie or a showtime with its title or theater, or a change of a seat of a showtime.
+     */
+    private record Change(String kind, long id, String name, int value) {
+        Change(String kind, long id, String name) {
+            this(kind, id, name, 0);
+        }
+
+        Change(String kind, long id, int seatNumber) {
+            this(kind, id, null, seatNumber);
+        }
+
+        boolean isSeat() {
+            return kind.equals(SEAT_TAKEN) || kind.equals(SEAT_FREED);
+        }
+    }
+
+    private record SeatKey(long showtimeId, int seatNumber) {}
+
+    /**
+     * A notification to send with pg_notify.
+     *
+     * @param channel the channel of the notification
+     * @param payload the payload of the notification
+     */
+    public record Notification(String channel, String payload) {}
+
+    /**
+     * The changes reported during a transaction, sent right before it commits.
+     * Changes of the same entity are merged, and only the last state of a seat is kept.
+     */
+    private static final class TransactionChanges implements TransactionSynchronization {
+        private final ChangeNotifier notifier;
+        private final LinkedHashMap<Object, Change> changes = new LinkedHashMap<>();
+
+        private TransactionChanges(ChangeNotifier notifier) {
+            this.notifier = notifier;
+        }
+
+        ChangeNotifier notifier() {
+            return notifier;
+        }
+
+        void add(Change change) {
+            if (changes.containsKey(RESYNC_ALL)) {
+                return;
+            }
+
+            if (change.equals(RESYNC_ALL) || changes.size() >= MAX_PENDING_CHANGES) {
+                changes.clear();
+                changes.put(RESYNC_ALL, RESYNC_ALL);
+                return;
+            }
+
+            Object key = change.isSeat() ? new SeatKey(change.id(), change.value()) : change;
+            changes.remove(key);
+            changes.put(key, change);
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            notifier.send(new ArrayList<>(changes.values()));
+        }
+    }
+}
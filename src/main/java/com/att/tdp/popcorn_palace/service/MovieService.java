@@ -2,13 +2,21 @@ package com.att.tdp.popcorn_palace.service;
 
 
 import com.att.tdp.popcorn_palace.entity.Movie;
+import com.att.tdp.popcorn_palace.exception.PreconditionFailedException;
 import com.att.tdp.popcorn_palace.exception.ResourceNotFoundException;
 import com.att.tdp.popcorn_palace.repository.MovieRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.List;
 import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Service class responsible for managing movie-related operations.
@@ -17,23 +25,102 @@ import java.util.Objects;
  */
 @Service
 public class MovieService {
+    private static final int MAX_PAGE_SIZE = 1000;
 
     @Autowired
     private MovieRepository movieRepository;
 
+    @Autowired
+    private MovieTitleCache movieTitleCache;
+
+    @Autowired
+    private ReplicaReads replicaReads;
+
+    @Autowired
+    private CatalogPurger catalogPurger;
+
+    @Autowired
+    private CatalogSnapshot catalogSnapshot;
+
+    @Autowired
+    private ChangeNotifier changeNotifier;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
     /**
-     * Retrieves all movies from the repository.
+     * Retrieves all movies from the catalog snapshot when it is enabled,
+     * otherwise from the repository, on the read replica when it is enabled.
      *
      * @return a list of all movies.
      */
     public List<Movie> getAllMovie() {
-        return movieRepository.findAll();
+        if (catalogSnapshot.isEnabled()) {
+            return List.copyOf(catalogSnapshot.get().getMovies());
+        }
+
+        return replicaReads.read(movieRepository::findAll);
+    }
+
+    /**
+     * Passes every movie to the given action in ID order, without loading the whole catalog into memory.
+     * The movies are read through a server-side cursor with a fixed fetch size, which PostgreSQL only uses
+     * inside a transaction, and each movie is detached once the action is done with it,
+     * so the memory used stays the same whatever the size of the catalog.
+     * The transaction runs on the read replica when it is enabled.
+     * When the catalog snapshot is enabled the movies are passed from it instead, without a query.
+     *
+     * @param action the action to perform on each movie
+     */
+    public void forEachMovie(Consumer<Movie> action) {
+        if (catalogSnapshot.isEnabled()) {
+            catalogSnapshot.get().getMovies().forEach(action);
+            return;
+        }
+
+        replicaReads.read(() -> {
+            try (Stream<Movie> movies = movieRepository.streamAll()) {
+                movies.forEach(movie -> {
+                    action.accept(movie);
+                    entityManager.detach(movie);
+                });
+            }
+
+            return null;
+        });
+    }
+
+    /**
+     * Retrieves a page of movies ordered by ID, starting after the given ID.
+     * The next page starts after the ID of the last movie of this page.
+     * The page is read from the catalog snapshot when it is enabled, otherwise from the read replica when it is enabled.
+     *
+     * @param afterId the ID after which the page starts, null to start from the first movie
+     * @param limit the maximum number of movies in the page
+     * @return the movies of the page
+     * @throws IllegalArgumentException if the limit is not between 1 and the maximum page size
+     */
+    public List<Movie> getMoviePage(Long afterId, int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Movie page limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+
+        if (catalogSnapshot.isEnabled()) {
+            return catalogSnapshot.get().getMoviesAfter(afterId == null ? 0L : afterId, limit);
+        }
+
+        return replicaReads.read(() -> movieRepository.getMoviesAfter(afterId == null ? 0L : afterId, Limit.of(limit)));
     }
 
     /**
      * Persists a new movie entity into the repository after validating its details.
      * This method validates the movie's properties and ensures that there are no
      * existing movies with the same title before saving it.
+     * The title is dropped from the title cache and the movie is published to the catalog snapshot once it is saved.
+     * The change is notified to the other instances in the transaction of the save.
      *
      * @param movie the Movie object to be saved. It must have a null ID and pass validation checks.
      * @return the saved Movie object with an assigned ID.
@@ -54,53 +141,109 @@ public class MovieService {
             throw new IllegalArgumentException(validation);
         }
 
-        return movieRepository.save(movie);
+        Movie savedMovie = transactionTemplate.execute(status -> {
+            Movie newMovie = movieRepository.save(movie);
+            changeNotifier.movieSaved(newMovie.getId(), newMovie.getTitle());
+            return newMovie;
+        });
+        movieTitleCache.invalidate(savedMovie.getTitle());
+        catalogSnapshot.saveMovies(List.of(savedMovie));
+        return savedMovie;
     }
 
     /**
-     * Deletes a movie from the repository based on its unique ID.
+     * Deletes a movie with its showtimes and their tickets based on its unique ID,
+     * and drops it from the title cache.
      *
      * @param id the unique identifier of the movie to be deleted
      *           must not be null.
+     * @throws ResourceNotFoundException if no movie is found with the specified ID
      */
     public void deleteMovie(Long id) {
-        movieRepository.deleteById(id);
+        if (!catalogPurger.deleteMovie(id)) {
+            throw new ResourceNotFoundException("Movie not found with id - " + id);
+        }
+
+        movieTitleCache.invalidateById(id);
     }
 
     /**
-     * Retrieves a movie by its title from the repository.
+     * Deletes a movie with its showtimes and their tickets based on its title, and drops the title from
+     * the title cache. The title is resolved through the cache, and the movie and its showtimes are deleted
+     * with set-based statements in one transaction, see CatalogPurger.
+     *
+     * @param title the title of the movie to be deleted
+     * @throws ResourceNotFoundException if no movie is found with the specified title
+     */
+    public void deleteMovieByTitle(String title) {
+        Movie movie = getMovieByTitle(title);
+        boolean deleted = catalogPurger.deleteMovie(movie.getId());
+        movieTitleCache.invalidate(title);
+        if (!deleted) {
+            throw new ResourceNotFoundException("Movie not found with title - " + title);
+        }
+    }
+
+    /**
+     * Deletes a movie with its showtimes and their tickets in the background, purging the tickets in batches.
+     * The movie stays readable until the purge is done, and its title is dropped from the title cache then.
+     *
+     * @param title the title of the movie to be purged
+     * @throws ResourceNotFoundException if no movie is found with the specified title
+     */
+    public void purgeMovieByTitle(String title) {
+        Movie movie = getMovieByTitle(title);
+        catalogPurger.purgeMovie(movie.getId(), () -> movieTitleCache.invalidate(title));
+    }
+
+    /**
+     * Retrieves a movie by its title from the catalog snapshot when it is enabled, otherwise through the title cache.
+     * The returned movie may be shared with other requests and must not be modified.
      *
      * @param title the title of the movie to retrieve; must not be null or empty
      * @return the Movie object matching the given title
      * @throws ResourceNotFoundException if no movie is found with the specified title
      */
     public Movie getMovieByTitle(String title) {
-        Movie movie = movieRepository.getMovieByTitle(title);
-        if (movie == null) {
-            throw new ResourceNotFoundException("Movie not found with title - " + title);
+        if (catalogSnapshot.isEnabled()) {
+            Movie movie = catalogSnapshot.get().getMovieByTitle(title);
+            if (movie == null) {
+                throw new ResourceNotFoundException("Movie not found with title - " + title);
+            }
+
+            return movie;
         }
-        return movie;
+
+        return movieTitleCache.get(title)
+                .orElseThrow(() -> new ResourceNotFoundException("Movie not found with title - " + title));
     }
 
     /**
      * Updates an existing movie in the repository identified by its title. Validates the movie details,
      * ensures the title is unique or matches the current title, and saves the changes to the repository.
+     * Both the old and the new title are dropped from the title cache and the movie is published to the catalog snapshot
+     * once it is saved.
+     * The movie is saved with the version it was read with, so the update fails instead of overwriting a concurrent one.
+     * When an expected version is given the update is rejected unless the movie still has it.
      *
      * @param movieTitle the original title of the movie to be updated; must not be null or empty
      * @param movie the updated Movie object containing the new details; must have a null ID and pass validation checks
+     * @param expectedVersion the version the client read the movie with, or null to update any version
      * @return the updated Movie object saved in the repository
      * @throws IllegalArgumentException if the updated Movie object has a non-null ID, if the title change results in a conflict,
      *                                  or if the Movie object fails validation
      * @throws ResourceNotFoundException if no existing movie is found with the specified title
+     * @throws PreconditionFailedException if the movie does not have the expected version
+     * @throws OptimisticLockingFailureException if the movie was updated concurrently and no version was expected
      */
-    public Movie updateMovie(String movieTitle, Movie movie) {
+    public Movie updateMovie(String movieTitle, Movie movie, Long expectedVersion) {
         if (movie.getId() != null) {
             throw new IllegalArgumentException("Can't assign the id of a new entity");
         }
 
-        Movie existingMovie = movieRepository.getMovieByTitle(movieTitle);
-        if (existingMovie == null) {
-            throw new ResourceNotFoundException("Movie not found with title - " + movieTitle);
+        Movie existingMovie = getMovieByTitle(movieTitle);
+        if (expectedVersion != null && !expectedVersion.equals(existingMovie.getVersion())) {
+            throw new PreconditionFailedException("Movie was modified since version " + expectedVersion + " - " + movieTitle);
         }
 
         if (!Objects.equals(movie.getTitle(), movieTitle) && isMovieExist(movie.getTitle())) {
@@ -112,32 +255,63 @@ public class MovieService {
             throw new IllegalArgumentException(validation);
         }
 
-        existingMovie.setTitle(movie.getTitle());
-        existingMovie.setGenre(movie.getGenre());
-        existingMovie.setDuration(movie.getDuration());
-        existingMovie.setRating(movie.getRating());
-        existingMovie.setReleaseYear(movie.getReleaseYear());
-        return movieRepository.save(existingMovie);
+        // The existing movie may be cached, so the changes are saved on a copy of it.
+        Movie updatedMovie = new Movie(movie.getTitle(), movie.getGenre(), movie.getDuration(), movie.getRating(),
+                movie.getReleaseYear());
+        updatedMovie.setId(existingMovie.getId());
+        updatedMovie.setVersion(existingMovie.getVersion());
+        Movie savedMovie;
+        try {
+            savedMovie = transactionTemplate.execute(status -> {
+                Movie newMovie = movieRepository.save(updatedMovie);
+                changeNotifier.movieSaved(newMovie.getId(), movieTitle);
+                changeNotifier.movieSaved(newMovie.getId(), newMovie.getTitle());
+                return newMovie;
+            });
+        } catch (OptimisticLockingFailureException e) {
+            // The cached movie is older than the one in the database, it is reloaded by the next read.
+            movieTitleCache.invalidate(movieTitle);
+            if (expectedVersion != null) {
+                throw new PreconditionFailedException("Movie was modified since version " + expectedVersion + " - " + movieTitle);
+            }
+
+            throw e;
+        }
+
+        movieTitleCache.invalidate(movieTitle);
+        movieTitleCache.invalidate(savedMovie.getTitle());
+        catalogSnapshot.saveMovies(List.of(savedMovie));
+        return savedMovie;
     }
 
     /**
-     * Checks if a movie with the given title exists in the repository.
+     * Checks if a movie with the given title exists, in the catalog snapshot when it is enabled,
+     * otherwise through the title cache.
      *
      * @param title the title of the movie.
      * @return true if a movie with the specified title exists, otherwise false
      */
     public boolean isMovieExist(String title) {
-        return movieRepository.getMovieByTitle(title) != null;
+        if (catalogSnapshot.isEnabled()) {
+            return catalogSnapshot.get().getMovieByTitle(title) != null;
+        }
+
+        return movieTitleCache.get(title).isPresent();
     }
 
     /**
-     * Checks if a movie exists in the repository by its ID.
+     * Checks if a movie exists by its ID, in the catalog snapshot when it is enabled, otherwise in the repository.
      *
      * @param id the ID of the movie to check
      * @return true if the movie exists, false otherwise
      */
     public boolean isMovieExistById(Long id) {
-        return movieRepository.existsById(id);
+        if (catalogSnapshot.isEnabled()) {
+            return catalogSnapshot.get().getMovie(id) != null;
+        }
+
+        // Loaded instead of counted, so the check is answered by the second-level cache when it is on.
+        return movieRepository.findById(id).isPresent();
     }
 
 }
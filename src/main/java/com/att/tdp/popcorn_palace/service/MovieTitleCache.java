@@ -0,0 +1,114 @@
+package com.att.tdp.popcorn_palace.service;
+
+import com.att.tdp.popcorn_palace.entity.Movie;
+import com.att.tdp.popcorn_palace.repository.MovieRepository;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Bounded read-through cache of the movies by title, evicting by size and by time since the entry was loaded.
+ * Titles that do not exist are cached as well, so the existence checks of a new title do not query the database.
+ * Only one thread loads a title, concurrent callers wait for it to finish. The load runs outside of any cache lock,
+ * and an invalidation that happens during the load drops the loaded value, so it is never cached stale.
+ * The cached movies are shared between requests and must not be modified.
+ * The hit, miss and eviction counters are published as the "movieTitles" cache metrics.
+ */
+@Component
+public class MovieTitleCache {
+    @Autowired
+    private MovieRepository movieRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${popcorn-palace.movie-cache.maximum-size:10000}")
+    private long maximumSize;
+
+    @Value("${popcorn-palace.movie-cache.expire-after-write:PT10M}")
+    private Duration expireAfterWrite;
+
+    private AsyncCache<String, Optional<Movie>> movies;
+
+    @PostConstruct
+    public void init() {
+        movies = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, movies, "movieTitles");
+    }
+
+    /**
+     * Returns the movie with the given title, loading it from the repository on a miss.
+     *
+     * @param title the title of the movie
+     * @return the movie with the given title, or an empty Optional if there is no such movie
+     */
+    public Optional<Movie> get(String title) {
+        if (title == null) {
+            return Optional.empty();
+        }
+
+        CompletableFuture<Optional<Movie>> created = new CompletableFuture<>();
+        CompletableFuture<Optional<Movie>> movie = movies.get(title, (key, executor) -> created);
+        if (movie == created) {
+            try {
+                created.complete(Optional.ofNullable(movieRepository.getMovieByTitle(title)));
+            } catch (RuntimeException e) {
+                created.completeExceptionally(e);
+                throw e;
+            }
+        }
+
+        try {
+            return movie.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+
+            throw e;
+        }
+    }
+
+    /**
+     * Drops the cached movie of a title, the next access reloads it from the repository.
+     *
+     * @param title the title of the movie
+     */
+    public void invalidate(String title) {
+        if (title != null) {
+            movies.synchronous().invalidate(title);
+        }
+    }
+
+    /**
+     * Drops the cached movie with the given ID, whatever its title.
+     * This scans the cache, it is meant for the rare callers that only know the ID.
+     *
+     * @param id the ID of the movie
+     */
+    public void invalidateById(Long id) {
+        movies.synchronous().asMap().values()
+                .removeIf(movie -> movie.isPresent() && movie.get().getId().equals(id));
+    }
+
+    /**
+     * Drops all the cached movies.
+     */
+    public void invalidateAll() {
+        movies.synchronous().invalidateAll();
+    }
+}
@@ -0,0 +1,197 @@
+package com.att.tdp.popcorn_palace.service;
+
+import com.att.tdp.popcorn_palace.entity.Movie;
+import com.att.tdp.popcorn_palace.entity.Showtime;
+import com.att.tdp.popcorn_palace.entity.Ticket;
+import com.att.tdp.popcorn_palace.entity.TicketStatus;
+import com.att.tdp.popcorn_palace.exception.ResourceNotFoundException;
+import com.att.tdp.popcorn_palace.metrics.BookingMetrics;
+import com.att.tdp.popcorn_palace.metrics.BookingMetrics.Outcome;
+import com.att.tdp.popcorn_palace.metrics.BookingMetrics.Stage;
+import com.att.tdp.popcorn_palace.repository.ReactiveMovieRepository;
+import com.att.tdp.popcorn_palace.repository.ReactiveShowtimeRepository;
+import com.att.tdp.popcorn_palace.repository.ReactiveTicketRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Non-blocking counterpart of the booking and read operations of TicketService, ShowtimeService and MovieService,
+ * used by the "reactive" profile. The same validations, in-memory seat map and booking metrics are used,
+ * and the errors are the same exceptions, so the responses match the blocking endpoints.
+ * The bookings are inserted directly and the seat map is loaded from the ticket table alone, so the server refuses
+ * to start with the booking journal, whose tickets are not in the table yet and would look free here.
+ */
+@Service
+@Profile("reactive")
+public class ReactiveBookingService {
+    @Autowired
+    private ReactiveTicketRepository ticketRepository;
+
+    @Autowired
+    private ReactiveShowtimeRepository showtimeRepository;
+
+    @Autowired
+    private ReactiveMovieRepository movieRepository;
+
+    @Autowired
+    private SeatOccupancyMap seatOccupancyMap;
+
+    @Autowired
+    private ChangeNotifier changeNotifier;
+
+    @Autowired
+    private BookingMetrics bookingMetrics;
+
+    @Autowired
+    private BookingJournal bookingJournal;
+
+    @PostConstruct
+    public void checkJournal() {
+        if (bookingJournal.isEnabled()) {
+            throw new IllegalStateException("The booking journal cannot be enabled with the reactive profile");
+        }
+    }
+
+    /**
+     * Books a ticket for a specific showtime and seat if all validations are met, like TicketService#bookTicket.
+     * The seat is claimed in the in-memory seat map, whose bitmap is loaded with R2DBC on the first booking
+     * of the showtime, and the ticket is then inserted.
+     * If the insert fails the claimed seat is released, unless the seat was already taken in the database.
+     *
+     * @param ticket the Ticket object containing the details of the showtime, seat, and user
+     * @return a Mono of a map containing the booking ID of the booked ticket, which fails with
+     *         an IllegalArgumentException if the ticket details are invalid or the seat is not empty,
+     *         or with a ResourceNotFoundException if the specified showtime does not exist
+     */
+    public Mono<Map<String, String>> bookTicket(Ticket ticket) {
+        ticket.setStatus(TicketStatus.BOOKED);
+        ticket.setHeldUntil(null);
+        long validationStart = bookingMetrics.start();
+        String validation = ticket.validate();
+        bookingMetrics.record(Stage.VALIDATION, validationStart);
+        if (validation != null) {
+            bookingMetrics.count(Outcome.INVALID);
+            return Mono.error(new IllegalArgumentException(validation));
+        }
+
+        Long showtimeId = ticket.getShowtimeId();
+        long showtimeStart = bookingMetrics.start();
+        Mono<Boolean> showtimeExists = seatOccupancyMap.isLoaded(showtimeId)
+                ? Mono.just(true)
+                : showtimeRepository.existsById(showtimeId);
+        return showtimeExists
+                .flatMap(exists -> {
+                    bookingMetrics.record(Stage.SHOWTIME, showtimeStart);
+                    if (!exists) {
+                        bookingMetrics.count(Outcome.NOT_FOUND);
+                        return Mono.error(new ResourceNotFoundException("Showtime not found with id - " + showtimeId));
+                    }
+
+                    long seatStart = bookingMetrics.start();
+                    return claim(showtimeId, ticket.getSeatNumber())
+                            .doOnNext(claimed -> bookingMetrics.record(Stage.SEAT, seatStart));
+                })
+                .flatMap(claimed -> {
+                    if (!claimed) {
+                        bookingMetrics.count(Outcome.SEAT_TAKEN);
+                        return Mono.error(new IllegalArgumentException("Seat is not empty"));
+                    }
+
+                    return insert(ticket);
+                })
+                .then(Mono.fromSupplier(() -> {
+                    bookingMetrics.count(Outcome.BOOKED);
+                    Map<String, String> response = new HashMap<>();
+                    response.put("bookingId", ticket.getBookingId().toString());
+                    return response;
+                }));
+    }
+
+    /**
+     * Retrieves a showtime by its ID, like ShowtimeService#getShowtimeById.
+     *
+     * @param showtimeId the ID of the showtime to be retrieved
+     * @return a Mono of the showtime, which fails with a ResourceNotFoundException if no showtime has the given ID
+     */
+    public Mono<Showtime> getShowtimeById(Long showtimeId) {
+        return showtimeRepository.findById(showtimeId)
+                .switchIfEmpty(Mono.error(() -> new ResourceNotFoundException("Showtime not found with id - " + showtimeId)));
+    }
+
+    /**
+     * Streams all the movies ordered by ID, like MovieService#forEachMovie.
+     *
+     * @return a Flux of all the movies
+     */
+    public Flux<Movie> getAllMovies() {
+        return movieRepository.streamAll();
+    }
+
+    /**
+     * Claims a seat in the in-memory seat map, loading the bitmap of the showtime with R2DBC if needed.
+     * When another thread is already loading the showtime through the blocking path,
+     * the claim waits for it off the event loop.
+     */
+    private Mono<Boolean> claim(Long showtimeId, int seatNumber) {
+        if (seatOccupancyMap.isLoaded(showtimeId)) {
+            return Mono.just(seatOccupancyMap.claim(showtimeId, seatNumber));
+        }
+
+        return ticketRepository.getSeatNumbersByShowtimeId(showtimeId)
+                .collectList()
+                .flatMap(seatNumbers -> {
+                    seatOccupancyMap.load(showtimeId, seatNumbers);
+                    if (seatOccupancyMap.isLoaded(showtimeId)) {
+                        return Mono.just(seatOccupancyMap.claim(showtimeId, seatNumber));
+                    }
+
+                    return Mono.fromCallable(() -> seatOccupancyMap.claim(showtimeId, seatNumber))
+                            .subscribeOn(Schedulers.boundedElastic());
+                });
+    }
+
+    /**
+     * Inserts a ticket whose seat was claimed with the conditional insert of the blocking path.
+     * The showtime was checked before the claim, so a ticket that is not inserted lost its seat to another
+     * instance and its seat stays claimed, unless the seats of the showtime were dropped in the meantime,
+     * which a deleted showtime does, in which case the showtime is looked up again.
+     * The seat is released if the insert fails.
+     * The taken seat is notified to the other instances by the insert statement, so it is committed with the ticket.
+     */
+    private Mono<Void> insert(Ticket ticket) {
+        Long showtimeId = ticket.getShowtimeId();
+        long insertStart = bookingMetrics.start();
+        ChangeNotifier.Notification notification = changeNotifier.seatTakenNotification(showtimeId, ticket.getSeatNumber());
+        return ticketRepository.insertIfSeatFree(ticket,
+                        notification == null ? null : notification.channel(),
+                        notification == null ? null : notification.payload())
+                .doFinally(signal -> bookingMetrics.record(Stage.INSERT, insertStart))
+                .doOnError(e -> seatOccupancyMap.release(showtimeId, ticket.getSeatNumber()))
+                .flatMap(inserted -> {
+                    if (inserted == 0) {
+                        Mono<Boolean> showtimeExists = seatOccupancyMap.isLoaded(showtimeId)
+                                ? Mono.just(true)
+                                : showtimeRepository.existsById(showtimeId);
+                        return showtimeExists.flatMap(exists -> {
+                            if (!exists) {
+                                bookingMetrics.count(Outcome.NOT_FOUND);
+                                return Mono.error(new ResourceNotFoundException("Showtime not found with id - " + showtimeId));
+                            }
+
+                            bookingMetrics.count(Outcome.SEAT_TAKEN);
+                            return Mono.error(new IllegalArgumentException("Seat is not empty"));
+                        });
+                    }
+
+                    return Mono.empty();
+                });
+    }
+}
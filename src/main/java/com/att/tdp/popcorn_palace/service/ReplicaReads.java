@@ -0,0 +1,84 @@
+package com.att.tdp.popcorn_palace.service;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.function.Supplier;
+
+/**
+ * Runs the catalog reads in read-only transactions, which are sent to the read replica when
+ * {@code popcorn-palace.datasource.replica.enabled} is set.
+ * A read only goes to the replica when it starts its own transaction, a read inside a write transaction
+ * joins it on the primary. The writes and the checks of the bookings never go through this class,
+ * so they always run on the primary.
+ * A request can be pinned to the primary, so a client that just wrote reads its own writes even when
+ * the replica lags behind.
+ */
+@Component
+public class ReplicaReads {
+    private static final ThreadLocal<Boolean> REPLICA = new ThreadLocal<>();
+    private static final ThreadLocal<Boolean> PRIMARY_ONLY = new ThreadLocal<>();
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${popcorn-palace.datasource.replica.enabled:false}")
+    private boolean enabled;
+
+    private TransactionTemplate readOnlyTransaction;
+
+    @PostConstruct
+    public void init() {
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+    }
+
+    /**
+     * Runs a read in a read-only transaction, on the replica unless it joins a transaction
+     * or the current request is pinned to the primary.
+     *
+     * @param action the read to run
+     * @return the result of the read
+     */
+    public <T> T read(Supplier<T> action) {
+        if (!enabled || Boolean.TRUE.equals(PRIMARY_ONLY.get())
+                || TransactionSynchronizationManager.isActualTransactionActive()) {
+            return readOnlyTransaction.execute(status -> action.get());
+        }
+
+        // Set before the transaction begins, since the connection is taken when it begins.
+        REPLICA.set(true);
+        try {
+            return readOnlyTransaction.execute(status -> action.get());
+        } finally {
+            REPLICA.remove();
+        }
+    }
+
+    /**
+     * Pins the reads of the current thread to the primary, or releases them.
+     *
+     * @param primaryOnly true to send all the reads of the current thread to the primary, false to release them
+     */
+    public void setPrimaryOnly(boolean primaryOnly) {
+        if (primaryOnly) {
+            PRIMARY_ONLY.set(true);
+        } else {
+            PRIMARY_ONLY.remove();
+        }
+    }
+
+    /**
+     * Tells if the connection taken by the current thread must come from the replica.
+     *
+     * @return true inside a read started by this class on the replica, false otherwise
+     */
+    public static boolean isReplicaRead() {
+        return Boolean.TRUE.equals(REPLICA.get());
+    }
+}
@@ -0,0 +1,218 @@
+package com.att.tdp.popcorn_palace.service;
+
+import com.att.tdp.popcorn_palace.entity.Ticket;
+import com.att.tdp.popcorn_palace.entity.TicketStatus;
+import com.att.tdp.popcorn_palace.repository.TicketRepository;
+import com.att.tdp.popcorn_palace.util.HashedTimingWheel;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps track of the seats that are held by this server and expires them on a hashed timing wheel.
+ * Tracking and cancelling a hold are constant time operations that never touch the database.
+ * Expired holds are queued and deleted in batches by a single background thread, which releases their seats
+ * in the in-memory seat map. The holds of a failed batch are scheduled again on the wheel, after a backoff that
+ * doubles with every failure of the hold up to {@value #MAX_RETRY_SHIFT} doublings, so they are expired once
+ * the database is reachable again.
+ * Holds that were persisted before a restart are scheduled again on startup.
+ */
+@Component
+public class SeatHoldRegistry {
+    private static final Logger logger = LoggerFactory.getLogger(SeatHoldRegistry.class);
+    private static final int EXPIRY_BATCH_SIZE = 500;
+    private static final Duration RETRY_BACKOFF = Duration.ofSeconds(1);
+    private static final int MAX_RETRY_SHIFT = 6;
+
+    @Autowired
+    private TicketRepository ticketRepository;
+
+    @Autowired
+    private SeatOccupancyMap seatOccupancyMap;
+
+    @Autowired
+    private ChangeNotifier changeNotifier;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${popcorn-palace.booking.hold-wheel.tick:100ms}")
+    private Duration tickDuration;
+
+    @Value("${popcorn-palace.booking.hold-wheel.ticks-per-wheel:512}")
+    private int ticksPerWheel;
+
+    private final ConcurrentHashMap<UUID, SeatHold> holds = new ConcurrentHashMap<>();
+    private final Queue<SeatHold> expiredHolds = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private ExecutorService expiryExecutor;
+    private HashedTimingWheel timingWheel;
+
+    @PostConstruct
+    public void start() {
+        expiryExecutor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "seat-hold-expiry"));
+        // Expired timeouts only queue their hold, so they can run directly on the wheel thread.
+        timingWheel = new HashedTimingWheel(tickDuration, ticksPerWheel, Runnable::run,
+                runnable -> new Thread(runnable, "seat-hold-wheel"));
+    }
+
+    @PreDestroy
+    public void stop() {
+        timingWheel.close();
+        expiryExecutor.shutdownNow();
+    }
+
+    /**
+     * Schedules the expiry of a held ticket at its hold deadline.
+     *
+     * @param ticket the held ticket, with its showtime, seat and hold deadline
+     */
+    public void track(Ticket ticket) {
+        SeatHold hold = new SeatHold(ticket.getBookingId(), ticket.getShowtimeId(), ticket.getSeatNumber());
+        Duration delay = Duration.between(OffsetDateTime.now(), ticket.getHeldUntil());
+        // Tracked before it is scheduled, since an overdue hold can expire before schedule() returns.
+        holds.put(hold.bookingId, hold);
+        hold.timeout = timingWheel.schedule(delay, () -> expire(hold));
+    }
+
+    /**
+     * Stops tracking a hold, cancelling its expiry.
+     *
+     * @param bookingId the booking ID of the held ticket
+     */
+    public void untrack(UUID bookingId) {
+        SeatHold hold = holds.remove(bookingId);
+        // A hold untracked before its timeout is scheduled still expires, but its conditional delete is a no-op.
+        if (hold != null && hold.timeout != null) {
+            hold.timeout.cancel();
+        }
+    }
+
+    /**
+     * Schedules again the holds that were persisted before the server started, expiring the overdue ones.
+     * This is a one-time query on startup, the holds are never polled afterwards.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void recoverHolds() {
+        List<Ticket> heldTickets = ticketRepository.getTicketsByStatus(TicketStatus.HELD);
+        for (Ticket ticket : heldTickets) {
+            track(ticket);
+        }
+
+        if (!heldTickets.isEmpty()) {
+            logger.info("Recovered {} seat holds", heldTickets.size());
+        }
+    }
+
+    private void expire(SeatHold hold) {
+        expiredHolds.add(hold);
+        if (draining.compareAndSet(false, true)) {
+            expiryExecutor.execute(this::drainExpiredHolds);
+        }
+    }
+
+    /**
+     * Deletes the queued expired holds in batches until the queue is empty.
+     */
+    private void drainExpiredHolds() {
+        do {
+            try {
+                while (!expiredHolds.isEmpty()) {
+                    expireHolds();
+                }
+            } catch (RuntimeException e) {
+                logger.warn("Failed to expire seat holds, retrying them later", e);
+            } finally {
+                draining.set(false);
+            }
+        } while (!expiredHolds.isEmpty() && draining.compareAndSet(false, true));
+    }
+
+    /**
+     * Deletes a batch of expired holds. Holds that were confirmed or released in the meantime are not deleted,
+     * the conditional delete only matches tickets that are still held past their deadline.
+     * The freed seats are notified in the transaction of the delete.
+     */
+    private void expireHolds() {
+        List<SeatHold> batch = new ArrayList<>(EXPIRY_BATCH_SIZE);
+        List<UUID> bookingIds = new ArrayList<>(EXPIRY_BATCH_SIZE);
+        SeatHold hold;
+        while (batch.size() < EXPIRY_BATCH_SIZE && (hold = expiredHolds.poll()) != null) {
+            batch.add(hold);
+            bookingIds.add(hold.bookingId);
+        }
+
+        Set<UUID> deletedIds;
+        try {
+            deletedIds = transactionTemplate.execute(status -> {
+                Set<UUID> deleted = new HashSet<>(ticketRepository.deleteExpiredHolds(bookingIds, OffsetDateTime.now()));
+                for (SeatHold expiredHold : batch) {
+                    if (deleted.contains(expiredHold.bookingId)) {
+                        changeNotifier.seatFreed(expiredHold.showtimeId, expiredHold.seatNumber);
+                    }
+                }
+
+                return deleted;
+            });
+        } catch (RuntimeException e) {
+            batch.forEach(this::retry);
+            throw e;
+        }
+
+        for (SeatHold expiredHold : batch) {
+            holds.remove(expiredHold.bookingId, expiredHold);
+            if (deletedIds.contains(expiredHold.bookingId)) {
+                seatOccupancyMap.release(expiredHold.showtimeId, expiredHold.seatNumber);
+            }
+        }
+    }
+
+    /**
+     * Schedules the expiry of a hold whose delete failed again, unless it was confirmed or released in the meantime.
+     */
+    private void retry(SeatHold hold) {
+        if (holds.get(hold.bookingId) == hold) {
+            Duration delay = RETRY_BACKOFF.multipliedBy(1L << Math.min(hold.retries++, MAX_RETRY_SHIFT));
+            hold.timeout = timingWheel.schedule(delay, () -> expire(hold));
+        }
+    }
+
+    /**
+     * A seat held by this server, scheduled on the timing wheel.
+     */
+    private static final class SeatHold {
+        private final UUID bookingId;
+        private final Long showtimeId;
+        private final int seatNumber;
+        private volatile HashedTimingWheel.Timeout timeout;
+        // Only updated by the expiry thread.
+        private int retries;
+
+        private SeatHold(UUID bookingId, Long showtimeId, int seatNumber) {
+            this.bookingId = bookingId;
+            this.showtimeId = showtimeId;
+            this.seatNumber = seatNumber;
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package com.att.tdp.popcorn_palace.service;
+
+import com.att.tdp.popcorn_palace.dto.SeatMap;
+import com.att.tdp.popcorn_palace.repository.TicketRepository;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * In-memory map of the occupied seats of every showtime, kept as an atomic bitmap per showtime.
+ * A seat is claimed with a single compare-and-set on the bitmap before the ticket is persisted,
+ * so concurrent requests for the same seat are rejected without a round trip to the database.
+ * The bitmap of a showtime is built lazily from the ticket table the first time it is accessed,
+ * together with the tickets of the booking journal that are not in the table yet.
+ * Each bitmap has a version that changes whenever one of its seats is taken or freed.
+ * A bitmap that was not accessed for {@code popcorn-palace.booking.seat-map.expire-after-access} is dropped,
+ * so the showtimes that ended or stopped selling do not stay in memory, and it is reloaded if it is accessed again.
+ */
+@Component
+public class SeatOccupancyMap {
+    private static final int SEATS_PER_PAGE = 1024;
+    // Seeded with the clock so the versions of a reloaded bitmap never repeat the ones served before a restart.
+    private static final AtomicLong GENERATIONS = new AtomicLong(System.currentTimeMillis() << 20);
+
+    @Autowired
+    private TicketRepository ticketRepository;
+
+    @Autowired
+    private BookingJournal bookingJournal;
+
+    @Value("${popcorn-palace.booking.seat-map.expire-after-access:PT30M}")
+    private Duration expireAfterAccess;
+
+    private ConcurrentMap<Long, ShowtimeSeats> showtimes;
+
+    @PostConstruct
+    public void init() {
+        showtimes = Caffeine.newBuilder()
+                .expireAfterAccess(expireAfterAccess)
+                .<Long, ShowtimeSeats>build()
+                .asMap();
+    }
+
+    /**
+     * Checks if the seats of the given showtime are already loaded into memory.
+     *
+     * @param showtimeId the ID of the showtime
+     * @return true if the showtime bitmap is loaded, false otherwise
+     */
+    public boolean isLoaded(Long showtimeId) {
+        ShowtimeSeats seats = showtimes.get(showtimeId);
+        return seats != null && seats.isLoaded();
+    }
+
+    /**
+     * Checks if a specific seat of a showtime is taken.
+     *
+     * @param showtimeId the ID of the showtime
+     * @param seatNumber the seat number to check
+     * @return true if the seat is taken, false otherwise
+     */
+    public boolean isTaken(Long showtimeId, int seatNumber) {
+        return seatsOf(showtimeId).isTaken(seatNumber);
+    }
+
+    /**
+     * Atomically claims a seat of a showtime.
+     *
+     * @param showtimeId the ID of the showtime
+     * @param seatNumber the seat number to claim
+     * @return true if the seat was free and is now claimed by the caller, false if it was already taken
+     */
+    public boolean claim(Long showtimeId, int seatNumber) {
+        return seatsOf(showtimeId).claim(seatNumber);
+    }
+
+    /**
+     * Releases a previously claimed seat, for example when persisting its ticket failed.
+     *
+     * @param showtimeId the ID of the showtime
+     * @param seatNumber the seat number to release
+     */
+    public void release(Long showtimeId, int seatNumber) {
+        ShowtimeSeats seats = showtimes.get(showtimeId);
+        if (seats != null) {
+            seats.release(seatNumber);
+        }
+    }
+
+    /**
+     * Returns the current version of the seats of a showtime, without copying them.
+     *
+     * @param showtimeId the ID of the showtime
+     * @return the version of the seats, which changes whenever a seat is taken or freed
+     */
+    public String getVersion(Long showtimeId) {
+        return seatsOf(showtimeId).version();
+    }
+
+    /**
+     * Takes a snapshot of the occupied seats of a showtime.
+     *
+     * @param showtimeId the ID of the showtime
+     * @return the occupied seats of the showtime with their version
+     */
+    public SeatMap snapshot(Long showtimeId) {
+        return seatsOf(showtimeId).snapshot();
+    }
+
+    /**
+     * Loads the bitmap of a showtime from seat numbers the caller read from the ticket table,
+     * unless the showtime is already loaded or being loaded.
+     * This lets non-blocking callers load a showtime without the blocking repository read.
+     * The tickets of the booking journal are not included, so it is only meant for callers that do not use the journal.
+     *
+     * @param showtimeId the ID of the showtime
+     * @param seatNumbers the occupied seat numbers of the showtime
+     */
+    public void load(Long showtimeId, Collection<Integer> seatNumbers) {
+        ShowtimeSeats loaded = new ShowtimeSeats();
+        for (Integer seatNumber : seatNumbers) {
+            loaded.claim(seatNumber);
+        }
+
+        loaded.loaded.countDown();
+        showtimes.putIfAbsent(showtimeId, loaded);
+    }
+
+    /**
+     * Applies a seat taken or freed by another instance of the server to the bitmap of its showtime.
+     * A showtime that is not loaded is left alone, its load will read the seat from the ticket table,
+     * and a showtime that is still loading is dropped, since its load may have read the table before the change.
+     *
+     * @param showtimeId the ID of the showtime
+     * @param seatNumber the seat number that changed
+     * @param taken true if the seat was taken, false if it was freed
+     */
+    public void update(Long showtimeId, int seatNumber, boolean taken) {
+        ShowtimeSeats seats = showtimes.get(showtimeId);
+        if (seats == null) {
+            return;
+        }
+
+        if (!seats.isLoaded()) {
+            showtimes.remove(showtimeId, seats);
+        } else if (taken) {
+            seats.claim(seatNumber);
+        } else {
+            seats.release(seatNumber);
+        }
+    }
+
+    /**
+     * Drops the bitmap of a showtime, the next access reloads it from the ticket table.
+     *
+     * @param showtimeId the ID of the showtime
+     */
+    public void evict(Long showtimeId) {
+        showtimes.remove(showtimeId);
+    }
+
+    /**
+     * Drops the bitmaps of all the showtimes.
+     */
+    public void evictAll() {
+        showtimes.clear();
+    }
+
+    /**
+     * Returns the bitmap of a showtime, loading it from the ticket table on first access.
+     * Only one thread loads a showtime, concurrent callers wait for it to finish.
+     * The load runs outside of any map lock, so it never blocks access to other showtimes.
+     *
+     * @param showtimeId the ID of the showtime
+     * @return the loaded bitmap of the showtime
+     */
+    private ShowtimeSeats seatsOf(Long showtimeId) {
+        ShowtimeSeats seats = showtimes.get(showtimeId);
+        if (seats == null) {
+            ShowtimeSeats created = new ShowtimeSeats();
+            seats = showtimes.putIfAbsent(showtimeId, created);
+            if (seats == null) {
+                try {
+                    // A journaled ticket leaves the pending seats once it is committed, so they are read on both sides.
+                    Set<Integer> seatNumbers = new HashSet<>();
+                    if (bookingJournal.isEnabled()) {
+                        seatNumbers.addAll(bookingJournal.getPendingSeatNumbers(showtimeId));
+                    }
+
+                    seatNumbers.addAll(ticketRepository.getSeatNumbersByShowtimeId(showtimeId));
+                    if (bookingJournal.isEnabled()) {
+                        seatNumbers.addAll(bookingJournal.getPendingSeatNumbers(showtimeId));
+                    }
+
+                    for (Integer seatNumber : seatNumbers) {
+                        created.claim(seatNumber);
+                    }
+                } catch (RuntimeException e) {
+                    showtimes.remove(showtimeId, created);
+                    created.failed = e;
+                    created.loaded.countDown();
+                    throw e;
+                }
+
+                created.loaded.countDown();
+                return created;
+            }
+        }
+
+        seats.awaitLoaded();
+        return seats;
+    }
+
+    /**
+     * Bitmap of the occupied seats of a single showtime, split into pages of {@value #SEATS_PER_PAGE}
+     * seats that are allocated on demand so sparse seat numbers stay cheap.
+     */
+    private static class ShowtimeSeats {
+        private final ConcurrentHashMap<Integer, AtomicLongArray> pages = new ConcurrentHashMap<>();
+        private final CountDownLatch loaded = new CountDownLatch(1);
+        private final long generation = GENERATIONS.incrementAndGet();
+        private final AtomicLong changes = new AtomicLong();
+        private volatile RuntimeException failed;
+
+        boolean isLoaded() {
+            return loaded.getCount() == 0 && failed == null;
+        }
+
+        void awaitLoaded() {
+            try {
+                loaded.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while loading the seats", e);
+            }
+
+            if (failed != null) {
+                throw failed;
+            }
+        }
+
+        boolean isTaken(int seatNumber) {
+            AtomicLongArray words = pages.get(seatNumber / SEATS_PER_PAGE);
+            return words != null && (words.get(wordIndex(seatNumber)) & mask(seatNumber)) != 0;
+        }
+
+        boolean claim(int seatNumber) {
+            AtomicLongArray words = pages.computeIfAbsent(seatNumber / SEATS_PER_PAGE,
+                    page -> new AtomicLongArray(SEATS_PER_PAGE / Long.SIZE));
+            int index = wordIndex(seatNumber);
+            long mask = mask(seatNumber);
+            long word;
+            do {
+                word = words.get(index);
+                if ((word & mask) != 0) {
+                    return false;
+                }
+            } while (!words.compareAndSet(index, word, word | mask));
+
+            changes.incrementAndGet();
+            return true;
+        }
+
+        void release(int seatNumber) {
+            AtomicLongArray words = pages.get(seatNumber / SEATS_PER_PAGE);
+            if (words != null) {
+                long mask = mask(seatNumber);
+                if ((words.getAndUpdate(wordIndex(seatNumber), word -> word & ~mask) & mask) != 0) {
+                    changes.incrementAndGet();
+                }
+            }
+        }
+
+        String version() {
+            return generation + "." + changes.get();
+        }
+
+        /**
+         * Copies the bitmap without blocking the claims. The version is read before the copy and a seat
+         * only changes the version after its bit is updated, so a seat changed during the copy always leads
+         * to a newer version than the one of the snapshot, and a client never keeps a stale snapshot.
+         */
+        SeatMap snapshot() {
+            String version = version();
+            int pageCount = 0;
+            for (Integer page : pages.keySet()) {
+                pageCount = Math.max(pageCount, page + 1);
+            }
+
+            byte[] bitmap = new byte[pageCount * SEATS_PER_PAGE / Byte.SIZE];
+            int length = 0;
+            for (var entry : pages.entrySet()) {
+                AtomicLongArray words = entry.getValue();
+                int offset = entry.getKey() * SEATS_PER_PAGE / Byte.SIZE;
+                for (int index = 0; index < words.length(); index++) {
+                    long word = words.get(index);
+                    for (int b = 0; b < Long.BYTES && word != 0; b++, word >>>= Byte.SIZE) {
+                        int position = offset + index * Long.BYTES + b;
+                        bitmap[position] = (byte) word;
+                        if (bitmap[position] != 0) {
+                            length = Math.max(length, position + 1);
+                        }
+                    }
+                }
+            }
+
+            return new SeatMap(version, Arrays.copyOf(bitmap, length));
+        }
+
+        private static int wordIndex(int seatNumber) {
+            return (seatNumber % SEATS_PER_PAGE) / Long.SIZE;
+        }
+
+        private static long mask(int seatNumber) {
+            return 1L << (seatNumber % Long.SIZE);
+        }
+    }
+}
@@ -1,14 +1,21 @@
 package com.att.tdp.popcorn_palace.service;
 
+import com.att.tdp.popcorn_palace.dto.SeatMap;
 import com.att.tdp.popcorn_palace.entity.Showtime;
+import com.att.tdp.popcorn_palace.exception.PreconditionFailedException;
 import com.att.tdp.popcorn_palace.exception.ResourceNotFoundException;
 import com.att.tdp.popcorn_palace.repository.ShowtimeRepository;
-import com.att.tdp.popcorn_palace.repository.TicketRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 
+import java.time.OffsetDateTime;
 import java.util.List;
 
+import static com.att.tdp.popcorn_palace.repository.ShowtimeSpecifications.*;
+
 /**
  * A service class responsible for handling all operations related to showtimes.
  * This includes creating, retrieving, updating, and deleting showtime entries.
@@ -17,6 +24,11 @@ import java.util.List;
  */
 @Service
 public class ShowtimeService {
+    public static final String OVERLAP_ERROR = "The showtime overlaps with an existing schedule for the same theater." +
+            " Please select a different time.";
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final Sort START_TIME_ORDER = Sort.by("startTime", "id");
+
     @Autowired
     private ShowtimeRepository showtimeRepository;
 
@@ -24,17 +36,38 @@ public class ShowtimeService {
     private MovieService movieService;
 
     @Autowired
-    private TicketRepository ticketRepository;
+    private SeatOccupancyMap seatOccupancyMap;
+
+    @Autowired
+    private TheaterScheduleIndex theaterScheduleIndex;
+
+    @Autowired
+    private TheaterLocks theaterLocks;
+
+    @Autowired
+    private ReplicaReads replicaReads;
+
+    @Autowired
+    private CatalogPurger catalogPurger;
+
+    @Autowired
+    private CatalogSnapshot catalogSnapshot;
+
+    @Autowired
+    private ChangeNotifier changeNotifier;
 
     /**
-     * Retrieves a Showtime object based on the provided showtime ID.
+     * Retrieves a Showtime object based on the provided showtime ID, from the catalog snapshot when it is enabled,
+     * otherwise from the read replica when it is enabled.
      *
      * @param showtimeId the ID of the showtime to be retrieved
      * @return the Showtime object associated with the given ID
      * @throws ResourceNotFoundException if no showtime is found with the provided ID
      */
     public Showtime getShowtimeById(Long showtimeId) {
-        Showtime showtime = showtimeRepository.findById(showtimeId).orElse(null);
+        Showtime showtime = catalogSnapshot.isEnabled()
+                ? catalogSnapshot.get().getShowtime(showtimeId)
+                : replicaReads.read(() -> showtimeRepository.findById(showtimeId)).orElse(null);
         if (showtime == null) {
             throw new ResourceNotFoundException("Showtime not found with id - " + showtimeId);
         }
@@ -42,9 +75,106 @@ public class ShowtimeService {
         return showtime;
     }
 
+    /**
+     * Retrieves a page of showtimes matching the given filters, ordered by start time and ID.
+     * Every filter is optional, and only the given ones are added to the query, so a query on a theater
+     * or a movie in a time range reads only that range of the matching composite index.
+     * The next page starts after the start time and ID of the last showtime of this page.
+     * The query runs on the read replica when it is enabled. When the catalog snapshot is enabled the page is
+     * read from its sorted showtimes instead, without a query.
+     *
+     * @param theater the theater of the showtimes, or null for all the theaters
+     * @param movieId the ID of the movie of the showtimes, or null for all the movies
+     * @param from the earliest start time of the showtimes, inclusive, or null
+     * @param to the latest start time of the showtimes, exclusive, or null
+     * @param afterStartTime the start time of the last showtime of the previous page, null for the first page
+     * @param afterId the ID of the last showtime of the previous page, null for the first page
+     * @param limit the maximum number of showtimes in the page
+     * @return the showtimes of the page
+     * @throws IllegalArgumentException if the limit is not between 1 and the maximum page size, if the time range
+     *         is reversed, or if only one of the start time and ID of the previous page is given
+     */
+    public List<Showtime> getShowtimes(String theater, Long movieId, OffsetDateTime from, OffsetDateTime to,
+                                       OffsetDateTime afterStartTime, Long afterId, int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Showtime page limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+
+        if (from != null && to != null && from.isAfter(to)) {
+            throw new IllegalArgumentException("The start of the time range must be before its end");
+        }
+
+        if ((afterStartTime == null) != (afterId == null)) {
+            throw new IllegalArgumentException("The start time and the ID of the previous page must be given together");
+        }
+
+        if (catalogSnapshot.isEnabled()) {
+            return catalogSnapshot.get().getShowtimes(theater, movieId, from, to, afterStartTime, afterId, limit);
+        }
+
+        Specification<Showtime> specification = Specification.where(null);
+        if (theater != null) {
+            specification = specification.and(theaterIs(theater));
+        }
+
+        if (movieId != null) {
+            specification = specification.and(movieIdIs(movieId));
+        }
+
+        if (from != null) {
+            specification = specification.and(startsFrom(from));
+        }
+
+        if (to != null) {
+            specification = specification.and(startsBefore(to));
+        }
+
+        if (afterId != null) {
+            specification = specification.and(after(afterStartTime, afterId));
+        }
+
+        Specification<Showtime> filters = specification;
+        return replicaReads.read(() -> showtimeRepository.findBy(filters,
+                query -> query.sortBy(START_TIME_ORDER).limit(limit).all()));
+    }
+
+    /**
+     * Retrieves the version of the occupied seats of a showtime, without copying them.
+     * The seats are served from the in-memory seat map, which is loaded with a single query on the ticket table.
+     *
+     * @param showtimeId the ID of the showtime
+     * @return the version of the seats of the showtime, which changes whenever a seat is taken or freed
+     * @throws ResourceNotFoundException if no showtime is found with the provided ID
+     */
+    public String getSeatMapVersion(Long showtimeId) {
+        checkSeatMapShowtime(showtimeId);
+        return seatOccupancyMap.getVersion(showtimeId);
+    }
+
+    /**
+     * Retrieves a snapshot of the occupied seats of a showtime from the in-memory seat map.
+     *
+     * @param showtimeId the ID of the showtime
+     * @return the occupied seats of the showtime with their version
+     * @throws ResourceNotFoundException if no showtime is found with the provided ID
+     */
+    public SeatMap getSeatMap(Long showtimeId) {
+        checkSeatMapShowtime(showtimeId);
+        return seatOccupancyMap.snapshot(showtimeId);
+    }
+
+    private void checkSeatMapShowtime(Long showtimeId) {
+        if (!seatOccupancyMap.isLoaded(showtimeId) && !isShowtimeExist(showtimeId)) {
+            throw new ResourceNotFoundException("Showtime not found with id - " + showtimeId);
+        }
+    }
+
     /**
      * Saves a new Showtime entity to the repository after performing validations for overlaps,
      * movie existence, and theater-specific scheduling conflicts.
+     * The overlap check and the save run under the lock of the theater, so concurrent writes to the same theater
+     * cannot both pass the check. The saved showtime is added to the schedule index of its theater,
+     * and published to the catalog snapshot once it is committed.
      *
      * @param showtime the Showtime object to save.
      * @return the saved Showtime object if all validations pass.
@@ -57,8 +187,7 @@ public class ShowtimeService {
             throw new IllegalArgumentException("Can't assign the id of a new entity");
         }
 
-        List<Showtime> showtimesSameTheater = getShowtimeByTheater(showtime.getTheater());
-        String validation = showtime.validate(showtimesSameTheater);
+        String validation = showtime.validate();
         if (validation != null) {
             throw new IllegalArgumentException(validation);
         }
@@ -67,53 +196,80 @@ public class ShowtimeService {
             throw new ResourceNotFoundException("Movie not found with id - " + showtime.getMovieId());
         }
 
-        if (checkOverLap(showtime, showtimesSameTheater)) {
-            throw new IllegalArgumentException("The showtime overlaps with an existing schedule for the same theater." +
-                    " Please select a different time.");
-        }
-
-        return showtimeRepository.save(showtime);
+        return theaterLocks.withLock(showtime.getTheater(), () -> {
+            checkOverLapWhileLocked(showtime);
+            Showtime savedShowtime = showtimeRepository.save(showtime);
+            theaterScheduleIndex.add(savedShowtime);
+            catalogSnapshot.saveShowtimes(List.of(savedShowtime));
+            changeNotifier.showtimeSaved(savedShowtime.getId(), savedShowtime.getTheater());
+            return savedShowtime;
+        });
     }
 
     /**
-     * Deletes a showtime and its associated tickets from the database.
+     * Deletes a showtime and its associated tickets from the database with a single statement,
+     * and drops it from the in-memory seat map and theater schedule index.
      *
      * @param showtimeId the ID of the showtime to be deleted
      * @throws ResourceNotFoundException if the showtime with the specified ID is not found
      */
     public void deleteShowtime(Long showtimeId) {
-        Showtime oldShowtime = showtimeRepository.findById(showtimeId).orElse(null);
-        if (oldShowtime == null) {
+        if (!catalogPurger.deleteShowtime(showtimeId)) {
             throw new ResourceNotFoundException("Showtime not found with id - " + showtimeId);
         }
+    }
 
-        ticketRepository.deleteTicketByShowtimeId(showtimeId);
-        showtimeRepository.deleteById(showtimeId);
+    /**
+     * Deletes a showtime and its associated tickets in the background, purging the tickets in batches.
+     * The showtime stays readable until the purge is done.
+     *
+     * @param showtimeId the ID of the showtime to be purged
+     * @throws ResourceNotFoundException if the showtime with the specified ID is not found
+     */
+    public void purgeShowtime(Long showtimeId) {
+        if (!isShowtimeExist(showtimeId)) {
+            throw new ResourceNotFoundException("Showtime not found with id - " + showtimeId);
+        }
+
+        catalogPurger.purgeShowtime(showtimeId);
     }
 
     /**
-     * Retrieves a list of showtimes for a specified theater.
+     * Retrieves a list of showtimes for a specified theater, from the catalog snapshot when it is enabled,
+     * otherwise from the read replica when it is enabled.
      *
      * @param theater the name of the theater for which to retrieve the showtimes
      * @return a list of showtime objects associated with the specified theater
      */
     public List<Showtime> getShowtimeByTheater(String theater) {
-        return showtimeRepository.getShowtimeByTheater(theater);
+        if (catalogSnapshot.isEnabled()) {
+            return catalogSnapshot.get().getShowtimesOfTheater(theater);
+        }
+
+        return replicaReads.read(() -> showtimeRepository.getShowtimeByTheater(theater));
     }
 
     /**
-     * Updates an existing Showtime with the specified details.
+     * Updates an existing Showtime with the specified details,
+     * moves it to its new interval in the theater schedule index and publishes it to the catalog snapshot.
+     * The overlap check and the save run under the lock of the new theater of the showtime.
+     * The update is saved with the version of the showtime, so it fails instead of overwriting a concurrent one.
+     * When an expected version is given the update is rejected unless the showtime still has it,
+     * checked once before taking the lock and again on the showtime read under the lock.
      *
      * @param showtimeId The ID of the showtime to update.
      * @param showtime The Showtime object containing updated information.
      *                 Its ID must be null as the method will set it.
+     * @param expectedVersion The version the client read the showtime with, or null to update any version.
      * @return The updated Showtime object after saving it to the repository.
      * @throws IllegalArgumentException If the provided Showtime object contains an ID
      *                                  or its details violate validation rules.
      * @throws ResourceNotFoundException If the Showtime or Movie associated with the
      *                                   provided IDs does not exist.
+     * @throws PreconditionFailedException If the showtime does not have the expected version.
+     * @throws OptimisticLockingFailureException If the showtime was updated concurrently and no version was expected.
      */
-    public Showtime updateShowtime(Long showtimeId, Showtime showtime) {
+    public Showtime updateShowtime(Long showtimeId, Showtime showtime, Long expectedVersion) {
         if (showtime.getId() != null) {
             throw new IllegalArgumentException("Can't assign the id of a new entity");
         }
@@ -124,60 +280,110 @@ public class ShowtimeService {
             throw new ResourceNotFoundException("Showtime not found with id - " + showtimeId);
         }
 
+        checkVersion(oldShowtime, expectedVersion);
+
         if (showtime.getMovieId() != null && !movieService.isMovieExistById(showtime.getMovieId())) {
             throw new ResourceNotFoundException("Movie not found with id - " + showtime.getMovieId());
         }
 
-        List<Showtime> showtimesSameTheater = getShowtimeByTheater(showtime.getTheater());
-        String validation = showtime.validate(showtimesSameTheater);
+        String validation = showtime.validate();
         if (validation != null) {
             throw new IllegalArgumentException(validation);
         }
 
-        if (checkOverLap(showtime, showtimesSameTheater)) {
-            throw new IllegalArgumentException("The showtime overlaps with an existing schedule for the same theater." +
-                    " Please select a different time.");
+        try {
+            return theaterLocks.withLock(showtime.getTheater(), () -> updateWhileLocked(showtime, expectedVersion));
+        } catch (OptimisticLockingFailureException e) {
+            // The schedule index was changed before the update failed, so the theaters the update touched are
+            // reloaded on their next check, including the one the concurrent update left the showtime in.
+            theaterScheduleIndex.evict(oldShowtime.getTheater());
+            theaterScheduleIndex.evict(showtime.getTheater());
+            theaterScheduleIndex.evict(showtimeRepository.getTheaterById(showtimeId));
+            if (expectedVersion != null) {
+                throw new PreconditionFailedException("Showtime was modified since version " + expectedVersion
+                        + " - " + showtimeId);
+            }
+
+            throw e;
         }
+    }
 
-        Showtime existingShowtime = getShowtimeById(showtimeId);
+    private Showtime updateWhileLocked(Showtime showtime, Long expectedVersion) {
+        Long showtimeId = showtime.getId();
+        checkOverLapWhileLocked(showtime);
+        // Read from the primary, since the replica may not have the latest version of the showtime yet.
+        Showtime existingShowtime = showtimeRepository.findById(showtimeId)
+                .orElseThrow(() -> new ResourceNotFoundException("Showtime not found with id - " + showtimeId));
+        checkVersion(existingShowtime, expectedVersion);
+        String oldTheater = existingShowtime.getTheater();
         existingShowtime.setMovieId(showtime.getMovieId());
         existingShowtime.setTheater(showtime.getTheater());
         existingShowtime.setStartTime(showtime.getStartTime());
         existingShowtime.setEndTime(showtime.getEndTime());
         existingShowtime.setPrice(showtime.getPrice());
-        return showtimeRepository.save(existingShowtime);
+        // Flushed so a concurrent update fails here, before the schedule index is changed.
+        Showtime savedShowtime = showtimeRepository.saveAndFlush(existingShowtime);
+        theaterScheduleIndex.remove(oldTheater, showtimeId);
+        theaterScheduleIndex.add(savedShowtime);
+        catalogSnapshot.saveShowtimes(List.of(savedShowtime));
+        changeNotifier.showtimeSaved(showtimeId, oldTheater);
+        changeNotifier.showtimeSaved(showtimeId, savedShowtime.getTheater());
+        return savedShowtime;
+    }
+
+    private static void checkVersion(Showtime showtime, Long expectedVersion) {
+        if (expectedVersion != null && !expectedVersion.equals(showtime.getVersion())) {
+            throw new PreconditionFailedException("Showtime was modified since version " + expectedVersion
+                    + " - " + showtime.getId());
+        }
     }
 
     /**
-     * Checks if a showtime exists in the repository based on the given showtime ID.
+     * Checks if a showtime exists based on the given showtime ID, in the catalog snapshot when it is enabled,
+     * otherwise in the repository.
      *
      * @param showtimeId the unique identifier of the showtime to be checked
      * @return true if a showtime with the given ID exists, otherwise false
      */
     public boolean isShowtimeExist(Long showtimeId) {
-        return showtimeRepository.existsById(showtimeId);
+        if (catalogSnapshot.isEnabled()) {
+            return catalogSnapshot.get().getShowtime(showtimeId) != null;
+        }
+
+        // existsById always counts in the database, findById is served by the second-level cache when it is on.
+        return showtimeRepository.findById(showtimeId).isPresent();
     }
 
     /**
-     * Checks if the given showtime overlaps with any showtime in the list of showtimes for the same theater.
+     * Checks if the given showtime overlaps with any other showtime scheduled in the same theater.
+     * The check is answered by the theater schedule index with a binary search over the sorted intervals,
+     * instead of loading every showtime of the theater. It is the check of the writes when the advisory locks
+     * are disabled, with the advisory locks the writes check the database instead.
      *
      * @param showtime the showtime to check for overlaps
-     * @param showtimesSameTheater the list of showtimes in the same theater to compare against
-     * @return true if the given showtime overlaps with any showtime in the list, false otherwise
+     * @return true if the given showtime overlaps with another showtime of its theater, false otherwise
      */
-    public boolean checkOverLap(Showtime showtime, List<Showtime> showtimesSameTheater) {
-        for (Showtime showtimeIter : showtimesSameTheater) {
-            if (!showtimeIter.getId().equals(showtime.getId())
-                    && ((showtimeIter.getStartTime().compareTo(showtime.getStartTime()) <= 0
-                    && showtime.getStartTime().compareTo(showtimeIter.getEndTime()) <= 0)
-                    || (showtimeIter.getStartTime().compareTo(showtime.getEndTime()) <= 0
-                    && showtime.getEndTime().compareTo(showtimeIter.getEndTime()) <= 0))) {
-                return true;
+    public boolean checkOverLap(Showtime showtime) {
+        return theaterScheduleIndex.overlaps(showtime.getTheater(), showtime.getStartTime(), showtime.getEndTime(),
+                showtime.getId());
+    }
 
-            }
+    /**
+     * Rejects a showtime that overlaps another showtime of its theater, while the lock of the theater is held.
+     * With the advisory locks other instances of the server may have written to the theater, so the check
+     * is run against the database instead of the schedule index of this instance.
+     *
+     * @param showtime the showtime to check for overlaps
+     * @throws IllegalArgumentException if the showtime overlaps with another showtime of its theater
+     */
+    private void checkOverLapWhileLocked(Showtime showtime) {
+        boolean overlaps = theaterLocks.isAdvisory()
+                ? showtimeRepository.existsOverlap(showtime.getTheater(), showtime.getStartTime(), showtime.getEndTime(),
+                        showtime.getId() == null ? Long.MIN_VALUE : showtime.getId())
+                : checkOverLap(showtime);
+        if (overlaps) {
+            throw new IllegalArgumentException(OVERLAP_ERROR);
         }
-
-        return false;
     }
 
 }
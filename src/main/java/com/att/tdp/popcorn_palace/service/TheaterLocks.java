@@ -0,0 +1,146 @@
+package com.att.tdp.popcorn_palace.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Serializes the writes of the showtimes of a theater, so the overlap check and the save of a showtime
+ * cannot interleave with another write to the same theater.
+ * Inside the server every theater has its own lock, created on first use and dropped once no thread holds
+ * or waits for it, so writes to different theaters never wait for each other.
+ * When {@code popcorn-palace.showtime.advisory-locks.enabled} is set the writes also take a PostgreSQL
+ * transaction-level advisory lock keyed by the hash of the theater, which serializes them across all the
+ * instances of the server and is released when the transaction of the write ends.
+ * The time spent waiting for the locks is published as the "showtime.lock.wait" timer tagged by lock.
+ * The action runs in a single transaction in both cases, so its writes and their change notifications
+ * are committed together.
+ */
+@Component
+public class TheaterLocks {
+    private static final String ADVISORY_LOCK = "SELECT pg_advisory_xact_lock(hashtextextended(?, 0))";
+    private static final ResultSetExtractor<Void> IGNORE_RESULT = resultSet -> null;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${popcorn-palace.showtime.advisory-locks.enabled:true}")
+    private boolean advisoryLocks;
+
+    private final ConcurrentHashMap<String, TheaterLock> locks = new ConcurrentHashMap<>();
+    private Timer localWaitTimer;
+    private Timer advisoryWaitTimer;
+
+    @PostConstruct
+    public void init() {
+        localWaitTimer = waitTimer("local");
+        advisoryWaitTimer = waitTimer("advisory");
+    }
+
+    /**
+     * Tells if the writes are serialized across the instances of the server, in which case the state of a theater
+     * must be read from the database while its locks are held, since other instances may have changed it.
+     *
+     * @return true if the advisory locks are enabled, false otherwise
+     */
+    public boolean isAdvisory() {
+        return advisoryLocks;
+    }
+
+    /**
+     * Runs an action in a transaction while holding the locks of a theater.
+     * With the advisory locks the action runs in the transaction holding the advisory lock, which is released
+     * once the transaction is committed.
+     *
+     * @param theater the name of the theater to lock
+     * @param action the action to run
+     * @return the result of the action
+     */
+    public <T> T withLock(String theater, Supplier<T> action) {
+        return withLocks(List.of(theater), action);
+    }
+
+    /**
+     * Runs an action in a single transaction while holding the locks of several theaters.
+     * The locks are taken in the order of the theater names, so two writes locking some of the same theaters
+     * cannot deadlock.
+     *
+     * @param theaters the names of the theaters to lock
+     * @param action the action to run
+     * @return the result of the action
+     */
+    public <T> T withLocks(Collection<String> theaters, Supplier<T> action) {
+        List<String> sortedTheaters = new ArrayList<>(new TreeSet<>(theaters));
+        List<TheaterLock> acquired = new ArrayList<>(sortedTheaters.size());
+        try {
+            long start = System.nanoTime();
+            for (String theater : sortedTheaters) {
+                TheaterLock theaterLock = locks.compute(theater, (key, current) -> {
+                    TheaterLock result = current == null ? new TheaterLock() : current;
+                    result.users++;
+                    return result;
+                });
+                acquired.add(theaterLock);
+                theaterLock.lock.lock();
+            }
+
+            localWaitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return transactionTemplate.execute(status -> {
+                if (!advisoryLocks) {
+                    return action.get();
+                }
+
+                long advisoryStart = System.nanoTime();
+                for (String theater : sortedTheaters) {
+                    jdbcTemplate.query(ADVISORY_LOCK, IGNORE_RESULT, theater);
+                }
+
+                advisoryWaitTimer.record(System.nanoTime() - advisoryStart, TimeUnit.NANOSECONDS);
+                return action.get();
+            });
+        } finally {
+            for (int i = acquired.size() - 1; i >= 0; i--) {
+                acquired.get(i).lock.unlock();
+                locks.computeIfPresent(sortedTheaters.get(i), (key, current) -> --current.users == 0 ? null : current);
+            }
+        }
+    }
+
+    private Timer waitTimer(String lock) {
+        return Timer.builder("showtime.lock.wait")
+                .description("Time spent waiting for the locks of a theater before writing its showtimes")
+                .tag("lock", lock)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * The lock of a theater with the number of threads holding or waiting for it, which is only changed
+     * inside the atomic compute of the map.
+     */
+    private static final class TheaterLock {
+        private final ReentrantLock lock = new ReentrantLock();
+        private int users;
+    }
+}
@@ -0,0 +1,289 @@
+package com.att.tdp.popcorn_palace.service;
+
+import com.att.tdp.popcorn_palace.entity.Showtime;
+import com.att.tdp.popcorn_palace.repository.ShowtimeRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory index of the scheduled time intervals of every theater.
+ * The intervals of a theater are kept sorted by their start instant in primitive arrays of epoch microseconds,
+ * together with the running maximum of their end instants, so an overlap query is a binary search instead of
+ * a scan over all the showtimes of the theater.
+ * The schedule of a theater is loaded lazily the first time it is queried and is kept in sync by
+ * {@link ShowtimeService} on every save, update and delete.
+ * The index answers the overlap checks of a single instance of the server. With the advisory locks of
+ * {@link TheaterLocks} the checks run in the database, since other instances may have written to the theater,
+ * so no schedule is ever loaded and keeping the index in sync is a map lookup that finds nothing.
+ */
+@Component
+public class TheaterScheduleIndex {
+    @Autowired
+    private ShowtimeRepository showtimeRepository;
+
+    private final ConcurrentHashMap<String, TheaterSchedule> theaters = new ConcurrentHashMap<>();
+
+    /**
+     * Checks if the interval [startTime, endTime] overlaps any showtime scheduled in the theater,
+     * ignoring the showtime with the given ID.
+     *
+     * @param theater the name of the theater
+     * @param startTime the start of the interval, inclusive
+     * @param endTime the end of the interval, inclusive
+     * @param ignoredShowtimeId the ID of a showtime to leave out of the check, may be null
+     * @return true if the interval overlaps an existing showtime, false otherwise
+     */
+    public boolean overlaps(String theater, OffsetDateTime startTime, OffsetDateTime endTime, Long ignoredShowtimeId) {
+        long ignored = ignoredShowtimeId == null ? Long.MIN_VALUE : ignoredShowtimeId;
+        return scheduleOf(theater).intervals.overlaps(toEpochMicros(startTime), toEpochMicros(endTime), ignored);
+    }
+
+    /**
+     * Adds a saved showtime to the schedule of its theater, replacing any previous interval with the same ID.
+     * Theaters that were not loaded yet are left untouched, they will read the showtime from the database.
+     *
+     * @param showtime the saved showtime
+     */
+    public void add(Showtime showtime) {
+        TheaterSchedule schedule = loadedScheduleOf(showtime.getTheater());
+        if (schedule != null) {
+            schedule.lock.lock();
+            try {
+                schedule.intervals = schedule.intervals.without(showtime.getId())
+                        .with(showtime.getId(), toEpochMicros(showtime.getStartTime()), toEpochMicros(showtime.getEndTime()));
+            } finally {
+                schedule.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Removes a showtime from the schedule of a theater.
+     *
+     * @param theater the name of the theater the showtime was scheduled in
+     * @param showtimeId the ID of the showtime
+     */
+    public void remove(String theater, Long showtimeId) {
+        TheaterSchedule schedule = loadedScheduleOf(theater);
+        if (schedule != null) {
+            schedule.lock.lock();
+            try {
+                schedule.intervals = schedule.intervals.without(showtimeId);
+            } finally {
+                schedule.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Drops the schedule of a theater, the next access reloads it from the database.
+     *
+     * @param theater the name of the theater
+     */
+    public void evict(String theater) {
+        if (theater != null) {
+            theaters.remove(theater);
+        }
+    }
+
+    /**
+     * Drops the schedules of all the theaters, the next access reloads them from the database.
+     */
+    public void evictAll() {
+        theaters.clear();
+    }
+
+    /**
+     * Converts a date-time to microseconds since the epoch, the precision of a PostgreSQL timestamp.
+     *
+     * @param dateTime the date-time to convert
+     * @return the number of microseconds since the epoch
+     */
+    public static long toEpochMicros(OffsetDateTime dateTime) {
+        return Math.addExact(Math.multiplyExact(dateTime.toEpochSecond(), 1_000_000L), dateTime.getNano() / 1_000);
+    }
+
+    private TheaterSchedule loadedScheduleOf(String theater) {
+        TheaterSchedule schedule = theater == null ? null : theaters.get(theater);
+        if (schedule != null) {
+            schedule.awaitLoaded();
+        }
+
+        return schedule;
+    }
+
+    /**
+     * Returns the schedule of a theater, loading it from the database on first access.
+     * Only one thread loads a theater, concurrent callers wait for it to finish.
+     *
+     * @param theater the name of the theater
+     * @return the loaded schedule of the theater
+     */
+    private TheaterSchedule scheduleOf(String theater) {
+        TheaterSchedule schedule = theaters.get(theater);
+        if (schedule == null) {
+            TheaterSchedule created = new TheaterSchedule();
+            schedule = theaters.putIfAbsent(theater, created);
+            if (schedule == null) {
+                try {
+                    List<Showtime> showtimes = showtimeRepository.getShowtimeByTheater(theater);
+                    created.intervals = Intervals.of(showtimes);
+                } catch (RuntimeException e) {
+                    theaters.remove(theater, created);
+                    created.failed = e;
+                    created.loaded.countDown();
+                    throw e;
+                }
+
+                created.loaded.countDown();
+                return created;
+            }
+        }
+
+        schedule.awaitLoaded();
+        return schedule;
+    }
+
+    /**
+     * The schedule of a single theater. Readers use the current intervals without locking,
+     * writers hold the lock while they publish a new copy.
+     */
+    private static class TheaterSchedule {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final CountDownLatch loaded = new CountDownLatch(1);
+        private volatile Intervals intervals = Intervals.EMPTY;
+        private volatile RuntimeException failed;
+
+        void awaitLoaded() {
+            try {
+                loaded.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while loading the theater schedule", e);
+            }
+
+            if (failed != null) {
+                throw failed;
+            }
+        }
+    }
+
+    /**
+     * Immutable list of intervals sorted by start, with the running maximum of the ends.
+     * The running maximum keeps the binary search correct even if stored intervals overlap each other.
+     */
+    private static final class Intervals {
+        private static final Intervals EMPTY = new Intervals(new long[0], new long[0], new long[0]);
+
+        private final long[] ids;
+        private final long[] starts;
+        private final long[] ends;
+        private final long[] maxEnds;
+
+        private Intervals(long[] ids, long[] starts, long[] ends) {
+            this.ids = ids;
+            this.starts = starts;
+            this.ends = ends;
+            this.maxEnds = new long[ends.length];
+            long maxEnd = Long.MIN_VALUE;
+            for (int i = 0; i < ends.length; i++) {
+                maxEnd = Math.max(maxEnd, ends[i]);
+                maxEnds[i] = maxEnd;
+            }
+        }
+
+        static Intervals of(List<Showtime> showtimes) {
+            long[][] intervals = showtimes.stream()
+                    .filter(showtime -> showtime.getStartTime() != null && showtime.getEndTime() != null)
+                    .map(showtime -> new long[] {showtime.getId(), toEpochMicros(showtime.getStartTime()),
+                            toEpochMicros(showtime.getEndTime())})
+                    .sorted(Comparator.comparingLong(interval -> interval[1]))
+                    .toArray(long[][]::new);
+            long[] ids = new long[intervals.length];
+            long[] starts = new long[intervals.length];
+            long[] ends = new long[intervals.length];
+            for (int i = 0; i < intervals.length; i++) {
+                ids[i] = intervals[i][0];
+                starts[i] = intervals[i][1];
+                ends[i] = intervals[i][2];
+            }
+
+            return new Intervals(ids, starts, ends);
+        }
+
+        boolean overlaps(long start, long end, long ignoredId) {
+            // Only intervals that start at or before the end can overlap, and they are all at or before this index.
+            int i = upperBound(end) - 1;
+            while (i >= 0 && maxEnds[i] >= start) {
+                if (ends[i] >= start && ids[i] != ignoredId) {
+                    return true;
+                }
+
+                i--;
+            }
+
+            return false;
+        }
+
+        Intervals with(long id, long start, long end) {
+            int index = upperBound(start);
+            int size = ids.length;
+            long[] newIds = new long[size + 1];
+            long[] newStarts = new long[size + 1];
+            long[] newEnds = new long[size + 1];
+            System.arraycopy(ids, 0, newIds, 0, index);
+            System.arraycopy(starts, 0, newStarts, 0, index);
+            System.arraycopy(ends, 0, newEnds, 0, index);
+            newIds[index] = id;
+            newStarts[index] = start;
+            newEnds[index] = end;
+            System.arraycopy(ids, index, newIds, index + 1, size - index);
+            System.arraycopy(starts, index, newStarts, index + 1, size - index);
+            System.arraycopy(ends, index, newEnds, index + 1, size - index);
+            return new Intervals(newIds, newStarts, newEnds);
+        }
+
+        Intervals without(long id) {
+            for (int index = 0; index < ids.length; index++) {
+                if (ids[index] == id) {
+                    int size = ids.length;
+                    long[] newIds = Arrays.copyOf(ids, size - 1);
+                    long[] newStarts = Arrays.copyOf(starts, size - 1);
+                    long[] newEnds = Arrays.copyOf(ends, size - 1);
+                    System.arraycopy(ids, index + 1, newIds, index, size - index - 1);
+                    System.arraycopy(starts, index + 1, newStarts, index, size - index - 1);
+                    System.arraycopy(ends, index + 1, newEnds, index, size - index - 1);
+                    return new Intervals(newIds, newStarts, newEnds);
+                }
+            }
+
+            return this;
+        }
+
+        /**
+         * Returns the index of the first interval that starts after the given instant.
+         */
+        private int upperBound(long instant) {
+            int low = 0;
+            int high = starts.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (starts[mid] <= instant) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+
+            return low;
+        }
+    }
+}
@@ -1,13 +1,27 @@
 package com.att.tdp.popcorn_palace.service;
 
+import com.att.tdp.popcorn_palace.dto.BatchBooking;
 import com.att.tdp.popcorn_palace.entity.Ticket;
+import com.att.tdp.popcorn_palace.entity.TicketStatus;
 import com.att.tdp.popcorn_palace.exception.ResourceNotFoundException;
+import com.att.tdp.popcorn_palace.metrics.BookingMetrics;
+import com.att.tdp.popcorn_palace.metrics.BookingMetrics.Outcome;
+import com.att.tdp.popcorn_palace.metrics.BookingMetrics.Stage;
 import com.att.tdp.popcorn_palace.repository.TicketRepository;
+import com.att.tdp.popcorn_palace.util.Uuids;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
 /**
  * Service class responsible for handling operations related to the Ticket entity.
@@ -21,11 +35,36 @@ public class TicketService {
     @Autowired
     private ShowtimeService showtimeService;
 
+    @Autowired
+    private SeatOccupancyMap seatOccupancyMap;
+
+    @Autowired
+    private ChangeNotifier changeNotifier;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private SeatHoldRegistry seatHoldRegistry;
+
+    @Autowired
+    private BookingMetrics bookingMetrics;
+
+    @Autowired
+    private BookingJournal bookingJournal;
+
+    @Value("${popcorn-palace.booking.hold-duration:PT5M}")
+    private Duration holdDuration;
+
     /**
      * Books a ticket for a specific showtime and seat if all validations are met.
      * This method validates the ticket details, ensures the showtime exists,
-     * and verifies that the specified seat is available. It then saves the ticket
+     * and claims the specified seat in the in-memory seat map. It then saves the ticket
      * and returns a response containing the booking ID.
+     * If saving the ticket fails the claimed seat is released, unless the database reports
+     * that the seat was already taken (for example by another instance of the server).
+     * When the booking journal is enabled, the ticket is acknowledged once it is durable in the journal
+     * and is inserted into the database asynchronously.
      *
      * @param ticket the Ticket object containing the details of the showtime, seat, and user
      * @return a map containing the booking ID associated with the successfully booked ticket
@@ -33,43 +72,321 @@ public class TicketService {
      * @throws ResourceNotFoundException if the specified showtime does not exist
      */
     public Map<String, String> bookTicket(Ticket ticket) {
-        System.out.println("1"+ticket);
+        ticket.setStatus(TicketStatus.BOOKED);
+        ticket.setHeldUntil(null);
+        String bookingId = claimAndSave(ticket);
+        bookingMetrics.count(Outcome.BOOKED);
+
+        Map<String, String> response = new HashMap<>();
+        response.put("bookingId", bookingId);
+        return response;
+    }
+
+    /**
+     * Holds a seat of a showtime for a limited time while the user completes the checkout.
+     * The seat is claimed exactly like a booking, but the ticket is saved as held until the hold deadline.
+     * A hold that is not confirmed before its deadline is deleted and its seat is freed again.
+     *
+     * @param ticket the Ticket object containing the details of the showtime, seat, and user
+     * @return a map containing the booking ID of the held ticket and the deadline of the hold
+     * @throws IllegalArgumentException if the ticket details are invalid or the seat is not empty
+     * @throws ResourceNotFoundException if the specified showtime does not exist
+     */
+    public Map<String, String> holdTicket(Ticket ticket) {
+        ticket.setStatus(TicketStatus.HELD);
+        ticket.setHeldUntil(OffsetDateTime.now().plus(holdDuration));
+        String bookingId = claimAndSave(ticket);
+        seatHoldRegistry.track(ticket);
+        bookingMetrics.count(Outcome.HELD);
+
+        Map<String, String> response = new HashMap<>();
+        response.put("bookingId", bookingId);
+        response.put("heldUntil", ticket.getHeldUntil().toString());
+        return response;
+    }
+
+    /**
+     * Confirms a held ticket, turning it into a booking.
+     * The ticket is updated only if it is still held and its hold deadline did not pass.
+     *
+     * @param bookingId the booking ID of the held ticket
+     * @throws ResourceNotFoundException if there is no active hold with the given booking ID
+     */
+    public void confirmHold(String bookingId) {
+        UUID holdId = toHoldId(bookingId);
+        if (ticketRepository.confirmHold(holdId, OffsetDateTime.now(), TicketStatus.HELD, TicketStatus.BOOKED) == 0) {
+            throw new ResourceNotFoundException("Hold not found with bookingId - " + bookingId);
+        }
+
+        seatHoldRegistry.untrack(holdId);
+    }
+
+    /**
+     * Releases a held ticket before its deadline, freeing its seat.
+     *
+     * @param bookingId the booking ID of the held ticket
+     * @throws ResourceNotFoundException if there is no hold with the given booking ID
+     */
+    public void releaseHold(String bookingId) {
+        UUID holdId = toHoldId(bookingId);
+        Ticket ticket = ticketRepository.findById(holdId)
+                .filter(heldTicket -> heldTicket.getStatus() == TicketStatus.HELD)
+                .orElseThrow(() -> new ResourceNotFoundException("Hold not found with bookingId - " + bookingId));
+
+        transactionTemplate.executeWithoutResult(status -> {
+            if (ticketRepository.deleteHold(holdId, TicketStatus.HELD) == 0) {
+                throw new ResourceNotFoundException("Hold not found with bookingId - " + bookingId);
+            }
+
+            changeNotifier.seatFreed(ticket.getShowtimeId(), ticket.getSeatNumber());
+        });
+
+        seatHoldRegistry.untrack(holdId);
+        seatOccupancyMap.release(ticket.getShowtimeId(), ticket.getSeatNumber());
+    }
+
+    /**
+     * Parses the booking ID of a hold.
+     * A booking ID that is not a UUID cannot match any ticket, so it is reported as a missing hold.
+     *
+     * @param bookingId the booking ID of the hold
+     * @return the booking ID as a UUID
+     * @throws ResourceNotFoundException if the booking ID is not a UUID
+     */
+    private static UUID toHoldId(String bookingId) {
+        if (!Uuids.isValid(bookingId)) {
+            throw new ResourceNotFoundException("Hold not found with bookingId - " + bookingId);
+        }
+
+        return UUID.fromString(bookingId);
+    }
+
+    /**
+     * Validates a ticket, claims its seat and saves it.
+     * When the seats of the showtime are not in memory the ticket is inserted by a single conditional statement,
+     * which checks that the showtime exists and that the seat is free, without loading the seats of the showtime.
+     * Otherwise the seat is first claimed in the in-memory seat map, so a taken seat is rejected without
+     * a round trip to the database, and the ticket is then inserted by the same statement or appended to the journal.
+     * The statement only sees the ticket table, so while the booking journal is enabled every ticket, held ones too,
+     * claims its seat in the seat map, which also holds the journaled tickets that are not in the table yet.
+     *
+     * @param ticket the ticket to save
+     * @return the booking ID of the saved ticket
+     * @throws IllegalArgumentException if the ticket details are invalid or the seat is not empty
+     * @throws ResourceNotFoundException if the specified showtime does not exist
+     */
+    private String claimAndSave(Ticket ticket) {
+        long stageStart = bookingMetrics.start();
         String validation = ticket.validate();
-        System.out.println(validation);
+        bookingMetrics.record(Stage.VALIDATION, stageStart);
         if (validation != null) {
+            bookingMetrics.count(Outcome.INVALID);
             throw new IllegalArgumentException(validation);
         }
-        System.out.println("2"+ticket);
 
-        if (!showtimeService.isShowtimeExist(ticket.getShowtimeId())) {
-            throw new ResourceNotFoundException("Showtime not found with id - " + ticket.getShowtimeId());
+        Long showtimeId = ticket.getShowtimeId();
+        boolean journaled = ticket.getStatus() == TicketStatus.BOOKED && bookingJournal.isEnabled();
+        if (!bookingJournal.isEnabled() && !seatOccupancyMap.isLoaded(showtimeId)) {
+            insertIfSeatFree(ticket);
+            // The seats may have been loaded while the ticket was inserted, without it.
+            if (seatOccupancyMap.isLoaded(showtimeId)) {
+                seatOccupancyMap.claim(showtimeId, ticket.getSeatNumber());
+            }
+
+            return ticket.getBookingId().toString();
+        }
+
+        stageStart = bookingMetrics.start();
+        boolean showtimeExists = seatOccupancyMap.isLoaded(showtimeId) || showtimeService.isShowtimeExist(showtimeId);
+        bookingMetrics.record(Stage.SHOWTIME, stageStart);
+        if (!showtimeExists) {
+            bookingMetrics.count(Outcome.NOT_FOUND);
+            throw new ResourceNotFoundException("Showtime not found with id - " + showtimeId);
         }
-        System.out.println("3"+ticket);
 
-        if (!seatIsEmpty(ticket.getShowtimeId(), ticket.getSeatNumber())) {
+        stageStart = bookingMetrics.start();
+        boolean claimed = seatOccupancyMap.claim(showtimeId, ticket.getSeatNumber());
+        bookingMetrics.record(Stage.SEAT, stageStart);
+        if (!claimed) {
+            bookingMetrics.count(Outcome.SEAT_TAKEN);
             throw new IllegalArgumentException("Seat is not empty");
         }
-        System.out.println("4"+ticket);
 
-        ticketRepository.save(ticket);
-        Map<String, String> response = new HashMap<>();
-        response.put("bookingId", ticket.getBookingId());
-        return response;
+        try {
+            if (journaled) {
+                stageStart = bookingMetrics.start();
+                try {
+                    bookingJournal.append(ticket);
+                } finally {
+                    bookingMetrics.record(Stage.INSERT, stageStart);
+                }
+            } else {
+                insertIfSeatFree(ticket);
+            }
+        } catch (IllegalArgumentException e) {
+            // The seat is taken in the database, so it stays claimed in the seat map.
+            throw e;
+        } catch (RuntimeException e) {
+            seatOccupancyMap.release(showtimeId, ticket.getSeatNumber());
+            throw e;
+        }
+
+        if (journaled) {
+            // The journal writes the ticket later, outside any transaction, so the change is sent right away.
+            changeNotifier.seatTaken(showtimeId, ticket.getSeatNumber());
+        }
+
+        return ticket.getBookingId().toString();
+    }
+
+    /**
+     * Inserts a ticket with a single statement that only inserts it if its showtime exists and its seat is free.
+     * The taken seat is notified in the transaction of the insert, so the notification is sent when it commits.
+     * When nothing is inserted the showtime is looked up to tell a missing showtime from a taken seat.
+     * The statement is timed as the stage that decided the outcome: the insert stage for an inserted ticket,
+     * the seat stage for a taken seat and the showtime stage for a missing showtime.
+     *
+     * @param ticket the ticket to insert
+     * @throws IllegalArgumentException if the seat is not empty
+     * @throws ResourceNotFoundException if the showtime of the ticket does not exist
+     */
+    private void insertIfSeatFree(Ticket ticket) {
+        Long showtimeId = ticket.getShowtimeId();
+        long stageStart = bookingMetrics.start();
+        int inserted = transactionTemplate.execute(status -> {
+            int rows = ticketRepository.insertIfSeatFree(ticket.getBookingId(), showtimeId, ticket.getSeatNumber(),
+                    ticket.getUserId(), ticket.getStatus().name(), ticket.getHeldUntil());
+            if (rows > 0) {
+                changeNotifier.seatTaken(showtimeId, ticket.getSeatNumber());
+            }
+
+            return rows;
+        });
+        if (inserted > 0) {
+            bookingMetrics.record(Stage.INSERT, stageStart);
+            return;
+        }
+
+        if (!showtimeService.isShowtimeExist(showtimeId)) {
+            bookingMetrics.record(Stage.SHOWTIME, stageStart);
+            seatOccupancyMap.evict(showtimeId);
+            bookingMetrics.count(Outcome.NOT_FOUND);
+            throw new ResourceNotFoundException("Showtime not found with id - " + showtimeId);
+        }
+
+        bookingMetrics.record(Stage.SEAT, stageStart);
+        bookingMetrics.count(Outcome.SEAT_TAKEN);
+        throw new IllegalArgumentException("Seat is not empty");
+    }
+
+    /**
+     * Books several seats of the same showtime for one user, all or nothing.
+     * The showtime is validated once, every seat is claimed in the in-memory seat map,
+     * and all the tickets are inserted in a single transaction, which Hibernate sends as JDBC batches.
+     * If any seat is taken or the insert fails, no ticket is booked and the claimed seats are released.
+     *
+     * @param booking the BatchBooking object containing the showtime, the seats, and the user
+     * @return a map containing the booking IDs of the booked tickets, in the order of the requested seats
+     * @throws IllegalArgumentException if the booking details are invalid or one of the seats is not empty
+     * @throws ResourceNotFoundException if the specified showtime does not exist
+     */
+    public Map<String, List<String>> bookTickets(BatchBooking booking) {
+        long stageStart = bookingMetrics.start();
+        String validation = booking.validate();
+        List<Ticket> tickets = validation == null ? booking.toTickets() : List.of();
+        for (Ticket ticket : tickets) {
+            ticket.setStatus(TicketStatus.BOOKED);
+            if (validation == null) {
+                validation = ticket.validate();
+            }
+        }
+
+        bookingMetrics.record(Stage.VALIDATION, stageStart);
+        if (validation != null) {
+            bookingMetrics.count(Outcome.INVALID);
+            throw new IllegalArgumentException(validation);
+        }
+
+        Long showtimeId = booking.getShowtimeId();
+        stageStart = bookingMetrics.start();
+        boolean showtimeExists = seatOccupancyMap.isLoaded(showtimeId) || showtimeService.isShowtimeExist(showtimeId);
+        bookingMetrics.record(Stage.SHOWTIME, stageStart);
+        if (!showtimeExists) {
+            bookingMetrics.count(Outcome.NOT_FOUND);
+            throw new ResourceNotFoundException("Showtime not found with id - " + showtimeId);
+        }
+
+        stageStart = bookingMetrics.start();
+        List<Ticket> claimedTickets = new ArrayList<>(tickets.size());
+        for (Ticket ticket : tickets) {
+            if (!seatOccupancyMap.claim(showtimeId, ticket.getSeatNumber())) {
+                releaseSeats(claimedTickets);
+                bookingMetrics.record(Stage.SEAT, stageStart);
+                bookingMetrics.count(Outcome.SEAT_TAKEN);
+                throw new IllegalArgumentException("Seat is not empty - " + ticket.getSeatNumber());
+            }
+
+            claimedTickets.add(ticket);
+        }
 
+        bookingMetrics.record(Stage.SEAT, stageStart);
+        stageStart = bookingMetrics.start();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                ticketRepository.saveAll(tickets);
+                for (Ticket ticket : tickets) {
+                    changeNotifier.seatTaken(showtimeId, ticket.getSeatNumber());
+                }
+            });
+        } catch (DataIntegrityViolationException e) {
+            seatOccupancyMap.evict(showtimeId);
+            if (!showtimeService.isShowtimeExist(showtimeId)) {
+                bookingMetrics.count(Outcome.NOT_FOUND);
+                throw new ResourceNotFoundException("Showtime not found with id - " + showtimeId);
+            }
+
+            bookingMetrics.count(Outcome.SEAT_TAKEN);
+            throw new IllegalArgumentException("Seat is not empty");
+        } catch (RuntimeException e) {
+            releaseSeats(claimedTickets);
+            throw e;
+        } finally {
+            bookingMetrics.record(Stage.INSERT, stageStart);
+        }
+
+        bookingMetrics.count(Outcome.BOOKED);
+        List<String> bookingIds = new ArrayList<>(tickets.size());
+        for (Ticket ticket : tickets) {
+            bookingIds.add(ticket.getBookingId().toString());
+        }
+
+        Map<String, List<String>> response = new HashMap<>();
+        response.put("bookingIds", bookingIds);
+        return response;
     }
 
     /**
      * Checks if a specific seat in a given showtime is empty or not.
-     * Retrieves any existing ticket associated with the specified
-     * showtime and seat number and returns true if the seat is not occupied.
+     * Looks up the seat in the in-memory seat map of the showtime
+     * and returns true if the seat is not occupied.
      *
      * @param showtimeId the ID of the showtime to check the seat for
      * @param seatNumber the seat number to verify for availability
      * @return true if the seat is empty, false otherwise
      */
     public boolean seatIsEmpty(Long showtimeId, Integer seatNumber) {
-        Ticket oldTicket = ticketRepository.getTicketsByShowtimeSeatNumber(showtimeId, seatNumber);
-        return oldTicket == null;
+        return !seatOccupancyMap.isTaken(showtimeId, seatNumber);
+    }
+
+    /**
+     * Releases the seats of the given tickets in the in-memory seat map.
+     *
+     * @param tickets the tickets whose seats were claimed
+     */
+    private void releaseSeats(List<Ticket> tickets) {
+        for (Ticket ticket : tickets) {
+            seatOccupancyMap.release(ticket.getShowtimeId(), ticket.getSeatNumber());
+        }
     }
 
 }
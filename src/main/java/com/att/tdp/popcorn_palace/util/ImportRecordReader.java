@@ -0,0 +1,159 @@
+package com.att.tdp.popcorn_palace.util;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Incremental reader of the records of an import file, either newline-delimited JSON with one object per line,
+ * or CSV with a header line naming the fields, where a field may be quoted with double quotes to contain commas,
+ * line breaks or doubled quotes.
+ * Records are read one at a time, each as a JSON object, so the file is never held in memory as a whole.
+ * A malformed record is returned with its error instead of its content, and the reader goes on with the next one.
+ * Blank lines are skipped.
+ */
+public class ImportRecordReader implements AutoCloseable {
+    /**
+     * A record of the file, with the number of the line it starts on, and either its content or its error.
+     */
+    public record ImportRecord(long line, JsonNode content, String error) {
+    }
+
+    private final BufferedReader reader;
+    private final ObjectMapper objectMapper;
+    private final boolean csv;
+    private List<String> header;
+    private long lineNumber;
+
+    private ImportRecordReader(Reader reader, ObjectMapper objectMapper, boolean csv) {
+        this.reader = new BufferedReader(reader);
+        this.objectMapper = objectMapper;
+        this.csv = csv;
+    }
+
+    public static ImportRecordReader ndjson(Reader reader, ObjectMapper objectMapper) {
+        return new ImportRecordReader(reader, objectMapper, false);
+    }
+
+    public static ImportRecordReader csv(Reader reader, ObjectMapper objectMapper) {
+        return new ImportRecordReader(reader, objectMapper, true);
+    }
+
+    /**
+     * Reads the next record of the file.
+     *
+     * @return the next record, or null at the end of the file
+     * @throws IOException if reading the file fails
+     */
+    public ImportRecord next() throws IOException {
+        String line = reader.readLine();
+        lineNumber++;
+        while (line != null && line.isBlank()) {
+            line = reader.readLine();
+            lineNumber++;
+        }
+
+        if (line == null) {
+            return null;
+        }
+
+        long recordLine = lineNumber;
+        if (!csv) {
+            try {
+                JsonNode content = objectMapper.readTree(line);
+                return content.isObject() ? new ImportRecord(recordLine, content, null)
+                        : new ImportRecord(recordLine, null, "Expected a JSON object");
+            } catch (JsonProcessingException e) {
+                return new ImportRecord(recordLine, null, "Malformed JSON - " + e.getOriginalMessage());
+            }
+        }
+
+        List<String> fields = readFields(line);
+        if (fields == null) {
+            return new ImportRecord(recordLine, null, "Unterminated quoted field");
+        }
+
+        if (header == null) {
+            header = fields.stream().map(name -> name.replace("\uFEFF", "").trim()).toList();
+            return next();
+        }
+
+        if (fields.size() != header.size()) {
+            return new ImportRecord(recordLine, null,
+                    "Expected " + header.size() + " fields but found " + fields.size());
+        }
+
+        ObjectNode content = objectMapper.createObjectNode();
+        for (int i = 0; i < fields.size(); i++) {
+            // An empty field is a missing value, which the validation of the entity reports.
+            if (!fields.get(i).isEmpty()) {
+                content.put(header.get(i), fields.get(i));
+            }
+        }
+
+        return new ImportRecord(recordLine, content, null);
+    }
+
+    /**
+     * Splits a CSV record into its fields, reading the following lines while a quoted field is open.
+     *
+     * @param line the first line of the record
+     * @return the fields of the record, or null if the file ends inside a quoted field
+     * @throws IOException if reading the file fails
+     */
+    private List<String> readFields(String line) throws IOException {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        int i = 0;
+        while (true) {
+            if (i == line.length()) {
+                if (!quoted) {
+                    fields.add(field.toString());
+                    return fields;
+                }
+
+                line = reader.readLine();
+                lineNumber++;
+                if (line == null) {
+                    return null;
+                }
+
+                field.append('\n');
+                i = 0;
+                continue;
+            }
+
+            char c = line.charAt(i++);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i < line.length() && line.charAt(i) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,347 @@
+package com.att.tdp.popcorn_palace.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only journal of records stored in memory-mapped segment files, with group commit.
+ * Appending a record copies it into the mapped segment and waits until a single flusher thread has forced it to disk.
+ * While the flusher forces the pages, the records appended in the meantime accumulate and are all made durable
+ * by the next force, so many concurrent appends share one fsync.
+ * Each record is framed by its length and a CRC32C checksum, so a record torn by a crash ends the segment on replay.
+ * A segment is deleted once it is full and all of its records were marked as applied by the caller.
+ */
+public class MappedJournal implements AutoCloseable {
+    private static final String SUFFIX = ".journal";
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition written = lock.newCondition();
+    private final Condition flushed = lock.newCondition();
+    private final Map<Long, Segment> segments = new HashMap<>();
+    private final Thread flusher;
+
+    // Guarded by the lock.
+    private Segment current;
+    private long writtenSequence;
+    private long flushedSequence;
+    private IOException failure;
+    private boolean closed;
+
+    /**
+     * Opens the journal in a directory, starting a new segment after the existing ones.
+     * The existing segments are left untouched, they are expected to be replayed and deleted with {@link #read}
+     * and {@link #deleteSegments} before the journal is opened.
+     *
+     * @param directory the directory of the segment files, created if missing
+     * @param segmentSize the size of each segment file in bytes
+     * @throws IOException if the directory or the first segment cannot be created
+     */
+    public MappedJournal(Path directory, int segmentSize) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.segmentSize = segmentSize;
+        List<Long> existingSegments = segmentIds(directory);
+        this.current = openSegment(existingSegments.isEmpty() ? 0 : existingSegments.getLast() + 1);
+        this.flusher = new Thread(this::flushLoop, "journal-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Appends a record and waits until it is durable on disk.
+     *
+     * @param record the content of the record
+     * @return the ID of the segment the record was written to, to pass to {@link #markApplied}
+     * @throws IOException if the record cannot be written or forced to disk
+     * @throws IllegalArgumentException if the record does not fit in a segment
+     */
+    public long append(byte[] record) throws IOException {
+        if (record.length + HEADER_SIZE > segmentSize) {
+            throw new IllegalArgumentException("Journal record is larger than a segment");
+        }
+
+        CRC32C crc = new CRC32C();
+        crc.update(record);
+        long sequence;
+        long segmentId;
+        lock.lock();
+        try {
+            checkOpen();
+            if (current.position + HEADER_SIZE + record.length > segmentSize) {
+                rollSegment();
+            }
+
+            MappedByteBuffer buffer = current.buffer;
+            int position = current.position;
+            buffer.putInt(position, record.length);
+            buffer.putInt(position + Integer.BYTES, (int) crc.getValue());
+            buffer.put(position + HEADER_SIZE, record);
+            current.position = position + HEADER_SIZE + record.length;
+            current.unapplied++;
+            segmentId = current.id;
+            sequence = ++writtenSequence;
+            written.signal();
+
+            while (flushedSequence < sequence) {
+                checkOpen();
+                flushed.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        return segmentId;
+    }
+
+    /**
+     * Marks records of a segment as applied. A full segment is deleted once all of its records are applied.
+     *
+     * @param segmentId the ID of the segment the records were written to
+     * @param count the number of records applied
+     */
+    public void markApplied(long segmentId, int count) {
+        lock.lock();
+        try {
+            Segment segment = segments.get(segmentId);
+            if (segment != null) {
+                segment.unapplied -= count;
+                if (segment != current && segment.unapplied <= 0) {
+                    deleteSegment(segment);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops the flusher and forces the current segment to disk.
+     * The segments are kept on disk, the records that were not applied yet are replayed on the next start.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+
+            closed = true;
+            written.signalAll();
+            flushed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        lock.lock();
+        try {
+            current.buffer.force();
+            for (Segment segment : segments.values()) {
+                segment.channel.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads the records of all the segments in a directory, in the order they were appended.
+     * A segment ends at its first empty or corrupted record.
+     *
+     * @param directory the directory of the segment files
+     * @param consumer receives the ID of the segment and the content of each record
+     * @throws IOException if a segment cannot be read
+     */
+    public static void read(Path directory, BiConsumer<Long, ByteBuffer> consumer) throws IOException {
+        for (long segmentId : segmentIds(directory)) {
+            try (FileChannel channel = FileChannel.open(segmentPath(directory, segmentId), StandardOpenOption.READ)) {
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                int position = 0;
+                while (position + HEADER_SIZE <= buffer.limit()) {
+                    int length = buffer.getInt(position);
+                    if (length <= 0 || length > buffer.limit() - position - HEADER_SIZE) {
+                        break;
+                    }
+
+                    ByteBuffer record = buffer.slice(position + HEADER_SIZE, length);
+                    CRC32C crc = new CRC32C();
+                    crc.update(record.duplicate());
+                    if ((int) crc.getValue() != buffer.getInt(position + Integer.BYTES)) {
+                        break;
+                    }
+
+                    consumer.accept(segmentId, record);
+                    position += HEADER_SIZE + length;
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes all the segments in a directory, once they were replayed.
+     *
+     * @param directory the directory of the segment files
+     * @throws IOException if a segment cannot be deleted
+     */
+    public static void deleteSegments(Path directory) throws IOException {
+        for (long segmentId : segmentIds(directory)) {
+            Files.deleteIfExists(segmentPath(directory, segmentId));
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            Segment segment;
+            int position;
+            long sequence;
+            lock.lock();
+            try {
+                while (!closed && flushedSequence == writtenSequence) {
+                    written.awaitUninterruptibly();
+                }
+
+                if (closed) {
+                    return;
+                }
+
+                segment = current;
+                position = segment.position;
+                sequence = writtenSequence;
+            } finally {
+                lock.unlock();
+            }
+
+            RuntimeException forceFailure = null;
+            try {
+                // Earlier segments are forced when they are rolled, so only the current one can hold unforced records.
+                segment.buffer.force(segment.forced, position - segment.forced);
+                segment.forced = position;
+            } catch (RuntimeException e) {
+                forceFailure = e;
+            }
+
+            lock.lock();
+            try {
+                if (forceFailure != null) {
+                    failure = new IOException("Failed to force the journal to disk", forceFailure);
+                } else {
+                    flushedSequence = sequence;
+                }
+
+                flushed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+
+            if (forceFailure != null) {
+                return;
+            }
+        }
+    }
+
+    private void rollSegment() throws IOException {
+        try {
+            current.buffer.force();
+            Segment sealed = current;
+            current = openSegment(sealed.id + 1);
+            if (sealed.unapplied <= 0) {
+                deleteSegment(sealed);
+            }
+        } catch (IOException e) {
+            failure = e;
+            flushed.signalAll();
+            throw e;
+        }
+    }
+
+    private Segment openSegment(long id) throws IOException {
+        FileChannel channel = FileChannel.open(segmentPath(directory, id), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Segment segment = new Segment(id, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private void deleteSegment(Segment segment) {
+        segments.remove(segment.id);
+        try {
+            segment.channel.close();
+            Files.deleteIfExists(segmentPath(directory, segment.id));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (failure != null) {
+            throw new IOException("Journal failed", failure);
+        }
+
+        if (closed) {
+            throw new IOException("Journal is closed");
+        }
+    }
+
+    private static List<Long> segmentIds(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Long> ids = new ArrayList<>();
+            files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.endsWith(SUFFIX))
+                    .forEach(name -> ids.add(Long.parseLong(name.substring(0, name.length() - SUFFIX.length()))));
+            ids.sort(null);
+            return ids;
+        }
+    }
+
+    private static Path segmentPath(Path directory, long id) {
+        return directory.resolve(String.format("%020d%s", id, SUFFIX));
+    }
+
+    /**
+     * A segment file and its mapping. Only accessed under the lock, except for the forced position,
+     * which is only accessed by the flusher.
+     */
+    private static final class Segment {
+        private final long id;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int position;
+        private int unapplied;
+        private int forced;
+
+        private Segment(long id, FileChannel channel, MappedByteBuffer buffer) {
+            this.id = id;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+}
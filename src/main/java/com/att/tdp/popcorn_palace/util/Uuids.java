@@ -0,0 +1,79 @@
+package com.att.tdp.popcorn_palace.util;
+
+import java.nio.ByteBuffer;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Generates and checks the UUIDs used as booking and user IDs.
+ * The generated UUIDs are version 7 UUIDs (RFC 9562): the first 48 bits are the Unix time in milliseconds
+ * and the next 12 bits the fraction of the millisecond, so UUIDs generated one after the other sort in
+ * generation order and their inserts append to the right edge of a B-tree index instead of landing at random pages.
+ * The remaining 62 bits are random, so a booking ID cannot be guessed from another one.
+ * They are drawn from one of several DRBG instances chosen by the current thread, instead of the single
+ * SecureRandom behind UUID.randomUUID(), so concurrent bookings rarely wait for each other to get their ID.
+ */
+public final class Uuids {
+    private static final Clock CLOCK = Clock.systemUTC();
+    private static final SecureRandom[] RANDOMS = new SecureRandom[Integer.highestOneBit(
+            Runtime.getRuntime().availableProcessors() * 2 - 1) * 2];
+
+    static {
+        try {
+            for (int i = 0; i < RANDOMS.length; i++) {
+                RANDOMS[i] = SecureRandom.getInstance("DRBG");
+            }
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("DRBG is not available", e);
+        }
+    }
+
+    private Uuids() {}
+
+    /**
+     * Generates a time-ordered version 7 UUID.
+     *
+     * @return the generated UUID
+     */
+    public static UUID timeOrdered() {
+        Instant now = CLOCK.instant();
+        long millis = now.getEpochSecond() * 1000 + now.getNano() / 1_000_000;
+        long fraction = (now.getNano() % 1_000_000) * 4096L / 1_000_000;
+        byte[] random = new byte[Long.BYTES];
+        RANDOMS[(int) Thread.currentThread().threadId() & (RANDOMS.length - 1)].nextBytes(random);
+        long mostSigBits = millis << 16 | 0x7000 | fraction;
+        long leastSigBits = ByteBuffer.wrap(random).getLong() & 0x3FFFFFFFFFFFFFFFL | 0x8000000000000000L;
+        return new UUID(mostSigBits, leastSigBits);
+    }
+
+    /**
+     * Tells if a string is a UUID in its canonical form, 32 hexadecimal digits in groups of 8-4-4-4-12.
+     * UUID.fromString also accepts shorter groups, which PostgreSQL rejects, and only ASCII hexadecimal digits
+     * are accepted, since UUID.fromString rejects the other Unicode digits.
+     *
+     * @param value the string to check
+     * @return true if the string is a canonical UUID, false otherwise
+     */
+    public static boolean isValid(String value) {
+        if (value == null || value.length() != 36) {
+            return false;
+        }
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            boolean valid = i == 8 || i == 13 || i == 18 || i == 23 ? c == '-' : isHexDigit(c);
+            if (!valid) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean isHexDigit(char c) {
+        return c >= '0' && c <= '9' || c >= 'a' && c <= 'f' || c >= 'A' && c <= 'F';
+    }
+}
@@ -9,24 +9,83 @@ CREATE TABLE IF NOT EXISTS movie (
     genre VARCHAR(255),
     duration DOUBLE PRECISION,
     rating DOUBLE PRECISION,
-    release_year INT
+    release_year INT,
+    version BIGINT NOT NULL DEFAULT 0
 );
 
 CREATE TABLE IF NOT EXISTS showtime (
     id SERIAL PRIMARY KEY,
-    movieId INT,
+    movie_id INT,
     theater VARCHAR(255),
-    startTime TIMESTAMPTZ,
-    endTime TIMESTAMPTZ,
+    start_time TIMESTAMPTZ,
+    end_time TIMESTAMPTZ,
     price DOUBLE PRECISION,
-    CONSTRAINT fk_movie FOREIGN KEY (movieId) REFERENCES movie(id)
+    version BIGINT NOT NULL DEFAULT 0
 );
 
+ALTER TABLE showtime ADD COLUMN IF NOT EXISTS movie_id INT;
+ALTER TABLE showtime ADD COLUMN IF NOT EXISTS start_time TIMESTAMPTZ;
+ALTER TABLE showtime ADD COLUMN IF NOT EXISTS end_time TIMESTAMPTZ;
+ALTER TABLE movie ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
+ALTER TABLE showtime ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
+CREATE INDEX IF NOT EXISTS showtime_theater_start_time ON showtime (theater, start_time);
+CREATE INDEX IF NOT EXISTS showtime_movie_id_start_time ON showtime (movie_id, start_time);
+
+-- The IDs of the movies and showtimes are allocated by Hibernate in blocks of 50 (see the entities).
+ALTER SEQUENCE movie_id_seq INCREMENT BY 50;
+ALTER SEQUENCE showtime_id_seq INCREMENT BY 50;
+
 CREATE TABLE IF NOT EXISTS ticket (
-    bookingId UUID,
-    showtimeId INT,
-    seatNumber INT,
-    userId UUID,
-    CONSTRAINT fk_showtime FOREIGN KEY (showtimeId) REFERENCES Showtime(id),
-    CONSTRAINT unique_seat_showtime UNIQUE (seatNumber, showtimeId)
-);
\ No newline at end of file
+    booking_id UUID PRIMARY KEY,
+    showtime_id INT,
+    seat_number INT,
+    user_id UUID,
+    status VARCHAR(16),
+    held_until TIMESTAMPTZ,
+    CONSTRAINT fk_showtime FOREIGN KEY (showtime_id) REFERENCES Showtime(id) ON DELETE CASCADE,
+    CONSTRAINT unique_seat_showtime UNIQUE (showtime_id, seat_number)
+);
+
+ALTER TABLE ticket ADD COLUMN IF NOT EXISTS booking_id UUID;
+ALTER TABLE ticket ADD COLUMN IF NOT EXISTS showtime_id INT;
+ALTER TABLE ticket ADD COLUMN IF NOT EXISTS seat_number INT;
+ALTER TABLE ticket ADD COLUMN IF NOT EXISTS user_id UUID;
+ALTER TABLE ticket ADD COLUMN IF NOT EXISTS status VARCHAR(16);
+ALTER TABLE ticket ADD COLUMN IF NOT EXISTS held_until TIMESTAMPTZ;
+
+-- The booking and user IDs were stored as text before, convert them to uuid columns.
+-- A user ID that is not a UUID is replaced by the UUID of its md5 hash, which keeps the tickets of a user together.
+-- The block is a single-quoted string since the script is split on the semicolons outside of quotes.
+DO '
+BEGIN
+    IF (SELECT data_type FROM information_schema.columns
+        WHERE table_schema = current_schema() AND table_name = ''ticket'' AND column_name = ''booking_id'') <> ''uuid'' THEN
+        ALTER TABLE ticket ALTER COLUMN booking_id TYPE UUID USING booking_id::uuid;
+    END IF;
+    IF (SELECT data_type FROM information_schema.columns
+        WHERE table_schema = current_schema() AND table_name = ''ticket'' AND column_name = ''user_id'') <> ''uuid'' THEN
+        ALTER TABLE ticket ALTER COLUMN user_id TYPE UUID USING CASE
+            WHEN user_id ~* ''^[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}$'' THEN user_id::uuid
+            ELSE md5(user_id)::uuid END;
+    END IF;
+END';
+
+-- The ticket table used to be created with camelCase columns, which the tickets were never written to,
+-- and its constraints were on those columns. Move the constraints to the columns of the tickets, since a seat
+-- is only claimed once across instances thanks to unique_seat_showtime (see TicketRepository.insertIfSeatFree).
+DO '
+BEGIN
+    IF EXISTS (SELECT 1 FROM information_schema.columns
+        WHERE table_schema = current_schema() AND table_name = ''ticket'' AND column_name = ''showtimeid'') THEN
+        ALTER TABLE ticket DROP CONSTRAINT IF EXISTS fk_showtime, DROP CONSTRAINT IF EXISTS unique_seat_showtime;
+    END IF;
+    IF NOT EXISTS (SELECT 1 FROM pg_constraint WHERE conrelid = ''ticket''::regclass AND contype = ''p'') THEN
+        ALTER TABLE ticket ADD PRIMARY KEY (booking_id);
+    END IF;
+    IF NOT EXISTS (SELECT 1 FROM pg_constraint WHERE conrelid = ''ticket''::regclass AND conname = ''fk_showtime'') THEN
+        ALTER TABLE ticket ADD CONSTRAINT fk_showtime FOREIGN KEY (showtime_id) REFERENCES showtime(id) ON DELETE CASCADE;
+    END IF;
+    IF NOT EXISTS (SELECT 1 FROM pg_constraint WHERE conrelid = ''ticket''::regclass AND conname = ''unique_seat_showtime'') THEN
+        ALTER TABLE ticket ADD CONSTRAINT unique_seat_showtime UNIQUE (showtime_id, seat_number);
+    END IF;
+END';
@@ -1,7 +1,17 @@
 package com.att.tdp.popcorn_palace.Movie;
 
+import com.att.tdp.popcorn_palace.config.BinaryFormatsConfig;
 import com.att.tdp.popcorn_palace.entity.Movie;
+import com.att.tdp.popcorn_palace.exception.ResourceNotFoundException;
+import com.att.tdp.popcorn_palace.service.CatalogSnapshot;
+import com.att.tdp.popcorn_palace.service.MovieService;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.MethodOrderer;
@@ -11,7 +21,15 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.servlet.MvcResult;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -34,6 +52,15 @@ public class MovieTest {
     @Autowired
     private MovieTestService movieTestService;
 
+    @Autowired
+    private MovieService movieService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private CatalogSnapshot catalogSnapshot;
+
     private ObjectMapper objectMapper;
     private Movie currMovie0;
     private Movie currMovie1;
@@ -195,4 +222,320 @@ public class MovieTest {
         assertNull(movieTestService.movieRepository.getMovieByTitle(movieTestService.movieTitles.get(1)));
     }
 
+    /**
+     * Tests that the title cache follows the saves, renames and deletes of the movies.
+     *
+     * Steps:
+     * 1. Reads a movie by its title twice, and verifies that the second read is a cache hit.
+     * 2. Renames the movie, and verifies that the old title is not found and the new title is.
+     * 3. Adds a movie with the old title again, and verifies that it is found by its title.
+     * 4. Deletes the renamed movie, and verifies that its title is not found anymore.
+     */
+    @Test
+    @Order(5)
+    public void titleCacheFlow() throws Exception {
+        String title = movieTestService.movieTitles.get(0);
+        String newTitle = "Renamed " + title;
+        double hits = meterRegistry.get("cache.gets").tag("cache", "movieTitles").tag("result", "hit")
+                .functionCounter().count();
+        movieService.getMovieByTitle(title);
+        assertEquals(currMovie0.toString(), movieService.getMovieByTitle(title).toString());
+        assertTrue(meterRegistry.get("cache.gets").tag("cache", "movieTitles").tag("result", "hit")
+                .functionCounter().count() > hits);
+
+        Movie renamedMovie = new Movie(newTitle, "Drama", 100.0, 5.0, 2024);
+        MvcResult response = movieTestService.updateMovie(title, renamedMovie);
+        assertEquals(200, response.getResponse().getStatus());
+        assertThrows(ResourceNotFoundException.class, () -> movieService.getMovieByTitle(title));
+        assertEquals("Drama", movieService.getMovieByTitle(newTitle).getGenre());
+
+        response = movieTestService.addMovie(title);
+        assertEquals(201, response.getResponse().getStatus());
+        assertEquals(title, movieService.getMovieByTitle(title).getTitle());
+
+        response = movieTestService.deleteMovie(newTitle);
+        assertEquals(200, response.getResponse().getStatus());
+        assertThrows(ResourceNotFoundException.class, () -> movieService.getMovieByTitle(newTitle));
+    }
+
+    /**
+     * Tests the keyset pagination of the movies.
+     *
+     * Steps:
+     * 1. Requests the first page with a limit of one movie, and verifies that it contains the first movie.
+     * 2. Requests the page after the first movie, and verifies that it contains the second movie.
+     * 3. Requests the page after the second movie, and verifies that it is empty.
+     * 4. Requests a page with an invalid limit, or a page after a movie without a limit, and verifies a 400 response.
+     */
+    @Test
+    @Order(6)
+    public void getMoviePageFlow() throws Exception {
+        MvcResult response = movieTestService.getMoviePage(null, 1);
+        assertEquals(200, response.getResponse().getStatus());
+        List<Movie> movies = objectMapper.readValue(response.getResponse().getContentAsString(), new TypeReference<>() {});
+        assertEquals(1, movies.size());
+        assertEquals(currMovie0.toString(), movies.get(0).toString());
+
+        response = movieTestService.getMoviePage(currMovie0.getId(), 1);
+        movies = objectMapper.readValue(response.getResponse().getContentAsString(), new TypeReference<>() {});
+        assertEquals(1, movies.size());
+        assertEquals(currMovie1.toString(), movies.get(0).toString());
+
+        response = movieTestService.getMoviePage(currMovie1.getId(), 1);
+        movies = objectMapper.readValue(response.getResponse().getContentAsString(), new TypeReference<>() {});
+        assertTrue(movies.isEmpty());
+
+        response = movieTestService.getMoviePage(null, 0);
+        assertEquals(400, response.getResponse().getStatus());
+        response = movieTestService.getMoviePage(currMovie0.getId(), null);
+        assertEquals(400, response.getResponse().getStatus());
+    }
+
+    /**
+     * Tests the bulk import of movies from an NDJSON file.
+     *
+     * Steps:
+     * 1. Imports a file with two valid movies, a blank line, a malformed line, a movie with an existing title,
+     *    an invalid movie and a movie with the title of an earlier line.
+     * 2. Verifies that the two valid movies are imported and can be retrieved by their titles,
+     *    and that every other record is reported with its line and error.
+     * 3. Deletes the imported movies.
+     */
+    @Test
+    @Order(7)
+    public void importMoviesFlow() throws Exception {
+        String file = String.join("\n",
+                "{\"title\":\"Import Movie A\",\"genre\":\"Drama\",\"duration\":120,\"rating\":8.1,\"releaseYear\":2024}",
+                "",
+                "{\"title\":\"Broken",
+                objectMapper.writeValueAsString(currMovie0).replace("\"id\":" + currMovie0.getId() + ",", ""),
+                "{\"title\":\"Import Movie B\",\"genre\":\"Comedy\",\"duration\":95,\"rating\":6.5,\"releaseYear\":2023}",
+                "{\"title\":\"Import Movie C\",\"genre\":\"Comedy\",\"duration\":-1,\"rating\":6.5,\"releaseYear\":2023}",
+                "{\"title\":\"Import Movie A\",\"genre\":\"Drama\",\"duration\":120,\"rating\":8.1,\"releaseYear\":2024}");
+        MvcResult response = movieTestService.importMovies(file, MediaType.APPLICATION_NDJSON);
+        assertEquals(200, response.getResponse().getStatus());
+        JsonNode report = objectMapper.readTree(response.getResponse().getContentAsString());
+        assertEquals(2, report.get("imported").asInt());
+        assertEquals(4, report.get("failed").asInt());
+        List<Integer> errorLines = new ArrayList<>();
+        report.get("errors").forEach(error -> errorLines.add(error.get("line").asInt()));
+        assertEquals(List.of(3, 4, 6, 7), errorLines);
+        assertEquals("Movie already exists with title - " + currMovie0.getTitle(),
+                report.get("errors").get(1).get("error").asText());
+        assertEquals("Movie already exists with title - Import Movie A", report.get("errors").get(3).get("error").asText());
+
+        assertEquals(120.0, movieService.getMovieByTitle("Import Movie A").getDuration());
+        assertEquals("Comedy", movieService.getMovieByTitle("Import Movie B").getGenre());
+
+        assertEquals(200, movieTestService.deleteMovie("Import Movie A").getResponse().getStatus());
+        assertEquals(200, movieTestService.deleteMovie("Import Movie B").getResponse().getStatus());
+    }
+
+    /**
+     * Tests that the catalog snapshot serves the movie reads without the database and follows the writes.
+     * The snapshot is only turned on for this test, since the other tests check the queries of the reads.
+     *
+     * Steps:
+     * 1. Reads a page of movies to load the snapshot, then reads the movies by page, all together and by title,
+     *    and verifies that no database connection was taken.
+     * 2. Renames a movie, and verifies that the snapshot returns it under its new title only.
+     * 3. Deletes the renamed movie, and verifies that it is not found anymore.
+     */
+    @Test
+    @Order(8)
+    public void catalogSnapshotFlow() throws Exception {
+        ReflectionTestUtils.setField(catalogSnapshot, "enabled", true);
+        try {
+            String title = currMovie0.getTitle();
+            String newTitle = "Renamed " + title;
+            assertEquals(200, movieTestService.getMoviePage(null, 1).getResponse().getStatus());
+
+            long connections = connections();
+            MvcResult response = movieTestService.getMoviePage(currMovie0.getId(), 1);
+            List<Movie> movies = objectMapper.readValue(response.getResponse().getContentAsString(), new TypeReference<>() {});
+            assertEquals(currMovie1.toString(), movies.get(0).toString());
+            assertEquals(2, movieTestService.getAllMovies().size());
+            assertEquals(currMovie0.toString(), movieService.getMovieByTitle(title).toString());
+            assertEquals(connections, connections());
+
+            Movie renamedMovie = new Movie(newTitle, "Drama", 100.0, 5.0, 2024);
+            assertEquals(200, movieTestService.updateMovie(title, renamedMovie).getResponse().getStatus());
+            assertThrows(ResourceNotFoundException.class, () -> movieService.getMovieByTitle(title));
+            assertEquals("Drama", movieService.getMovieByTitle(newTitle).getGenre());
+
+            assertEquals(200, movieTestService.deleteMovie(newTitle).getResponse().getStatus());
+            assertThrows(ResourceNotFoundException.class, () -> movieService.getMovieByTitle(newTitle));
+            assertFalse(movieService.isMovieExistById(currMovie0.getId()));
+        } finally {
+            ReflectionTestUtils.setField(catalogSnapshot, "enabled", false);
+            catalogSnapshot.evictAll();
+        }
+    }
+
+    /**
+     * Tests the conditional requests of a movie:
+     * 1. Reads a movie, verifies its ETag, and that reading it again with that ETag returns 304 without a body.
+     * 2. Updates the movie with that ETag in If-Match, and verifies that the update returns a new ETag.
+     * 3. Verifies that updating the movie again with the old ETag, or with an ETag which is not a version, returns 412,
+     *    and that reading it with the old ETag returns the updated movie.
+     * 4. Adds a movie titled "all", and verifies that it is read by its title rather than as the list of all the movies.
+     */
+    @Test
+    @Order(9)
+    public void conditionalRequestsFlow() throws Exception {
+        String title = currMovie0.getTitle();
+        MvcResult response = movieTestService.getMovie(title, null);
+        assertEquals(200, response.getResponse().getStatus());
+        assertEquals(currMovie0.toString(), objectMapper.readValue(response.getResponse().getContentAsString(), Movie.class).toString());
+        String eTag = response.getResponse().getHeader(HttpHeaders.ETAG);
+        assertEquals("\"0\"", eTag);
+
+        response = movieTestService.getMovie(title, eTag);
+        assertEquals(304, response.getResponse().getStatus());
+        assertEquals("", response.getResponse().getContentAsString());
+        assertEquals(eTag, response.getResponse().getHeader(HttpHeaders.ETAG));
+
+        Movie updatedMovie = new Movie(title, "Drama", 100.0, 5.0, 2024);
+        response = movieTestService.updateMovieIfMatch(title, updatedMovie, eTag);
+        assertEquals(200, response.getResponse().getStatus());
+        String newETag = response.getResponse().getHeader(HttpHeaders.ETAG);
+        assertEquals("\"1\"", newETag);
+
+        Movie staleMovie = new Movie(title, "Comedy", 100.0, 5.0, 2024);
+        assertEquals(412, movieTestService.updateMovieIfMatch(title, staleMovie, eTag).getResponse().getStatus());
+        assertEquals(412, movieTestService.updateMovieIfMatch(title, staleMovie, "W/" + newETag).getResponse().getStatus());
+        assertEquals("Drama", movieService.getMovieByTitle(title).getGenre());
+
+        response = movieTestService.getMovie(title, eTag);
+        assertEquals(200, response.getResponse().getStatus());
+        assertEquals(newETag, response.getResponse().getHeader(HttpHeaders.ETAG));
+        assertEquals("Drama", objectMapper.readValue(response.getResponse().getContentAsString(), Movie.class).getGenre());
+        assertEquals(404, movieTestService.getMovie("Missing " + title, null).getResponse().getStatus());
+
+        assertEquals(201, movieTestService.addMovie(new Movie("all", "Drama", 100.0, 5.0, 2024)).getResponse().getStatus());
+        try {
+            response = movieTestService.getMovie("all", null);
+            assertEquals(200, response.getResponse().getStatus());
+            assertEquals("all", objectMapper.readValue(response.getResponse().getContentAsString(), Movie.class).getTitle());
+        } finally {
+            movieTestService.deleteMovie("all");
+        }
+    }
+
+    /**
+     * Tests the movies in the binary formats. For CBOR and Smile:
+     * 1. Retrieves all the movies in the format, and verifies that they are the movies of the JSON response.
+     * 2. Updates a movie with a body in the format, and verifies the response in the format and the saved movie.
+     * Then retrieves all the movies with an Accept header listing CBOR first with a lower quality than JSON,
+     * and verifies a JSON response, and with an Accept header accepting no format, and verifies a 406 response.
+     */
+    @Test
+    @Order(10)
+    public void binaryFormatsFlow() throws Exception {
+        Map<MediaType, ObjectMapper> formats = Map.of(MediaType.APPLICATION_CBOR, new CBORMapper(),
+                BinaryFormatsConfig.APPLICATION_SMILE, new SmileMapper());
+        String title = currMovie0.getTitle();
+        for (Map.Entry<MediaType, ObjectMapper> format : formats.entrySet()) {
+            ObjectMapper formatMapper = format.getValue();
+            List<Movie> jsonMovies = movieTestService.getAllMovies();
+            MvcResult response = movieTestService.getAllMovies(format.getKey());
+            assertEquals(200, response.getResponse().getStatus());
+            assertEquals(format.getKey().toString(), response.getResponse().getContentType());
+            List<Movie> movies = formatMapper.readValue(response.getResponse().getContentAsByteArray(),
+                    new TypeReference<List<Movie>>() {});
+            assertEquals(jsonMovies.toString(), movies.toString());
+
+            Movie updatedMovie = new Movie(title, format.getKey().getSubtype(), 100.0, 5.0, 2024);
+            response = movieTestService.updateMovie(title, formatMapper.writeValueAsBytes(updatedMovie), format.getKey());
+            assertEquals(200, response.getResponse().getStatus());
+            assertEquals(format.getKey().toString(), response.getResponse().getContentType());
+            Movie responseMovie = formatMapper.readValue(response.getResponse().getContentAsByteArray(), Movie.class);
+            assertEquals(movieService.getMovieByTitle(title).toString(), responseMovie.toString());
+            assertEquals(format.getKey().getSubtype(), responseMovie.getGenre());
+        }
+
+        MvcResult response = movieTestService.getAllMovies("application/cbor;q=0.1, application/json");
+        assertEquals(200, response.getResponse().getStatus());
+        assertTrue(MediaType.APPLICATION_JSON.isCompatibleWith(
+                MediaType.parseMediaType(response.getResponse().getContentType())));
+        response = movieTestService.getAllMovies("*/*, application/json;q=0");
+        assertEquals(200, response.getResponse().getStatus());
+        assertEquals(MediaType.APPLICATION_CBOR.toString(), response.getResponse().getContentType());
+        assertEquals(406, movieTestService.getAllMovies("application/xml").getResponse().getStatus());
+    }
+
+    /**
+     * Tests the change notifications between the instances of the server, with a connection of its own
+     * playing another instance:
+     * 1. Renames a movie, and verifies that the other instance is notified of the old and the new title.
+     * 2. Reads a missing title, which caches it as missing, then inserts a movie with that title from the other
+     *    instance and notifies it, and verifies that the movie is found by its title.
+     * 3. Changes the genre of a cached movie from the other instance without notifying it, terminates the listener
+     *    of the server, and verifies that the new genre is read once the listener reconnects and drops its caches.
+     */
+    @Test
+    @Order(11)
+    public void changeNotificationsFlow() throws Exception {
+        String title = currMovie0.getTitle();
+        String newTitle = "Renamed " + title;
+        String remoteTitle = "Remote " + title;
+        Duration timeout = Duration.ofSeconds(10);
+        try (Connection otherInstance = movieTestService.connectAsOtherInstance()) {
+            Movie renamedMovie = new Movie(newTitle, "Drama", 100.0, 5.0, 2024);
+            assertEquals(200, movieTestService.updateMovie(title, renamedMovie).getResponse().getStatus());
+            assertTrue(movieTestService.awaitChanges(otherInstance, timeout,
+                    objectMapper.writeValueAsString(List.of("M", currMovie0.getId(), title)),
+                    objectMapper.writeValueAsString(List.of("M", currMovie0.getId(), newTitle))));
+
+            assertThrows(ResourceNotFoundException.class, () -> movieService.getMovieByTitle(remoteTitle));
+            long remoteId;
+            try (PreparedStatement insert = otherInstance.prepareStatement("INSERT INTO movie "
+                    + "(title, genre, duration, rating, release_year) VALUES (?, 'Action', 120, 8.0, 2020) RETURNING id")) {
+                insert.setString(1, remoteTitle);
+                try (ResultSet resultSet = insert.executeQuery()) {
+                    resultSet.next();
+                    remoteId = resultSet.getLong(1);
+                }
+            }
+
+            movieTestService.notifyChanges(otherInstance,
+                    objectMapper.writeValueAsString(List.of(List.of("M", remoteId, remoteTitle))));
+            awaitGenre(remoteTitle, "Action", timeout);
+
+            String title1 = currMovie1.getTitle();
+            String genre1 = movieService.getMovieByTitle(title1).getGenre();
+            try (PreparedStatement update = otherInstance.prepareStatement(
+                    "UPDATE movie SET genre = 'Western', version = version + 1 WHERE id = ?")) {
+                update.setLong(1, currMovie1.getId());
+                update.executeUpdate();
+            }
+
+            assertEquals(genre1, movieService.getMovieByTitle(title1).getGenre());
+            movieTestService.terminateChangeListener(otherInstance);
+            awaitGenre(title1, "Western", timeout);
+        } finally {
+            movieTestService.deleteMovie(newTitle);
+            movieTestService.deleteMovie(remoteTitle);
+        }
+    }
+
+    private void awaitGenre(String title, String genre, Duration timeout) throws Exception {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (true) {
+            try {
+                if (genre.equals(movieService.getMovieByTitle(title).getGenre())) {
+                    return;
+                }
+            } catch (ResourceNotFoundException e) {
+                // Not visible yet.
+            }
+
+            assertTrue(System.nanoTime() < deadline, "Movie " + title + " was not refreshed in time");
+            Thread.sleep(50);
+        }
+    }
+
+    private long connections() {
+        return meterRegistry.get("hikaricp.connections.acquire").timers().stream().mapToLong(Timer::count).sum();
+    }
 }
@@ -1,17 +1,33 @@
 package com.att.tdp.popcorn_palace.Movie;
 
+import com.att.tdp.popcorn_palace.config.ReadYourWritesFilter;
 import com.att.tdp.popcorn_palace.entity.Movie;
 import com.att.tdp.popcorn_palace.repository.MovieRepository;
+import com.att.tdp.popcorn_palace.service.CatalogSnapshot;
+import com.att.tdp.popcorn_palace.service.MovieTitleCache;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.Cookie;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.stereotype.Service;
 import java.io.File;
 import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -25,6 +41,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
  * and provides utility methods to test operations on movies.
  */
 @Service
+@Profile("!reactive")
 public class MovieTestService {
     @Autowired
     private MockMvc mockMvc;
@@ -32,6 +49,23 @@ public class MovieTestService {
     @Autowired
     public MovieRepository movieRepository;
 
+    @Autowired
+    private MovieTitleCache movieTitleCache;
+
+    @Autowired
+    private CatalogSnapshot catalogSnapshot;
+
+    @Value("${spring.datasource.url}")
+    private String url;
+
+    @Value("${spring.datasource.username}")
+    private String username;
+
+    @Value("${spring.datasource.password}")
+    private String password;
+
+    private static final String CHANGE_CHANNEL = "popcorn_palace_changes";
+
     private Map<String, List<Movie>> updatedMovies;
     public List<String> movieTitles;
     public JsonNode moviesData;
@@ -86,6 +120,105 @@ public class MovieTestService {
         return movies;
     }
 
+    /**
+     * Retrieves a movie by its title with an If-None-Match header, or without when the ETag is null.
+     *
+     * @param movieTitle the title of the movie.
+     * @param eTag the ETag sent in the If-None-Match header, or null.
+     * @return the result of the HTTP GET request as an MvcResult object.
+     * @throws Exception if an error occurs during the HTTP request.
+     */
+    public MvcResult getMovie(String movieTitle, String eTag) throws Exception {
+        MockHttpServletRequestBuilder request = get("/movies/title/" + movieTitle);
+        if (eTag != null) {
+            request.header(HttpHeaders.IF_NONE_MATCH, eTag);
+        }
+
+        return mockMvc.perform(request).andReturn();
+    }
+
+    /**
+     * Retrieves all movies in the given format by performing an HTTP GET request to "/movies/all".
+     *
+     * @param accept the media type sent in the Accept header.
+     * @return the result of the HTTP GET request as an MvcResult object.
+     * @throws Exception if an error occurs during the HTTP request.
+     */
+    public MvcResult getAllMovies(MediaType accept) throws Exception {
+        return mockMvc.perform(get("/movies/all").accept(accept)).andReturn();
+    }
+
+    /**
+     * Retrieves all movies by performing an HTTP GET request to "/movies/all" with a raw Accept header,
+     * which may list several media types with their quality values.
+     *
+     * @param accept the value of the Accept header.
+     * @return the result of the HTTP GET request as an MvcResult object.
+     * @throws Exception if an error occurs during the HTTP request.
+     */
+    public MvcResult getAllMovies(String accept) throws Exception {
+        return mockMvc.perform(get("/movies/all").header(HttpHeaders.ACCEPT, accept)).andReturn();
+    }
+
+    /**
+     * Updates the movie with the given title with a body encoded in the given format,
+     * and asks for the response in the same format.
+     *
+     * @param movieTitle the title of the movie to update.
+     * @param body the encoded details of the movie.
+     * @param format the media type of the body and of the response.
+     * @return the result of the HTTP POST request as an MvcResult object.
+     * @throws Exception if an error occurs during the HTTP request.
+     */
+    public MvcResult updateMovie(String movieTitle, byte[] body, MediaType format) throws Exception {
+        return mockMvc.perform(post("/movies/update/" + movieTitle)
+                        .contentType(format)
+                        .accept(format)
+                        .content(body))
+                .andReturn();
+    }
+
+    /**
+     * Retrieves a page of movies by performing a GET request to the "/movies/all" endpoint with a limit.
+     *
+     * @param after the ID after which the page starts, or null for the first page.
+     * @param limit the maximum number of movies in the page, or null to send no limit.
+     * @return the result of the HTTP GET request as an MvcResult object.
+     * @throws Exception if an error occurs during the HTTP request.
+     */
+    public MvcResult getMoviePage(Long after, Integer limit) throws Exception {
+        MockHttpServletRequestBuilder request = get("/movies/all");
+        if (limit != null) {
+            request.param("limit", limit.toString());
+        }
+
+        if (after != null) {
+            request.param("after", after.toString());
+        }
+
+        return mockMvc.perform(request).andReturn();
+    }
+
+    /**
+     * Retrieves the first page of movies, asking to read the writes of the client either with the cookie
+     * of a previous write or, when there is no cookie, with the read-your-writes header.
+     *
+     * @param limit the maximum number of movies in the page.
+     * @param wroteCookie the cookie set by a previous write, or null to send the header.
+     * @return the result of the HTTP GET request as an MvcResult object.
+     * @throws Exception if an error occurs during the HTTP request.
+     */
+    public MvcResult getMoviePageReadingWrites(int limit, Cookie wroteCookie) throws Exception {
+        MockHttpServletRequestBuilder request = get("/movies/all").param("limit", String.valueOf(limit));
+        if (wroteCookie != null) {
+            request.cookie(wroteCookie);
+        } else {
+            request.header(ReadYourWritesFilter.HEADER, "true");
+        }
+
+        return mockMvc.perform(request).andReturn();
+    }
+
     /**
      * Adds a movie by sending a POST request to the "/movies" endpoint.
      *
@@ -106,6 +239,36 @@ public class MovieTestService {
 
     }
 
+    /**
+     * Adds the given movie by sending a POST request to the "/movies" endpoint,
+     * without tracking it in the preloaded data.
+     *
+     * @param movie the movie to be added, without an ID.
+     * @return the result of the HTTP POST request as an MvcResult object.
+     * @throws Exception if an error occurs during request creation, execution, or response handling.
+     */
+    public MvcResult addMovie(Movie movie) throws Exception {
+        return mockMvc.perform(post("/movies")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(movie)))
+                .andReturn();
+    }
+
+    /**
+     * Imports movies by sending a file in a POST request to the "/movies/import" endpoint.
+     *
+     * @param content the content of the file.
+     * @param contentType the type of the file, NDJSON or CSV.
+     * @return the result of the HTTP POST request as an MvcResult object.
+     * @throws Exception if an error occurs during request creation, execution, or response handling.
+     */
+    public MvcResult importMovies(String content, MediaType contentType) throws Exception {
+        return mockMvc.perform(post("/movies/import")
+                        .contentType(contentType)
+                        .content(content))
+                .andReturn();
+    }
+
     /**
      * Updates the specified movie with the corresponding update information by
      * sending a POST request to the "/movies/update/{movieTitle}" endpoint.
@@ -128,6 +291,40 @@ public class MovieTestService {
 
     }
 
+    /**
+     * Updates the specified movie with the given movie details by
+     * sending a POST request to the "/movies/update/{movieTitle}" endpoint.
+     *
+     * @param movieTitle the title of the movie to be updated.
+     * @param movie the updated details of the movie.
+     * @return the result of the HTTP POST request as an MvcResult object.
+     * @throws Exception if an error occurs during request creation, execution, or response handling.
+     */
+    public MvcResult updateMovie(String movieTitle, Movie movie) throws Exception {
+        String movieString = objectMapper.writeValueAsString(movie);
+        return mockMvc.perform(post("/movies/update/" + movieTitle)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(movieString))
+                .andReturn();
+    }
+
+    /**
+     * Updates the movie with the given title with an If-Match header.
+     *
+     * @param movieTitle the title of the movie to update.
+     * @param movie the new details of the movie.
+     * @param eTag the ETag sent in the If-Match header.
+     * @return the result of the HTTP POST request as an MvcResult object.
+     * @throws Exception if an error occurs during the HTTP request.
+     */
+    public MvcResult updateMovieIfMatch(String movieTitle, Movie movie, String eTag) throws Exception {
+        return mockMvc.perform(post("/movies/update/" + movieTitle)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header(HttpHeaders.IF_MATCH, eTag)
+                        .content(objectMapper.writeValueAsString(movie)))
+                .andReturn();
+    }
+
     /**
      * Deletes a movie with the given title from the system.
      *
@@ -143,9 +340,93 @@ public class MovieTestService {
     }
 
     /**
-     * Deletes all entities from the movie repository.
+     * Purges a movie with the given title from the system in the background.
+     *
+     * @param movieTitle the title of the movie to be purged
+     * @return the result of the delete operation encapsulated in an MvcResult object
+     * @throws Exception if an error occurs during the delete operation
+     */
+    public MvcResult purgeMovie(String movieTitle) throws Exception {
+        return mockMvc.perform(delete("/movies/" + movieTitle).param("async", "true"))
+                .andReturn();
+    }
+
+    /**
+     * Deletes all entities from the movie repository,
+     * and drops the title cache and the catalog snapshot that mirror them.
      */
     public void deleteAll() {
         movieRepository.deleteAll();
+        movieTitleCache.invalidateAll();
+        catalogSnapshot.evictAll();
+    }
+
+    /**
+     * Opens a connection of its own to the test database, which plays another instance of the server:
+     * it writes the database directly and sends or listens to the change notifications.
+     *
+     * @return a connection that listens on the change notification channel
+     * @throws SQLException if the connection cannot be opened
+     */
+    public Connection connectAsOtherInstance() throws SQLException {
+        Connection connection = DriverManager.getConnection(url, username, password);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("LISTEN " + CHANGE_CHANNEL);
+        }
+
+        return connection;
+    }
+
+    /**
+     * Sends a change notification from a connection of another instance.
+     *
+     * @param connection the connection of the other instance
+     * @param changes the JSON array of the changes of the notification
+     * @throws SQLException if the notification cannot be sent
+     */
+    public void notifyChanges(Connection connection, String changes) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT pg_notify(?, ?)")) {
+            statement.setString(1, CHANGE_CHANNEL);
+            statement.setString(2, "{\"from\":\"other-instance\",\"changes\":" + changes + "}");
+            statement.execute();
+        }
+    }
+
+    /**
+     * Waits until a connection of another instance has received change notifications with all the given entries.
+     *
+     * @param connection the connection of the other instance
+     * @param timeout how long to wait
+     * @param entries the JSON entries to look for, like ["M",1,"title"]
+     * @return true if all the entries were received in time, false otherwise
+     * @throws SQLException if the notifications cannot be read
+     */
+    public boolean awaitChanges(Connection connection, Duration timeout, String... entries) throws SQLException {
+        List<String> missing = new ArrayList<>(List.of(entries));
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (!missing.isEmpty() && System.nanoTime() < deadline) {
+            PGNotification[] notifications = connection.unwrap(PGConnection.class).getNotifications(100);
+            if (notifications != null) {
+                for (PGNotification notification : notifications) {
+                    missing.removeIf(entry -> notification.getParameter().contains(entry));
+                }
+            }
+        }
+
+        return missing.isEmpty();
+    }
+
+    /**
+     * Terminates the listening connections of the servers from a connection of another instance,
+     * as a network failure would. The listeners reconnect on their own.
+     *
+     * @param connection the connection of the other instance
+     * @throws SQLException if the listening connection cannot be terminated
+     */
+    public void terminateChangeListener(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT pg_terminate_backend(pid) "
+                + "FROM pg_stat_activity WHERE application_name = 'popcorn-palace-change-notifications'")) {
+            statement.execute();
+        }
     }
 }
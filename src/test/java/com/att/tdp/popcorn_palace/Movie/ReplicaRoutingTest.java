@@ -0,0 +1,105 @@
+package com.att.tdp.popcorn_palace.Movie;
+
+import com.att.tdp.popcorn_palace.config.ReadYourWritesFilter;
+import com.att.tdp.popcorn_palace.entity.Movie;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.http.Cookie;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MvcResult;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the routing of the catalog reads with the replica profile.
+ *
+ * The replica pool of the tests is connected to the test database itself, see the application-replica.yaml
+ * of the tests, so the routing is checked through the `hikaricp.connections.acquire` metrics of the two pools.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("replica")
+public class ReplicaRoutingTest {
+
+    @Autowired
+    private MovieTestService movieTestService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Movie currMovie0;
+
+    /**
+     * Initializes test data before each test by adding a movie and parsing the response into a Movie object.
+     *
+     * @throws Exception if an error occurs while adding the movie
+     */
+    @BeforeEach
+    public void init() throws Exception {
+        movieTestService.deleteAll();
+        MvcResult result = movieTestService.addMovie(movieTestService.movieTitles.get(0));
+        assertEquals(201, result.getResponse().getStatus());
+        currMovie0 = new ObjectMapper().readValue(result.getResponse().getContentAsString(), Movie.class);
+    }
+
+    /**
+     * Cleans up test data after each test execution by deleting all movies added during the test.
+     *
+     * @throws Exception if an error occurs during the deletion of a movie
+     */
+    @AfterEach
+    public void cleanUp() throws Exception {
+        for (String movieTitle : movieTestService.movieTitles) {
+            movieTestService.deleteMovie(movieTitle);
+        }
+    }
+
+    /**
+     * Tests the routing of the catalog reads between the primary and the read replica.
+     *
+     * Steps:
+     * 1. Requests a page of movies, and verifies that it was read through the replica pool.
+     * 2. Requests a page of movies with the read-your-writes header, and verifies that it was read
+     *    through the primary pool.
+     * 3. Updates a movie, and verifies that the response sets the read-your-writes cookie.
+     * 4. Requests a page of movies with the cookie, and verifies that it was read through the primary pool.
+     */
+    @Test
+    public void replicaRoutingFlow() throws Exception {
+        long replicaConnections = connections("replica");
+        assertEquals(200, movieTestService.getMoviePage(null, 1).getResponse().getStatus());
+        assertTrue(connections("replica") > replicaConnections);
+
+        replicaConnections = connections("replica");
+        long primaryConnections = connections("primary");
+        assertEquals(200, movieTestService.getMoviePageReadingWrites(1, null).getResponse().getStatus());
+        assertEquals(replicaConnections, connections("replica"));
+        assertTrue(connections("primary") > primaryConnections);
+
+        Movie unchanged = new Movie(currMovie0.getTitle(), currMovie0.getGenre(), currMovie0.getDuration(),
+                currMovie0.getRating(), currMovie0.getReleaseYear());
+        MvcResult response = movieTestService.updateMovie(currMovie0.getTitle(), unchanged);
+        assertEquals(200, response.getResponse().getStatus());
+        Cookie wroteCookie = response.getResponse().getCookie(ReadYourWritesFilter.COOKIE);
+        assertNotNull(wroteCookie);
+
+        replicaConnections = connections("replica");
+        response = movieTestService.getMoviePageReadingWrites(1, wroteCookie);
+        assertEquals(200, response.getResponse().getStatus());
+        assertEquals(replicaConnections, connections("replica"));
+    }
+
+    /**
+     * Counts the connections taken from a pool. A pool publishes its metrics once it is started by its first connection.
+     */
+    private long connections(String pool) {
+        Timer timer = meterRegistry.find("hikaricp.connections.acquire").tag("pool", pool).timer();
+        return timer == null ? 0 : timer.count();
+    }
+}
@@ -0,0 +1,139 @@
+package com.att.tdp.popcorn_palace.Showtime;
+
+import com.att.tdp.popcorn_palace.entity.Showtime;
+import com.att.tdp.popcorn_palace.service.MovieService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Order;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MvcResult;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the Hibernate second-level and query caches of the l2cache profile.
+ *
+ * The hits of the caches are read from the `hibernate.*` metrics, which are only published with the profile.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("l2cache")
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+public class SecondLevelCacheTest {
+
+    @Autowired
+    private ShowtimeTestService showtimeTestService;
+
+    @Autowired
+    private MovieService movieService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private ObjectMapper objectMapper;
+
+    /**
+     * Deletes all the showtimes before each test, so the showtimes of the test theater are only the ones it adds.
+     */
+    @BeforeEach
+    public void init() {
+        objectMapper = new ObjectMapper();
+        objectMapper.registerModule(new JavaTimeModule());
+        showtimeTestService.deleteAll();
+    }
+
+    /**
+     * Tests the second-level cache of the showtimes and the query cache of the showtimes of a theater.
+     *
+     * This test performs the following steps:
+     * 1. Adds a showtime and reads it twice, and validates that it was served from the cache.
+     * 2. Queries the showtimes of its theater twice, and validates that the second query was served from the cache.
+     * 3. Updates the showtime, and validates that both the showtime and the showtimes of its theater are
+     *    read with the new details.
+     * 4. Adds a second showtime to the theater, and validates that the showtimes of the theater include it.
+     * 5. Deletes both showtimes, and validates that they are neither found by ID nor in their theater.
+     *
+     * @throws Exception if any error occurs while sending the showtimes or reading them
+     */
+    @Test
+    @Order(1)
+    public void showtimeCacheFlow() throws Exception {
+        String theater = "Cache Theater";
+        Long movieId = showtimeTestService.movie.getId();
+        OffsetDateTime start = OffsetDateTime.of(2030, 6, 1, 18, 0, 0, 0, ZoneOffset.UTC);
+        MvcResult response = showtimeTestService.addShowtime(
+                new Showtime(movieId, theater, start, start.plusHours(2), 20.0));
+        assertEquals(201, response.getResponse().getStatus());
+        Showtime created = objectMapper.readValue(response.getResponse().getContentAsString(), Showtime.class);
+
+        double entityHits = cacheRequests("hibernate.second.level.cache.requests", "hit");
+        assertEquals(200, showtimeTestService.getShowtimeByIdMvc(created.getId()).getResponse().getStatus());
+        assertEquals(200, showtimeTestService.getShowtimeByIdMvc(created.getId()).getResponse().getStatus());
+        assertTrue(cacheRequests("hibernate.second.level.cache.requests", "hit") > entityHits);
+
+        double queryHits = cacheRequests("hibernate.cache.query.requests", "hit");
+        assertEquals(1, showtimeTestService.showtimeRepository.getShowtimeByTheater(theater).size());
+        assertEquals(1, showtimeTestService.showtimeRepository.getShowtimeByTheater(theater).size());
+        assertTrue(cacheRequests("hibernate.cache.query.requests", "hit") > queryHits);
+
+        Showtime moved = new Showtime(movieId, theater, start.plusDays(1), start.plusDays(1).plusHours(2), 25.0);
+        assertEquals(200, showtimeTestService.updateShowtime(created.getId(), moved).getResponse().getStatus());
+        assertEquals(25.0, showtimeTestService.getShowtimeById(created.getId()).getPrice());
+        List<Showtime> byTheater = showtimeTestService.showtimeRepository.getShowtimeByTheater(theater);
+        assertEquals(1, byTheater.size());
+        assertEquals(25.0, byTheater.get(0).getPrice());
+
+        response = showtimeTestService.addShowtime(new Showtime(movieId, theater, start, start.plusHours(2), 20.0));
+        assertEquals(201, response.getResponse().getStatus());
+        Showtime second = objectMapper.readValue(response.getResponse().getContentAsString(), Showtime.class);
+        assertEquals(2, showtimeTestService.showtimeRepository.getShowtimeByTheater(theater).size());
+
+        assertEquals(200, showtimeTestService.deleteShowtime(created.getId()).getResponse().getStatus());
+        assertEquals(200, showtimeTestService.deleteShowtime(second.getId()).getResponse().getStatus());
+        assertEquals(404, showtimeTestService.getShowtimeByIdMvc(created.getId()).getResponse().getStatus());
+        assertEquals(0, showtimeTestService.showtimeRepository.getShowtimeByTheater(theater).size());
+    }
+
+    /**
+     * Tests the second-level cache of the movies.
+     *
+     * This test performs the following steps:
+     * 1. Checks twice that the movie of the showtimes exists, and validates that the second check was served
+     *    from the cache.
+     * 2. Deletes the movie, and validates that it is not found anymore although it was cached.
+     * 3. Adds the movie back for the other tests.
+     *
+     * @throws Exception if any error occurs while deleting or adding the movie
+     */
+    @Test
+    @Order(2)
+    public void movieCacheFlow() throws Exception {
+        Long movieId = showtimeTestService.movie.getId();
+        assertTrue(movieService.isMovieExistById(movieId));
+        double entityHits = cacheRequests("hibernate.second.level.cache.requests", "hit");
+        assertTrue(movieService.isMovieExistById(movieId));
+        assertTrue(cacheRequests("hibernate.second.level.cache.requests", "hit") > entityHits);
+
+        String title = showtimeTestService.movie.getTitle();
+        assertEquals(200, showtimeTestService.movieTestService.deleteMovie(title).getResponse().getStatus());
+        assertFalse(movieService.isMovieExistById(movieId));
+
+        showtimeTestService.init();
+    }
+
+    private double cacheRequests(String metric, String result) {
+        return meterRegistry.get(metric).tag("result", result).functionCounters().stream()
+                .mapToDouble(FunctionCounter::count).sum();
+    }
+}
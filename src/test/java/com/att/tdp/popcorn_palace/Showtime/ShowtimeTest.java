@@ -1,8 +1,16 @@
 package com.att.tdp.popcorn_palace.Showtime;
 
+import com.att.tdp.popcorn_palace.config.BinaryFormatsConfig;
 import com.att.tdp.popcorn_palace.entity.Showtime;
+import com.att.tdp.popcorn_palace.service.CatalogSnapshot;
+import com.att.tdp.popcorn_palace.service.TheaterLocks;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -12,9 +20,20 @@ import org.junit.jupiter.api.Order;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.servlet.MvcResult;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.Is.is;
 import static org.junit.jupiter.api.Assertions.*;
@@ -28,6 +47,15 @@ public class ShowtimeTest {
     @Autowired
     private ShowtimeTestService showtimeTestService;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private CatalogSnapshot catalogSnapshot;
+
+    @Autowired
+    private TheaterLocks theaterLocks;
+
     private ObjectMapper objectMapper;
     private Showtime showtime0;
     private Showtime showtime1;
@@ -203,4 +231,461 @@ public class ShowtimeTest {
         response = showtimeTestService.deleteShowtime(Long.valueOf("99999999"));
         assertEquals(404, response.getResponse().getStatus());
     }
+
+    /**
+     * Tests that concurrent writes of showtimes are serialized per theater.
+     *
+     * This test performs the following steps:
+     * 1. Sends a couple of overlapping showtimes for the same theater at the same time, and validates
+     *    that exactly one of them is created (201) while the others are rejected (400).
+     * 2. Sends the same number of showtimes at the same time for different theaters, and validates that
+     *    all of them are created.
+     * 3. Validates that the lock wait of every write was recorded.
+     *
+     * @throws Exception if any error occurs while sending the showtimes or deleting them
+     */
+    @Test
+    @Order(5)
+    public void concurrentShowtimeWritesFlow() throws Exception {
+        int writes = 8;
+        long lockWaits = meterRegistry.get("showtime.lock.wait").tag("lock", "local").timer().count();
+        OffsetDateTime start = OffsetDateTime.of(2030, 3, 1, 18, 0, 0, 0, ZoneOffset.UTC);
+        List<Callable<MvcResult>> sameTheater = new ArrayList<>();
+        List<Callable<MvcResult>> otherTheaters = new ArrayList<>();
+        for (int i = 0; i < writes; i++) {
+            Showtime overlapping = new Showtime(showtimeTestService.movie.getId(), "Lock Theater",
+                    start.plusMinutes(i), start.plusMinutes(i + 120), 30.0);
+            Showtime separate = new Showtime(showtimeTestService.movie.getId(), "Lock Theater " + i,
+                    start, start.plusMinutes(120), 30.0);
+            sameTheater.add(() -> showtimeTestService.addShowtime(overlapping));
+            otherTheaters.add(() -> showtimeTestService.addShowtime(separate));
+        }
+
+        List<Long> createdIds = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(writes);
+        try {
+            int created = 0;
+            for (Future<MvcResult> future : executor.invokeAll(sameTheater)) {
+                MvcResult result = future.get();
+                if (result.getResponse().getStatus() == 201) {
+                    created++;
+                    createdIds.add(objectMapper.readValue(result.getResponse().getContentAsString(), Showtime.class).getId());
+                } else {
+                    assertEquals(400, result.getResponse().getStatus());
+                }
+            }
+            assertEquals(1, created);
+
+            for (Future<MvcResult> future : executor.invokeAll(otherTheaters)) {
+                MvcResult result = future.get();
+                assertEquals(201, result.getResponse().getStatus());
+                createdIds.add(objectMapper.readValue(result.getResponse().getContentAsString(), Showtime.class).getId());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertTrue(meterRegistry.get("showtime.lock.wait").tag("lock", "local").timer().count() >= lockWaits + 2L * writes);
+        for (Long createdId : createdIds) {
+            assertEquals(200, showtimeTestService.deleteShowtime(createdId).getResponse().getStatus());
+        }
+    }
+
+    /**
+     * Tests the retrieval of showtimes filtered by theater, movie and time range, page by page.
+     *
+     * This test performs the following steps:
+     * 1. Adds a couple of showtimes of the test movie, two of them at the same start time in different theaters.
+     * 2. Requests the showtimes of the theater in a time range, and validates that only the showtimes starting
+     *    in the range are returned, ordered by start time and ID.
+     * 3. Requests the showtimes of the movie in a time range with a limit of two, and follows the pages with the start time and ID
+     *    of the last showtime of each page, validating that the pages are complete and in order.
+     * 4. Requests the showtimes of the movie, validating that the showtimes of the theater are all included.
+     * 5. Requests pages with an invalid limit, a reversed range or half of the previous page, expecting a 400 response.
+     *
+     * @throws Exception if any error occurs while adding, retrieving or deleting the showtimes
+     */
+    @Test
+    @Order(6)
+    public void getShowtimesFlow() throws Exception {
+        OffsetDateTime start = OffsetDateTime.of(2030, 4, 1, 12, 0, 0, 0, ZoneOffset.UTC);
+        int[] startHours = {0, 3, 6, 6, 9, 12};
+        List<Showtime> created = new ArrayList<>();
+        for (int i = 0; i < startHours.length; i++) {
+            // Showtimes of a theater cannot overlap, so the second showtime at the same hour is in another theater.
+            String theater = i == 3 ? "Range Theater 2" : "Range Theater";
+            Showtime showtime = new Showtime(showtimeTestService.movie.getId(), theater,
+                    start.plusHours(startHours[i]), start.plusHours(startHours[i] + 2), 25.0);
+            MvcResult result = showtimeTestService.addShowtime(showtime);
+            assertEquals(201, result.getResponse().getStatus());
+            created.add(objectMapper.readValue(result.getResponse().getContentAsString(), Showtime.class));
+        }
+
+        List<Showtime> inRange = readShowtimes(showtimeTestService.getShowtimes(Map.of("theater", "Range Theater",
+                "from", start.plusHours(3).toString(), "to", start.plusHours(12).toString())));
+        assertEquals(List.of(created.get(1).getId(), created.get(2).getId(), created.get(4).getId()), ids(inRange));
+
+        List<Long> paged = new ArrayList<>();
+        Map<String, String> params = Map.of("movieId", showtimeTestService.movie.getId().toString(),
+                "from", start.toString(), "to", start.plusHours(13).toString(), "limit", "2");
+        List<Showtime> page = readShowtimes(showtimeTestService.getShowtimes(params));
+        while (!page.isEmpty()) {
+            assertTrue(page.size() <= 2);
+            paged.addAll(ids(page));
+            Showtime last = page.get(page.size() - 1);
+            Map<String, String> nextParams = new HashMap<>(params);
+            nextParams.put("afterStartTime", last.getStartTime().toString());
+            nextParams.put("afterId", last.getId().toString());
+            page = readShowtimes(showtimeTestService.getShowtimes(nextParams));
+        }
+        assertEquals(ids(created), paged);
+
+        List<Long> movieShowtimes = ids(readShowtimes(showtimeTestService.getShowtimes(
+                Map.of("movieId", showtimeTestService.movie.getId().toString()))));
+        assertTrue(movieShowtimes.containsAll(ids(created)));
+
+        assertEquals(400, showtimeTestService.getShowtimes(Map.of("limit", "0")).getResponse().getStatus());
+        assertEquals(400, showtimeTestService.getShowtimes(Map.of("from", start.plusHours(1).toString(),
+                "to", start.toString())).getResponse().getStatus());
+        assertEquals(400, showtimeTestService.getShowtimes(Map.of("afterId", created.get(0).getId().toString()))
+                .getResponse().getStatus());
+
+        for (Showtime showtime : created) {
+            assertEquals(200, showtimeTestService.deleteShowtime(showtime.getId()).getResponse().getStatus());
+        }
+    }
+
+    /**
+     * Tests the bulk import of showtimes from a CSV file.
+     *
+     * This test performs the following steps:
+     * 1. Imports a file with three valid showtimes, one of them with a quoted theater name, a showtime overlapping
+     *    an earlier line, a showtime of a missing movie, a showtime with an invalid price and a line with
+     *    a missing field.
+     * 2. Validates that the valid showtimes are imported and listed in their theaters, and that every other
+     *    record is reported with its line and error.
+     * 3. Imports the first showtime again, and validates that it is rejected as overlapping the imported one.
+     *
+     * @throws Exception if any error occurs while importing, retrieving or deleting the showtimes
+     */
+    @Test
+    @Order(7)
+    public void importShowtimesFlow() throws Exception {
+        Long movieId = showtimeTestService.movie.getId();
+        String header = "movieId,theater,startTime,endTime,price";
+        String first = movieId + ",Import Theater,2030-05-01T18:00:00Z,2030-05-01T20:00:00Z,30";
+        String file = String.join("\n", header,
+                first,
+                movieId + ",\"Import Theater, Hall \"\"B\"\"\",2030-05-01T18:00:00Z,2030-05-01T20:00:00Z,35.5",
+                movieId + ",Import Theater,2030-05-01T19:00:00Z,2030-05-01T21:00:00Z,30",
+                "99999999,Import Theater,2030-05-02T18:00:00Z,2030-05-02T20:00:00Z,30",
+                movieId + ",Import Theater,2030-05-03T18:00:00Z,2030-05-03T20:00:00Z,cheap",
+                movieId + ",Import Theater,2030-05-04T18:00:00Z,2030-05-04T20:00:00Z",
+                movieId + ",Import Theater,2030-05-01T20:30:00Z,2030-05-01T22:00:00Z,30");
+        MvcResult response = showtimeTestService.importShowtimes(file, MediaType.parseMediaType("text/csv"));
+        assertEquals(200, response.getResponse().getStatus());
+        JsonNode report = objectMapper.readTree(response.getResponse().getContentAsString());
+        assertEquals(3, report.get("imported").asInt());
+        assertEquals(4, report.get("failed").asInt());
+        List<Integer> errorLines = new ArrayList<>();
+        report.get("errors").forEach(error -> errorLines.add(error.get("line").asInt()));
+        assertEquals(List.of(4, 5, 6, 7), errorLines);
+        assertEquals("Movie not found with id - 99999999", report.get("errors").get(1).get("error").asText());
+
+        List<Showtime> imported = readShowtimes(showtimeTestService.getShowtimes(Map.of("theater", "Import Theater")));
+        assertEquals(2, imported.size());
+        assertEquals(OffsetDateTime.parse("2030-05-01T20:30:00Z").toInstant(), imported.get(1).getStartTime().toInstant());
+        List<Showtime> hallB = readShowtimes(showtimeTestService.getShowtimes(Map.of("theater", "Import Theater, Hall \"B\"")));
+        assertEquals(1, hallB.size());
+        assertEquals(35.5, hallB.get(0).getPrice());
+        imported.addAll(hallB);
+
+        response = showtimeTestService.importShowtimes(header + "\n" + first, MediaType.parseMediaType("text/csv"));
+        report = objectMapper.readTree(response.getResponse().getContentAsString());
+        assertEquals(0, report.get("imported").asInt());
+        assertEquals(2, report.get("errors").get(0).get("line").asInt());
+
+        for (Showtime showtime : imported) {
+            assertEquals(200, showtimeTestService.deleteShowtime(showtime.getId()).getResponse().getStatus());
+        }
+    }
+
+    /**
+     * Tests the conditional requests of a showtime:
+     * 1. Reads a showtime, and verifies that reading it again with its ETag returns 304 without a body.
+     * 2. Updates the showtime with that ETag in If-Match, and verifies that the update returns a new ETag.
+     * 3. Verifies that updating the showtime again with the old ETag returns 412 and leaves it unchanged,
+     *    and that reading it with the old ETag returns the updated showtime.
+     */
+    @Test
+    @Order(8)
+    public void conditionalRequestsFlow() throws Exception {
+        MvcResult response = showtimeTestService.getShowtimeByIdMvc(showtime0.getId());
+        assertEquals(200, response.getResponse().getStatus());
+        String eTag = response.getResponse().getHeader(HttpHeaders.ETAG);
+        assertEquals("\"0\"", eTag);
+
+        response = showtimeTestService.getShowtimeByIdIfNoneMatch(showtime0.getId(), eTag);
+        assertEquals(304, response.getResponse().getStatus());
+        assertEquals("", response.getResponse().getContentAsString());
+
+        Showtime updated = new Showtime(showtime0.getMovieId(), showtime0.getTheater(),
+                showtime0.getStartTime(), showtime0.getEndTime(), showtime0.getPrice() + 1);
+        response = showtimeTestService.updateShowtimeIfMatch(showtime0.getId(), updated, eTag);
+        assertEquals(200, response.getResponse().getStatus());
+        String newETag = response.getResponse().getHeader(HttpHeaders.ETAG);
+        assertEquals("\"1\"", newETag);
+
+        Showtime stale = new Showtime(showtime0.getMovieId(), showtime0.getTheater(),
+                showtime0.getStartTime(), showtime0.getEndTime(), showtime0.getPrice() + 2);
+        assertEquals(412, showtimeTestService.updateShowtimeIfMatch(showtime0.getId(), stale, eTag).getResponse().getStatus());
+        assertEquals(showtime0.getPrice() + 1, showtimeTestService.getShowtimeById(showtime0.getId()).getPrice());
+
+        response = showtimeTestService.getShowtimeByIdIfNoneMatch(showtime0.getId(), eTag);
+        assertEquals(200, response.getResponse().getStatus());
+        assertEquals(newETag, response.getResponse().getHeader(HttpHeaders.ETAG));
+        assertEquals(304, showtimeTestService.getShowtimeByIdIfNoneMatch(showtime0.getId(), "W/" + newETag)
+                .getResponse().getStatus());
+    }
+
+    /**
+     * Tests the showtimes in the binary formats. For CBOR and Smile:
+     * 1. Adds a showtime with a body in the format, and verifies that the response in the format has its times
+     *    as ISO-8601 strings like the JSON one.
+     * 2. Retrieves the showtime in the format and as JSON, and verifies that both are the same showtime.
+     */
+    @Test
+    @Order(9)
+    public void binaryFormatsFlow() throws Exception {
+        Map<MediaType, ObjectMapper> formats = Map.of(
+                MediaType.APPLICATION_CBOR, CBORMapper.builder().addModule(new JavaTimeModule()).build(),
+                BinaryFormatsConfig.APPLICATION_SMILE, SmileMapper.builder().addModule(new JavaTimeModule()).build());
+        OffsetDateTime start = OffsetDateTime.of(2031, 1, 1, 10, 0, 0, 0, ZoneOffset.ofHours(2));
+        for (Map.Entry<MediaType, ObjectMapper> format : formats.entrySet()) {
+            ObjectMapper formatMapper = format.getValue();
+            Showtime showtime = new Showtime(showtime0.getMovieId(), "Binary Theater", start, start.plusHours(2), 30.5);
+            MvcResult response = showtimeTestService.addShowtime(formatMapper.writeValueAsBytes(showtime), format.getKey());
+            assertEquals(201, response.getResponse().getStatus());
+            assertEquals(format.getKey().toString(), response.getResponse().getContentType());
+            JsonNode content = formatMapper.readTree(response.getResponse().getContentAsByteArray());
+            assertTrue(content.get("startTime").isTextual());
+            Showtime created = formatMapper.treeToValue(content, Showtime.class);
+            assertTrue(start.isEqual(created.getStartTime()));
+
+            response = showtimeTestService.getShowtimeById(created.getId(), format.getKey());
+            assertEquals(200, response.getResponse().getStatus());
+            Showtime read = formatMapper.readValue(response.getResponse().getContentAsByteArray(), Showtime.class);
+            assertEquals(showtimeTestService.getShowtimeById(created.getId()).toString(), read.toString());
+            assertEquals(created.toString(), read.toString());
+
+            assertEquals(200, showtimeTestService.deleteShowtime(created.getId()).getResponse().getStatus());
+            start = start.plusDays(1);
+        }
+    }
+
+    /**
+     * Tests that the catalog snapshot returns the same showtime pages as the query of the database.
+     *
+     * This test performs the following steps:
+     * 1. Turns the snapshot on and loads it, then adds showtimes of two movies in three theaters, some of them
+     *    starting at the same time in different theaters, moves one of them to another theater and deletes another,
+     *    so the snapshot is built from its loaded version and the writes.
+     * 2. Pages through the showtimes with a limit of two, following the start time and ID of the last showtime
+     *    of each page, without a filter, by theater, by movie, in a time range and with all the filters together.
+     * 3. Validates that each filter returns the same pages with the snapshot on and off.
+     *
+     * @throws Exception if any error occurs while adding, retrieving or deleting the showtimes
+     */
+    @Test
+    @Order(10)
+    public void catalogSnapshotPagesFlow() throws Exception {
+        String otherTitle = showtimeTestService.movieTestService.movieTitles.get(1);
+        showtimeTestService.movieTestService.deleteMovie(otherTitle);
+        MvcResult result = showtimeTestService.movieTestService.addMovie(otherTitle);
+        assertEquals(201, result.getResponse().getStatus());
+        Long otherMovieId = objectMapper.readTree(result.getResponse().getContentAsString()).get("id").asLong();
+        Long movieId = showtimeTestService.movie.getId();
+        OffsetDateTime start = OffsetDateTime.of(2030, 9, 1, 12, 0, 0, 0, ZoneOffset.UTC);
+        List<String> theaters = List.of("Snapshot Theater A", "Snapshot Theater B", "Snapshot Theater C");
+
+        ReflectionTestUtils.setField(catalogSnapshot, "enabled", true);
+        try {
+            readShowtimes(showtimeTestService.getShowtimes(Map.of()));
+            List<Showtime> created = new ArrayList<>();
+            for (int hour = 0; hour < 12; hour += 3) {
+                for (int i = 0; i < theaters.size(); i++) {
+                    Showtime showtime = new Showtime((hour + i) % 2 == 0 ? movieId : otherMovieId, theaters.get(i),
+                            start.plusHours(hour), start.plusHours(hour + 2), 25.0);
+                    result = showtimeTestService.addShowtime(showtime);
+                    assertEquals(201, result.getResponse().getStatus());
+                    created.add(objectMapper.readValue(result.getResponse().getContentAsString(), Showtime.class));
+                }
+            }
+
+            Showtime moved = created.get(0);
+            assertEquals(200, showtimeTestService.updateShowtime(moved.getId(), new Showtime(moved.getMovieId(),
+                    theaters.get(2), start.plusHours(13), start.plusHours(15), 30.0)).getResponse().getStatus());
+            assertEquals(200, showtimeTestService.deleteShowtime(created.get(4).getId()).getResponse().getStatus());
+
+            List<Map<String, String>> filters = List.of(
+                    Map.of(),
+                    Map.of("theater", theaters.get(2)),
+                    Map.of("movieId", otherMovieId.toString()),
+                    Map.of("from", start.plusHours(3).toString(), "to", start.plusHours(9).toString()),
+                    Map.of("theater", theaters.get(0), "movieId", movieId.toString(),
+                            "from", start.plusHours(1).toString(), "to", start.plusHours(12).toString()));
+            for (Map<String, String> filter : filters) {
+                List<List<String>> snapshotPages = showtimePages(filter);
+                ReflectionTestUtils.setField(catalogSnapshot, "enabled", false);
+                List<List<String>> databasePages = showtimePages(filter);
+                ReflectionTestUtils.setField(catalogSnapshot, "enabled", true);
+                assertFalse(databasePages.isEmpty(), filter.toString());
+                assertEquals(databasePages, snapshotPages, filter.toString());
+            }
+
+            assertEquals(5, showtimePages(Map.of("theater", theaters.get(2))).stream().mapToInt(List::size).sum());
+        } finally {
+            ReflectionTestUtils.setField(catalogSnapshot, "enabled", false);
+            catalogSnapshot.evictAll();
+            assertEquals(200, showtimeTestService.movieTestService.deleteMovie(otherTitle).getResponse().getStatus());
+        }
+    }
+
+    /**
+     * Tests the overlap checks of the in-memory schedules of the theaters.
+     *
+     * This test performs the following steps:
+     * 1. Adds a showtime to a theater, then a showtime that fully contains it and one that it fully contains,
+     *    and validates that both are rejected with a 400 status code.
+     * 2. Adds a showtime at the same time in a second theater, and validates that it is created.
+     * 3. Updates the second showtime to move it to the first theater at an overlapping time, validates that it is
+     *    rejected with a 400 status code, and that it still holds its time in the second theater.
+     * 4. Moves it to the first theater at a free time, and validates that its former time in the second theater
+     *    can be taken by another showtime while its new time is rejected for others.
+     *
+     * @throws Exception if any error occurs while adding, updating or deleting the showtimes
+     */
+    @Test
+    @Order(11)
+    public void theaterOverlapFlow() throws Exception {
+        Long movieId = showtimeTestService.movie.getId();
+        OffsetDateTime start = OffsetDateTime.of(2030, 10, 1, 12, 0, 0, 0, ZoneOffset.UTC);
+        List<Long> createdIds = new ArrayList<>();
+        MvcResult response = showtimeTestService.addShowtime(
+                new Showtime(movieId, "Overlap Theater A", start, start.plusHours(2), 20.0));
+        assertEquals(201, response.getResponse().getStatus());
+        createdIds.add(objectMapper.readValue(response.getResponse().getContentAsString(), Showtime.class).getId());
+
+        assertEquals(400, showtimeTestService.addShowtime(new Showtime(movieId, "Overlap Theater A",
+                start.minusHours(1), start.plusHours(3), 20.0)).getResponse().getStatus());
+        assertEquals(400, showtimeTestService.addShowtime(new Showtime(movieId, "Overlap Theater A",
+                start.plusMinutes(30), start.plusMinutes(90), 20.0)).getResponse().getStatus());
+
+        response = showtimeTestService.addShowtime(new Showtime(movieId, "Overlap Theater B", start, start.plusHours(2), 20.0));
+        assertEquals(201, response.getResponse().getStatus());
+        Showtime moving = objectMapper.readValue(response.getResponse().getContentAsString(), Showtime.class);
+        createdIds.add(moving.getId());
+
+        assertEquals(400, showtimeTestService.updateShowtime(moving.getId(), new Showtime(movieId, "Overlap Theater A",
+                start.plusHours(1), start.plusHours(3), 20.0)).getResponse().getStatus());
+        assertEquals("Overlap Theater B", showtimeTestService.getShowtimeById(moving.getId()).getTheater());
+        assertEquals(400, showtimeTestService.addShowtime(new Showtime(movieId, "Overlap Theater B",
+                start, start.plusHours(2), 20.0)).getResponse().getStatus());
+
+        assertEquals(200, showtimeTestService.updateShowtime(moving.getId(), new Showtime(movieId, "Overlap Theater A",
+                start.plusHours(3), start.plusHours(5), 20.0)).getResponse().getStatus());
+        response = showtimeTestService.addShowtime(new Showtime(movieId, "Overlap Theater B", start, start.plusHours(2), 20.0));
+        assertEquals(201, response.getResponse().getStatus());
+        createdIds.add(objectMapper.readValue(response.getResponse().getContentAsString(), Showtime.class).getId());
+        assertEquals(400, showtimeTestService.addShowtime(new Showtime(movieId, "Overlap Theater A",
+                start.plusHours(4), start.plusHours(6), 20.0)).getResponse().getStatus());
+
+        for (Long id : createdIds) {
+            assertEquals(200, showtimeTestService.deleteShowtime(id).getResponse().getStatus());
+        }
+    }
+
+    /**
+     * Tests the overlap checks run in the database while the advisory lock of a theater is held,
+     * against a theater with a long history of showtimes.
+     *
+     * This test performs the following steps:
+     * 1. Adds a couple of showtimes to a theater, two hours each with an hour between them.
+     * 2. Adds showtimes overlapping the first, the last, and all of them, and validates that they are rejected
+     *    with a 400 status code, while a showtime in a gap and one after the last are created.
+     * 3. Updates the last showtime to overlap the one before it, validates a 400 status code, and moves it
+     *    by half an hour over its own time, validating that it is not reported as overlapping itself.
+     *
+     * @throws Exception if any error occurs while adding, updating or deleting the showtimes
+     */
+    @Test
+    @Order(12)
+    public void advisoryOverlapWithHistoryFlow() throws Exception {
+        assertTrue(theaterLocks.isAdvisory());
+        Long movieId = showtimeTestService.movie.getId();
+        String theater = "History Theater";
+        OffsetDateTime start = OffsetDateTime.of(2031, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+        int history = 30;
+        List<Long> createdIds = new ArrayList<>();
+        for (int i = 0; i < history; i++) {
+            MvcResult response = showtimeTestService.addShowtime(new Showtime(movieId, theater,
+                    start.plusHours(3L * i), start.plusHours(3L * i + 2), 20.0));
+            assertEquals(201, response.getResponse().getStatus());
+            createdIds.add(objectMapper.readValue(response.getResponse().getContentAsString(), Showtime.class).getId());
+        }
+
+        OffsetDateTime last = start.plusHours(3L * (history - 1));
+        assertEquals(400, showtimeTestService.addShowtime(new Showtime(movieId, theater,
+                start.plusMinutes(90), start.plusMinutes(150), 20.0)).getResponse().getStatus());
+        assertEquals(400, showtimeTestService.addShowtime(new Showtime(movieId, theater,
+                last.plusHours(1), last.plusHours(3), 20.0)).getResponse().getStatus());
+        assertEquals(400, showtimeTestService.addShowtime(new Showtime(movieId, theater,
+                start.minusHours(1), last.plusHours(3), 20.0)).getResponse().getStatus());
+
+        MvcResult response = showtimeTestService.addShowtime(new Showtime(movieId, theater,
+                start.plusMinutes(130), start.plusMinutes(170), 20.0));
+        assertEquals(201, response.getResponse().getStatus());
+        createdIds.add(objectMapper.readValue(response.getResponse().getContentAsString(), Showtime.class).getId());
+        response = showtimeTestService.addShowtime(new Showtime(movieId, theater, last.plusHours(3), last.plusHours(5), 20.0));
+        assertEquals(201, response.getResponse().getStatus());
+        Showtime moving = objectMapper.readValue(response.getResponse().getContentAsString(), Showtime.class);
+        createdIds.add(moving.getId());
+
+        assertEquals(400, showtimeTestService.updateShowtime(moving.getId(), new Showtime(movieId, theater,
+                last.plusHours(1), last.plusHours(3), 20.0)).getResponse().getStatus());
+        assertEquals(200, showtimeTestService.updateShowtime(moving.getId(), new Showtime(movieId, theater,
+                last.plusMinutes(210), last.plusMinutes(330), 20.0)).getResponse().getStatus());
+
+        for (Long id : createdIds) {
+            assertEquals(200, showtimeTestService.deleteShowtime(id).getResponse().getStatus());
+        }
+    }
+
+    /**
+     * Reads all the pages of showtimes matching the filters, two showtimes at a time.
+     */
+    private List<List<String>> showtimePages(Map<String, String> filter) throws Exception {
+        List<List<String>> pages = new ArrayList<>();
+        Map<String, String> params = new HashMap<>(filter);
+        params.put("limit", "2");
+        List<Showtime> page = readShowtimes(showtimeTestService.getShowtimes(params));
+        while (!page.isEmpty()) {
+            pages.add(page.stream().map(Showtime::toString).toList());
+            Showtime last = page.get(page.size() - 1);
+            params.put("afterStartTime", last.getStartTime().toString());
+            params.put("afterId", last.getId().toString());
+            page = readShowtimes(showtimeTestService.getShowtimes(params));
+        }
+
+        return pages;
+    }
+
+    private List<Showtime> readShowtimes(MvcResult result) throws Exception {
+        assertEquals(200, result.getResponse().getStatus());
+        return objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<List<Showtime>>() {});
+    }
+
+    private static List<Long> ids(List<Showtime> showtimes) {
+        return showtimes.stream().map(Showtime::getId).toList();
+    }
 }
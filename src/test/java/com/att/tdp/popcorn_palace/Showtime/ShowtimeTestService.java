@@ -4,20 +4,26 @@ import com.att.tdp.popcorn_palace.Movie.MovieTestService;
 import com.att.tdp.popcorn_palace.entity.Movie;
 import com.att.tdp.popcorn_palace.entity.Showtime;
 import com.att.tdp.popcorn_palace.repository.ShowtimeRepository;
+import com.att.tdp.popcorn_palace.service.CatalogSnapshot;
+import com.att.tdp.popcorn_palace.service.TheaterScheduleIndex;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import java.io.File;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 
@@ -28,6 +34,7 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
  * ShowtimeRepository for dependencies.
  */
 @Service
+@Profile("!reactive")
 public class ShowtimeTestService {
     @Autowired
     private MockMvc mockMvc;
@@ -38,6 +45,12 @@ public class ShowtimeTestService {
     @Autowired
     public ShowtimeRepository showtimeRepository;
 
+    @Autowired
+    private TheaterScheduleIndex theaterScheduleIndex;
+
+    @Autowired
+    private CatalogSnapshot catalogSnapshot;
+
     public JsonNode showtimesData;
     private ObjectMapper objectMapper;
     public List<List<Showtime>> updatedShowtimes;
@@ -124,6 +137,19 @@ public class ShowtimeTestService {
         return result;
     }
 
+    /**
+     * Retrieves a showtime by its ID with an If-None-Match header.
+     *
+     * @param id the unique identifier of the showtime to retrieve
+     * @param eTag the ETag sent in the If-None-Match header
+     * @return the MvcResult containing the response of the request
+     * @throws Exception if an error occurs while performing the request
+     */
+    public MvcResult getShowtimeByIdIfNoneMatch(Long id, String eTag) throws Exception {
+        return mockMvc.perform(get("/showtimes/" + id.toString()).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andReturn();
+    }
+
     /**
      * Adds a showtime to the system by making a POST request and returns the result of the operation.
      * The showtime data is retrieved from a preloaded source, modified, and sent in the POST request.
@@ -158,6 +184,49 @@ public class ShowtimeTestService {
         return result;
     }
 
+    /**
+     * Sends a request to add the given showtime, without tracking it in the preloaded data.
+     *
+     * @param showtime the showtime to be added, without an ID
+     * @return an MvcResult object containing the server's response to the POST request
+     * @throws Exception if an error occurs during the execution of the POST request
+     */
+    public MvcResult addShowtime(Showtime showtime) throws Exception {
+        return mockMvc.perform(post("/showtimes")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(showtime)))
+                .andReturn();
+    }
+
+    /**
+     * Imports showtimes by sending a file in a POST request to the "/showtimes/import" endpoint.
+     *
+     * @param content the content of the file
+     * @param contentType the type of the file, NDJSON or CSV
+     * @return an MvcResult object containing the server's response to the POST request
+     * @throws Exception if an error occurs during the execution of the POST request
+     */
+    public MvcResult importShowtimes(String content, MediaType contentType) throws Exception {
+        return mockMvc.perform(post("/showtimes/import")
+                        .contentType(contentType)
+                        .content(content))
+                .andReturn();
+    }
+
+    /**
+     * Retrieves a page of showtimes by performing a GET request to the "/showtimes" endpoint with the given filters.
+     *
+     * @param params the query parameters of the request, such as theater, movieId, from, to, afterStartTime,
+     *               afterId and limit
+     * @return an MvcResult object containing the server's response to the GET request
+     * @throws Exception if an error occurs during the execution of the GET request
+     */
+    public MvcResult getShowtimes(Map<String, String> params) throws Exception {
+        MockHttpServletRequestBuilder request = get("/showtimes");
+        params.forEach(request::param);
+        return mockMvc.perform(request).andReturn();
+    }
+
     /**
      * Updates an existing showtime with new details provided in the request.
      *
@@ -182,6 +251,66 @@ public class ShowtimeTestService {
 
     }
 
+    /**
+     * Updates the showtime with the specified ID with the details of the given showtime.
+     *
+     * @param id the unique identifier of the showtime to be updated
+     * @param showtime the new details of the showtime
+     * @return the result of the mock MVC request, encapsulated in an MvcResult object
+     * @throws Exception if an error occurs while performing the mock MVC request
+     */
+    public MvcResult updateShowtime(Long id, Showtime showtime) throws Exception {
+        return mockMvc.perform(post("/showtimes/update/" + id.toString())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(showtime)))
+                .andReturn();
+    }
+
+    /**
+     * Updates the showtime with the specified ID with an If-Match header.
+     *
+     * @param id the unique identifier of the showtime to be updated
+     * @param showtime the new details of the showtime
+     * @param eTag the ETag sent in the If-Match header
+     * @return the result of the mock MVC request, encapsulated in an MvcResult object
+     * @throws Exception if an error occurs while performing the mock MVC request
+     */
+    public MvcResult updateShowtimeIfMatch(Long id, Showtime showtime, String eTag) throws Exception {
+        return mockMvc.perform(post("/showtimes/update/" + id.toString())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header(HttpHeaders.IF_MATCH, eTag)
+                        .content(objectMapper.writeValueAsString(showtime)))
+                .andReturn();
+    }
+
+    /**
+     * Adds a showtime with a body encoded in the given format, and asks for the response in the same format.
+     *
+     * @param body the encoded showtime
+     * @param format the media type of the body and of the response
+     * @return the result of the mock MVC request, encapsulated in an MvcResult object
+     * @throws Exception if an error occurs while performing the mock MVC request
+     */
+    public MvcResult addShowtime(byte[] body, MediaType format) throws Exception {
+        return mockMvc.perform(post("/showtimes")
+                        .contentType(format)
+                        .accept(format)
+                        .content(body))
+                .andReturn();
+    }
+
+    /**
+     * Retrieves a showtime by its ID in the given format.
+     *
+     * @param id the unique identifier of the showtime to retrieve
+     * @param accept the media type sent in the Accept header
+     * @return the MvcResult containing the response of the request
+     * @throws Exception if an error occurs while performing the request
+     */
+    public MvcResult getShowtimeById(Long id, MediaType accept) throws Exception {
+        return mockMvc.perform(get("/showtimes/" + id.toString()).accept(accept)).andReturn();
+    }
+
     /**
      * Deletes a showtime with the specified ID.
      *
@@ -197,9 +326,24 @@ public class ShowtimeTestService {
     }
 
     /**
-     * Deletes all records from the associated data repository.
+     * Purges a showtime with the specified ID in the background.
+     *
+     * @param id the unique identifier of the showtime to be purged
+     * @return the result of the mock MVC request, encapsulated in an MvcResult object
+     * @throws Exception if an error occurs during the deletion process
+     */
+    public MvcResult purgeShowtime(Long id) throws Exception {
+        return mockMvc.perform(delete("/showtimes/" + id.toString()).param("async", "true"))
+                .andReturn();
+    }
+
+    /**
+     * Deletes all records from the associated data repository,
+     * and drops the in-memory theater schedules and the catalog snapshot that mirror them.
      */
     public void deleteAll() {
         showtimeRepository.deleteAll();
+        theaterScheduleIndex.evictAll();
+        catalogSnapshot.evictAll();
     }
 }
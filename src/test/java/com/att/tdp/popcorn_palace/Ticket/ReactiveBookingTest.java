@@ -0,0 +1,173 @@
+package com.att.tdp.popcorn_palace.Ticket;
+
+import com.att.tdp.popcorn_palace.entity.Movie;
+import com.att.tdp.popcorn_palace.entity.Showtime;
+import com.att.tdp.popcorn_palace.entity.Ticket;
+import com.att.tdp.popcorn_palace.service.SeatOccupancyMap;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the functional routes of the reactive profile, see ReactiveConfig.
+ *
+ * The server runs on Netty with a random port and the requests are sent with `WebTestClient`,
+ * since MockMvc and the test services built on it only exist for the servlet server.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("reactive")
+public class ReactiveBookingTest {
+    private static final String MOVIE_TITLE = "Reactive Movie";
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private SeatOccupancyMap seatOccupancyMap;
+
+    private Movie movie;
+    private Showtime showtime;
+
+    /**
+     * Adds a movie and a showtime of it through the annotated controllers, which run on the blocking threads.
+     */
+    @BeforeEach
+    public void init() {
+        webTestClient.delete().uri("/movies/{movieTitle}", MOVIE_TITLE).exchange();
+        movie = webTestClient.post().uri("/movies")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new Movie(MOVIE_TITLE, "Action", 120.0, 8.0, 2024))
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(Movie.class).returnResult().getResponseBody();
+        OffsetDateTime start = OffsetDateTime.of(2030, 7, 1, 18, 0, 0, 0, ZoneOffset.UTC);
+        showtime = webTestClient.post().uri("/showtimes")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new Showtime(movie.getId(), "Reactive Theater", start, start.plusHours(2), 20.0))
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(Showtime.class).returnResult().getResponseBody();
+    }
+
+    /**
+     * Deletes the showtime with its tickets, and the movie.
+     */
+    @AfterEach
+    public void cleanUp() {
+        webTestClient.delete().uri("/showtimes/{showtimeId}", showtime.getId()).exchange();
+        webTestClient.delete().uri("/movies/{movieTitle}", MOVIE_TITLE).exchange();
+    }
+
+    /**
+     * Tests the bookings of the functional route.
+     *
+     * This method performs the following steps:
+     * 1. Books a seat of the showtime, and verifies a 201 response with a booking ID.
+     * 2. Books the same seat for another user, and verifies a 400 response.
+     * 3. Frees the seat in the seat map only, as if another instance had taken it, books it again,
+     *    and verifies that the conditional insert skips it with a 400 response.
+     * 4. Books a seat of a showtime that does not exist, and verifies a 404 response.
+     * 5. Books a ticket without a seat number, and verifies a 400 response.
+     */
+    @Test
+    public void bookingFlow() {
+        String userId = UUID.randomUUID().toString();
+        Map<String, String> booking = webTestClient.post().uri("/bookings")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new Ticket(showtime.getId(), 10, userId))
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(new ParameterizedTypeReference<Map<String, String>>() {})
+                .returnResult().getResponseBody();
+        assertNotNull(booking);
+        assertNotNull(UUID.fromString(booking.get("bookingId")));
+
+        webTestClient.post().uri("/bookings")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new Ticket(showtime.getId(), 10, UUID.randomUUID().toString()))
+                .exchange()
+                .expectStatus().isBadRequest();
+
+        seatOccupancyMap.release(showtime.getId(), 10);
+        webTestClient.post().uri("/bookings")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new Ticket(showtime.getId(), 10, UUID.randomUUID().toString()))
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody(String.class).isEqualTo("Seat is not empty");
+        assertTrue(seatOccupancyMap.isTaken(showtime.getId(), 10));
+
+        webTestClient.post().uri("/bookings")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new Ticket(Long.valueOf("99999999"), 10, userId))
+                .exchange()
+                .expectStatus().isNotFound();
+
+        webTestClient.post().uri("/bookings")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new Ticket(showtime.getId(), null, userId))
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    /**
+     * Tests the movie catalog of the functional route and of the page endpoint.
+     *
+     * This method performs the following steps:
+     * 1. Retrieves all the movies from the functional route, and verifies that the movie is listed.
+     * 2. Retrieves them as CBOR, and verifies the content type.
+     * 3. Retrieves a page with a limit, which is served by MovieController, and verifies that it holds one movie.
+     * 4. Retrieves the movies after an ID without a limit, and verifies a 400 response.
+     * 5. Retrieves them with an Accept header listing CBOR first with a lower quality than JSON, and verifies
+     *    a JSON response, then with an Accept header accepting no format, and verifies a 406 response.
+     */
+    @Test
+    public void getAllMoviesFlow() {
+        List<Movie> movies = webTestClient.get().uri("/movies/all")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(Movie.class).returnResult().getResponseBody();
+        assertNotNull(movies);
+        assertTrue(movies.stream().anyMatch(curr -> curr.getId().equals(movie.getId())));
+
+        webTestClient.get().uri("/movies/all")
+                .accept(MediaType.APPLICATION_CBOR)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.APPLICATION_CBOR);
+
+        webTestClient.get().uri("/movies/all?limit=1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(Movie.class).hasSize(1);
+
+        webTestClient.get().uri("/movies/all?after={after}", movie.getId())
+                .exchange()
+                .expectStatus().isBadRequest();
+
+        webTestClient.get().uri("/movies/all")
+                .header(HttpHeaders.ACCEPT, "application/cbor;q=0.1, application/json")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_JSON);
+
+        webTestClient.get().uri("/movies/all")
+                .header(HttpHeaders.ACCEPT, "application/xml")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.NOT_ACCEPTABLE);
+    }
+}
@@ -1,10 +1,21 @@
 package com.att.tdp.popcorn_palace.Ticket;
 
+import com.att.tdp.popcorn_palace.config.BinaryFormatsConfig;
+import com.att.tdp.popcorn_palace.entity.Movie;
 import com.att.tdp.popcorn_palace.entity.Showtime;
 import com.att.tdp.popcorn_palace.entity.Ticket;
+import com.att.tdp.popcorn_palace.entity.TicketStatus;
+import com.att.tdp.popcorn_palace.Movie.MovieTestService;
+import com.att.tdp.popcorn_palace.service.BookingJournal;
+import com.att.tdp.popcorn_palace.service.SeatOccupancyMap;
 import com.att.tdp.popcorn_palace.service.ShowtimeService;
+import com.att.tdp.popcorn_palace.util.MappedJournal;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestMethodOrder;
@@ -12,16 +23,41 @@ import org.junit.jupiter.api.Order;
 import org.junit.jupiter.api.MethodOrderer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.util.ReflectionTestUtils;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.Is.is;
 import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 
 @SpringBootTest
 @AutoConfigureMockMvc
+@AutoConfigureObservability
 @TestMethodOrder(MethodOrderer.OrderAnnotation.class)
 public class TicketTest {
 
@@ -34,6 +70,18 @@ public class TicketTest {
     @Autowired
     private ShowtimeService showtimeService;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private BookingJournal bookingJournal;
+
+    @Autowired
+    private SeatOccupancyMap seatOccupancyMap;
+
     /**
      * Initializes the environment and test data needed for ticket-related test cases.
      * Performs the following operations:
@@ -118,6 +166,682 @@ public class TicketTest {
 
     }
 
+    /**
+     * Tests that concurrent bookings of the same seat are serialized by the seat map.
+     *
+     * This method performs the following steps:
+     * 1. Sends several booking requests for the same free seat of a showtime in parallel.
+     * 2. Verifies that exactly one of them succeeded with 201 and all the others were rejected with 400.
+     * 3. Verifies that only one ticket was stored in the repository for that seat.
+     *
+     * @throws Exception if any error occurs during the test execution
+     */
+    @Test
+    @Order(3)
+    public void concurrentSeatBooking() throws Exception {
+        int requests = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(requests);
+        List<Future<MvcResult>> results = new ArrayList<>();
+        for (int i = 0; i < requests; i++) {
+            Ticket ticket = new Ticket(ticket0.getShowtimeId(), 7, ticket0.getUserId());
+            results.add(executor.submit(() -> ticketTestService.bookTicket(ticket)));
+        }
+
+        int booked = 0;
+        for (Future<MvcResult> result : results) {
+            int status = result.get().getResponse().getStatus();
+            assertTrue(status == 201 || status == 400);
+            if (status == 201) {
+                booked++;
+            }
+        }
+
+        executor.shutdown();
+        assertEquals(1, booked);
+        long storedTickets = ticketTestService.getAllTicketRepository().stream()
+                .filter(ticket -> ticket.getShowtimeId().equals(ticket0.getShowtimeId()) && ticket.getSeatNumber() == 7)
+                .count();
+        assertEquals(1, storedTickets);
+    }
+
+    /**
+     * Tests the flow of booking several seats of a showtime in one request.
+     *
+     * This method performs the following steps:
+     * 1. Books three free seats at once and verifies a 201 response with one booking ID per seat.
+     * 2. Tries to book a free seat together with an already booked seat, and verifies a 400 response.
+     * 3. Verifies that the free seat of the rejected request was not booked, so the request was all or nothing.
+     * 4. Tries to book seats of a showtime that does not exist, and verifies a 404 response.
+     *
+     * @throws Exception if any error occurs during the test execution
+     */
+    @Test
+    @Order(4)
+    public void batchBookingFlow() throws Exception {
+        Long showtimeId = ticket0.getShowtimeId();
+        MvcResult response = ticketTestService.bookTickets(showtimeId, List.of(20, 21, 22), ticket0.getUserId());
+        assertEquals(201, response.getResponse().getStatus());
+        assertEquals(3, objectMapper.readTree(response.getResponse().getContentAsString()).get("bookingIds").size());
+
+        response = ticketTestService.bookTickets(showtimeId, List.of(23, 22), ticket0.getUserId());
+        assertEquals(400, response.getResponse().getStatus());
+        assertTrue(ticketTestService.getAllTicketRepository().stream()
+                .noneMatch(ticket -> ticket.getShowtimeId().equals(showtimeId) && ticket.getSeatNumber() == 23));
+
+        response = ticketTestService.bookTickets(showtimeId, List.of(23), ticket0.getUserId());
+        assertEquals(201, response.getResponse().getStatus());
+
+        response = ticketTestService.bookTickets(Long.valueOf("99999999"), List.of(1, 2), ticket0.getUserId());
+        assertEquals(404, response.getResponse().getStatus());
+    }
+
+    /**
+     * Tests the flow of holding seats before booking them.
+     *
+     * This method performs the following steps:
+     * 1. Holds a free seat, verifies a 201 response, and verifies that the seat cannot be booked while it is held.
+     * 2. Confirms the hold, verifies a 200 response, and verifies that confirming it again returns 404.
+     * 3. Holds and releases another seat, and verifies that the seat can be booked again.
+     * 4. Holds a third seat and waits for its hold to expire, then verifies that the seat was freed
+     *    and that the expired hold can no longer be confirmed.
+     * 5. Verifies that a booking ID or a user ID with non-ASCII digits is rejected with 404 and 400, not 500.
+     *
+     * @throws Exception if any error occurs during the test execution
+     */
+    @Test
+    @Order(5)
+    public void holdFlow() throws Exception {
+        Long showtimeId = ticket0.getShowtimeId();
+        MvcResult response = ticketTestService.holdTicket(new Ticket(showtimeId, 30, ticket0.getUserId()));
+        assertEquals(201, response.getResponse().getStatus());
+        String bookingId = objectMapper.readTree(response.getResponse().getContentAsString()).get("bookingId").asText();
+        response = ticketTestService.bookTicket(new Ticket(showtimeId, 30, ticket0.getUserId()));
+        assertEquals(400, response.getResponse().getStatus());
+        assertEquals(200, ticketTestService.confirmHold(bookingId).getResponse().getStatus());
+        assertEquals(404, ticketTestService.confirmHold(bookingId).getResponse().getStatus());
+
+        response = ticketTestService.holdTicket(new Ticket(showtimeId, 31, ticket0.getUserId()));
+        assertEquals(201, response.getResponse().getStatus());
+        bookingId = objectMapper.readTree(response.getResponse().getContentAsString()).get("bookingId").asText();
+        assertEquals(200, ticketTestService.releaseHold(bookingId).getResponse().getStatus());
+        assertEquals(404, ticketTestService.releaseHold(bookingId).getResponse().getStatus());
+        response = ticketTestService.bookTicket(new Ticket(showtimeId, 31, ticket0.getUserId()));
+        assertEquals(201, response.getResponse().getStatus());
+
+        response = ticketTestService.holdTicket(new Ticket(showtimeId, 32, ticket0.getUserId()));
+        assertEquals(201, response.getResponse().getStatus());
+        bookingId = objectMapper.readTree(response.getResponse().getContentAsString()).get("bookingId").asText();
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (ticketTestService.ticketRepository.existsById(UUID.fromString(bookingId)) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+
+        assertFalse(ticketTestService.ticketRepository.existsById(UUID.fromString(bookingId)));
+        assertEquals(404, ticketTestService.confirmHold(bookingId).getResponse().getStatus());
+        response = ticketTestService.bookTicket(new Ticket(showtimeId, 32, ticket0.getUserId()));
+        assertEquals(201, response.getResponse().getStatus());
+
+        // Arabic-Indic and fullwidth digits, which Character.digit accepts but UUID.fromString does not.
+        assertEquals(404, ticketTestService.confirmHold("\u0661" + bookingId.substring(1)).getResponse().getStatus());
+        response = ticketTestService.bookTicket(new Ticket(showtimeId, 33, "\uFF11" + ticket0.getUserId().substring(1)));
+        assertEquals(400, response.getResponse().getStatus());
+    }
+
+    /**
+     * Tests that the booking path never pins the carrier thread of a virtual thread.
+     *
+     * This method performs the following steps:
+     * 1. Records the JFR events that are emitted when a virtual thread blocks while pinned to its carrier.
+     * 2. Books seats concurrently from virtual threads, on a showtime whose seats are not loaded yet,
+     *    so the bookings also go through the lazy load of the seat map and the connection pool.
+     * 3. Verifies that every booking succeeded and that no pinned event was recorded.
+     *
+     * @throws Exception if any error occurs during the test execution
+     */
+    @Test
+    @Order(6)
+    public void virtualThreadBookingDoesNotPin() throws Exception {
+        Long showtimeId = ticketTestService.showtime1.getId();
+        List<RecordedEvent> pinnedEvents = new CopyOnWriteArrayList<>();
+        try (RecordingStream recording = new RecordingStream()) {
+            recording.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO).withStackTrace();
+            recording.onEvent("jdk.VirtualThreadPinned", pinnedEvents::add);
+            recording.startAsync();
+
+            List<Future<MvcResult>> results = new ArrayList<>();
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int seatNumber = 200; seatNumber < 300; seatNumber++) {
+                    Ticket ticket = new Ticket(showtimeId, seatNumber, ticket1.getUserId());
+                    results.add(executor.submit(() -> ticketTestService.bookTicket(ticket)));
+                }
+            }
+
+            for (Future<MvcResult> result : results) {
+                assertEquals(201, result.get().getResponse().getStatus());
+            }
+
+            recording.stop();
+        }
+
+        assertTrue(pinnedEvents.isEmpty(), () -> "Pinned virtual threads: " + pinnedEvents);
+    }
+
+    /**
+     * Tests the metrics of the booking pipeline.
+     *
+     * This method performs the following steps:
+     * 1. Books a free seat, the same seat again and a seat of a showtime that does not exist.
+     * 2. Verifies that each outcome was counted once, that the insert stage was timed,
+     *    and that the insert statement was counted.
+     * 3. Verifies that the metrics are exported through the Prometheus endpoint.
+     *
+     * @throws Exception if any error occurs during the test execution
+     */
+    @Test
+    @Order(7)
+    public void bookingMetricsFlow() throws Exception {
+        double booked = outcomeCount("booked");
+        double seatTaken = outcomeCount("seat_taken");
+        double notFound = outcomeCount("not_found");
+        long inserts = meterRegistry.get("booking.stage").tag("stage", "insert").timer().count();
+        double insertStatements = meterRegistry.get("db.statements").tag("type", "insert").counter().count();
+
+        Ticket ticket = new Ticket(ticket0.getShowtimeId(), 50, ticket0.getUserId());
+        assertEquals(201, ticketTestService.bookTicket(ticket).getResponse().getStatus());
+        assertEquals(400, ticketTestService.bookTicket(ticket).getResponse().getStatus());
+        ticket = new Ticket(Long.valueOf("99999999"), 50, ticket0.getUserId());
+        assertEquals(404, ticketTestService.bookTicket(ticket).getResponse().getStatus());
+
+        assertEquals(booked + 1, outcomeCount("booked"));
+        assertEquals(seatTaken + 1, outcomeCount("seat_taken"));
+        assertEquals(notFound + 1, outcomeCount("not_found"));
+        assertEquals(inserts + 1, meterRegistry.get("booking.stage").tag("stage", "insert").timer().count());
+        assertTrue(meterRegistry.get("db.statements").tag("type", "insert").counter().count() > insertStatements);
+
+        String prometheus = mockMvc.perform(get("/actuator/prometheus")).andReturn().getResponse().getContentAsString();
+        assertTrue(prometheus.contains("booking_outcome_total"));
+        assertTrue(prometheus.contains("booking_stage_seconds"));
+        assertTrue(prometheus.contains("db_statements_total"));
+    }
+
+    private double outcomeCount(String outcome) {
+        return meterRegistry.get("booking.outcome").tag("outcome", outcome).counter().count();
+    }
+
+    /**
+     * Tests the replay of the booking journal after a crash.
+     *
+     * This method performs the following steps:
+     * 1. Writes five booked tickets to a journal with small segments, and closes it without draining it,
+     *    as if the server crashed after acknowledging them. One of the tickets is for a showtime that does not exist,
+     *    one is for a seat that is already booked and one has a user ID the database rejects.
+     * 2. Replays a copy of the journal, and verifies that the two valid tickets were inserted and the files deleted.
+     * 3. Verifies that the three other tickets were written to the dead-letter file with their reason and counted
+     *    as lost bookings.
+     * 4. Replays the journal again, and verifies that the tickets were not inserted twice.
+     *
+     * @throws Exception if any error occurs during the test execution
+     */
+    @Test
+    @Order(8)
+    public void bookingJournalReplay() throws Exception {
+        Path directory = Files.createTempDirectory("booking-journal");
+        Path copy = Files.createTempDirectory("booking-journal-copy");
+        List<Ticket> tickets = List.of(
+                new Ticket(ticket0.getShowtimeId(), 60, ticket0.getUserId()),
+                new Ticket(ticket0.getShowtimeId(), 61, ticket0.getUserId()),
+                new Ticket(Long.valueOf("99999999"), 62, ticket0.getUserId()),
+                new Ticket(ticket0.getShowtimeId(), ticket0.getSeatNumber(), ticket0.getUserId()),
+                new Ticket(ticket0.getShowtimeId(), 63, "not-a-uuid"));
+        Path deadLetterFile = Files.createTempDirectory("booking-journal-lost").resolve("lost.ndjson");
+        ReflectionTestUtils.setField(bookingJournal, "deadLetterFile", deadLetterFile);
+        double showtimeDeleted = lostCount("showtime_deleted");
+        double seatTaken = lostCount("seat_taken");
+        double rejected = lostCount("rejected");
+        try (MappedJournal journal = new MappedJournal(directory, 256)) {
+            for (Ticket ticket : tickets) {
+                journal.append(BookingJournal.encode(ticket));
+            }
+        }
+
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.copy(file, copy.resolve(file.getFileName()));
+            }
+        }
+
+        assertEquals(5, bookingJournal.replay(copy));
+        try (Stream<Path> files = Files.list(copy)) {
+            assertEquals(0, files.count());
+        }
+
+        assertTrue(ticketTestService.ticketRepository.existsById(tickets.get(0).getBookingId()));
+        assertTrue(ticketTestService.ticketRepository.existsById(tickets.get(1).getBookingId()));
+        for (Ticket ticket : tickets.subList(2, 5)) {
+            assertFalse(ticketTestService.ticketRepository.existsById(ticket.getBookingId()));
+        }
+
+        List<String> lostBookings = Files.readAllLines(deadLetterFile);
+        assertEquals(3, lostBookings.size());
+        List<String> reasons = List.of("showtime_deleted", "seat_taken", "rejected");
+        for (int i = 0; i < reasons.size(); i++) {
+            Map<?, ?> lostBooking = objectMapper.readValue(lostBookings.get(i), Map.class);
+            assertEquals(tickets.get(i + 2).getBookingId().toString(), lostBooking.get("bookingId"));
+            assertEquals(reasons.get(i), lostBooking.get("reason"));
+        }
+
+        assertEquals(showtimeDeleted + 1, lostCount("showtime_deleted"));
+        assertEquals(seatTaken + 1, lostCount("seat_taken"));
+        assertEquals(rejected + 1, lostCount("rejected"));
+        long storedTickets = ticketTestService.getAllTicketRepository().size();
+
+        assertEquals(5, bookingJournal.replay(directory));
+        assertEquals(storedTickets, ticketTestService.getAllTicketRepository().size());
+    }
+
+    private double lostCount(String reason) {
+        Counter counter = meterRegistry.find("booking.journal.lost").tag("reason", reason).counter();
+        return counter == null ? 0 : counter.count();
+    }
+
+    /**
+     * Tests the seat map of a showtime and its ETag.
+     *
+     * This method performs the following steps:
+     * 1. Retrieves the seats as JSON, and verifies that the booked seat is listed and that an ETag is returned.
+     * 2. Retrieves them again with the ETag, and verifies a 304 response.
+     * 3. Books another seat, and verifies that the same ETag now gets a 200 response with a new ETag and the new seat.
+     * 4. Verifies that the binary bitmap and the run-length encoding contain the same seats as the JSON.
+     * 5. Retrieves the seats of a showtime that does not exist, and verifies a 404 response.
+     * 6. Books, batch books and holds a seat above the highest seat number, and verifies 400 responses.
+     * 7. Books the highest seat number, and verifies that every format of the seat map still lists it.
+     * 8. Retrieves the seats with an Accept header listing JSON first with a lower quality than the bitmap,
+     *    and verifies the bitmap, then with an Accept header accepting no format, and verifies a 406 response.
+     *
+     * @throws Exception if any error occurs during the test execution
+     */
+    @Test
+    @Order(9)
+    public void seatMapFlow() throws Exception {
+        Long showtimeId = ticket0.getShowtimeId();
+        MvcResult response = ticketTestService.getSeatMap(showtimeId, MediaType.APPLICATION_JSON, null);
+        assertEquals(200, response.getResponse().getStatus());
+        String eTag = response.getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotNull(eTag);
+        assertTrue(seatNumbers(response).contains(ticket0.getSeatNumber()));
+        response = ticketTestService.getSeatMap(showtimeId, MediaType.APPLICATION_JSON, eTag);
+        assertEquals(304, response.getResponse().getStatus());
+
+        assertEquals(201, ticketTestService.bookTicket(new Ticket(showtimeId, 70, ticket0.getUserId()))
+                .getResponse().getStatus());
+        response = ticketTestService.getSeatMap(showtimeId, MediaType.APPLICATION_JSON, eTag);
+        assertEquals(200, response.getResponse().getStatus());
+        assertNotEquals(eTag, response.getResponse().getHeader(HttpHeaders.ETAG));
+        List<Integer> seatNumbers = seatNumbers(response);
+        assertTrue(seatNumbers.contains(70));
+
+        byte[] bitmap = ticketTestService.getSeatMap(showtimeId, MediaType.APPLICATION_OCTET_STREAM, null)
+                .getResponse().getContentAsByteArray();
+        List<Integer> bitmapSeats = new ArrayList<>();
+        for (int seatNumber = 0; seatNumber < bitmap.length * 8; seatNumber++) {
+            if ((bitmap[seatNumber / 8] & (1 << (seatNumber % 8))) != 0) {
+                bitmapSeats.add(seatNumber);
+            }
+        }
+
+        assertEquals(seatNumbers, bitmapSeats);
+        String runs = ticketTestService.getSeatMap(showtimeId, MediaType.TEXT_PLAIN, null)
+                .getResponse().getContentAsString();
+        assertEquals(seatNumbers, decodeRuns(Base64.getDecoder().decode(runs)));
+
+        response = ticketTestService.getSeatMap(Long.valueOf("99999999"), MediaType.APPLICATION_JSON, null);
+        assertEquals(404, response.getResponse().getStatus());
+
+        assertEquals(400, ticketTestService.bookTicket(new Ticket(showtimeId, Integer.MAX_VALUE, ticket0.getUserId()))
+                .getResponse().getStatus());
+        assertEquals(400, ticketTestService.bookTickets(showtimeId, List.of(71, Ticket.MAX_SEAT_NUMBER + 1),
+                ticket0.getUserId()).getResponse().getStatus());
+        assertEquals(400, ticketTestService.holdTicket(new Ticket(showtimeId, Integer.MAX_VALUE, ticket0.getUserId()))
+                .getResponse().getStatus());
+
+        assertEquals(201, ticketTestService.bookTicket(new Ticket(showtimeId, Ticket.MAX_SEAT_NUMBER,
+                ticket0.getUserId())).getResponse().getStatus());
+        response = ticketTestService.getSeatMap(showtimeId, MediaType.APPLICATION_JSON, null);
+        assertEquals(200, response.getResponse().getStatus());
+        seatNumbers = seatNumbers(response);
+        assertTrue(seatNumbers.contains(Ticket.MAX_SEAT_NUMBER));
+        assertFalse(seatNumbers.contains(71));
+        bitmap = ticketTestService.getSeatMap(showtimeId, MediaType.APPLICATION_OCTET_STREAM, null)
+                .getResponse().getContentAsByteArray();
+        assertEquals(Ticket.MAX_SEAT_NUMBER / 8 + 1, bitmap.length);
+        runs = ticketTestService.getSeatMap(showtimeId, MediaType.TEXT_PLAIN, null)
+                .getResponse().getContentAsString();
+        assertEquals(seatNumbers, decodeRuns(Base64.getDecoder().decode(runs)));
+
+        response = ticketTestService.getSeatMap(showtimeId, "application/json;q=0.5, application/octet-stream");
+        assertEquals(200, response.getResponse().getStatus());
+        assertEquals(MediaType.APPLICATION_OCTET_STREAM_VALUE, response.getResponse().getContentType());
+        assertArrayEquals(bitmap, response.getResponse().getContentAsByteArray());
+        assertEquals(406, ticketTestService.getSeatMap(showtimeId, "image/png").getResponse().getStatus());
+    }
+
+    private List<Integer> seatNumbers(MvcResult response) throws Exception {
+        List<Integer> seatNumbers = new ArrayList<>();
+        objectMapper.readTree(response.getResponse().getContentAsString()).get("occupiedSeats")
+                .forEach(seatNumber -> seatNumbers.add(seatNumber.asInt()));
+        return seatNumbers;
+    }
+
+    private static List<Integer> decodeRuns(byte[] runs) {
+        List<Integer> seatNumbers = new ArrayList<>();
+        boolean taken = false;
+        int seatNumber = 0;
+        int position = 0;
+        while (position < runs.length) {
+            int length = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = runs[position++];
+                length |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+
+            for (int i = 0; i < length; i++, seatNumber++) {
+                if (taken) {
+                    seatNumbers.add(seatNumber);
+                }
+            }
+
+            taken = !taken;
+        }
+
+        return seatNumbers;
+    }
+
+    /**
+     * Tests the booking of a seat of a showtime whose seats are not loaded into memory.
+     *
+     * This method performs the following steps:
+     * 1. Books a free seat and verifies a 201 response, sent as a single insert statement without any select.
+     * 2. Books the same seat again and verifies a 400 response with the "Seat is not empty" error.
+     * 3. Books a seat of a showtime that does not exist and verifies a 404 response.
+     * 4. Holds a free seat and verifies that the ticket is stored as held with its deadline.
+     * 5. Verifies that the booked seat is part of the seat map once it is loaded.
+     *
+     * @throws Exception if any error occurs during the test execution
+     */
+    @Test
+    @Order(10)
+    public void singleStatementBookingFlow() throws Exception {
+        Long showtimeId = ticket0.getShowtimeId();
+        double selects = meterRegistry.get("db.statements").tag("type", "select").counter().count();
+        double inserts = meterRegistry.get("db.statements").tag("type", "insert").counter().count();
+        assertEquals(201, ticketTestService.bookTicket(new Ticket(showtimeId, 80, ticket0.getUserId()))
+                .getResponse().getStatus());
+        assertEquals(selects, meterRegistry.get("db.statements").tag("type", "select").counter().count());
+        assertEquals(inserts + 1, meterRegistry.get("db.statements").tag("type", "insert").counter().count());
+
+        MvcResult response = ticketTestService.bookTicket(new Ticket(showtimeId, 80, ticket1.getUserId()));
+        assertEquals(400, response.getResponse().getStatus());
+        assertEquals("Seat is not empty", response.getResponse().getContentAsString());
+        response = ticketTestService.bookTicket(new Ticket(Long.valueOf("99999999"), 80, ticket0.getUserId()));
+        assertEquals(404, response.getResponse().getStatus());
+
+        response = ticketTestService.holdTicket(new Ticket(showtimeId, 81, ticket0.getUserId()));
+        assertEquals(201, response.getResponse().getStatus());
+        String bookingId = objectMapper.readTree(response.getResponse().getContentAsString()).get("bookingId").asText();
+        Ticket held = ticketTestService.ticketRepository.findById(UUID.fromString(bookingId)).orElseThrow();
+        assertEquals(TicketStatus.HELD, held.getStatus());
+        assertNotNull(held.getHeldUntil());
+        assertEquals(200, ticketTestService.confirmHold(bookingId).getResponse().getStatus());
+
+        List<Integer> seatNumbers = seatNumbers(ticketTestService.getSeatMap(showtimeId, MediaType.APPLICATION_JSON, null));
+        assertTrue(seatNumbers.containsAll(List.of(80, 81)));
+    }
+
+    /**
+     * Tests the set-based deletion of a movie with its showtimes and tickets, and the background purges.
+     *
+     * This method performs the following steps:
+     * 1. Adds a movie with two showtimes, books seats in both, and deletes the movie, which responds with 200.
+     * 2. Verifies that the showtimes and their tickets are deleted with the movie, that the showtimes cannot be
+     *    booked anymore, and that deleting the movie again responds with 404.
+     * 3. Adds the movie again with a showtime, books more seats than a purge batch, and purges the showtime,
+     *    which responds with 202 and deletes the showtime and its tickets in the background.
+     * 4. Adds a showtime with tickets to the movie and purges the movie, which responds with 202 and deletes
+     *    the movie, the showtime and its tickets in the background.
+     * 5. Verifies that purging a missing showtime or movie responds with 404.
+     *
+     * @throws Exception if any error occurs during the test execution
+     */
+    @Test
+    @Order(11)
+    public void deleteMovieWithShowtimesAndTickets() throws Exception {
+        MovieTestService movieTestService = ticketTestService.showtimeTestService.movieTestService;
+        String title = "Purge Movie";
+        String userId = ticket0.getUserId();
+        movieTestService.deleteMovie(title);
+        Long movieId = addPurgeMovie(title);
+        Long showtimeA = addPurgeShowtime(movieId, "Purge Theater A", List.of(1, 2, 3), userId);
+        Long showtimeB = addPurgeShowtime(movieId, "Purge Theater B", List.of(1), userId);
+
+        assertEquals(200, movieTestService.deleteMovie(title).getResponse().getStatus());
+        for (Long showtimeId : List.of(showtimeA, showtimeB)) {
+            assertEquals(404, ticketTestService.showtimeTestService.getShowtimeByIdMvc(showtimeId).getResponse().getStatus());
+            assertTrue(ticketTestService.ticketRepository.getSeatNumbersByShowtimeId(showtimeId).isEmpty());
+            assertEquals(404, ticketTestService.bookTicket(new Ticket(showtimeId, 4, userId)).getResponse().getStatus());
+        }
+
+        assertEquals(404, movieTestService.deleteMovie(title).getResponse().getStatus());
+
+        movieId = addPurgeMovie(title);
+        showtimeA = addPurgeShowtime(movieId, "Purge Theater A", List.of(1, 2, 3, 4, 5), userId);
+        assertEquals(202, ticketTestService.showtimeTestService.purgeShowtime(showtimeA).getResponse().getStatus());
+        awaitShowtimeDeleted(showtimeA);
+        assertTrue(ticketTestService.ticketRepository.getSeatNumbersByShowtimeId(showtimeA).isEmpty());
+
+        showtimeB = addPurgeShowtime(movieId, "Purge Theater B", List.of(1, 2, 3), userId);
+        assertEquals(202, movieTestService.purgeMovie(title).getResponse().getStatus());
+        awaitShowtimeDeleted(showtimeB);
+        assertTrue(ticketTestService.ticketRepository.getSeatNumbersByShowtimeId(showtimeB).isEmpty());
+        assertNull(movieTestService.movieRepository.getMovieByTitle(title));
+        assertEquals(404, movieTestService.purgeMovie(title).getResponse().getStatus());
+        assertEquals(404, ticketTestService.showtimeTestService.purgeShowtime(showtimeB).getResponse().getStatus());
+    }
+
+    private Long addPurgeMovie(String title) throws Exception {
+        MvcResult result = ticketTestService.showtimeTestService.movieTestService
+                .addMovie(new Movie(title, "Drama", 120.0, 7.5, 2024));
+        assertEquals(201, result.getResponse().getStatus());
+        return objectMapper.readValue(result.getResponse().getContentAsString(), Movie.class).getId();
+    }
+
+    private Long addPurgeShowtime(Long movieId, String theater, List<Integer> seatNumbers, String userId)
+            throws Exception {
+        OffsetDateTime startTime = OffsetDateTime.of(2031, 1, 1, 18, 0, 0, 0, ZoneOffset.UTC);
+        MvcResult result = ticketTestService.showtimeTestService
+                .addShowtime(new Showtime(movieId, theater, startTime, startTime.plusHours(2), 30.0));
+        assertEquals(201, result.getResponse().getStatus());
+        Long showtimeId = objectMapper.readValue(result.getResponse().getContentAsString(), Showtime.class).getId();
+        assertEquals(201, ticketTestService.bookTickets(showtimeId, seatNumbers, userId).getResponse().getStatus());
+        return showtimeId;
+    }
+
+    private void awaitShowtimeDeleted(Long showtimeId) throws Exception {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (ticketTestService.showtimeTestService.getShowtimeByIdMvc(showtimeId).getResponse().getStatus() != 404) {
+            assertTrue(System.nanoTime() < deadline, "Showtime " + showtimeId + " was not purged in time");
+            Thread.sleep(50);
+        }
+    }
+
+    /**
+     * Tests the bookings in the binary formats. For CBOR and Smile:
+     * 1. Books a seat with a body in the format, and verifies the booking ID of the response in the format.
+     * 2. Books the same seat again in the format, and verifies that it is rejected like the same booking as JSON.
+     *
+     * @throws Exception if any error occurs during the test execution
+     */
+    @Test
+    @Order(12)
+    public void binaryFormatsBookingFlow() throws Exception {
+        Map<MediaType, ObjectMapper> formats = Map.of(MediaType.APPLICATION_CBOR, new CBORMapper(),
+                BinaryFormatsConfig.APPLICATION_SMILE, new SmileMapper());
+        int seatNumber = 90;
+        for (Map.Entry<MediaType, ObjectMapper> format : formats.entrySet()) {
+            ObjectMapper formatMapper = format.getValue();
+            Ticket ticket = new Ticket(ticket0.getShowtimeId(), seatNumber, ticket0.getUserId());
+            MvcResult response = ticketTestService.bookTicket(formatMapper.writeValueAsBytes(ticket), format.getKey());
+            assertEquals(201, response.getResponse().getStatus());
+            assertEquals(format.getKey().toString(), response.getResponse().getContentType());
+            UUID bookingId = UUID.fromString(formatMapper.readTree(response.getResponse().getContentAsByteArray())
+                    .get("bookingId").asText());
+            assertEquals(seatNumber, ticketTestService.ticketRepository.findById(bookingId).orElseThrow().getSeatNumber());
+
+            int jsonStatus = ticketTestService.bookTicket(new Ticket(ticket0.getShowtimeId(), seatNumber, ticket0.getUserId()))
+                    .getResponse().getStatus();
+            assertNotEquals(201, jsonStatus);
+            assertEquals(jsonStatus, ticketTestService.bookTicket(formatMapper.writeValueAsBytes(ticket), format.getKey())
+                    .getResponse().getStatus());
+            seatNumber++;
+        }
+    }
+
+    /**
+     * Tests the seat changes sent and received through the change notifications, with a connection of its own
+     * playing another instance of the server:
+     * 1. Books a seat, and verifies that the other instance is notified that the seat is taken.
+     * 2. Loads the seats of the showtime, books a seat from the other instance and notifies it,
+     *    and verifies that the seat map shows the seat taken without being reloaded.
+     * 3. Deletes that ticket from the other instance and notifies it, and verifies that the seat is free again.
+     *
+     * @throws Exception if any error occurs during the test execution
+     */
+    @Test
+    @Order(13)
+    public void changeNotificationsFlow() throws Exception {
+        MovieTestService movieTestService = ticketTestService.showtimeTestService.movieTestService;
+        Long showtimeId = ticket0.getShowtimeId();
+        Duration timeout = Duration.ofSeconds(10);
+        try (Connection otherInstance = movieTestService.connectAsOtherInstance()) {
+            assertEquals(201, ticketTestService.bookTicket(new Ticket(showtimeId, 90, ticket0.getUserId()))
+                    .getResponse().getStatus());
+            assertTrue(movieTestService.awaitChanges(otherInstance, timeout,
+                    objectMapper.writeValueAsString(List.of("T", showtimeId, 90))));
+
+            assertFalse(seatNumbers(ticketTestService.getSeatMap(showtimeId, MediaType.APPLICATION_JSON, null))
+                    .contains(91));
+            UUID bookingId = UUID.randomUUID();
+            try (PreparedStatement insert = otherInstance.prepareStatement("INSERT INTO ticket "
+                    + "(booking_id, showtime_id, seat_number, user_id, status) VALUES (?, ?, 91, ?, 'BOOKED')")) {
+                insert.setObject(1, bookingId);
+                insert.setLong(2, showtimeId);
+                insert.setObject(3, UUID.fromString(ticket1.getUserId()));
+                insert.executeUpdate();
+            }
+
+            movieTestService.notifyChanges(otherInstance, objectMapper.writeValueAsString(List.of(List.of("T", showtimeId, 91))));
+            awaitSeat(showtimeId, 91, true, timeout);
+
+            try (PreparedStatement delete = otherInstance.prepareStatement("DELETE FROM ticket WHERE booking_id = ?")) {
+                delete.setObject(1, bookingId);
+                delete.executeUpdate();
+            }
+
+            movieTestService.notifyChanges(otherInstance, objectMapper.writeValueAsString(List.of(List.of("F", showtimeId, 91))));
+            awaitSeat(showtimeId, 91, false, timeout);
+        }
+    }
+
+    private void awaitSeat(Long showtimeId, int seatNumber, boolean taken, Duration timeout) throws Exception {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (seatNumbers(ticketTestService.getSeatMap(showtimeId, MediaType.APPLICATION_JSON, null))
+                .contains(seatNumber) != taken) {
+            assertTrue(System.nanoTime() < deadline, "Seat " + seatNumber + " was not updated in time");
+            Thread.sleep(50);
+        }
+    }
+
+    /**
+     * Tests that a hold cannot take the seat of a journaled booking that is not in the ticket table yet.
+     *
+     * This method performs the following steps:
+     * 1. Enables the booking journal without its drainer, so the journaled tickets stay pending.
+     * 2. Books a seat, and verifies that it was acknowledged but not inserted into the ticket table.
+     * 3. Evicts the seat map of the showtime, as a deleted showtime or a resync would.
+     * 4. Holds the same seat, and verifies a 400 response and that no held ticket was inserted.
+     *
+     * @throws Exception if any error occurs during the test execution
+     */
+    @Test
+    @Order(14)
+    public void journaledBookingHoldFlow() throws Exception {
+        Long showtimeId = ticket0.getShowtimeId();
+        Path directory = Files.createTempDirectory("booking-journal-pending");
+        MappedJournal journal = new MappedJournal(directory, 64 * 1024);
+        ReflectionTestUtils.setField(bookingJournal, "journal", journal);
+        ReflectionTestUtils.setField(bookingJournal, "enabled", true);
+        try {
+            MvcResult response = ticketTestService.bookTicket(new Ticket(showtimeId, 95, ticket0.getUserId()));
+            assertEquals(201, response.getResponse().getStatus());
+            String bookingId = objectMapper.readTree(response.getResponse().getContentAsString()).get("bookingId").asText();
+            assertFalse(ticketTestService.ticketRepository.existsById(UUID.fromString(bookingId)));
+            assertTrue(bookingJournal.getPendingSeatNumbers(showtimeId).contains(95));
+
+            seatOccupancyMap.evict(showtimeId);
+            response = ticketTestService.holdTicket(new Ticket(showtimeId, 95, ticket1.getUserId()));
+            assertEquals(400, response.getResponse().getStatus());
+            assertTrue(ticketTestService.getAllTicketRepository().stream()
+                    .noneMatch(ticket -> ticket.getShowtimeId().equals(showtimeId) && ticket.getSeatNumber() == 95));
+        } finally {
+            ReflectionTestUtils.setField(bookingJournal, "enabled", false);
+            ReflectionTestUtils.setField(bookingJournal, "journal", null);
+            ((Map<?, ?>) ReflectionTestUtils.getField(bookingJournal, "pendingTickets")).clear();
+            ((Collection<?>) ReflectionTestUtils.getField(bookingJournal, "drainQueue")).clear();
+            journal.close();
+            MappedJournal.deleteSegments(directory);
+            seatOccupancyMap.evict(showtimeId);
+        }
+    }
+
+    /**
+     * Tests that the seats of a showtime are dropped from memory once they are not accessed, and reloaded when needed.
+     *
+     * This method performs the following steps:
+     * 1. Makes the seat maps expire shortly after their last access, books a seat and retrieves the seat map,
+     *    which loads the seats of the showtime.
+     * 2. Waits longer than the expiry, and verifies that the seats of the showtime are not in memory anymore.
+     * 3. Verifies that the seat is taken again once the seats are reloaded from the ticket table,
+     *    and that booking it again gets a 400 response.
+     *
+     * @throws Exception if any error occurs during the test execution
+     */
+    @Test
+    @Order(15)
+    public void seatMapExpiryFlow() throws Exception {
+        Long showtimeId = ticket0.getShowtimeId();
+        Duration expireAfterAccess = (Duration) ReflectionTestUtils.getField(seatOccupancyMap, "expireAfterAccess");
+        ReflectionTestUtils.setField(seatOccupancyMap, "expireAfterAccess", Duration.ofMillis(200));
+        seatOccupancyMap.init();
+        try {
+            assertEquals(201, ticketTestService.bookTicket(new Ticket(showtimeId, 96, ticket0.getUserId()))
+                    .getResponse().getStatus());
+            assertTrue(seatNumbers(ticketTestService.getSeatMap(showtimeId, MediaType.APPLICATION_JSON, null))
+                    .contains(96));
+            assertTrue(seatOccupancyMap.isLoaded(showtimeId));
+
+            Thread.sleep(500);
+            assertFalse(seatOccupancyMap.isLoaded(showtimeId));
+            assertTrue(seatOccupancyMap.isTaken(showtimeId, 96));
+            assertEquals(400, ticketTestService.bookTicket(new Ticket(showtimeId, 96, ticket1.getUserId()))
+                    .getResponse().getStatus());
+        } finally {
+            ReflectionTestUtils.setField(seatOccupancyMap, "expireAfterAccess", expireAfterAccess);
+            seatOccupancyMap.init();
+        }
+    }
+
     /**
      * Tests the functionality of deleting a showtime along with its associated tickets.
      *
@@ -131,7 +855,7 @@ public class TicketTest {
      * @throws Exception if any error occurs during the test execution
      */
     @Test
-    @Order(3)
+    @Order(16)
     public void deleteShowtimeWithTickets() throws Exception {
         List<Ticket> ticketsBefore = ticketTestService.getAllTicketRepository();
         List<String> ticketsBeforeString = new ArrayList<>();
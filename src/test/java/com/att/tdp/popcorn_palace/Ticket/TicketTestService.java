@@ -1,22 +1,28 @@
 package com.att.tdp.popcorn_palace.Ticket;
 
 import com.att.tdp.popcorn_palace.Showtime.ShowtimeTestService;
+import com.att.tdp.popcorn_palace.dto.BatchBooking;
 import com.att.tdp.popcorn_palace.entity.Showtime;
 import com.att.tdp.popcorn_palace.entity.Ticket;
 import com.att.tdp.popcorn_palace.repository.TicketRepository;
+import com.att.tdp.popcorn_palace.service.SeatOccupancyMap;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import java.io.File;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 
@@ -26,6 +32,7 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
  * and deletion of ticket records.
  */
 @Service
+@Profile("!reactive")
 public class TicketTestService {
 
     @Autowired
@@ -37,6 +44,9 @@ public class TicketTestService {
     @Autowired
     public TicketRepository ticketRepository;
 
+    @Autowired
+    private SeatOccupancyMap seatOccupancyMap;
+
     private ObjectMapper objectMapper;
     public Showtime showtime0;
     public Showtime showtime1;
@@ -108,12 +118,132 @@ public class TicketTestService {
 
         if (response.getResponse().getStatus() == 201) {
             JsonNode jsonResponse = objectMapper.readTree(response.getResponse().getContentAsString());
-            ticket.setBookingId(jsonResponse.get("bookingId").asText());
+            ticket.setBookingId(UUID.fromString(jsonResponse.get("bookingId").asText()));
         }
 
         return response;
     }
 
+    /**
+     * Sends a POST request to create a booking for the given ticket.
+     *
+     * @param ticket the ticket to be booked
+     * @return an MvcResult object containing the response of the booking request
+     * @throws Exception if an error occurs during the booking process
+     */
+    public MvcResult bookTicket(Ticket ticket) throws Exception {
+        String ticketString = objectMapper.writeValueAsString(ticket);
+        return mockMvc.perform(post("/bookings")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(ticketString))
+                .andReturn();
+    }
+
+    /**
+     * Sends a POST request to book the given ticket with a body encoded in the given format,
+     * and asks for the response in the same format.
+     *
+     * @param body the encoded ticket
+     * @param format the media type of the body and of the response
+     * @return an MvcResult object containing the response of the booking request
+     * @throws Exception if an error occurs during the booking process
+     */
+    public MvcResult bookTicket(byte[] body, MediaType format) throws Exception {
+        return mockMvc.perform(post("/bookings")
+                        .contentType(format)
+                        .accept(format)
+                        .content(body))
+                .andReturn();
+    }
+
+    /**
+     * Sends a POST request to book several seats of a showtime at once.
+     *
+     * @param showtimeId the ID of the showtime
+     * @param seatNumbers the seat numbers to be booked
+     * @param userId the ID of the user booking the seats
+     * @return an MvcResult object containing the response of the batch booking request
+     * @throws Exception if an error occurs during the booking process
+     */
+    public MvcResult bookTickets(Long showtimeId, List<Integer> seatNumbers, String userId) throws Exception {
+        String bookingString = objectMapper.writeValueAsString(new BatchBooking(showtimeId, seatNumbers, userId));
+        return mockMvc.perform(post("/bookings/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(bookingString))
+                .andReturn();
+    }
+
+    /**
+     * Sends a POST request to hold the seat of the given ticket.
+     *
+     * @param ticket the ticket whose seat is held
+     * @return an MvcResult object containing the response of the hold request
+     * @throws Exception if an error occurs during the hold process
+     */
+    public MvcResult holdTicket(Ticket ticket) throws Exception {
+        String ticketString = objectMapper.writeValueAsString(ticket);
+        return mockMvc.perform(post("/bookings/hold")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(ticketString))
+                .andReturn();
+    }
+
+    /**
+     * Sends a POST request to confirm a held seat.
+     *
+     * @param bookingId the booking ID of the held ticket
+     * @return an MvcResult object containing the response of the confirm request
+     * @throws Exception if an error occurs during the confirm process
+     */
+    public MvcResult confirmHold(String bookingId) throws Exception {
+        return mockMvc.perform(post("/bookings/" + bookingId + "/confirm"))
+                .andReturn();
+    }
+
+    /**
+     * Sends a DELETE request to release a held seat.
+     *
+     * @param bookingId the booking ID of the held ticket
+     * @return an MvcResult object containing the response of the release request
+     * @throws Exception if an error occurs during the release process
+     */
+    public MvcResult releaseHold(String bookingId) throws Exception {
+        return mockMvc.perform(delete("/bookings/" + bookingId + "/hold"))
+                .andReturn();
+    }
+
+    /**
+     * Sends a GET request for the occupied seats of a showtime.
+     *
+     * @param showtimeId the ID of the showtime
+     * @param accept the requested format of the seats
+     * @param ifNoneMatch the ETag of the seats the client already has, or null
+     * @return an MvcResult object containing the response of the seat map request
+     * @throws Exception if an error occurs during the request
+     */
+    public MvcResult getSeatMap(Long showtimeId, MediaType accept, String ifNoneMatch) throws Exception {
+        MockHttpServletRequestBuilder request = get("/showtimes/" + showtimeId + "/seats").accept(accept);
+        if (ifNoneMatch != null) {
+            request.header(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        }
+
+        return mockMvc.perform(request).andReturn();
+    }
+
+    /**
+     * Sends a GET request for the occupied seats of a showtime with a raw Accept header,
+     * which may list several media types with their quality values.
+     *
+     * @param showtimeId the ID of the showtime
+     * @param accept the value of the Accept header
+     * @return an MvcResult object containing the response of the seat map request
+     * @throws Exception if an error occurs during the request
+     */
+    public MvcResult getSeatMap(Long showtimeId, String accept) throws Exception {
+        return mockMvc.perform(get("/showtimes/" + showtimeId + "/seats").header(HttpHeaders.ACCEPT, accept))
+                .andReturn();
+    }
+
     /**
      * Retrieves all ticket records from the ticket repository.
      *
@@ -126,11 +256,13 @@ public class TicketTestService {
     }
 
     /**
-     * Deletes all ticket records from the ticket repository.
+     * Deletes all ticket records from the ticket repository,
+     * and drops the in-memory seat map that mirrors them.
      *
      * @throws Exception if an error occurs during the deletion process
      */
     public void deleteAllTicketRepository() throws Exception {
         ticketRepository.deleteAll();
+        seatOccupancyMap.evictAll();
     }
 }
@@ -0,0 +1,150 @@
+package com.att.tdp.popcorn_palace.benchmark;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Booking throughput benchmark against a running server.
+ * Creates a movie and a showtime, then books distinct seats of the showtime with a fixed number of
+ * requests in flight, and prints the throughput and the latency percentiles of the bookings.
+ * Run it once against a server started normally and once against a server started with the "virtual"
+ * profile to compare the two threading modes. It only depends on the JDK, so it can be launched directly:
+ * {@code java src/test/java/com/att/tdp/popcorn_palace/benchmark/BookingBenchmark.java [baseUrl] [requests] [concurrency]}
+ */
+public class BookingBenchmark {
+    private static final Pattern ID = Pattern.compile("\"id\"\\s*:\\s*(\\d+)");
+
+    private final HttpClient client;
+    private final String baseUrl;
+
+    public BookingBenchmark(HttpClient client, String baseUrl) {
+        this.client = client;
+        this.baseUrl = baseUrl;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args.length > 0 ? args[0] : "http://localhost:8080";
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+        int concurrency = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            HttpClient client = HttpClient.newBuilder()
+                    .executor(executor)
+                    .connectTimeout(Duration.ofSeconds(10))
+                    .build();
+            BookingBenchmark benchmark = new BookingBenchmark(client, baseUrl);
+
+            // The warmup books a separate showtime so the measured run starts from an empty seat map.
+            benchmark.run(Math.max(1, requests / 10), concurrency, executor);
+            Result result = benchmark.run(requests, concurrency, executor);
+            System.out.println(result);
+        }
+    }
+
+    /**
+     * Books the given number of distinct seats of a new showtime.
+     *
+     * @param requests the number of bookings to send
+     * @param concurrency the maximum number of bookings in flight
+     * @param executor the executor sending the bookings
+     * @return the measured throughput and latencies
+     * @throws Exception if the movie or the showtime cannot be created
+     */
+    public Result run(int requests, int concurrency, ExecutorService executor) throws Exception {
+        long showtimeId = createShowtime();
+        long[] latencies = new long[requests];
+        AtomicInteger errors = new AtomicInteger();
+        Semaphore inFlight = new Semaphore(concurrency);
+
+        long start = System.nanoTime();
+        for (int seat = 0; seat < requests; seat++) {
+            inFlight.acquire();
+            int seatNumber = seat;
+            executor.execute(() -> {
+                try {
+                    long requestStart = System.nanoTime();
+                    int status = post("/bookings", "{\"showtimeId\":" + showtimeId + ",\"seatNumber\":" + seatNumber
+                            + ",\"userId\":\"" + UUID.randomUUID() + "\"}").statusCode();
+                    latencies[seatNumber] = System.nanoTime() - requestStart;
+                    if (status != 201) {
+                        errors.incrementAndGet();
+                    }
+                } catch (Exception e) {
+                    errors.incrementAndGet();
+                } finally {
+                    inFlight.release();
+                }
+            });
+        }
+
+        inFlight.acquire(concurrency);
+        long elapsed = System.nanoTime() - start;
+        inFlight.release(concurrency);
+        return new Result(requests, concurrency, errors.get(), elapsed, latencies);
+    }
+
+    private long createShowtime() throws Exception {
+        String title = "Benchmark " + UUID.randomUUID();
+        HttpResponse<String> movie = post("/movies", "{\"title\":\"" + title
+                + "\",\"genre\":\"Benchmark\",\"duration\":120,\"rating\":5,\"releaseYear\":2025}");
+        long movieId = parseId(movie);
+
+        OffsetDateTime startTime = OffsetDateTime.now(ZoneOffset.UTC).plusDays(1);
+        HttpResponse<String> showtime = post("/showtimes", "{\"movieId\":" + movieId + ",\"price\":10,\"theater\":\""
+                + title + "\",\"startTime\":\"" + startTime + "\",\"endTime\":\"" + startTime.plusHours(2) + "\"}");
+        return parseId(showtime);
+    }
+
+    private HttpResponse<String> post(String path, String body) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static long parseId(HttpResponse<String> response) {
+        Matcher matcher = ID.matcher(response.body());
+        if (response.statusCode() != 201 || !matcher.find()) {
+            throw new IllegalStateException("Unexpected response " + response.statusCode() + " - " + response.body());
+        }
+
+        return Long.parseLong(matcher.group(1));
+    }
+
+    /**
+     * Throughput and latency percentiles of a benchmark run.
+     */
+    public record Result(int requests, int concurrency, int errors, long elapsedNanos, long[] latencies) {
+        public double throughput() {
+            return requests / (elapsedNanos / 1e9);
+        }
+
+        public double percentileMillis(double percentile) {
+            long[] sorted = latencies.clone();
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+            return sorted[Math.max(0, index)] / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("requests=%d concurrency=%d errors=%d throughput=%.1f req/s p50=%.2f ms p99=%.2f ms p999=%.2f ms",
+                    requests, concurrency, errors, throughput(), percentileMillis(50), percentileMillis(99),
+                    percentileMillis(99.9));
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.att.tdp.popcorn_palace.benchmark;
+
+import com.att.tdp.popcorn_palace.entity.Movie;
+import com.att.tdp.popcorn_palace.entity.Showtime;
+import com.att.tdp.popcorn_palace.entity.Ticket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the validation of the entities and of the construction of a ticket,
+ * which includes the generation of its booking ID.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntityBenchmark {
+    private static final OffsetDateTime START_TIME = OffsetDateTime.of(2025, 1, 1, 10, 0, 0, 0, ZoneOffset.UTC);
+
+    private final Movie movie = new Movie("Title 1", "Action", 120.0, 8.7, 2025);
+    private final Showtime showtime = new Showtime(1L, "Theater", START_TIME, START_TIME.plusHours(2), 20.2);
+    private final Ticket ticket = new Ticket(1L, 105, "84438967-f68f-4fa0-b620-0f08217e76af");
+
+    @Benchmark
+    public String movieValidate() {
+        return movie.validate();
+    }
+
+    @Benchmark
+    public String showtimeValidate() {
+        return showtime.validate();
+    }
+
+    @Benchmark
+    public String ticketValidate() {
+        return ticket.validate();
+    }
+
+    @Benchmark
+    public Ticket ticketConstruction() {
+        return new Ticket(1L, 105, "84438967-f68f-4fa0-b620-0f08217e76af");
+    }
+}
@@ -0,0 +1,86 @@
+package com.att.tdp.popcorn_palace.benchmark;
+
+import com.att.tdp.popcorn_palace.entity.Movie;
+import com.att.tdp.popcorn_palace.entity.Showtime;
+import com.att.tdp.popcorn_palace.entity.Ticket;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the JSON serialization and deserialization of the entities,
+ * with an ObjectMapper configured like the one of the application.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+    private static final OffsetDateTime START_TIME = OffsetDateTime.of(2025, 1, 1, 10, 0, 0, 0, ZoneOffset.UTC);
+
+    private ObjectMapper objectMapper;
+    private Movie movie;
+    private Showtime showtime;
+    private Ticket ticket;
+    private byte[] movieJson;
+    private byte[] showtimeJson;
+    private byte[] ticketJson;
+
+    @Setup
+    public void setUp() throws Exception {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        movie = new Movie("Title 1", "Action", 120.0, 8.7, 2025);
+        movie.setId(1L);
+        showtime = new Showtime(1L, "Theater", START_TIME, START_TIME.plusHours(2), 20.2);
+        showtime.setId(1L);
+        ticket = new Ticket(1L, 105, "84438967-f68f-4fa0-b620-0f08217e76af");
+        movieJson = objectMapper.writeValueAsBytes(movie);
+        showtimeJson = objectMapper.writeValueAsBytes(showtime);
+        ticketJson = objectMapper.writeValueAsBytes(ticket);
+    }
+
+    @Benchmark
+    public byte[] movieSerialize() throws Exception {
+        return objectMapper.writeValueAsBytes(movie);
+    }
+
+    @Benchmark
+    public Movie movieDeserialize() throws Exception {
+        return objectMapper.readValue(movieJson, Movie.class);
+    }
+
+    @Benchmark
+    public byte[] showtimeSerialize() throws Exception {
+        return objectMapper.writeValueAsBytes(showtime);
+    }
+
+    @Benchmark
+    public Showtime showtimeDeserialize() throws Exception {
+        return objectMapper.readValue(showtimeJson, Showtime.class);
+    }
+
+    @Benchmark
+    public byte[] ticketSerialize() throws Exception {
+        return objectMapper.writeValueAsBytes(ticket);
+    }
+
+    @Benchmark
+    public Ticket ticketDeserialize() throws Exception {
+        return objectMapper.readValue(ticketJson, Ticket.class);
+    }
+}
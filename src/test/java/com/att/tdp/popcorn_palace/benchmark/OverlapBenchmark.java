@@ -0,0 +1,92 @@
+package com.att.tdp.popcorn_palace.benchmark;
+
+import com.att.tdp.popcorn_palace.entity.Showtime;
+import com.att.tdp.popcorn_palace.repository.ShowtimeRepository;
+import com.att.tdp.popcorn_palace.service.ShowtimeService;
+import com.att.tdp.popcorn_palace.service.TheaterScheduleIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of {@link ShowtimeService#checkOverLap} against theaters with a growing number of showtimes.
+ * The theater is loaded once from a stub repository, so only the in-memory overlap check is measured.
+ * Half of the probes overlap an existing showtime and half of them fall into a gap between two showtimes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OverlapBenchmark {
+    private static final String THEATER = "Benchmark Theater";
+    private static final OffsetDateTime FIRST_START = OffsetDateTime.of(2025, 1, 1, 10, 0, 0, 0, ZoneOffset.UTC);
+    private static final int PROBES = 1024;
+
+    @Param({"10", "100", "1000", "10000"})
+    private int theaterSize;
+
+    private ShowtimeService showtimeService;
+    private Showtime[] probes;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        List<Showtime> showtimes = new ArrayList<>(theaterSize);
+        for (int i = 0; i < theaterSize; i++) {
+            OffsetDateTime startTime = FIRST_START.plusHours(3L * i);
+            Showtime showtime = new Showtime(1L, THEATER, startTime, startTime.plusHours(2), 10.0);
+            showtime.setId((long) i + 1);
+            showtimes.add(showtime);
+        }
+
+        ShowtimeRepository showtimeRepository = (ShowtimeRepository) Proxy.newProxyInstance(
+                ShowtimeRepository.class.getClassLoader(), new Class<?>[] {ShowtimeRepository.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("getShowtimeByTheater")) {
+                        return showtimes;
+                    }
+
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        TheaterScheduleIndex theaterScheduleIndex = new TheaterScheduleIndex();
+        ReflectionTestUtils.setField(theaterScheduleIndex, "showtimeRepository", showtimeRepository);
+        showtimeService = new ShowtimeService();
+        ReflectionTestUtils.setField(showtimeService, "theaterScheduleIndex", theaterScheduleIndex);
+
+        SplittableRandom random = new SplittableRandom(42);
+        probes = new Showtime[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            // Every showtime is followed by a one hour gap, the odd probes start in the gap and stay in it.
+            OffsetDateTime startTime = FIRST_START.plusHours(3L * random.nextInt(theaterSize) + (i % 2 == 0 ? 1 : 2))
+                    .plusMinutes(10);
+            probes[i] = new Showtime(1L, THEATER, startTime, startTime.plusMinutes(i % 2 == 0 ? 120 : 40), 10.0);
+        }
+
+        showtimeService.checkOverLap(probes[0]);
+    }
+
+    @Benchmark
+    public boolean checkOverLap() {
+        Showtime probe = probes[next++ & (PROBES - 1)];
+        return showtimeService.checkOverLap(probe);
+    }
+}
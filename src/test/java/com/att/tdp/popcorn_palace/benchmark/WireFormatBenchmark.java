@@ -0,0 +1,108 @@
+package com.att.tdp.popcorn_palace.benchmark;
+
+import com.att.tdp.popcorn_palace.entity.Movie;
+import com.att.tdp.popcorn_palace.entity.Showtime;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the response bodies of the catalog in JSON, CBOR and Smile: a list of movies like the one
+ * of GET /movies/all and a page of showtimes like the one of GET /showtimes.
+ * The ObjectMappers are configured like the ones of the application, with the dates written as ISO-8601 strings.
+ * The time per operation is the serialization CPU per response, and the size of the bodies on the wire,
+ * without compression, is printed at the start of each trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WireFormatBenchmark {
+    private static final OffsetDateTime START_TIME = OffsetDateTime.of(2025, 1, 1, 10, 0, 0, 0, ZoneOffset.UTC);
+    private static final String[] GENRES = {"Action", "Comedy", "Drama", "Horror", "Sci-Fi"};
+
+    @Param({"json", "cbor", "smile"})
+    private String format;
+
+    @Param({"100"})
+    private int size;
+
+    private ObjectMapper objectMapper;
+    private List<Movie> movies;
+    private List<Showtime> showtimes;
+    private byte[] moviesBody;
+    private byte[] showtimesBody;
+
+    @Setup
+    public void setUp() throws Exception {
+        Jackson2ObjectMapperBuilder builder = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS,
+                        SerializationFeature.WRITE_DURATIONS_AS_TIMESTAMPS);
+        objectMapper = switch (format) {
+            case "cbor" -> builder.factory(new CBORFactory()).build();
+            case "smile" -> builder.factory(new SmileFactory()).build();
+            default -> builder.build();
+        };
+
+        movies = new ArrayList<>(size);
+        showtimes = new ArrayList<>(size);
+        for (int i = 1; i <= size; i++) {
+            Movie movie = new Movie("Title " + i, GENRES[i % GENRES.length], 90.0 + i % 60, (i % 100) / 10.0,
+                    1990 + i % 35);
+            movie.setId((long) i);
+            movies.add(movie);
+            OffsetDateTime startTime = START_TIME.plusMinutes(150L * i);
+            Showtime showtime = new Showtime((long) i, "Theater " + i % 10, startTime, startTime.plusHours(2),
+                    15.0 + i % 20 * 0.5);
+            showtime.setId((long) i);
+            showtimes.add(showtime);
+        }
+
+        moviesBody = objectMapper.writeValueAsBytes(movies);
+        showtimesBody = objectMapper.writeValueAsBytes(showtimes);
+        System.out.printf("%n%s bodies: %d movies in %d bytes, %d showtimes in %d bytes%n",
+                format, size, moviesBody.length, size, showtimesBody.length);
+    }
+
+    @Benchmark
+    public byte[] moviesSerialize() throws Exception {
+        return objectMapper.writeValueAsBytes(movies);
+    }
+
+    @Benchmark
+    public List<Movie> moviesDeserialize() throws Exception {
+        return objectMapper.readValue(moviesBody, new TypeReference<List<Movie>>() {});
+    }
+
+    @Benchmark
+    public byte[] showtimesSerialize() throws Exception {
+        return objectMapper.writeValueAsBytes(showtimes);
+    }
+
+    @Benchmark
+    public List<Showtime> showtimesDeserialize() throws Exception {
+        return objectMapper.readValue(showtimesBody, new TypeReference<List<Showtime>>() {});
+    }
+}
@@ -0,0 +1,92 @@
+package com.att.tdp.popcorn_palace.loadtest;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Latencies and outcomes of the requests of one operation of a load test phase.
+ * Every worker records into its own instance, which are merged once the phase is over,
+ * so recording never contends between workers.
+ * The outcome of a request is its HTTP status, or the simple name of the exception that failed it.
+ */
+public class LoadStats {
+    private long[] latencies = new long[1024];
+    private int count;
+    private final Map<String, Integer> outcomes = new TreeMap<>();
+
+    public void record(long latencyNanos, String outcome) {
+        if (count == latencies.length) {
+            latencies = Arrays.copyOf(latencies, count * 2);
+        }
+
+        latencies[count++] = latencyNanos;
+        outcomes.merge(outcome, 1, Integer::sum);
+    }
+
+    public void merge(LoadStats other) {
+        if (count + other.count > latencies.length) {
+            latencies = Arrays.copyOf(latencies, Math.max(latencies.length * 2, count + other.count));
+        }
+
+        System.arraycopy(other.latencies, 0, latencies, count, other.count);
+        count += other.count;
+        other.outcomes.forEach((outcome, requests) -> outcomes.merge(outcome, requests, Integer::sum));
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Counts the failed requests: the server errors and the requests that got no response at all.
+     *
+     * @return the number of failed requests
+     */
+    public int getErrors() {
+        int errors = 0;
+        for (Map.Entry<String, Integer> outcome : outcomes.entrySet()) {
+            if (!Character.isDigit(outcome.getKey().charAt(0)) || outcome.getKey().startsWith("5")) {
+                errors += outcome.getValue();
+            }
+        }
+
+        return errors;
+    }
+
+    /**
+     * Summarizes the requests with their throughput over the given time, their latency percentiles in
+     * milliseconds and the number of requests per outcome, in a fixed order so two reports can be diffed.
+     *
+     * @param elapsedNanos the duration of the phase
+     * @return the summary of the requests
+     */
+    public Map<String, Object> summary(long elapsedNanos) {
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("requests", count);
+        summary.put("errors", getErrors());
+        summary.put("throughput", round(count / (elapsedNanos / 1e9)));
+        summary.put("p50Ms", percentileMillis(sorted, 50));
+        summary.put("p99Ms", percentileMillis(sorted, 99));
+        summary.put("p999Ms", percentileMillis(sorted, 99.9));
+        summary.put("maxMs", count == 0 ? 0.0 : round(sorted[count - 1] / 1e6));
+        summary.put("outcomes", new TreeMap<>(outcomes));
+        return summary;
+    }
+
+    private static double percentileMillis(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0.0;
+        }
+
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return round(sorted[Math.max(0, index)] / 1e6);
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+}
@@ -0,0 +1,414 @@
+package com.att.tdp.popcorn_palace.loadtest;
+
+import com.att.tdp.popcorn_palace.PopcornPalaceApplication;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.boot.autoconfigure.AutoConfigurationExcludeFilter;
+import org.springframework.boot.autoconfigure.AutoConfigurationPackage;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.TypeExcludeFilter;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.FilterType;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * End-to-end load test of the REST API.
+ * Boots the server in this JVM against a local database with the settings of src/main/resources, or targets
+ * a running server with the baseUrl option, and seeds it with movies and showtimes through the API.
+ * It then runs three phases with a fixed number of workers, each sending its next request as soon as
+ * the previous one is answered:
+ * a warmup and a steady phase with a weighted mix of catalog reads and bookings of free seats, then an on-sale
+ * burst where every worker books random seats of a single hot showtime, so most of the bookings collide.
+ * The throughput, latency percentiles and outcomes of every operation are printed and saved as JSON in the
+ * out directory, with the keys in a fixed order so the results of two runs can be diffed.
+ * Run it with: {@code ./mvnw -P loadtest test-compile exec:exec -Dloadtest.args="key=value ..."}
+ */
+public class LoadTest {
+    private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+
+    static {
+        DEFAULTS.put("name", "default");
+        DEFAULTS.put("baseUrl", "");
+        DEFAULTS.put("db", "jdbc:postgresql://localhost:5432/popcorn-palace?reWriteBatchedInserts=true");
+        DEFAULTS.put("dbUser", "popcorn-palace");
+        DEFAULTS.put("dbPassword", "popcorn-palace");
+        DEFAULTS.put("profiles", "");
+        DEFAULTS.put("movies", "100");
+        DEFAULTS.put("theaters", "20");
+        DEFAULTS.put("showtimesPerTheater", "10");
+        DEFAULTS.put("concurrency", "64");
+        DEFAULTS.put("warmup", "PT10S");
+        DEFAULTS.put("duration", "PT30S");
+        DEFAULTS.put("mix", "movies.page:20,showtimes.list:25,showtime.get:25,bookings:30");
+        DEFAULTS.put("onSaleSeats", "1000");
+        DEFAULTS.put("onSaleRequests", "20000");
+        DEFAULTS.put("out", "target/loadtest");
+        DEFAULTS.put("cleanup", "true");
+    }
+
+    private final Map<String, String> options;
+    private final HttpClient client;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final String run = UUID.randomUUID().toString().substring(0, 8);
+    private String baseUrl;
+    private final List<Long> movieIds = new ArrayList<>();
+    private final List<String> movieTitles = new ArrayList<>();
+    private final List<String> theaters = new ArrayList<>();
+    private final List<Long> showtimeIds = new ArrayList<>();
+    private AtomicIntegerArray nextSeats;
+    private long onSaleShowtimeId;
+
+    public LoadTest(Map<String, String> options, HttpClient client) {
+        this.options = options;
+        this.client = client;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>(DEFAULTS);
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 0 || !DEFAULTS.containsKey(arg.substring(0, separator))) {
+                throw new IllegalArgumentException("Unknown option " + arg + ", the options are " + DEFAULTS.keySet());
+            }
+
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+
+        ConfigurableApplicationContext server = options.get("baseUrl").isEmpty() ? startServer(options) : null;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            HttpClient client = HttpClient.newBuilder()
+                    .executor(executor)
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(Duration.ofSeconds(10))
+                    .build();
+            LoadTest loadTest = new LoadTest(options, client);
+            loadTest.baseUrl = server == null ? options.get("baseUrl")
+                    : "http://localhost:" + server.getEnvironment().getProperty("local.server.port");
+            loadTest.run(executor);
+        } finally {
+            if (server != null) {
+                server.close();
+            }
+        }
+    }
+
+    /**
+     * Boots the server on a random port with the configuration of src/main/resources, which the test
+     * configuration on the classpath would otherwise shadow.
+     */
+    private static ConfigurableApplicationContext startServer(Map<String, String> options) {
+        List<String> args = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--spring.config.location=file:src/main/resources/",
+                "--spring.sql.init.schema-locations=file:src/main/resources/schema.sql",
+                "--spring.sql.init.data-locations=file:src/main/resources/data.sql",
+                "--spring.datasource.url=" + options.get("db"),
+                "--spring.datasource.username=" + options.get("dbUser"),
+                "--spring.datasource.password=" + options.get("dbPassword"),
+                "--spring.jpa.show-sql=false",
+                "--logging.level.root=WARN"));
+        if (!options.get("profiles").isEmpty()) {
+            args.add("--spring.profiles.active=" + options.get("profiles"));
+        }
+
+        return new SpringApplicationBuilder(Server.class).run(args.toArray(String[]::new));
+    }
+
+    /**
+     * The application as configured by PopcornPalaceApplication, without the services of the MockMvc tests
+     * that the component scan finds on the test classpath.
+     */
+    @Configuration
+    @EnableAutoConfiguration
+    @AutoConfigurationPackage(basePackageClasses = PopcornPalaceApplication.class)
+    @ComponentScan(basePackageClasses = PopcornPalaceApplication.class, excludeFilters = {
+            @ComponentScan.Filter(type = FilterType.CUSTOM, classes = TypeExcludeFilter.class),
+            @ComponentScan.Filter(type = FilterType.CUSTOM, classes = AutoConfigurationExcludeFilter.class),
+            @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE, classes = PopcornPalaceApplication.class),
+            @ComponentScan.Filter(type = FilterType.REGEX, pattern = ".*TestService")})
+    static class Server {
+    }
+
+    private void run(ExecutorService executor) throws Exception {
+        LocalDateTime startedAt = LocalDateTime.now().withNano(0);
+        seed();
+        Map<String, Integer> mix = parseMix(options.get("mix"));
+        int concurrency = Integer.parseInt(options.get("concurrency"));
+        int onSaleSeats = Integer.parseInt(options.get("onSaleSeats"));
+
+        Map<String, Object> phases = new LinkedHashMap<>();
+        runPhase("warmup", executor, concurrency, Duration.parse(options.get("warmup")), null, mix);
+        phases.put("steady", runPhase("steady", executor, concurrency, Duration.parse(options.get("duration")),
+                null, mix));
+        AtomicInteger onSaleRequests = new AtomicInteger(Integer.parseInt(options.get("onSaleRequests")));
+        phases.put("onSale", runPhase("onSale", executor, concurrency, null, onSaleRequests,
+                Map.of("onSale.bookings", 1)));
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("name", options.get("name"));
+        report.put("startedAt", startedAt.toString());
+        Map<String, String> reportedOptions = new TreeMap<>(options);
+        reportedOptions.remove("dbPassword");
+        report.put("options", reportedOptions);
+        report.put("phases", phases);
+        Path out = Path.of(options.get("out"));
+        Files.createDirectories(out);
+        Path file = out.resolve(options.get("name") + "-"
+                + startedAt.format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".json");
+        objectMapper.enable(SerializationFeature.INDENT_OUTPUT).writeValue(file.toFile(), report);
+        System.out.println("Seats sold in the on-sale burst: " + countSoldSeats(onSaleSeats) + " of " + onSaleSeats);
+        System.out.println("Results saved to " + file.toAbsolutePath());
+
+        if (Boolean.parseBoolean(options.get("cleanup"))) {
+            cleanup();
+        }
+    }
+
+    /**
+     * Runs the workers of a phase until its duration passes or its requests are sent, and prints its results.
+     *
+     * @param name the name of the phase
+     * @param executor the executor running the workers
+     * @param concurrency the number of workers
+     * @param duration the duration of the phase, or null to send a fixed number of requests
+     * @param remaining the number of requests left to send, or null to run for the duration
+     * @param mix the weight of every operation in the requests of the phase
+     * @return the summary of the phase
+     * @throws Exception if a worker fails
+     */
+    private Map<String, Object> runPhase(String name, ExecutorService executor, int concurrency, Duration duration,
+                                         AtomicInteger remaining, Map<String, Integer> mix) throws Exception {
+        int totalWeight = mix.values().stream().mapToInt(Integer::intValue).sum();
+        long start = System.nanoTime();
+        long deadline = duration == null ? Long.MAX_VALUE : start + duration.toNanos();
+        List<Future<Map<String, LoadStats>>> workers = new ArrayList<>();
+        for (int i = 0; i < concurrency; i++) {
+            workers.add(executor.submit(() -> {
+                Map<String, LoadStats> stats = new HashMap<>();
+                while (System.nanoTime() < deadline && (remaining == null || remaining.getAndDecrement() > 0)) {
+                    String operation = pick(mix, totalWeight);
+                    HttpRequest request = request(operation);
+                    long requestStart = System.nanoTime();
+                    String outcome;
+                    try {
+                        outcome = Integer.toString(client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode());
+                    } catch (Exception e) {
+                        outcome = e.getClass().getSimpleName();
+                    }
+
+                    stats.computeIfAbsent(operation, key -> new LoadStats()).record(System.nanoTime() - requestStart, outcome);
+                }
+
+                return stats;
+            }));
+        }
+
+        Map<String, LoadStats> merged = new TreeMap<>();
+        for (Future<Map<String, LoadStats>> worker : workers) {
+            worker.get().forEach((operation, stats) -> merged.computeIfAbsent(operation, key -> new LoadStats()).merge(stats));
+        }
+
+        long elapsed = System.nanoTime() - start;
+        LoadStats total = new LoadStats();
+        Map<String, Object> operations = new LinkedHashMap<>();
+        merged.forEach((operation, stats) -> {
+            total.merge(stats);
+            operations.put(operation, stats.summary(elapsed));
+        });
+
+        Map<String, Object> phase = new LinkedHashMap<>();
+        phase.put("concurrency", concurrency);
+        phase.put("seconds", Math.round(elapsed / 1e7) / 100.0);
+        phase.put("total", total.summary(elapsed));
+        phase.put("operations", operations);
+        System.out.println("== " + name);
+        operations.forEach((operation, summary) -> System.out.println(operation + " " + summary));
+        System.out.println("total " + phase.get("total"));
+        return phase;
+    }
+
+    private static String pick(Map<String, Integer> mix, int totalWeight) {
+        int choice = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (Map.Entry<String, Integer> operation : mix.entrySet()) {
+            choice -= operation.getValue();
+            if (choice < 0) {
+                return operation.getKey();
+            }
+        }
+
+        throw new IllegalStateException("Empty mix");
+    }
+
+    /**
+     * Builds the next request of an operation. The steady bookings take the next free seat of a random showtime,
+     * so they never collide, while the on-sale bookings take a random seat of the hot showtime.
+     */
+    private HttpRequest request(String operation) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return switch (operation) {
+            case "movies.page" -> get("/movies/all?limit=50&after="
+                    + (movieIds.get(random.nextInt(movieIds.size())) - 1));
+            case "showtimes.list" -> get("/showtimes?limit=50&theater="
+                    + URLEncoder.encode(theaters.get(random.nextInt(theaters.size())), StandardCharsets.UTF_8));
+            case "showtime.get" -> get("/showtimes/" + showtimeIds.get(random.nextInt(showtimeIds.size())));
+            case "bookings" -> {
+                int showtime = random.nextInt(showtimeIds.size());
+                yield booking(showtimeIds.get(showtime), nextSeats.getAndIncrement(showtime));
+            }
+            case "onSale.bookings" -> booking(onSaleShowtimeId,
+                    random.nextInt(Integer.parseInt(options.get("onSaleSeats"))));
+            default -> throw new IllegalArgumentException("Unknown operation " + operation
+                    + ", the operations are movies.page, showtimes.list, showtime.get and bookings");
+        };
+    }
+
+    private HttpRequest booking(long showtimeId, int seatNumber) {
+        return post("/bookings", "{\"showtimeId\":" + showtimeId + ",\"seatNumber\":" + seatNumber
+                + ",\"userId\":\"" + UUID.randomUUID() + "\"}", "application/json");
+    }
+
+    /**
+     * Creates the movies one by one, imports the showtimes of every theater in one NDJSON file,
+     * and reads the IDs of the showtimes back by theater.
+     */
+    private void seed() throws Exception {
+        long seedStart = System.nanoTime();
+        for (int i = 0; i < Integer.parseInt(options.get("movies")); i++) {
+            String title = "Load " + run + " Movie " + i;
+            JsonNode movie = send(post("/movies", "{\"title\":\"" + title + "\",\"genre\":\"Load\",\"duration\":120,"
+                    + "\"rating\":7.5,\"releaseYear\":2025}", "application/json"), 201);
+            movieIds.add(movie.get("id").asLong());
+            movieTitles.add(title);
+        }
+
+        OffsetDateTime firstStart = OffsetDateTime.now(ZoneOffset.UTC).plusDays(1).withNano(0);
+        StringBuilder showtimes = new StringBuilder();
+        int showtimesPerTheater = Integer.parseInt(options.get("showtimesPerTheater"));
+        for (int theater = 0; theater < Integer.parseInt(options.get("theaters")); theater++) {
+            theaters.add("Load " + run + " Theater " + theater);
+            for (int i = 0; i < showtimesPerTheater; i++) {
+                OffsetDateTime startTime = firstStart.plusHours(3L * i);
+                showtimes.append(showtimeJson(movieIds.get((theater + i) % movieIds.size()), theaters.get(theater),
+                        startTime)).append('\n');
+            }
+        }
+
+        String onSaleTheater = "Load " + run + " On Sale";
+        showtimes.append(showtimeJson(movieIds.get(0), onSaleTheater, firstStart)).append('\n');
+        JsonNode report = send(post("/showtimes/import", showtimes.toString(), "application/x-ndjson"), 200);
+        if (report.get("failed").asInt() > 0) {
+            throw new IllegalStateException("Failed to import the showtimes - " + report);
+        }
+
+        for (String theater : theaters) {
+            showtimeIds.addAll(showtimeIdsOf(theater));
+        }
+
+        onSaleShowtimeId = showtimeIdsOf(onSaleTheater).get(0);
+        nextSeats = new AtomicIntegerArray(showtimeIds.size());
+        System.out.printf("Seeded %d movies and %d showtimes in %.1f s%n", movieIds.size(), showtimeIds.size() + 1,
+                (System.nanoTime() - seedStart) / 1e9);
+    }
+
+    private static String showtimeJson(long movieId, String theater, OffsetDateTime startTime) {
+        return "{\"movieId\":" + movieId + ",\"theater\":\"" + theater + "\",\"startTime\":\"" + startTime
+                + "\",\"endTime\":\"" + startTime.plusHours(2) + "\",\"price\":12.5}";
+    }
+
+    private List<Long> showtimeIdsOf(String theater) throws Exception {
+        JsonNode showtimes = send(get("/showtimes?limit=1000&theater="
+                + URLEncoder.encode(theater, StandardCharsets.UTF_8)), 200);
+        List<Long> ids = new ArrayList<>();
+        showtimes.forEach(showtime -> ids.add(showtime.get("id").asLong()));
+        return ids;
+    }
+
+    private int countSoldSeats(int onSaleSeats) throws Exception {
+        JsonNode seatMap = send(get("/showtimes/" + onSaleShowtimeId + "/seats"), 200);
+        int sold = 0;
+        for (JsonNode seatNumber : seatMap.get("occupiedSeats")) {
+            if (seatNumber.asInt() < onSaleSeats) {
+                sold++;
+            }
+        }
+
+        return sold;
+    }
+
+    /**
+     * Deletes the seeded showtimes with their tickets, then the seeded movies.
+     */
+    private void cleanup() throws Exception {
+        List<Long> seeded = new ArrayList<>(showtimeIds);
+        seeded.add(onSaleShowtimeId);
+        for (Long showtimeId : seeded) {
+            send(HttpRequest.newBuilder(URI.create(baseUrl + "/showtimes/" + showtimeId)).DELETE().build(), 200);
+        }
+
+        for (String title : movieTitles) {
+            send(HttpRequest.newBuilder(URI.create(baseUrl + "/movies/"
+                    + URLEncoder.encode(title, StandardCharsets.UTF_8).replace("+", "%20"))).DELETE().build(), 200);
+        }
+    }
+
+    private static Map<String, Integer> parseMix(String mix) {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        for (String entry : mix.split(",")) {
+            String[] operation = entry.trim().split(":");
+            weights.put(operation[0], Integer.parseInt(operation[1]));
+        }
+
+        return weights;
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path)).GET().build();
+    }
+
+    private HttpRequest post(String path, String body, String contentType) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Content-Type", contentType)
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private JsonNode send(HttpRequest request, int expectedStatus) throws Exception {
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != expectedStatus) {
+            throw new IllegalStateException("Unexpected response " + response.statusCode() + " to "
+                    + request.method() + " " + request.uri() + " - " + response.body());
+        }
+
+        return response.body().isEmpty() ? objectMapper.nullNode() : objectMapper.readTree(response.body());
+    }
+}